@@ -3,7 +3,7 @@ package knes.agent.tools
 import knes.agent.tools.results.*
 
 /** Contract for controlling a NES emulator — local in-process or remote over HTTP/MCP. */
-interface EmulatorToolset {
+interface EmulatorToolset : AutoCloseable {
     fun loadRom(path: String): StatusResult
     fun reset(): StatusResult
     fun step(buttons: List<String>, frames: Int = 1, screenshot: Boolean = false): StepResult
@@ -11,6 +11,12 @@ interface EmulatorToolset {
     fun sequence(steps: List<StepEntry>, screenshot: Boolean = false): StepResult
     fun getState(): StateSnapshot
     fun getScreen(): ScreenPng
+
+    /**
+     * Copy of the last completed frame as raw 256x240 0x00RRGGBB pixels, for callers that
+     * encode images themselves. Null when the emulator is remote and only PNGs are served.
+     */
+    fun frameBuffer(): IntArray? = null
     fun applyProfile(id: String): StatusResult
     fun listProfiles(): List<ProfileSummary>
     fun listActions(profileId: String? = null): List<ActionDescriptor>
@@ -18,10 +24,33 @@ interface EmulatorToolset {
     fun press(buttons: List<String>): StatusResult
     fun release(buttons: List<String>): StatusResult
 
+    /**
+     * Runs a script of steps, taps and waits in one call, checking [BatchRequest.until] and
+     * each op's [BatchOp.until] after every frame. Returns one consolidated result.
+     */
+    fun batch(request: BatchRequest): BatchResult
+
+    /**
+     * Text windows and menu cursors read straight from the PPU nametables with the applied
+     * profile's text table. No image encoding; returns a [ScreenTextResult.message] and no
+     * windows when the profile has no table.
+     */
+    fun readScreenText(): ScreenTextResult
+
+    /**
+     * Searches controller inputs from the current state for the shortest sequence of
+     * [PlanRequest.moves] reaching [PlanRequest.goal], forking the emulator across all
+     * cores, and replays it when [PlanRequest.apply] is set. Standalone sessions only.
+     */
+    fun planInputs(request: PlanRequest): PlanResult
+
     fun saveSavestate(): ByteArray
     fun loadSavestate(bytes: ByteArray): Boolean
     fun advanceFrames(count: Int)
 
+    /** Releases what the toolset started on its own, such as the planner's worker threads. */
+    override fun close() {}
+
     companion object {
         fun local(): EmulatorToolset = LocalEmulatorToolset(knes.api.EmulatorSession())
         fun remote(url: String): EmulatorToolset = RemoteEmulatorToolset(url)
@@ -0,0 +1,177 @@
+package knes.agent.tools
+
+import knes.api.EmulatorSession
+import knes.api.StepRequest
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Breadth-first search over controller inputs, forking the emulator through savestates.
+ *
+ * Each level expands every frontier state by every move on the worker pool: a worker
+ * loads the state into its own [EmulatorSession], plays the move, tests [Search.goal]
+ * and [Search.prune] against RAM and saves the result. Children are deduplicated on a
+ * 64-bit key over [Search.keyAddresses] (the frame hash when empty) in submission
+ * order, so the plan doesn't depend on thread scheduling. The first level holding a
+ * goal state gives the shortest plan in moves.
+ *
+ * Only frontier states keep a savestate; expanded ones keep just their parent link.
+ * With [Search.beamWidth] > 0 a level is cut to that many children (lowest
+ * [Search.score] first when given, else first generated), which bounds memory at the
+ * cost of optimality. [Search.maxFrontier] caps the savestates held for one level
+ * whatever the beam, and the search gives up when a level would exceed it.
+ *
+ * Each worker thread loads [romPath] once and reuses its session for the planner's
+ * lifetime. Standalone sessions only: creating sessions resets emulator globals a
+ * UI-driven NES depends on.
+ */
+class InputPlanner(
+    val romPath: String,
+    threads: Int = Runtime.getRuntime().availableProcessors(),
+) : AutoCloseable {
+
+    /** RAM reader handed to predicates: address -> byte (0..255). */
+    fun interface Ram {
+        operator fun get(address: Int): Int
+    }
+
+    class Search(
+        val root: ByteArray,
+        val moves: List<List<StepRequest>>,
+        val goal: (Ram) -> Boolean,
+        val prune: (Ram) -> Boolean = { false },
+        val keyAddresses: IntArray = IntArray(0),
+        val maxDepth: Int = 32,
+        val beamWidth: Int = 0,
+        val maxNodes: Int = 5_000,
+        val maxFrontier: Int = 2_000,
+        val score: ((Ram) -> Int)? = null,
+    )
+
+    /** [moves] are indices into [Search.moves], or null when no plan was found (see [reason]). */
+    class Outcome(val moves: List<Int>?, val expanded: Int, val reason: String?)
+
+    private class Node(var state: ByteArray?, val parent: Node?, val move: Int, val score: Int)
+
+    private class Child(val move: Int, val key: Long, val goal: Boolean, val score: Int, val state: ByteArray?)
+
+    private val threadIds = AtomicInteger()
+    private val pool: ExecutorService = Executors.newFixedThreadPool(threads.coerceAtLeast(1)) { r ->
+        Thread(r, "knes-planner-${threadIds.incrementAndGet()}").apply { isDaemon = true }
+    }
+    private val sessions = ThreadLocal.withInitial {
+        EmulatorSession().also { check(it.loadRom(romPath)) { "planner worker failed to load $romPath" } }
+    }
+
+    fun plan(search: Search): Outcome {
+        require(search.moves.isNotEmpty()) { "planner needs at least one move" }
+        require(search.maxDepth >= 1) { "maxDepth must be >= 1" }
+        require(search.maxFrontier >= 1) { "maxFrontier must be >= 1" }
+        val root = await(pool.submit(Callable { probe(search.root, search) }))
+        if (root.goal) return Outcome(emptyList(), 0, null)
+
+        // The root's frame hash is stale (workers don't render on load), so only RAM keys seed it.
+        val visited = HashSet<Long>().apply { if (search.keyAddresses.isNotEmpty()) add(root.key) }
+        var frontier = listOf(Node(search.root, null, -1, 0))
+        var expanded = 0
+        for (depth in 1..search.maxDepth) {
+            if (expanded + frontier.size > search.maxNodes) {
+                return Outcome(null, expanded, "maxNodes ${search.maxNodes} reached at depth $depth")
+            }
+            val futures: List<Future<List<Child>>> = frontier.map { node ->
+                val state = node.state!!
+                pool.submit(Callable { expand(state, search) })
+            }
+            val next = ArrayList<Node>()
+            try {
+                for ((i, future) in futures.withIndex()) {
+                    val parent = frontier[i]
+                    val children = await(future)
+                    parent.state = null
+                    expanded++
+                    for (c in children) {
+                        if (c.goal) return Outcome(pathTo(parent) + c.move, expanded, null)
+                        if (c.state == null || !visited.add(c.key)) continue
+                        if (next.size == search.maxFrontier) {
+                            return Outcome(null, expanded, "maxFrontier ${search.maxFrontier} reached at depth $depth")
+                        }
+                        next += Node(c.state, parent, c.move, c.score)
+                    }
+                }
+            } finally {
+                futures.forEach { it.cancel(false) }
+            }
+            if (next.isEmpty()) return Outcome(null, expanded, "search space exhausted at depth $depth")
+            frontier = if (search.beamWidth in 1 until next.size) {
+                (if (search.score != null) next.sortedBy { it.score } else next).take(search.beamWidth)
+            } else next
+        }
+        return Outcome(null, expanded, "no goal within maxDepth ${search.maxDepth}")
+    }
+
+    private fun probe(state: ByteArray, search: Search): Child {
+        val session = sessions.get()
+        session.loadState(state)
+        val ram = Ram { session.readMemory(it) }
+        val key = if (search.keyAddresses.isEmpty()) 0L else keyOf(session, search.keyAddresses)
+        return Child(-1, key, search.goal(ram), 0, null)
+    }
+
+    private fun expand(state: ByteArray, search: Search): List<Child> {
+        val session = sessions.get()
+        val ram = Ram { session.readMemory(it) }
+        val out = ArrayList<Child>(search.moves.size)
+        for ((m, move) in search.moves.withIndex()) {
+            session.loadState(state)
+            for (step in move) {
+                session.controller.setButtons(step.buttons)
+                session.advanceFrames(step.frames)
+            }
+            session.controller.releaseAll()
+            if (search.goal(ram)) {
+                out += Child(m, 0, goal = true, score = 0, state = null)
+                break
+            }
+            if (search.prune(ram)) continue
+            out += Child(m, keyOf(session, search.keyAddresses), false, search.score?.invoke(ram) ?: 0, session.saveState())
+        }
+        return out
+    }
+
+    private fun keyOf(session: EmulatorSession, addresses: IntArray): Long {
+        if (addresses.isEmpty()) return session.frameHash()
+        var h = FNV_OFFSET_BASIS
+        for (a in addresses) h = (h xor session.readMemory(a).toLong()) * FNV_PRIME
+        return h
+    }
+
+    private fun pathTo(node: Node): List<Int> {
+        val out = ArrayList<Int>()
+        var n: Node? = node
+        while (n != null && n.move >= 0) {
+            out += n.move
+            n = n.parent
+        }
+        out.reverse()
+        return out
+    }
+
+    private fun <T> await(future: Future<T>): T = try {
+        future.get()
+    } catch (e: ExecutionException) {
+        throw e.cause ?: e
+    }
+
+    override fun close() {
+        pool.shutdownNow()
+    }
+
+    private companion object {
+        const val FNV_OFFSET_BASIS = -0x340d631b7bdddcdbL
+        const val FNV_PRIME = 0x100000001b3L
+    }
+}
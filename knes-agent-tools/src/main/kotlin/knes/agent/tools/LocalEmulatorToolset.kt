@@ -75,12 +75,110 @@ open class LocalEmulatorToolset(
         return readStepResult(screenshot)
     }
 
+    @Tool
+    @LLMDescription("Run a script of step, tap and wait ops in one call. Each op may end early on its own 'until' RAM or frameStable condition, and the batch-level 'until' ends the whole script. Returns frames run, ops completed, why it stopped, RAM, and optionally a screenshot. Use this instead of many step/tap calls.")
+    override fun batch(request: BatchRequest): BatchResult {
+        require(request.ops.isNotEmpty()) { "batch requires at least one op" }
+        require(request.maxFrames in 1..MAX_BATCH_FRAMES) {
+            "maxFrames must be 1..$MAX_BATCH_FRAMES, got ${request.maxFrames}"
+        }
+        val scripts = request.ops.map { it to stepsFor(it) }
+        val batchProbe = request.until?.let { StopProbe(it, session) }
+        var framesRun = 0
+        var opsCompleted = 0
+        var stopReason: String? = null
+
+        ops@ for ((op, steps) in scripts) {
+            val opProbe = op.until?.let { StopProbe(it, session) }
+            if (batchProbe == null && opProbe == null) {
+                // No conditions to poll: hand the whole op to the input path at once.
+                val budget = request.maxFrames - framesRun
+                val frames = steps.sumOf { it.frames }
+                runSteps(truncate(steps, budget))
+                framesRun += minOf(frames, budget)
+                if (frames > budget) {
+                    stopReason = "maxFrames ${request.maxFrames} reached"
+                    break@ops
+                }
+                opsCompleted++
+                continue
+            }
+            for ((s, step) in steps.withIndex()) {
+                for (i in 0 until step.frames) {
+                    if (framesRun >= request.maxFrames) {
+                        stopReason = "maxFrames ${request.maxFrames} reached"
+                        break@ops
+                    }
+                    runSteps(listOf(StepRequest(step.buttons, 1)))
+                    framesRun++
+                    // The op is done on its last frame or when its own condition fires.
+                    val opDone = (s == steps.lastIndex && i == step.frames - 1) || (opProbe != null && opProbe.isMet())
+                    if (batchProbe != null && batchProbe.isMet()) {
+                        if (opDone) opsCompleted++
+                        stopReason = "until: ${batchProbe.describe()}"
+                        break@ops
+                    }
+                    if (opDone) {
+                        opsCompleted++
+                        continue@ops
+                    }
+                }
+            }
+        }
+
+        return BatchResult(
+            frame = session.frameCount,
+            framesRun = framesRun,
+            opsCompleted = opsCompleted,
+            stopReason = stopReason,
+            ram = session.readWatchedRam(),
+            heldButtons = controller.getHeldButtons(),
+            screenshot = if (request.screenshot) session.screenshotBase64Png() else null,
+        )
+    }
+
+    private fun stepsFor(op: BatchOp): List<StepRequest> {
+        op.buttons.forEach { controller.resolveButton(it) }
+        return when (op.op) {
+            BatchOpType.STEP -> {
+                require(op.frames in 1..MAX_BATCH_FRAMES) { "step frames must be 1..$MAX_BATCH_FRAMES, got ${op.frames}" }
+                listOf(StepRequest(op.buttons, op.frames))
+            }
+            BatchOpType.TAP -> {
+                require(op.count in 1..50) { "tap count must be 1..50, got ${op.count}" }
+                require(op.pressFrames >= 1 && op.gapFrames >= 0) { "tap needs pressFrames >= 1 and gapFrames >= 0" }
+                (0 until op.count).flatMap {
+                    listOfNotNull(
+                        StepRequest(op.buttons, op.pressFrames),
+                        if (op.gapFrames > 0) StepRequest(emptyList(), op.gapFrames) else null,
+                    )
+                }
+            }
+            BatchOpType.WAIT -> {
+                require(op.frames in 1..MAX_BATCH_FRAMES) { "wait frames must be 1..$MAX_BATCH_FRAMES, got ${op.frames}" }
+                listOf(StepRequest(emptyList(), op.frames))
+            }
+        }
+    }
+
+    private fun truncate(steps: List<StepRequest>, budget: Int): List<StepRequest> {
+        var left = budget
+        val out = ArrayList<StepRequest>(steps.size)
+        for (step in steps) {
+            if (left <= 0) break
+            out += if (step.frames <= left) step else StepRequest(step.buttons, left)
+            left -= step.frames
+        }
+        return out
+    }
+
     private fun runSteps(steps: List<StepRequest>) {
+        if (steps.isEmpty()) return
         if (session.shared) {
-            val latch = controller.enqueueSteps(steps)
+            val ticket = controller.enqueueSteps(steps)
             val totalFrames = steps.sumOf { it.frames }
             val timeoutMs = totalFrames * 50L + 5000L
-            if (!latch.await(timeoutMs, TimeUnit.MILLISECONDS)) {
+            if (!controller.inputQueue.awaitCompletion(ticket, timeoutMs, TimeUnit.MILLISECONDS)) {
                 throw TimeoutException(
                     "runSteps timed out waiting for $totalFrames frames (timeout ${timeoutMs}ms)"
                 )
@@ -106,6 +204,91 @@ open class LocalEmulatorToolset(
     @LLMDescription("Capture a screenshot of the current NES frame as a base64-encoded PNG image")
     override fun getScreen(): ScreenPng = ScreenPng(base64 = session.screenshotBase64Png())
 
+    override fun frameBuffer(): IntArray = session.copyFrame()
+
+    private var planner: InputPlanner? = null
+
+    @Tool
+    @LLMDescription("Search for the shortest sequence of moves (default: single d-pad taps) that makes every goal RAM condition true, by forking the emulator from the current state across all CPU cores. Replays the plan when apply=true. Try this before step-by-step navigation; it costs no model calls.")
+    override fun planInputs(request: PlanRequest): PlanResult {
+        val start = System.nanoTime()
+        fun failed(reason: String) = PlanResult(
+            found = false, moves = emptyList(), frames = 0, expanded = 0,
+            elapsedMs = (System.nanoTime() - start) / 1_000_000, reason = reason,
+        )
+        if (session.shared) return failed("planner needs a standalone session")
+        val romPath = session.romPath ?: return failed("no ROM loaded")
+        require(request.goal.isNotEmpty()) { "plan needs at least one goal condition" }
+        require(request.moves.isNotEmpty()) { "plan needs at least one move" }
+        require(request.maxDepth in 1..MAX_PLAN_DEPTH) { "maxDepth must be 1..$MAX_PLAN_DEPTH, got ${request.maxDepth}" }
+        val moves = request.moves.map { move ->
+            require(move.steps.isNotEmpty()) { "move '${move.name}' has no steps" }
+            move.steps.map { step ->
+                require(step.frames in 1..600) { "move '${move.name}' step frames must be 1..600, got ${step.frames}" }
+                step.buttons.forEach { controller.resolveButton(it) }
+                StepRequest(step.buttons, step.frames)
+            }
+        }
+        val goal = request.goal.map { StopProbe.ramPredicate(it, session) }
+        val avoid = request.avoid.map { StopProbe.ramPredicate(it, session) }
+        val search = InputPlanner.Search(
+            root = session.saveState(),
+            moves = moves,
+            goal = { ram -> goal.all { it(ram) } },
+            prune = { ram -> avoid.any { it(ram) } },
+            keyAddresses = request.dedupAddresses.map { StopProbe.resolveAddress(it, session) }.toIntArray(),
+            maxDepth = request.maxDepth,
+            beamWidth = request.beamWidth,
+            maxNodes = request.maxNodes,
+            maxFrontier = request.maxFrontier,
+        )
+        val outcome = plannerFor(romPath).plan(search)
+        val plan = outcome.moves
+        if (plan != null && request.apply) runSteps(plan.flatMap { moves[it] })
+        return PlanResult(
+            found = plan != null,
+            moves = plan?.map { request.moves[it].name } ?: emptyList(),
+            frames = plan?.sumOf { i -> moves[i].sumOf { it.frames } } ?: 0,
+            expanded = outcome.expanded,
+            elapsedMs = (System.nanoTime() - start) / 1_000_000,
+            reason = outcome.reason,
+            ram = session.readWatchedRam(),
+        )
+    }
+
+    @Synchronized
+    private fun plannerFor(romPath: String): InputPlanner {
+        planner?.let { if (it.romPath == romPath) return it else it.close() }
+        return InputPlanner(romPath).also { planner = it }
+    }
+
+    /** Stops the planner's worker pool; a later [planInputs] starts a new one. The session stays usable. */
+    @Synchronized
+    override fun close() {
+        planner?.close()
+        planner = null
+    }
+
+    @Tool
+    @LLMDescription("Read on-screen text (menus, shop lists, dialog boxes) and menu cursor positions straight from the PPU nametables, using the applied profile's font table. Far cheaper than a screenshot; each cursor reports the window line it points at.")
+    override fun readScreenText(): ScreenTextResult {
+        val text = session.screenText()
+            ?: return ScreenTextResult(
+                frame = session.frameCount,
+                windows = emptyList(),
+                cursors = emptyList(),
+                message = "no text table: apply a profile that defines one (e.g. 'ff1')",
+            )
+        val selected = text.selectedLines()
+        return ScreenTextResult(
+            frame = session.frameCount,
+            windows = text.windows.map { TextWindowResult(it.col, it.row, it.width, it.height, it.lines) },
+            cursors = text.cursors.mapIndexed { i, c ->
+                TextCursorResult(c.x, c.y, c.col, c.row, c.window, c.line, selected[i])
+            },
+        )
+    }
+
     @Tool
     @LLMDescription("Apply a game profile (e.g. 'smb' for Super Mario Bros, 'ff1' for Final Fantasy) to enable RAM watching for game-specific variables like HP, gold, position")
     override fun applyProfile(id: String): StatusResult {
@@ -164,4 +347,10 @@ open class LocalEmulatorToolset(
         heldButtons = controller.getHeldButtons(),
         screenshot = if (screenshot) session.screenshotBase64Png() else null,
     )
+
+    private companion object {
+        /** Ten minutes of emulated time at 60 fps. */
+        const val MAX_BATCH_FRAMES = 36_000
+        const val MAX_PLAN_DEPTH = 256
+    }
 }
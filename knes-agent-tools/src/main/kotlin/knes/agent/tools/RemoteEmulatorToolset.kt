@@ -2,8 +2,13 @@ package knes.agent.tools
 
 import knes.agent.tools.results.ActionDescriptor
 import knes.agent.tools.results.ActionToolResult
+import knes.agent.tools.results.BatchRequest
+import knes.agent.tools.results.BatchResult
+import knes.agent.tools.results.PlanRequest
+import knes.agent.tools.results.PlanResult
 import knes.agent.tools.results.ProfileSummary
 import knes.agent.tools.results.ScreenPng
+import knes.agent.tools.results.ScreenTextResult
 import knes.agent.tools.results.StateSnapshot
 import knes.agent.tools.results.StatusResult
 import knes.agent.tools.results.StepEntry
@@ -189,6 +194,23 @@ class RemoteEmulatorToolset(
         return StatusResult(true, "release (remote)")
     }
 
+    override fun batch(request: BatchRequest): BatchResult {
+        val resp = postJson("/batch", json.encodeToString(BatchRequest.serializer(), request))
+            ?: error("Remote /batch returned no body")
+        return json.decodeFromString(BatchResult.serializer(), resp)
+    }
+
+    override fun planInputs(request: PlanRequest): PlanResult {
+        val resp = postJson("/plan", json.encodeToString(PlanRequest.serializer(), request))
+            ?: error("Remote /plan returned no body")
+        return json.decodeFromString(PlanResult.serializer(), resp)
+    }
+
+    override fun readScreenText(): ScreenTextResult {
+        val resp = get("/screen/text") ?: error("Remote /screen/text returned no body")
+        return json.decodeFromString(ScreenTextResult.serializer(), resp)
+    }
+
     // ── HTTP plumbing ─────────────────────────────────────────────────────
 
     private fun get(path: String): String? = send(
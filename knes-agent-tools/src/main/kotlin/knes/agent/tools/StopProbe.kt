@@ -0,0 +1,92 @@
+package knes.agent.tools
+
+import knes.agent.tools.results.StopCondition
+import knes.agent.tools.results.StopKind
+import knes.api.EmulatorSession
+
+/**
+ * Armed [StopCondition]: captures its baseline on construction and is polled with [isMet]
+ * once per emulated frame by [LocalEmulatorToolset.batch].
+ */
+internal class StopProbe(private val condition: StopCondition, private val session: EmulatorSession) {
+
+    private val address: Int? = condition.address?.let { resolveAddress(it, session) }
+
+    init {
+        when (condition.kind) {
+            StopKind.CHANGES -> requireNotNull(address) { "'changes' condition needs an address" }
+            StopKind.EQUALS, StopKind.NOT_EQUALS -> {
+                requireNotNull(address) { "'${condition.kind}' condition needs an address" }
+                requireNotNull(condition.value) { "'${condition.kind}' condition needs a value" }
+            }
+            StopKind.FRAME_STABLE -> require(condition.frames >= 1) { "frameStable frames must be >= 1" }
+        }
+    }
+
+    private val baseline: Int = address?.let { read(it) } ?: 0
+    private var lastHash: Long = session.frameHash()
+    private var stableFrames = 0
+
+    fun isMet(): Boolean = when (condition.kind) {
+        StopKind.CHANGES -> read(address!!) != baseline
+        StopKind.EQUALS -> read(address!!) == condition.value
+        StopKind.NOT_EQUALS -> read(address!!) != condition.value
+        StopKind.FRAME_STABLE -> {
+            val hash = session.frameHash()
+            if (hash == lastHash) stableFrames++ else {
+                stableFrames = 0
+                lastHash = hash
+            }
+            stableFrames >= condition.frames
+        }
+    }
+
+    private fun read(addr: Int): Int = session.readMemory(addr) and condition.mask
+
+    fun describe(): String = describe(condition)
+
+    companion object {
+        fun describe(condition: StopCondition): String {
+            val subject = if (condition.mask == 0xFF) "${condition.address}" else "${condition.address} & 0x%02X".format(condition.mask)
+            return when (condition.kind) {
+                StopKind.CHANGES -> "$subject changed"
+                StopKind.EQUALS -> "$subject == ${condition.value}"
+                StopKind.NOT_EQUALS -> "$subject != ${condition.value}"
+                StopKind.FRAME_STABLE -> "frame stable for ${condition.frames} frames"
+            }
+        }
+
+        /**
+         * [condition] as a RAM predicate for [InputPlanner], armed against [session]'s
+         * current values (the baseline for `changes`).
+         */
+        fun ramPredicate(condition: StopCondition, session: EmulatorSession): (InputPlanner.Ram) -> Boolean {
+            require(condition.kind != StopKind.FRAME_STABLE) { "frameStable is not a RAM condition" }
+            val address = resolveAddress(
+                requireNotNull(condition.address) { "'${condition.kind}' condition needs an address" },
+                session,
+            )
+            val mask = condition.mask
+            if (condition.kind == StopKind.CHANGES) {
+                val baseline = session.readMemory(address) and mask
+                return { ram -> ram[address] and mask != baseline }
+            }
+            val value = requireNotNull(condition.value) { "'${condition.kind}' condition needs a value" }
+            val equals = condition.kind == StopKind.EQUALS
+            return { ram -> (ram[address] and mask == value) == equals }
+        }
+
+        fun resolveAddress(spec: String, session: EmulatorSession): Int {
+            val hex = when {
+                spec.startsWith("0x") || spec.startsWith("0X") -> spec.substring(2)
+                spec.startsWith("$") -> spec.substring(1)
+                else -> null
+            }
+            val addr = hex?.toIntOrNull(16)
+                ?: session.watchedAddress(spec)
+                ?: throw IllegalArgumentException("Unknown address: $spec (use 0xNNNN, \$NNNN or a watched name)")
+            require(addr in 0..0xFFFF) { "address out of range: $spec" }
+            return addr
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package knes.agent.tools.results
 
+import kotlinx.serialization.SerialName
 import kotlinx.serialization.Serializable
 
 @Serializable
@@ -41,3 +42,154 @@ data class ActionDescriptor(
 
 @Serializable
 data class ActionToolResult(val ok: Boolean, val message: String, val data: Map<String, String> = emptyMap())
+
+@Serializable
+enum class BatchOpType {
+    /** Hold [BatchOp.buttons] for [BatchOp.frames]. */
+    @SerialName("step") STEP,
+    /** Press [BatchOp.buttons] [BatchOp.count] times: [BatchOp.pressFrames] held, [BatchOp.gapFrames] released. */
+    @SerialName("tap") TAP,
+    /** Release everything and idle for up to [BatchOp.frames]; pair with [BatchOp.until]. */
+    @SerialName("wait") WAIT,
+}
+
+@Serializable
+enum class StopKind {
+    /** RAM byte at [StopCondition.address] differs from its value when the condition was armed. */
+    @SerialName("changes") CHANGES,
+    @SerialName("equals") EQUALS,
+    @SerialName("notEquals") NOT_EQUALS,
+    /** Rendered frame unchanged for [StopCondition.frames] consecutive frames. */
+    @SerialName("frameStable") FRAME_STABLE,
+}
+
+/**
+ * Early-exit condition checked after every emulated frame.
+ * [address] is a hex address (`"0x0048"` or `"$0048"`) or the name of a watched address.
+ * RAM conditions compare `byte and mask`, so `{"kind":"equals","address":"mapflags",
+ * "mask":1,"value":0}` reads "mapflags bit 0 clear".
+ */
+@Serializable
+data class StopCondition(
+    val kind: StopKind,
+    val address: String? = null,
+    val value: Int? = null,
+    val frames: Int = 10,
+    val mask: Int = 0xFF,
+)
+
+@Serializable
+data class BatchOp(
+    val op: BatchOpType = BatchOpType.STEP,
+    val buttons: List<String> = emptyList(),
+    val frames: Int = 1,
+    val count: Int = 1,
+    val pressFrames: Int = 5,
+    val gapFrames: Int = 15,
+    /** Ends this op early and moves on to the next one. */
+    val until: StopCondition? = null,
+)
+
+@Serializable
+data class BatchRequest(
+    val ops: List<BatchOp>,
+    /** Ends the whole batch early. */
+    val until: StopCondition? = null,
+    /** Hard cap on emulated frames for the whole batch. */
+    val maxFrames: Int = 3600,
+    val screenshot: Boolean = false,
+)
+
+@Serializable
+data class BatchResult(
+    val frame: Int,
+    val framesRun: Int,
+    /**
+     * Ops that ran their last frame or were ended by their own `until`; an op cut short by
+     * the batch-level `until` or `maxFrames` is not counted.
+     */
+    val opsCompleted: Int,
+    /** Why the batch ended before running every op to completion, or null if it did. */
+    val stopReason: String? = null,
+    val ram: Map<String, Int>,
+    val heldButtons: List<String>,
+    val screenshot: String? = null,
+)
+
+/** A bordered text window in screen-grid cells (8x8 tiles, border included). */
+@Serializable
+data class TextWindowResult(
+    val col: Int,
+    val row: Int,
+    val width: Int,
+    val height: Int,
+    val lines: List<String>,
+)
+
+/** A menu cursor; [window]/[line] index the pointed-at window line, [selected] is its text. */
+@Serializable
+data class TextCursorResult(
+    val x: Int,
+    val y: Int,
+    val col: Int,
+    val row: Int,
+    val window: Int? = null,
+    val line: Int? = null,
+    val selected: String? = null,
+)
+
+@Serializable
+data class ScreenTextResult(
+    val frame: Int,
+    val windows: List<TextWindowResult>,
+    val cursors: List<TextCursorResult>,
+    /** Set when nothing could be decoded, e.g. the applied profile has no text table. */
+    val message: String? = null,
+)
+
+/** One planner edge: a named input script played from a forked state. */
+@Serializable
+data class PlanMove(val name: String, val steps: List<StepEntry>) {
+    companion object {
+        /** One tile step per d-pad tap, FF1 walking cadence (press 12, settle 20). */
+        val DPAD_TAPS: List<PlanMove> = listOf("Up", "Down", "Left", "Right").map {
+            PlanMove(it, listOf(StepEntry(listOf(it), 12), StepEntry(emptyList(), 20)))
+        }
+    }
+}
+
+/**
+ * Input search from the current state. [goal] conditions must all hold; a state meeting
+ * any [avoid] condition is dropped (e.g. "left the town overlay"). States are
+ * deduplicated on [dedupAddresses] (hex or watched names), or on the frame hash when
+ * empty. `frameStable` is not a valid planner condition.
+ */
+@Serializable
+data class PlanRequest(
+    val goal: List<StopCondition>,
+    val avoid: List<StopCondition> = emptyList(),
+    val moves: List<PlanMove> = PlanMove.DPAD_TAPS,
+    val dedupAddresses: List<String> = emptyList(),
+    val maxDepth: Int = 32,
+    /** Children kept per level; 0 = exhaustive BFS. */
+    val beamWidth: Int = 0,
+    /** Cap on expanded states across the whole search. */
+    val maxNodes: Int = 5_000,
+    /** Cap on states (and so savestates) kept for one level. */
+    val maxFrontier: Int = 2_000,
+    /** Replay the found plan on the live session. */
+    val apply: Boolean = true,
+)
+
+@Serializable
+data class PlanResult(
+    val found: Boolean,
+    /** Move names, in order; empty when the goal already held. */
+    val moves: List<String>,
+    val frames: Int,
+    val expanded: Int,
+    val elapsedMs: Long,
+    /** Why the search ended without a plan, or null if it found one. */
+    val reason: String? = null,
+    val ram: Map<String, Int> = emptyMap(),
+)
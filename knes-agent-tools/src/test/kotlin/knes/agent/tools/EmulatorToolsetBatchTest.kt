@@ -0,0 +1,152 @@
+package knes.agent.tools
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.ints.shouldBeLessThan
+import io.kotest.matchers.nulls.shouldBeNull
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.string.shouldContain
+import knes.agent.tools.results.BatchOp
+import knes.agent.tools.results.BatchOpType
+import knes.agent.tools.results.BatchRequest
+import knes.agent.tools.results.StopCondition
+import knes.agent.tools.results.StopKind
+import knes.api.EmulatorSession
+import java.io.File
+
+/** LocalEmulatorToolset.batch against nestest.nes from test resources, plus one shared-mode case. */
+class EmulatorToolsetBatchTest : FunSpec({
+
+    fun toolsetWithRom(): Pair<EmulatorSession, LocalEmulatorToolset> {
+        val url = EmulatorToolsetBatchTest::class.java.classLoader.getResource("nestest.nes")
+            ?: throw io.kotest.engine.TestAbortedException("nestest.nes not found in test resources")
+        val session = EmulatorSession()
+        session.loadRom(File(url.toURI()).absolutePath)
+        return session to LocalEmulatorToolset(session)
+    }
+
+    test("runs step, tap and wait ops in order when no condition fires") {
+        val (session, toolset) = toolsetWithRom()
+        val before = session.frameCount
+
+        val result = toolset.batch(BatchRequest(ops = listOf(
+            BatchOp(BatchOpType.STEP, buttons = listOf("RIGHT"), frames = 3),
+            BatchOp(BatchOpType.TAP, buttons = listOf("A"), count = 2, pressFrames = 2, gapFrames = 2),
+            BatchOp(BatchOpType.WAIT, frames = 5),
+        )))
+
+        result.framesRun shouldBe 16
+        result.opsCompleted shouldBe 3
+        result.stopReason.shouldBeNull()
+        session.frameCount shouldBe before + 16
+    }
+
+    test("maxFrames caps the batch and is reported as the stop reason") {
+        val (_, toolset) = toolsetWithRom()
+
+        val result = toolset.batch(BatchRequest(
+            ops = listOf(BatchOp(BatchOpType.WAIT, frames = 100)),
+            maxFrames = 10,
+        ))
+
+        result.framesRun shouldBe 10
+        result.opsCompleted shouldBe 0
+        result.stopReason!! shouldContain "maxFrames"
+    }
+
+    test("frameStable ends a wait op early once the screen settles") {
+        val (_, toolset) = toolsetWithRom()
+
+        val result = toolset.batch(BatchRequest(ops = listOf(
+            BatchOp(BatchOpType.WAIT, frames = 600, until = StopCondition(StopKind.FRAME_STABLE, frames = 5)),
+        )))
+
+        result.opsCompleted shouldBe 1
+        result.framesRun shouldBeLessThan 600
+    }
+
+    test("batch-level until stops the remaining ops") {
+        val (_, toolset) = toolsetWithRom()
+
+        val result = toolset.batch(BatchRequest(
+            ops = listOf(
+                BatchOp(BatchOpType.WAIT, frames = 600),
+                BatchOp(BatchOpType.WAIT, frames = 600),
+            ),
+            until = StopCondition(StopKind.FRAME_STABLE, frames = 5),
+        ))
+
+        // The first wait was interrupted, so it does not count as completed.
+        result.opsCompleted shouldBe 0
+        result.framesRun shouldBeLessThan 600
+        result.stopReason!! shouldContain "frame stable"
+    }
+
+    test("an op counts as completed only if the batch until fires on its last frame") {
+        // Masked to zero, the byte always equals 0: the condition holds after the first frame.
+        val always = StopCondition(StopKind.EQUALS, "0x0000", value = 0, mask = 0)
+
+        val (_, atBoundary) = toolsetWithRom()
+        val boundary = atBoundary.batch(BatchRequest(
+            ops = listOf(BatchOp(BatchOpType.WAIT, frames = 1), BatchOp(BatchOpType.WAIT, frames = 5)),
+            until = always,
+        ))
+        boundary.framesRun shouldBe 1
+        boundary.opsCompleted shouldBe 1
+
+        val (_, midOp) = toolsetWithRom()
+        val interrupted = midOp.batch(BatchRequest(
+            ops = listOf(BatchOp(BatchOpType.WAIT, frames = 5)),
+            until = always,
+        ))
+        interrupted.framesRun shouldBe 1
+        interrupted.opsCompleted shouldBe 0
+        interrupted.stopReason!! shouldContain "until"
+    }
+
+    test("unknown addresses and buttons are rejected before any frame runs") {
+        val (session, toolset) = toolsetWithRom()
+        val before = session.frameCount
+
+        shouldThrow<IllegalArgumentException> {
+            toolset.batch(BatchRequest(ops = listOf(BatchOp(buttons = listOf("TURBO")))))
+        }
+        shouldThrow<IllegalArgumentException> {
+            toolset.batch(BatchRequest(
+                ops = listOf(BatchOp(frames = 10)),
+                until = StopCondition(StopKind.CHANGES, address = "hp"),
+            ))
+        }
+        session.frameCount shouldBe before
+    }
+
+    test("shared mode feeds a batch longer than the input queue to the UI's frame loop") {
+        val session = EmulatorSession(externalNes = EmulatorSession().nes)
+        val toolset = LocalEmulatorToolset(session)
+        val frames = session.controller.inputQueue.capacity + 1000
+        // Stands in for the UI thread: plays one queued frame per emulated frame.
+        val running = java.util.concurrent.atomic.AtomicBoolean(true)
+        val ui = Thread {
+            val buffer = IntArray(256 * 240)
+            while (running.get()) {
+                if (session.controller.inputQueue.isActive) {
+                    session.updateFrameBuffer(buffer)
+                    session.controller.onFrameBoundary()
+                } else {
+                    Thread.sleep(1)
+                }
+            }
+        }.apply { start() }
+        try {
+            val result = toolset.batch(BatchRequest(ops = listOf(BatchOp(BatchOpType.WAIT, frames = frames))))
+
+            result.framesRun shouldBe frames
+            result.opsCompleted shouldBe 1
+            result.stopReason.shouldBeNull()
+            session.frameCount shouldBe frames
+        } finally {
+            running.set(false)
+            ui.join()
+        }
+    }
+})
@@ -0,0 +1,106 @@
+package knes.agent.tools
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.shouldBe
+import knes.api.EmulatorSession
+import knes.api.InputMovie
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.file.Files
+
+/** Recording and replaying [InputMovie]s against nestest.nes from test resources. */
+class InputMovieTest : FunSpec({
+
+    val rom = InputMovieTest::class.java.classLoader.getResource("nestest.nes")
+        ?.let { File(it.toURI()).absolutePath }
+        ?: throw io.kotest.engine.TestAbortedException("nestest.nes not found in test resources")
+    val dir = Files.createTempDirectory("input-movie")
+
+    // Boots, then records 200 frames of varied input from frame 30 on.
+    fun record(name: String): java.nio.file.Path {
+        val path = dir.resolve(name)
+        EmulatorSession().apply {
+            loadRom(rom)
+            advanceFrames(30)
+            startMovie(path, hashInterval = 60)
+            for (i in 0 until 20) {
+                controller.setButtons(if (i % 3 == 0) listOf("START") else listOf("DOWN"))
+                advanceFrames(5)
+                controller.releaseAll()
+                advanceFrames(5)
+            }
+            stopMovie() shouldBe 200
+        }
+        return path
+    }
+
+    test("a recorded run replays with every checkpoint matching") {
+        val movie = InputMovie.read(record("clean.kmv"))
+
+        movie.frames shouldBe 200
+        movie.startFrame shouldBe 30
+        val result = movie.replay(rom)
+        result.ok shouldBe true
+        result.framesReplayed shouldBe 200
+        result.checkpointsVerified shouldBe 3
+    }
+
+    test("a zero hash interval is a format error, not a crash") {
+        val path = record("zero-interval.kmv")
+        RandomAccessFile(path.toFile(), "rw").use {
+            it.seek(4 + 32L)
+            it.writeInt(0)
+        }
+        shouldThrow<IOException> { InputMovie.read(path) }
+    }
+
+    test("replay stops at the first checkpoint whose hash differs") {
+        val path = record("tampered.kmv")
+        val movie = InputMovie.read(path)
+        // Second checkpoint follows frame 120: header, 120 mask bytes, the first checkpoint, then the frame hash.
+        val header = 4 + 32 + 4 + 4 + 4 + movie.savestate.size
+        val ramHashOffset = header + 120 + 16 + 8L
+        RandomAccessFile(path.toFile(), "rw").use {
+            it.seek(ramHashOffset)
+            val v = it.readLong()
+            it.seek(ramHashOffset)
+            it.writeLong(v xor 1)
+        }
+
+        val result = InputMovie.read(path).replay(rom)
+        result.ok shouldBe false
+        result.desyncFrame shouldBe 30 + 120
+        result.checkpointsVerified shouldBe 1
+        result.reason shouldBe "RAM differs at frame 150"
+    }
+
+    test("each checkpoint is flushed, so a movie still recording reads up to it") {
+        val path = dir.resolve("live.kmv")
+        val session = EmulatorSession().apply {
+            loadRom(rom)
+            advanceFrames(30)
+            startMovie(path, hashInterval = 60)
+            advanceFrames(70)
+        }
+
+        InputMovie.read(path).frames shouldBe 60
+        session.stopMovie() shouldBe 70
+        InputMovie.read(path).frames shouldBe 70
+    }
+
+    test("the RAM hash covers cartridge RAM") {
+        val session = EmulatorSession().apply { loadRom(rom) }
+        val before = session.ramHash()
+        session.nes.cpuMemory.write(0x7FFF, ((session.readMemory(0x7FFF) + 1) and 0xFF).toShort())
+        (session.ramHash() == before) shouldBe false
+    }
+
+    test("a different ROM is refused before replaying") {
+        val other = dir.resolve("other.nes").toFile().apply { writeBytes(File(rom).readBytes().also { it[it.size - 1] = (it.last() + 1).toByte() }) }
+        val result = InputMovie.read(record("rom.kmv")).replay(other.absolutePath)
+        result.framesReplayed shouldBe 0
+        result.ok shouldBe false
+    }
+})
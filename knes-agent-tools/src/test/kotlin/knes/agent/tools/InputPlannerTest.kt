@@ -0,0 +1,102 @@
+package knes.agent.tools
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.nulls.shouldNotBeNull
+import io.kotest.matchers.shouldBe
+import knes.agent.tools.results.PlanMove
+import knes.agent.tools.results.PlanRequest
+import knes.agent.tools.results.StepEntry
+import knes.agent.tools.results.StopCondition
+import knes.agent.tools.results.StopKind
+import knes.api.EmulatorSession
+import knes.api.StepRequest
+import java.io.File
+
+/** InputPlanner and LocalEmulatorToolset.planInputs against nestest.nes from test resources. */
+class InputPlannerTest : FunSpec({
+
+    fun romPath(): String {
+        val url = InputPlannerTest::class.java.classLoader.getResource("nestest.nes")
+            ?: throw io.kotest.engine.TestAbortedException("nestest.nes not found in test resources")
+        return File(url.toURI()).absolutePath
+    }
+
+    fun toolsetWithRom(): Pair<EmulatorSession, LocalEmulatorToolset> {
+        val session = EmulatorSession()
+        session.loadRom(romPath())
+        session.advanceFrames(2)
+        return session to LocalEmulatorToolset(session)
+    }
+
+    val waits = listOf(
+        PlanMove("wait1", listOf(StepEntry(emptyList(), 1))),
+        PlanMove("wait2", listOf(StepEntry(emptyList(), 2))),
+    )
+
+    test("a goal that already holds gives an empty plan") {
+        val (session, toolset) = toolsetWithRom()
+        val value = session.readMemory(0x0000)
+
+        val result = toolset.planInputs(PlanRequest(
+            goal = listOf(StopCondition(StopKind.EQUALS, "0x0000", value = value)),
+            moves = waits,
+        ))
+
+        result.found shouldBe true
+        result.moves shouldBe emptyList()
+        result.expanded shouldBe 0
+    }
+
+    test("an unreachable goal ends with a reason and leaves the session untouched") {
+        val (session, toolset) = toolsetWithRom()
+        val before = session.frameCount
+
+        // Masked to zero, the byte can never equal 1.
+        val result = toolset.planInputs(PlanRequest(
+            goal = listOf(StopCondition(StopKind.EQUALS, "0x0000", value = 1, mask = 0)),
+            moves = waits,
+            maxDepth = 2,
+        ))
+
+        result.found shouldBe false
+        result.reason.shouldNotBeNull()
+        session.frameCount shouldBe before
+    }
+
+    test("closing the toolset stops the planner and a later plan starts a new one") {
+        val (session, toolset) = toolsetWithRom()
+        val request = PlanRequest(
+            goal = listOf(StopCondition(StopKind.EQUALS, "0x0000", value = session.readMemory(0x0000))),
+            moves = waits,
+        )
+        toolset.planInputs(request).found shouldBe true
+        toolset.close()
+        toolset.planInputs(request).found shouldBe true
+        toolset.close()
+    }
+
+    test("frameStable is rejected as a planner goal") {
+        val (_, toolset) = toolsetWithRom()
+        shouldThrow<IllegalArgumentException> {
+            toolset.planInputs(PlanRequest(goal = listOf(StopCondition(StopKind.FRAME_STABLE)), moves = waits))
+        }
+    }
+
+    test("the plan is the move path to the first goal state in BFS order") {
+        val (session, _) = toolsetWithRom()
+        InputPlanner(romPath(), threads = 1).use { planner ->
+            // Goal flips on the fourth evaluation: root, two depth-1 children, then the
+            // first depth-2 child, reached via move 0 twice.
+            var calls = 0
+            val outcome = planner.plan(InputPlanner.Search(
+                root = session.saveState(),
+                moves = listOf(listOf(StepRequest(emptyList(), 1)), listOf(StepRequest(emptyList(), 2))),
+                goal = { ++calls >= 4 },
+                maxDepth = 4,
+            ))
+            outcome.moves shouldBe listOf(0, 0)
+            outcome.expanded shouldBe 2
+        }
+    }
+})
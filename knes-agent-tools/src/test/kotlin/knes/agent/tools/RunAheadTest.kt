@@ -0,0 +1,46 @@
+package knes.agent.tools
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.shouldBe
+import knes.api.EmulatorSession
+import java.io.File
+
+/** EmulatorSession.runAheadFrames against nestest.nes from test resources. */
+class RunAheadTest : FunSpec({
+
+    fun booted(): EmulatorSession {
+        val url = RunAheadTest::class.java.classLoader.getResource("nestest.nes")
+            ?: throw io.kotest.engine.TestAbortedException("nestest.nes not found in test resources")
+        return EmulatorSession().apply {
+            loadRom(File(url.toURI()).absolutePath)
+            advanceFrames(5)
+        }
+    }
+
+    fun ram(session: EmulatorSession) = (0 until 0x800).map { session.readMemory(it) }
+
+    test("screen runs ahead while RAM and frame count stay on the real timeline") {
+        val plain = booted()
+        val ahead = booted().apply { runAheadFrames = 2 }
+
+        repeat(3) {
+            plain.advanceFrames(1)
+            ahead.advanceFrames(1)
+        }
+
+        ahead.frameCount shouldBe plain.frameCount
+        ram(ahead) shouldBe ram(plain)
+        ahead.metrics.runAheadFrames.sum() shouldBe 6L
+        // Rolled-back instructions are not counted as executed.
+        ahead.metrics.instructions.sum() shouldBe plain.metrics.instructions.sum()
+
+        // The displayed frame is the one the plain session reaches two frames later.
+        plain.advanceFrames(2)
+        ahead.frameHash() shouldBe plain.frameHash()
+    }
+
+    test("run-ahead depth is bounded") {
+        shouldThrow<IllegalArgumentException> { EmulatorSession().runAheadFrames = 99 }
+    }
+})
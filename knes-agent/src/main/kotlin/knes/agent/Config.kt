@@ -1,5 +1,6 @@
 package knes.agent
 
+import knes.agent.llm.LlmCache
 import java.nio.file.Path
 
 data class Config(
@@ -28,6 +29,24 @@ data class Config(
      *   - savestate-checkpoints every 100 turns are skipped.
      */
     val remoteUrl: String?,
+    /**
+     * Model response cache: `--llm-cache=record` stores every response under
+     * `~/.knes/cache/llm` (or `--llm-cache-dir=`), `--llm-cache=replay` serves
+     * only stored responses and fails on a miss instead of calling out. Off by
+     * default.
+     */
+    val llmCacheMode: LlmCache.Mode = LlmCache.Mode.PASSTHROUGH,
+    val llmCacheDir: Path? = null,
+    /**
+     * `--record-video` records the whole run to `video-T<first turn>.knv` in the run
+     * directory (see [knes.api.FrameRecorder]). Local emulator only.
+     */
+    val recordVideo: Boolean = false,
+    /**
+     * `--record-movie` writes an input movie, `movie-T<first turn>.kmv`, that replays the
+     * run exactly (see [knes.api.InputMovie]). Local emulator only.
+     */
+    val recordMovie: Boolean = false,
 ) {
     companion object {
         fun parse(args: Array<String>): Config {
@@ -58,6 +77,10 @@ data class Config(
                 cartographerMaxVisionCalls = arg("--cart-vision-calls=")?.toInt() ?: 60,
                 cartographerEnabled = cartEnabled,
                 remoteUrl = remoteUrl,
+                llmCacheMode = LlmCache.parseMode(arg("--llm-cache=")),
+                llmCacheDir = arg("--llm-cache-dir=")?.let(Path::of),
+                recordVideo = args.contains("--record-video"),
+                recordMovie = args.contains("--record-movie"),
             )
         }
     }
@@ -49,7 +49,9 @@ class CartographerAgent(
             val worldX = ram["worldX"] ?: 0
             val worldY = ram["worldY"] ?: 0
 
-            val viewport = overworldMap.readFullMapView(worldX to worldY)
+            // Merge only what is on screen: merging the full map would mark the whole
+            // overworld seen and end exploration via allReachableKnown immediately.
+            val viewport = overworldMap.readViewport(worldX to worldY)
             fog.merge(viewport)
 
             if (fog.allReachableKnown(worldX to worldY)) {
@@ -27,8 +27,12 @@ import kotlinx.serialization.json.putJsonObject
  *
  * Mirrors GeminiPro31Client's HTTP style. Reused by HaikuClient (scene
  * description from screenshot) and SonnetClient (tool decision, text-only).
+ * Responses go through [cache] (passthrough unless `--llm-cache` is set).
  */
-class AnthropicHttp(private val apiKey: String) : AutoCloseable {
+class AnthropicHttp(
+    private val apiKey: String,
+    private val cache: LlmCache = LlmCache(LlmCache.Mode.PASSTHROUGH),
+) : AutoCloseable {
     private val http = HttpClient(CIO) {
         install(HttpTimeout) {
             requestTimeoutMillis = 120_000
@@ -43,6 +47,16 @@ class AnthropicHttp(private val apiKey: String) : AutoCloseable {
         userText: String,
         imageB64: String? = null,
         maxTokens: Int = 800,
+    ): String = cache.getOrPut(LlmCache.key(model, systemPrompt, userText, imageB64, maxTokens)) {
+        post(model, systemPrompt, userText, imageB64, maxTokens)
+    }
+
+    private suspend fun post(
+        model: String,
+        systemPrompt: String,
+        userText: String,
+        imageB64: String?,
+        maxTokens: Int,
     ): String {
         val body = buildJsonObject {
             put("model", model)
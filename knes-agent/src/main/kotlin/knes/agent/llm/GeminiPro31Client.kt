@@ -20,10 +20,13 @@ import kotlinx.serialization.json.jsonPrimitive
  *
  * Default: `gemini-3-pro` (latest as of 2026-05). Override via `GEMINI_MODEL` env;
  * older runs that used `gemini-2.5-pro` still work via the override.
+ * Responses go through [cache], keyed by the requested model; answers from the
+ * Flash-Lite fallback are returned but not cached, so a later call retries the model.
  */
 class GeminiPro31Client(
     private val apiKey: String,
     modelOverride: String? = null,
+    private val cache: LlmCache = LlmCache(LlmCache.Mode.PASSTHROUGH),
 ) : AutoCloseable {
     // gemini-3-pro thinking mode often takes 20–60s. Default ktor timeout is far
     // too tight. Match v1 GeminiVisionConsult's 120s budget (we bump higher because v2
@@ -39,7 +42,16 @@ class GeminiPro31Client(
         ?: System.getenv("GEMINI_MODEL")?.takeIf { it.isNotBlank() }
         ?: "gemini-3.1-pro-preview"
 
-    suspend fun generate(prompt: String, imageB64: String? = null): String {
+    suspend fun generate(prompt: String, imageB64: String? = null): String =
+        cache.getOrPutIf(LlmCache.key(model, "", prompt, imageB64, 0)) {
+            val reply = post(prompt, imageB64)
+            reply.text to (reply.model == model)
+        }
+
+    /** Response [text] and the [model] that produced it, which differs after a fallback. */
+    private class Reply(val text: String, val model: String)
+
+    private suspend fun post(prompt: String, imageB64: String?): Reply {
         val parts = buildList<JsonObject> {
             add(JsonObject(mapOf("text" to kotlinx.serialization.json.JsonPrimitive(prompt))))
             if (imageB64 != null) {
@@ -76,7 +88,7 @@ class GeminiPro31Client(
             }
             lastResp = resp
             val text = extractText(resp)
-            if (text != null) return text
+            if (text != null) return Reply(text, model)
             val status = extractErrorStatus(resp)
             if (status == "UNAVAILABLE" || status == "RESOURCE_EXHAUSTED" || status == "INTERNAL") {
                 knes.agent.runtime.Log.llm("attempt ${i+1}/${backoffsMs.size} ($model) returned $status — retrying after ${backoffsMs.getOrNull(i+1) ?: 0}ms")
@@ -100,7 +112,7 @@ class GeminiPro31Client(
                 throw RuntimeException("Gemini fallback ($fallbackModel) transport error: ${e.javaClass.simpleName}: ${e.message}")
             }
             val fbText = extractText(fbResp)
-            if (fbText != null) return fbText
+            if (fbText != null) return Reply(fbText, fallbackModel)
             throw RuntimeException("Gemini fallback ($fallbackModel) unparseable: ${fbResp.take(500)}")
         }
         throw RuntimeException("Gemini response unparseable after retries: ${lastResp?.take(500)}")
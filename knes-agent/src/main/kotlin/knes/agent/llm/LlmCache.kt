@@ -0,0 +1,136 @@
+package knes.agent.llm
+
+import knes.agent.perception.AtomicJsonWriter
+import java.io.File
+import java.security.MessageDigest
+
+/**
+ * Content-addressed on-disk cache of model responses, shared by [AnthropicHttp] and
+ * [GeminiPro31Client].
+ *
+ * An entry is keyed by the SHA-256 of model, system prompt, user text, max tokens and
+ * the hash of the attached image, so the same savestate replays the same prompt and
+ * hits. Each entry is one `<key>.txt` file in [dir] holding the response text. Access
+ * order is tracked through file mtimes, so it survives restarts: once the entries take
+ * more than [maxBytes], the least recently used ones are deleted.
+ *
+ * - [Mode.PASSTHROUGH] never touches the disk.
+ * - [Mode.RECORD] serves hits and stores every miss after calling the model.
+ * - [Mode.REPLAY] serves hits only; a miss throws [Miss] instead of going to the
+ *   network, so regression runs stay deterministic and offline.
+ */
+class LlmCache(
+    val mode: Mode,
+    val dir: File = defaultDir(),
+    private val maxBytes: Long = DEFAULT_MAX_BYTES,
+) {
+    enum class Mode { PASSTHROUGH, RECORD, REPLAY }
+
+    class Miss(key: String) : IllegalStateException("LLM cache miss in replay mode: $key")
+
+    // key -> entry size; access-ordered, least recently used first.
+    private val index = LinkedHashMap<String, Long>(16, 0.75f, true)
+    private var totalBytes = 0L
+
+    var hits = 0
+        private set
+    var misses = 0
+        private set
+
+    init {
+        if (mode != Mode.PASSTHROUGH) {
+            dir.listFiles { f -> f.isFile && f.name.endsWith(SUFFIX) }
+                ?.sortedBy { it.lastModified() }
+                ?.forEach { f ->
+                    index[f.name.removeSuffix(SUFFIX)] = f.length()
+                    totalBytes += f.length()
+                }
+        }
+    }
+
+    /** Cached response for [key], or the result of [generate], per [mode]. */
+    suspend fun getOrPut(key: String, generate: suspend () -> String): String =
+        getOrPutIf(key) { generate() to true }
+
+    /**
+     * Like [getOrPut], but [generate] also says whether its response may be stored under
+     * [key]; false (e.g. a fallback model answered) returns it without caching.
+     */
+    suspend fun getOrPutIf(key: String, generate: suspend () -> Pair<String, Boolean>): String {
+        if (mode == Mode.PASSTHROUGH) return generate().first
+        lookup(key)?.let { return it }
+        if (mode == Mode.REPLAY) throw Miss(key)
+        val (response, keep) = generate()
+        if (keep) store(key, response)
+        return response
+    }
+
+    @Synchronized
+    private fun lookup(key: String): String? {
+        val file = fileFor(key)
+        if (index[key] == null || !file.isFile) {
+            misses++
+            return null
+        }
+        hits++
+        file.setLastModified(System.currentTimeMillis())
+        return file.readText()
+    }
+
+    @Synchronized
+    private fun store(key: String, response: String) {
+        val file = fileFor(key)
+        try {
+            AtomicJsonWriter.write(file, response)
+        } catch (e: Exception) {
+            // Cache is an optimisation only; a read-only home dir must not break the run.
+            return
+        }
+        index.put(key, file.length())?.let { totalBytes -= it }
+        totalBytes += file.length()
+        val lru = index.entries.iterator()
+        while (totalBytes > maxBytes && lru.hasNext()) {
+            val (old, size) = lru.next()
+            if (old == key) continue
+            fileFor(old).delete()
+            totalBytes -= size
+            lru.remove()
+        }
+    }
+
+    private fun fileFor(key: String) = File(dir, key + SUFFIX)
+
+    companion object {
+        const val DEFAULT_MAX_BYTES = 256L * 1024 * 1024
+        private const val SUFFIX = ".txt"
+
+        fun defaultDir(): File = File(System.getProperty("user.home"), ".knes/cache/llm")
+
+        /** Hex SHA-256 over the request fields; the image contributes its own hash. */
+        fun key(model: String, systemPrompt: String, userText: String, imageB64: String?, maxTokens: Int): String {
+            val md = MessageDigest.getInstance("SHA-256")
+            // Length-prefixed so field boundaries can't be shifted into each other.
+            fun field(s: String) {
+                val bytes = s.toByteArray(Charsets.UTF_8)
+                md.update("${bytes.size}:".toByteArray(Charsets.UTF_8))
+                md.update(bytes)
+            }
+            field(model)
+            field(systemPrompt)
+            field(userText)
+            field(imageB64?.let { hex(MessageDigest.getInstance("SHA-256").digest(it.toByteArray(Charsets.UTF_8))) } ?: "")
+            field(maxTokens.toString())
+            return hex(md.digest())
+        }
+
+        private fun hex(bytes: ByteArray) = bytes.joinToString("") { "%02x".format(it) }
+
+        /** `off` / `record` / `replay`, as passed to `--llm-cache=`. */
+        fun parseMode(value: String?): Mode = when (value?.lowercase()) {
+            null, "", "off", "passthrough" -> Mode.PASSTHROUGH
+            "record" -> Mode.RECORD
+            "replay" -> Mode.REPLAY
+            else -> throw IllegalArgumentException("--llm-cache must be off, record or replay, got '$value'")
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package knes.agent.pathfinding
+
+import knes.agent.perception.ViewportMap
+import java.io.DataInputStream
+import java.io.DataOutputStream
+
+/**
+ * HPA*-style abstraction of a whole-map grid (the 256×256 overworld).
+ *
+ * The grid is cut into [clusterSize]×[clusterSize] clusters. Every maximal run of cells
+ * that is walkable on both sides of a cluster border becomes one entrance pair (two for
+ * runs of [LONG_RUN] or more, one at each end), and each cluster stores the BFS distances
+ * between its own entrances. A route query then searches a few hundred entrance nodes
+ * instead of 65k tiles and refines only the clusters it crosses.
+ *
+ * "Walkable" follows [ViewportPathfinder]'s transit rule: passable, not TOWN/CASTLE, and
+ * not in the blocked overlay ([setBlocked], fed from fog). Blocking a cell only marks its
+ * own cluster dirty, plus the neighbour across a border when the cell sits on one; dirty
+ * clusters are rebuilt before the next query.
+ *
+ * Not thread-safe: queries reuse per-instance scratch.
+ */
+internal class ClusterGraph private constructor(
+    val width: Int,
+    val height: Int,
+    val clusterSize: Int,
+    private val open: BooleanArray,
+) {
+    private val clustersX = (width + clusterSize - 1) / clusterSize
+    private val clustersY = (height + clusterSize - 1) / clusterSize
+    private val clusterCount = clustersX * clustersY
+
+    private val blocked = BooleanArray(width * height)
+    private val dirty = BooleanArray(clusterCount)
+    private var anyDirty = false
+
+    // Per cluster: entrance cells, their cross-border partner cells, and the k×k matrix
+    // of intra-cluster distances (-1 = unreachable inside the cluster).
+    private val entrances = Array(clusterCount) { EMPTY }
+    private val partners = Array(clusterCount) { emptyArray<IntArray>() }
+    private val intra = Array(clusterCount) { ShortArray(0) }
+    private val entranceIndex = IntArray(width * height) { -1 }
+
+    // Cluster-local BFS scratch.
+    private val localDist = IntArray(clusterSize * clusterSize)
+    private val localVia = ByteArray(clusterSize * clusterSize)
+    private val localQueue = IntArray(clusterSize * clusterSize)
+
+    /** Abstract-search predecessors, valid where the [GridSearch] stamp is current. */
+    private val parent = IntArray(width * height)
+
+    val entranceCount: Int get() = entrances.sumOf { it.size }
+
+    fun walkable(cell: Int): Boolean = open[cell] && !blocked[cell]
+
+    /** Sets the fog overlay for [cell]; returns true if it changed. */
+    fun setBlocked(cell: Int, value: Boolean): Boolean {
+        if (blocked[cell] == value) return false
+        blocked[cell] = value
+        val x = cell % width; val y = cell / width
+        val cx = x / clusterSize; val cy = y / clusterSize
+        markDirty(cx, cy)
+        if (x % clusterSize == 0) markDirty(cx - 1, cy)
+        if (x % clusterSize == clusterSize - 1) markDirty(cx + 1, cy)
+        if (y % clusterSize == 0) markDirty(cx, cy - 1)
+        if (y % clusterSize == clusterSize - 1) markDirty(cx, cy + 1)
+        return true
+    }
+
+    private fun markDirty(cx: Int, cy: Int) {
+        if (cx !in 0 until clustersX || cy !in 0 until clustersY) return
+        dirty[cy * clustersX + cx] = true
+        anyDirty = true
+    }
+
+    private fun refresh() {
+        if (!anyDirty) return
+        for (c in 0 until clusterCount) if (dirty[c]) { rebuild(c); dirty[c] = false }
+        anyDirty = false
+    }
+
+    /**
+     * Shortest abstract route from [start] to [goal] (cell indices), refined to tile steps.
+     * [goal] may be a non-walkable destination (TOWN/CASTLE, fog-blocked); it is entered
+     * but never crossed. Returns null when no route exists.
+     */
+    fun findRoute(start: Int, goal: Int): List<Direction>? {
+        refresh()
+        val sc = clusterOf(start)
+        val gc = clusterOf(goal)
+
+        bfs(gc, goal, target = -1)
+        val goalDist = IntArray(entrances[gc].size) { distTo(entrances[gc][it]) }
+        bfs(sc, start, target = if (sc == gc) goal else -1)
+        val startDist = IntArray(entrances[sc].size) { distTo(entrances[sc][it]) }
+        val direct = if (sc == gc) distTo(goal) else -1
+
+        val gx = goal % width; val gy = goal / width
+        val search = GridSearch.forCurrentThread()
+        search.reset(width * height)
+        search.mark(start, 0, null)
+        search.push(manhattan(start, gx, gy), start)
+        while (!search.heapIsEmpty()) {
+            val u = search.popNode()
+            if (search.isClosed(u)) continue
+            search.close(u)
+            if (u == goal) return refine(start, goal)
+            val gu = search.costOf(u)
+            if (u == start) {
+                val starts = entrances[sc]
+                for (k in starts.indices) if (startDist[k] >= 0) relax(search, u, starts[k], gu + startDist[k], gx, gy)
+                if (direct >= 0) relax(search, u, goal, gu + direct, gx, gy)
+            }
+            val k = entranceIndex[u]
+            if (k < 0) continue
+            val c = clusterOf(u)
+            val cells = entrances[c]
+            val n = cells.size
+            val dist = intra[c]
+            for (k2 in 0 until n) {
+                val d = dist[k * n + k2].toInt()
+                if (d > 0) relax(search, u, cells[k2], gu + d, gx, gy)
+            }
+            for (p in partners[c][k]) relax(search, u, p, gu + 1, gx, gy)
+            if (c == gc && goalDist[k] >= 0) relax(search, u, goal, gu + goalDist[k], gx, gy)
+        }
+        return null
+    }
+
+    private fun relax(search: GridSearch, from: Int, to: Int, cost: Int, gx: Int, gy: Int) {
+        if (cost >= search.costOf(to)) return
+        search.mark(to, cost, null)
+        parent[to] = from
+        search.push(cost + manhattan(to, gx, gy), to)
+    }
+
+    private fun manhattan(cell: Int, gx: Int, gy: Int): Int =
+        Math.abs(cell % width - gx) + Math.abs(cell / width - gy)
+
+    /** Expands the abstract path ending at [goal] into tile steps, one cluster at a time. */
+    private fun refine(start: Int, goal: Int): List<Direction> {
+        var hops = 1
+        var node = goal
+        while (node != start) { node = parent[node]; hops++ }
+        val path = IntArray(hops)
+        node = goal
+        for (i in hops - 1 downTo 0) { path[i] = node; if (i > 0) node = parent[node] }
+
+        val out = ArrayList<Direction>()
+        for (i in 0 until hops - 1) {
+            val a = path[i]; val b = path[i + 1]
+            val ca = clusterOf(a)
+            if (ca != clusterOf(b)) {
+                out += stepBetween(a, b)
+                continue
+            }
+            bfs(ca, a, target = b)
+            val segmentStart = out.size
+            var cell = b
+            while (cell != a) {
+                val dir = DIRECTIONS[localVia[localIndex(cell)].toInt()]
+                out += dir
+                cell -= dir.dx + dir.dy * width
+            }
+            out.subList(segmentStart, out.size).reverse()
+        }
+        return out
+    }
+
+    private fun stepBetween(a: Int, b: Int): Direction = when (b - a) {
+        1 -> Direction.E
+        -1 -> Direction.W
+        width -> Direction.S
+        else -> Direction.N
+    }
+
+    // --- construction ---
+
+    private fun rebuild(c: Int) {
+        for (cell in entrances[c]) entranceIndex[cell] = -1
+        val found = LinkedHashMap<Int, MutableList<Int>>()
+        val cx = c % clustersX; val cy = c / clustersX
+        val x0 = cx * clusterSize; val y0 = cy * clusterSize
+        val x1 = minOf(x0 + clusterSize, width); val y1 = minOf(y0 + clusterSize, height)
+        if (cx > 0) scanBorder(found, x0 + y0 * width, width, -1, y1 - y0)
+        if (x1 < width) scanBorder(found, x1 - 1 + y0 * width, width, 1, y1 - y0)
+        if (cy > 0) scanBorder(found, x0 + y0 * width, 1, -width, x1 - x0)
+        if (y1 < height) scanBorder(found, x0 + (y1 - 1) * width, 1, width, x1 - x0)
+
+        val cells = found.keys.toIntArray()
+        entrances[c] = cells
+        partners[c] = Array(cells.size) { found.getValue(cells[it]).toIntArray() }
+        for (k in cells.indices) entranceIndex[cells[k]] = k
+        val n = cells.size
+        val dist = ShortArray(n * n)
+        for (k in 0 until n) {
+            bfs(c, cells[k], target = -1)
+            for (k2 in 0 until n) dist[k * n + k2] = distTo(cells[k2]).toShort()
+        }
+        intra[c] = dist
+    }
+
+    /**
+     * Walks [length] border cells from [first] in steps of [along]; the cell across the
+     * border is `cell + across`. Each maximal run walkable on both sides yields entrances.
+     */
+    private fun scanBorder(found: MutableMap<Int, MutableList<Int>>, first: Int, along: Int, across: Int, length: Int) {
+        var runStart = -1
+        for (i in 0..length) {
+            val cell = first + i * along
+            val ok = i < length && walkable(cell) && walkable(cell + across)
+            if (ok && runStart < 0) runStart = i
+            if (!ok && runStart >= 0) {
+                val runEnd = i - 1
+                if (runEnd - runStart + 1 >= LONG_RUN) {
+                    addEntrance(found, first + runStart * along, across)
+                    addEntrance(found, first + runEnd * along, across)
+                } else {
+                    addEntrance(found, first + (runStart + runEnd) / 2 * along, across)
+                }
+                runStart = -1
+            }
+        }
+    }
+
+    private fun addEntrance(found: MutableMap<Int, MutableList<Int>>, cell: Int, across: Int) {
+        found.getOrPut(cell) { ArrayList(2) } += cell + across
+    }
+
+    // --- cluster-local BFS ---
+
+    private fun clusterOf(cell: Int): Int =
+        (cell / width / clusterSize) * clustersX + (cell % width) / clusterSize
+
+    private fun localIndex(cell: Int): Int =
+        (cell / width % clusterSize) * clusterSize + cell % width % clusterSize
+
+    /** Distance from the last [bfs] source to [cell] (same cluster), or -1. */
+    private fun distTo(cell: Int): Int = localDist[localIndex(cell)]
+
+    /**
+     * BFS from [source] over walkable cells of cluster [c]. [target], if set, may be entered
+     * even when not walkable but is never expanded.
+     */
+    private fun bfs(c: Int, source: Int, target: Int) {
+        val x0 = (c % clustersX) * clusterSize; val y0 = (c / clustersX) * clusterSize
+        val x1 = minOf(x0 + clusterSize, width); val y1 = minOf(y0 + clusterSize, height)
+        localDist.fill(-1)
+        var head = 0; var tail = 0
+        localDist[localIndex(source)] = 0
+        localQueue[tail++] = source
+        while (head < tail) {
+            val cell = localQueue[head++]
+            if (cell == target) continue
+            val d = localDist[localIndex(cell)] + 1
+            val x = cell % width; val y = cell / width
+            for (dir in DIRECTIONS) {
+                val nx = x + dir.dx; val ny = y + dir.dy
+                if (nx < x0 || nx >= x1 || ny < y0 || ny >= y1) continue
+                val next = ny * width + nx
+                val li = localIndex(next)
+                if (localDist[li] >= 0) continue
+                if (!walkable(next) && next != target) continue
+                localDist[li] = d
+                localVia[li] = dir.ordinal.toByte()
+                localQueue[tail++] = next
+            }
+        }
+    }
+
+    // --- persistence ---
+
+    /** Writes the graph (entrances and intra distances). Only meaningful with no fog overlay. */
+    fun writeTo(out: DataOutputStream) {
+        refresh()
+        out.writeInt(MAGIC)
+        out.writeInt(FORMAT_VERSION)
+        out.writeInt(width); out.writeInt(height); out.writeInt(clusterSize)
+        out.writeLong(openDigest(open))
+        for (c in 0 until clusterCount) {
+            val cells = entrances[c]
+            out.writeShort(cells.size)
+            for (k in cells.indices) {
+                out.writeInt(cells[k])
+                out.writeByte(partners[c][k].size)
+                for (p in partners[c][k]) out.writeInt(p)
+            }
+            for (d in intra[c]) out.writeShort(d.toInt())
+        }
+    }
+
+    companion object {
+        const val DEFAULT_CLUSTER_SIZE = 16
+        /** Border runs at least this long get an entrance at each end instead of the middle. */
+        const val LONG_RUN = 6
+
+        private const val MAGIC = 0x4B485041  // "KHPA"
+        private const val FORMAT_VERSION = 1
+        private val EMPTY = IntArray(0)
+        private val DIRECTIONS = Direction.values()
+
+        /** Transit-walkable cells of [map]: passable and not TOWN/CASTLE. */
+        fun openCells(map: ViewportMap): BooleanArray {
+            val open = BooleanArray(map.width * map.height)
+            for (y in 0 until map.height) for (x in 0 until map.width) {
+                open[y * map.width + x] = map.isPassableAt(x, y) && !map.isImpassableTransitAt(x, y)
+            }
+            return open
+        }
+
+        fun build(map: ViewportMap, clusterSize: Int = DEFAULT_CLUSTER_SIZE): ClusterGraph {
+            val g = ClusterGraph(map.width, map.height, clusterSize, openCells(map))
+            for (c in 0 until g.clusterCount) g.rebuild(c)
+            return g
+        }
+
+        /**
+         * Reads a graph written by [writeTo]. Returns null if the file was built for a
+         * different grid (size, cluster size or walkability), so the caller can rebuild.
+         */
+        fun readFrom(input: DataInputStream, map: ViewportMap, clusterSize: Int = DEFAULT_CLUSTER_SIZE): ClusterGraph? {
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) return null
+            if (input.readInt() != map.width || input.readInt() != map.height || input.readInt() != clusterSize) return null
+            val open = openCells(map)
+            if (input.readLong() != openDigest(open)) return null
+            val g = ClusterGraph(map.width, map.height, clusterSize, open)
+            for (c in 0 until g.clusterCount) {
+                val n = input.readUnsignedShort()
+                val cells = IntArray(n)
+                val links = Array(n) { EMPTY }
+                for (k in 0 until n) {
+                    cells[k] = input.readInt()
+                    links[k] = IntArray(input.readUnsignedByte()) { input.readInt() }
+                    g.entranceIndex[cells[k]] = k
+                }
+                g.entrances[c] = cells
+                g.partners[c] = links
+                g.intra[c] = ShortArray(n * n) { input.readShort() }
+            }
+            return g
+        }
+
+        /** FNV-1a over the walkability bits; guards cached graphs against classifier changes. */
+        private fun openDigest(open: BooleanArray): Long {
+            var h = -0x340d631b7bdddcdbL
+            for (b in open) {
+                h = h xor (if (b) 1L else 0L)
+                h *= 0x100000001b3L
+            }
+            return h
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package knes.agent.pathfinding
+
+/**
+ * Multi-source BFS distance field over a [width]×[height] grid: for every cell, the step
+ * count to the nearest source and which source that is. Once built, "how far is the
+ * nearest X", "which X" and "which way next" are all O(1) lookups.
+ *
+ * Sources may sit on non-walkable cells (a TOWN entry tile): they are entered as
+ * destinations but never crossed, mirroring [ViewportPathfinder]'s destination rule.
+ * [addSources] relaxes only the cells the new sources improve, so growing the source set
+ * never needs a full rebuild; removing sources or blocking cells does.
+ *
+ * Distances are stored in a [ShortArray] and capped at [Short.MAX_VALUE].
+ */
+class DistanceField(
+    val width: Int,
+    val height: Int,
+    private val walkable: BooleanArray,
+) {
+    init {
+        require(walkable.size == width * height) { "walkable must be ${width * height} cells, got ${walkable.size}" }
+    }
+
+    private val dist = ShortArray(width * height) { UNREACHABLE }
+    private val owner = IntArray(width * height) { -1 }
+    private val queue = IntArray(width * height)
+    private val sources = ArrayList<Int>()
+    private val isSource = BooleanArray(width * height)
+
+    val sourceCount: Int get() = sources.size
+
+    /** Adds [cells] (packed `y * width + x`) as sources and relaxes the field from them. */
+    fun addSources(cells: Collection<Int>) {
+        var head = 0; var tail = 0
+        for (cell in cells) {
+            if (isSource[cell]) continue
+            isSource[cell] = true
+            sources += cell
+            dist[cell] = 0
+            owner[cell] = sources.size - 1
+            queue[tail++] = cell
+        }
+        while (head < tail) {
+            val cell = queue[head++]
+            val d = dist[cell] + 1
+            if (d > Short.MAX_VALUE) continue
+            val x = cell % width; val y = cell / width
+            for (dir in DIRECTIONS) {
+                val nx = x + dir.dx; val ny = y + dir.dy
+                if (nx !in 0 until width || ny !in 0 until height) continue
+                val next = ny * width + nx
+                if (!walkable[next] || isSource[next]) continue
+                val current = dist[next]
+                if (current != UNREACHABLE && current <= d) continue
+                dist[next] = d.toShort()
+                owner[next] = owner[cell]
+                queue[tail++] = next
+            }
+        }
+    }
+
+    /** Steps from (x, y) to the nearest source, or -1 if none is reachable. */
+    fun distanceAt(x: Int, y: Int): Int {
+        if (x !in 0 until width || y !in 0 until height) return -1
+        val d = dist[y * width + x]
+        return if (d == UNREACHABLE) -1 else d.toInt()
+    }
+
+    /** The source nearest to (x, y), or null if none is reachable. */
+    fun nearestFrom(x: Int, y: Int): Pair<Int, Int>? {
+        if (distanceAt(x, y) < 0) return null
+        val src = sources[owner[y * width + x]]
+        return src % width to src / width
+    }
+
+    /**
+     * First step from (x, y) down the gradient toward the nearest source. Null when (x, y)
+     * is a source or no source is reachable. A neighbour one step closer is walkable or a
+     * source by construction, so the step is always legal.
+     */
+    fun nextStep(x: Int, y: Int): Direction? {
+        val d = distanceAt(x, y)
+        if (d <= 0) return null
+        for (dir in DIRECTIONS) {
+            if (distanceAt(x + dir.dx, y + dir.dy) == d - 1) return dir
+        }
+        return null
+    }
+
+    private companion object {
+        const val UNREACHABLE: Short = -1
+        val DIRECTIONS = Direction.values()
+    }
+}
@@ -0,0 +1,141 @@
+package knes.agent.pathfinding
+
+/**
+ * Reusable scratch state for the grid pathfinders, so a search allocates nothing but
+ * its result list.
+ *
+ * Nodes are packed local indices `y * width + x`. Per-node state is only valid when
+ * `stamp[node] == generation`; [reset] bumps the generation instead of clearing the
+ * arrays, so starting a search is O(1) regardless of grid size. Arrays grow on demand
+ * and are kept for the next search on the same thread (see [forCurrentThread]).
+ */
+internal class GridSearch {
+    private var generation = 0
+    private var stamp = IntArray(0)
+    private var closedStamp = IntArray(0)
+    private var g = IntArray(0)
+    private var via = ByteArray(0)
+
+    /** Min-heap of `(priority shl 32) or node`; both halves are non-negative. */
+    private var heap = LongArray(64)
+    private var heapSize = 0
+
+    /** FIFO ring for breadth-first searches; never holds more than one entry per node. */
+    private var queue = IntArray(0)
+    private var queueHead = 0
+    private var queueTail = 0
+
+    fun reset(nodes: Int) {
+        if (stamp.size < nodes) {
+            stamp = IntArray(nodes)
+            closedStamp = IntArray(nodes)
+            g = IntArray(nodes)
+            via = ByteArray(nodes)
+            queue = IntArray(nodes)
+            generation = 0
+        }
+        if (++generation == Int.MAX_VALUE) {
+            stamp.fill(0)
+            closedStamp.fill(0)
+            generation = 1
+        }
+        heapSize = 0
+        queueHead = 0
+        queueTail = 0
+    }
+
+    fun isSeen(node: Int): Boolean = stamp[node] == generation
+
+    /** Best known cost to [node] in this search, or [Int.MAX_VALUE] if unseen. */
+    fun costOf(node: Int): Int = if (stamp[node] == generation) g[node] else Int.MAX_VALUE
+
+    /** Records [node] as reached with [cost], entered by [dir] (null for the start node). */
+    fun mark(node: Int, cost: Int, dir: Direction?) {
+        stamp[node] = generation
+        g[node] = cost
+        via[node] = (dir?.ordinal ?: NO_DIR).toByte()
+    }
+
+    fun isClosed(node: Int): Boolean = closedStamp[node] == generation
+
+    fun close(node: Int) { closedStamp[node] = generation }
+
+    /** Direction used to enter [node], or null for the start node. */
+    fun viaOf(node: Int): Direction? {
+        val d = via[node].toInt()
+        return if (d == NO_DIR) null else DIRECTIONS[d]
+    }
+
+    // --- binary heap ---
+
+    fun heapIsEmpty(): Boolean = heapSize == 0
+
+    fun push(priority: Int, node: Int) {
+        if (heapSize == heap.size) heap = heap.copyOf(heap.size * 2)
+        val entry = (priority.toLong() shl 32) or node.toLong()
+        var i = heapSize++
+        while (i > 0) {
+            val parent = (i - 1) ushr 1
+            if (heap[parent] <= entry) break
+            heap[i] = heap[parent]
+            i = parent
+        }
+        heap[i] = entry
+    }
+
+    /** Removes the lowest-priority entry and returns its node. Ties break on the lower node index. */
+    fun popNode(): Int {
+        val top = heap[0]
+        val last = heap[--heapSize]
+        var i = 0
+        while (true) {
+            var child = 2 * i + 1
+            if (child >= heapSize) break
+            if (child + 1 < heapSize && heap[child + 1] < heap[child]) child++
+            if (heap[child] >= last) break
+            heap[i] = heap[child]
+            i = child
+        }
+        if (heapSize > 0) heap[i] = last
+        return (top and NODE_MASK).toInt()
+    }
+
+    // --- FIFO queue ---
+
+    fun queueIsEmpty(): Boolean = queueHead == queueTail
+
+    fun enqueue(node: Int) { queue[queueTail++] = node }
+
+    fun dequeue(): Int = queue[queueHead++]
+
+    /** Directions from the start node to [end], walking predecessors back. */
+    fun reconstruct(end: Int, width: Int): List<Direction> {
+        var length = 0
+        var node = end
+        while (true) {
+            val dir = viaOf(node) ?: break
+            length++
+            node -= dir.dx + dir.dy * width
+        }
+        val out = arrayOfNulls<Direction>(length)
+        node = end
+        for (i in length - 1 downTo 0) {
+            val dir = viaOf(node)!!
+            out[i] = dir
+            node -= dir.dx + dir.dy * width
+        }
+        @Suppress("UNCHECKED_CAST")
+        return (out as Array<Direction>).asList()
+    }
+
+    companion object {
+        private const val NO_DIR = -1
+        private const val NODE_MASK = 0xFFFFFFFFL
+        private val DIRECTIONS = Direction.values()
+
+        private val perThread = ThreadLocal.withInitial { GridSearch() }
+
+        /** Scratch owned by the calling thread; not reentrant. */
+        fun forCurrentThread(): GridSearch = perThread.get()
+    }
+}
@@ -0,0 +1,129 @@
+package knes.agent.pathfinding
+
+import knes.agent.perception.FogOfWar
+import knes.agent.perception.OverworldMap
+import knes.agent.perception.ViewportMap
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+
+/**
+ * Whole-map router for the FF1 overworld: HPA* over a [ClusterGraph] built once from
+ * [map] (a full-map view, local coords = world coords) and optionally cached in
+ * [cacheFile] so later runs skip the build.
+ *
+ * Fog blocks are synced on every call as incremental cluster invalidations (only the
+ * clusters around newly blocked or unblocked tiles are rebuilt). Routes are returned
+ * in full, with no `maxSteps` cap, as [SearchSpace.FULL_MAP].
+ *
+ * Queries the hierarchy can't answer go to [fallback] unchanged: a viewport that isn't
+ * the full map, an impassable target, or no route at all. The fallback keeps the
+ * closest-reachable / targetPassable feedback.
+ */
+class HierarchicalPathfinder(
+    private val map: ViewportMap,
+    private val cacheFile: File? = null,
+    private val fallback: Pathfinder = ViewportPathfinder(),
+    private val clusterSize: Int = ClusterGraph.DEFAULT_CLUSTER_SIZE,
+) : Pathfinder {
+
+    internal val graph: ClusterGraph by lazy { loadOrBuild() }
+
+    // Fog state already applied to the graph overlay.
+    private var syncedFog: FogOfWar? = null
+    private var syncedVersion = -1
+    private val appliedBlocks = HashSet<Int>()
+
+    @Synchronized
+    override fun findPath(
+        from: Pair<Int, Int>,
+        to: Pair<Int, Int>,
+        viewport: ViewportMap,
+        fog: FogOfWar,
+    ): PathResult {
+        if (from == to) return PathResult(true, emptyList(), to, SearchSpace.FULL_MAP, partial = false)
+        if (viewport.width != map.width || viewport.height != map.height ||
+            !inMap(from) || !inMap(to) || !map.isPassableAt(to.first, to.second)
+        ) {
+            return fallback.findPath(from, to, viewport, fog)
+        }
+        syncFog(fog)
+        val steps = graph.findRoute(cellOf(from), cellOf(to))
+            ?: return fallback.findPath(from, to, viewport, fog)
+        return PathResult(true, steps, to, SearchSpace.FULL_MAP, partial = false, targetPassable = true)
+    }
+
+    private fun syncFog(fog: FogOfWar) {
+        if (fog === syncedFog && fog.blockedVersion == syncedVersion) return
+        val current = HashSet<Int>()
+        fog.forEachBlocked { x, y ->
+            if (x in 0 until map.width && y in 0 until map.height) current += y * map.width + x
+        }
+        for (cell in appliedBlocks) if (cell !in current) graph.setBlocked(cell, false)
+        for (cell in current) if (cell !in appliedBlocks) graph.setBlocked(cell, true)
+        appliedBlocks.clear()
+        appliedBlocks += current
+        syncedFog = fog
+        syncedVersion = fog.blockedVersion
+    }
+
+    private fun inMap(p: Pair<Int, Int>): Boolean =
+        p.first in 0 until map.width && p.second in 0 until map.height
+
+    private fun cellOf(p: Pair<Int, Int>): Int = p.second * map.width + p.first
+
+    private fun loadOrBuild(): ClusterGraph {
+        if (cacheFile != null && cacheFile.isFile) {
+            try {
+                DataInputStream(BufferedInputStream(cacheFile.inputStream())).use { input ->
+                    ClusterGraph.readFrom(input, map, clusterSize)?.let { return it }
+                }
+            } catch (e: IOException) {
+                // Truncated or unreadable cache: rebuild and overwrite below.
+            }
+        }
+        val built = ClusterGraph.build(map, clusterSize)
+        if (cacheFile != null) {
+            try {
+                writeAtomically(cacheFile, built)
+            } catch (e: IOException) {
+                // Cache is an optimisation only; a read-only home dir must not break routing.
+            }
+        }
+        return built
+    }
+
+    private fun writeAtomically(target: File, graph: ClusterGraph) {
+        val dir = target.absoluteFile.parentFile
+        dir.mkdirs()
+        // Unique per writer, so two agents building the graph at once don't share a temp file.
+        val tmp = Files.createTempFile(dir.toPath(), target.name, ".tmp")
+        try {
+            DataOutputStream(BufferedOutputStream(tmp.toFile().outputStream())).use { graph.writeTo(it) }
+            Files.move(tmp, target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING)
+        } finally {
+            Files.deleteIfExists(tmp)
+        }
+    }
+
+    companion object {
+        fun defaultCacheDir(): File =
+            File(System.getProperty("user.home"), ".knes/cache")
+
+        /** Router over [overworld], cached as `ff1-overworld-hpa-<rom digest>.bin` in [cacheDir]. */
+        fun forOverworld(
+            overworld: OverworldMap,
+            cacheDir: File? = defaultCacheDir(),
+            fallback: Pathfinder = ViewportPathfinder(),
+        ): HierarchicalPathfinder = HierarchicalPathfinder(
+            map = overworld.readFullMapView(0 to 0),
+            cacheFile = cacheDir?.let { File(it, "ff1-overworld-hpa-${overworld.romDigest}.bin") },
+            fallback = fallback,
+        )
+    }
+}
@@ -5,7 +5,6 @@ import knes.agent.perception.InteriorMemory
 import knes.agent.perception.InteriorObservation
 import knes.agent.perception.TileType
 import knes.agent.perception.ViewportMap
-import java.util.ArrayDeque
 
 /**
  * BFS over the viewport from party position to the nearest exit. Target
@@ -52,11 +51,12 @@ class InteriorPathfinder(
 
         val w = viewport.width
         val h = viewport.height
-        val visited = Array(h) { BooleanArray(w) }
-        val viaDir = Array(h) { Array<Direction?>(w) { null } }
-        val q = ArrayDeque<Pair<Int, Int>>()
-        q.add(start)
-        visited[start.second][start.first] = true
+        // BFS over packed node indices with the shared per-thread scratch (no per-call grids).
+        val search = GridSearch.forCurrentThread()
+        search.reset(w * h)
+        val startNode = start.second * w + start.first
+        search.mark(startNode, 0, null)
+        search.enqueue(startNode)
 
         val mapId = mapIdProvider?.invoke()
         val mem = if (mapId != null) memory else null
@@ -68,13 +68,14 @@ class InteriorPathfinder(
         var bestViewportExit: Pair<Int, Int>? = null
         var bestSouthEdge: Pair<Int, Int>? = null
 
-        while (q.isNotEmpty()) {
-            val (cx, cy) = q.poll()
-            val isStart = cx == start.first && cy == start.second
-            val type = viewport.tiles[cy][cx]
+        while (!search.queueIsEmpty()) {
+            val node = search.dequeue()
+            val cx = node % w; val cy = node / w
+            val isStart = node == startNode
+            val type = TileType.byOrdinal(viewport.ordinalAt(cx, cy))
             val (rwx, rwy) = viewport.localToWorld(cx, cy)
 
-            if (!isStart && !fog.isBlocked(rwx, rwy)) {
+            if (!isStart && !(fog.inBounds(rwx, rwy) && fog.isBlocked(rwx, rwy))) {
                 if (mem != null && mapId != null) {
                     when (mem.get(mapId, rwx, rwy)?.observation) {
                         InteriorObservation.EXIT_CONFIRMED ->
@@ -97,16 +98,16 @@ class InteriorPathfinder(
                 if (bestExitConfirmed != null) break
             }
 
-            for (dir in Direction.values()) {
+            val depth = search.costOf(node)
+            for (dir in DIRECTIONS) {
                 val nx = cx + dir.dx
                 val ny = cy + dir.dy
                 if (nx !in 0 until w || ny !in 0 until h) continue
-                if (visited[ny][nx]) continue
-                val tile = viewport.tiles[ny][nx]
-                if (!tile.isPassable() && !isExitTile(tile)) continue
-                visited[ny][nx] = true
-                viaDir[ny][nx] = dir
-                q.add(nx to ny)
+                val next = ny * w + nx
+                if (search.isSeen(next)) continue
+                if (!viewport.isPassableAt(nx, ny) && !isExitTile(TileType.byOrdinal(viewport.ordinalAt(nx, ny)))) continue
+                search.mark(next, depth + 1, dir)
+                search.enqueue(next)
             }
         }
 
@@ -119,7 +120,7 @@ class InteriorPathfinder(
 
         val (tx, ty) = target
         val (rwx, rwy) = viewport.localToWorld(tx, ty)
-        val steps = reconstruct(tx, ty, start, viaDir)
+        val steps = search.reconstruct(ty * w + tx, w)
         return if (steps.size > maxSteps) {
             val truncated = steps.take(maxSteps)
             PathResult(
@@ -147,34 +148,19 @@ class InteriorPathfinder(
      *  Bounded depth restores 16×16-equivalent semantics while still benefitting from
      *  global BFS reachability. */
     private fun isSouthEdgeExit(viewport: ViewportMap, lx: Int, ly: Int): Boolean {
-        val type = viewport.tiles[ly][lx]
-        if (!type.isPassable()) return false
+        if (!viewport.isPassableAt(lx, ly)) return false
         if (ly + 1 >= viewport.height) return false
         val end = minOf(ly + 1 + SOUTH_EDGE_PROBE_DEPTH, viewport.height)
         if (end <= ly + 1) return false
         for (sy in ly + 1 until end) {
-            if (viewport.tiles[sy][lx].isPassable()) return false
+            if (viewport.isPassableAt(lx, sy)) return false
         }
         return true
     }
 
     private companion object {
         const val SOUTH_EDGE_PROBE_DEPTH = 8
-    }
-
-    private fun reconstruct(
-        endX: Int, endY: Int,
-        start: Pair<Int, Int>,
-        viaDir: Array<Array<Direction?>>,
-    ): List<Direction> {
-        val out = ArrayDeque<Direction>()
-        var cx = endX; var cy = endY
-        while (cx != start.first || cy != start.second) {
-            val dir = viaDir[cy][cx] ?: break
-            out.addFirst(dir)
-            cx -= dir.dx; cy -= dir.dy
-        }
-        return out.toList()
+        val DIRECTIONS = Direction.values()
     }
 
     private fun reachedAfter(steps: List<Direction>, from: Pair<Int, Int>): Pair<Int, Int> {
@@ -0,0 +1,130 @@
+package knes.agent.pathfinding
+
+import knes.agent.perception.FogOfWar
+import knes.agent.perception.LandmarkKind
+import knes.agent.perception.LandmarkMemory
+import knes.agent.perception.TileType
+import knes.agent.perception.ViewportMap
+
+/**
+ * Cached [DistanceField]s answering "how far / which way is the nearest X" for the
+ * overworld and each interior map, where X is a landmark class (kinds in
+ * [LandmarkMemory]) or a tile class (e.g. GRASS for grinding, DOOR/STAIRS/WARP exits).
+ *
+ * Fields are built on first use and kept up to date lazily:
+ *  - new landmarks ([LandmarkMemory.version] moved and no old source vanished) are
+ *    added incrementally via [DistanceField.addSources];
+ *  - removed landmarks, or new blocks in [fog] ([FogOfWar.blockedVersion]), can only
+ *    lengthen distances, so the field is rebuilt.
+ *
+ * Overworld walkability follows [ViewportPathfinder] (TOWN/CASTLE and fog blocks are
+ * destination-only). Interior walkability is plain passability (DOOR/STAIRS/WARP
+ * included, as in [InteriorPathfinder]) and ignores fog, which is per-map and cleared
+ * on every transition.
+ */
+class LandmarkDistanceFields(
+    private val overworld: ViewportMap,
+    private val landmarks: LandmarkMemory,
+    private val fog: FogOfWar,
+) {
+    private class Entry(
+        var field: DistanceField,
+        var sources: Set<Int>,
+        var landmarkVersion: Int,
+        var fogVersion: Int,
+    )
+
+    private val entries = HashMap<Any, Entry>()
+    private val interiors = HashMap<Int, ViewportMap>()
+
+    /** Overworld field whose sources are the world coords of landmarks of [kinds]. */
+    @Synchronized
+    fun overworld(kinds: Set<LandmarkKind>): DistanceField =
+        field(OverworldKinds(kinds), overworld, applyFog = true) {
+            landmarks.findByKind(*kinds.toTypedArray()).mapNotNullTo(HashSet()) { l ->
+                cellOf(overworld, l.worldX ?: return@mapNotNullTo null, l.worldY ?: return@mapNotNullTo null)
+            }
+        }
+
+    /** Overworld field whose sources are every tile of [types] (static: depends only on the map). */
+    @Synchronized
+    fun overworldTiles(types: Set<TileType>): DistanceField =
+        field(OverworldTiles(types), overworld, applyFog = true) { tilesOf(overworld, types) }
+
+    /** Field over interior [mapId] (a full-map view) whose sources are landmarks of [kinds] on that map. */
+    @Synchronized
+    fun interior(mapId: Int, map: ViewportMap, kinds: Set<LandmarkKind>): DistanceField {
+        useInterior(mapId, map)
+        return field(InteriorKinds(mapId, kinds), map, applyFog = false) {
+            landmarks.findByKind(*kinds.toTypedArray()).mapNotNullTo(HashSet()) { l ->
+                if (l.mapId != mapId) return@mapNotNullTo null
+                cellOf(map, l.localX ?: return@mapNotNullTo null, l.localY ?: return@mapNotNullTo null)
+            }
+        }
+    }
+
+    /** Field over interior [mapId] whose sources are every tile of [types], e.g. exits. */
+    @Synchronized
+    fun interiorTiles(mapId: Int, map: ViewportMap, types: Set<TileType>): DistanceField {
+        useInterior(mapId, map)
+        return field(InteriorTiles(mapId, types), map, applyFog = false) { tilesOf(map, types) }
+    }
+
+    /** Drops cached interior fields when a different grid is passed for a known mapId. */
+    private fun useInterior(mapId: Int, map: ViewportMap) {
+        val known = interiors.put(mapId, map)
+        if (known != null && known != map) {
+            entries.keys.removeAll { (it is InteriorKinds && it.mapId == mapId) || (it is InteriorTiles && it.mapId == mapId) }
+        }
+    }
+
+    private fun field(key: Any, map: ViewportMap, applyFog: Boolean, sourcesOf: () -> Set<Int>): DistanceField {
+        val fogVersion = if (applyFog) fog.blockedVersion else 0
+        val entry = entries[key]
+        if (entry != null && entry.landmarkVersion == landmarks.version && entry.fogVersion == fogVersion) {
+            return entry.field
+        }
+        val sources = sourcesOf()
+        if (entry != null && entry.fogVersion == fogVersion && sources.containsAll(entry.sources)) {
+            entry.field.addSources(sources - entry.sources)
+            entry.sources = sources
+            entry.landmarkVersion = landmarks.version
+            return entry.field
+        }
+        val built = DistanceField(map.width, map.height, walkable(map, applyFog))
+        built.addSources(sources)
+        entries[key] = Entry(built, sources, landmarks.version, fogVersion)
+        return built
+    }
+
+    private fun walkable(map: ViewportMap, applyFog: Boolean): BooleanArray {
+        val out = BooleanArray(map.width * map.height)
+        for (y in 0 until map.height) for (x in 0 until map.width) {
+            out[y * map.width + x] = if (applyFog) {
+                map.isPassableAt(x, y) && !map.isImpassableTransitAt(x, y)
+            } else {
+                map.isPassableAt(x, y)
+            }
+        }
+        if (applyFog) {
+            fog.forEachBlocked { x, y -> cellOf(map, x, y)?.let { out[it] = false } }
+        }
+        return out
+    }
+
+    private fun tilesOf(map: ViewportMap, types: Set<TileType>): Set<Int> {
+        val out = HashSet<Int>()
+        for (y in 0 until map.height) for (x in 0 until map.width) {
+            if (map.at(x, y) in types) out += y * map.width + x
+        }
+        return out
+    }
+
+    private fun cellOf(map: ViewportMap, x: Int, y: Int): Int? =
+        if (x in 0 until map.width && y in 0 until map.height) y * map.width + x else null
+
+    private data class OverworldKinds(val kinds: Set<LandmarkKind>)
+    private data class OverworldTiles(val types: Set<TileType>)
+    private data class InteriorKinds(val mapId: Int, val kinds: Set<LandmarkKind>)
+    private data class InteriorTiles(val mapId: Int, val types: Set<TileType>)
+}
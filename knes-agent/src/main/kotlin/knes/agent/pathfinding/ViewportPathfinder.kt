@@ -1,9 +1,13 @@
 package knes.agent.pathfinding
 
 import knes.agent.perception.FogOfWar
+import knes.agent.perception.TileType
 import knes.agent.perception.ViewportMap
-import java.util.PriorityQueue
 
+/**
+ * A* over the viewport grid. Search state lives in a per-thread [GridSearch], so a call
+ * allocates only its result.
+ */
 class ViewportPathfinder(private val maxSteps: Int = 32) : Pathfinder {
 
     override fun findPath(
@@ -23,26 +27,34 @@ class ViewportPathfinder(private val maxSteps: Int = 32) : Pathfinder {
         // distinguish "WATER / MOUNTAIN at target" from "blocked by terrain
         // between us and a walkable target".
         val targetPassable: Boolean? = targetLocal?.let { (tx, ty) ->
-            viewport.tiles[ty][tx].isPassable()
+            viewport.isPassableAt(tx, ty)
         }
-        val INF = Int.MAX_VALUE
-        val dist = Array(h) { IntArray(w) { INF } }
-        val viaDir = Array(h) { Array<Direction?>(w) { null } }
-        // Dijkstra: visit cheapest-cost-so-far first. Cost is incurred on entering a tile,
-        // so origin is free (cost=0) and TOWN/CASTLE detours are penalized via TileType.cost().
-        val pq = PriorityQueue<IntArray>(compareBy { it[0] })
-        dist[start.second][start.first] = 0
-        pq.add(intArrayOf(0, start.first, start.second))
-        var bestReachable: Pair<Int, Int> = start
+        val (plx, ply) = viewport.partyLocalXY
+        val (pwx, pwy) = viewport.partyWorldXY
         val edgeTarget = targetEdge(viewport, to)
-        var bestDistToTargetSq = distSq(start, targetLocal ?: edgeTarget)
+        val goalX = targetLocal?.first ?: edgeTarget.first
+        val goalY = targetLocal?.second ?: edgeTarget.second
+        val targetNode = if (targetLocal != null) targetLocal.second * w + targetLocal.first else -1
+        // A* with a Manhattan heuristic toward the in-viewport target: every step costs at
+        // least 1, so it is admissible and consistent and the first pop of the target is
+        // optimal. Cost is incurred on entering a tile, so origin is free (cost=0). With the
+        // target outside the viewport (or unreachable) the search still closes every
+        // reachable tile, which is what the closest-reachable fallback needs.
+        val search = GridSearch.forCurrentThread()
+        search.reset(w * h)
+        val startNode = start.second * w + start.first
+        search.mark(startNode, 0, null)
+        search.push(heuristic(start.first, start.second, targetLocal), startNode)
+        var bestReachable = startNode
+        var bestDistToTargetSq = distSq(start.first, start.second, goalX, goalY)
 
-        while (pq.isNotEmpty()) {
-            val node = pq.poll()
-            val cost = node[0]; val cx = node[1]; val cy = node[2]
-            if (cost > dist[cy][cx]) continue  // stale entry
-            if (targetLocal != null && cx == targetLocal.first && cy == targetLocal.second) {
-                val steps = reconstruct(cx, cy, start, viaDir)
+        while (!search.heapIsEmpty()) {
+            val node = search.popNode()
+            if (search.isClosed(node)) continue  // stale entry
+            search.close(node)
+            val cx = node % w; val cy = node / w
+            if (node == targetNode) {
+                val steps = search.reconstruct(node, w)
                 if (steps.size > maxSteps) {
                     val truncated = steps.take(maxSteps)
                     return PathResult(true, truncated, reachedAfter(truncated, from),
@@ -53,25 +65,26 @@ class ViewportPathfinder(private val maxSteps: Int = 32) : Pathfinder {
                 return PathResult(true, steps, to, SearchSpace.VIEWPORT, partial = false,
                     targetPassable = targetPassable)
             }
-            val candTargetLocal = targetLocal ?: edgeTarget
-            val d = distSq(cx to cy, candTargetLocal)
-            if (d < bestDistToTargetSq) {
+            // Equal distances resolve to the lower node index, so the fallback does not
+            // depend on heap pop order.
+            val d = distSq(cx, cy, goalX, goalY)
+            if (d < bestDistToTargetSq || (d == bestDistToTargetSq && bestReachable != startNode && node < bestReachable)) {
                 bestDistToTargetSq = d
-                bestReachable = cx to cy
+                bestReachable = node
             }
-            for (dir in Direction.values()) {
+            val cost = search.costOf(node)
+            for (dir in DIRECTIONS) {
                 val nx = cx + dir.dx
                 val ny = cy + dir.dy
                 if (nx !in 0 until w || ny !in 0 until h) continue
-                val tile = viewport.tiles[ny][nx]
-                if (!tile.isPassable()) continue
-                val isDestination = targetLocal != null &&
-                    nx == targetLocal.first && ny == targetLocal.second
+                val next = ny * w + nx
+                if (search.isClosed(next)) continue
+                if (!viewport.isPassableAt(nx, ny)) continue
+                val isDestination = next == targetNode
                 // V2.5.4: hard-impassable transit. TOWN/CASTLE tiles are impassable
                 // unless they ARE the goal (shopping). Replaces the V2.4.6 cost-50
                 // soft-penalty which leaked through when no detour fit in the viewport.
-                if (tile.isImpassableTransit() && !isDestination) continue
-                val (wx, wy) = viewport.localToWorld(nx, ny)
+                if (viewport.isImpassableTransitAt(nx, ny) && !isDestination) continue
                 // V5.30: fog blocks (warp tiles, confirmed-blocked overworld) are
                 // treated as transit-impassable but destination-OK, mirroring the
                 // TOWN/CASTLE rule above. iter13 evidence: blocking warp tiles for
@@ -80,13 +93,16 @@ class ViewportPathfinder(private val maxSteps: Int = 32) : Pathfinder {
                 // them as deliberate targets lets the agent enter Coneria via a
                 // warp tile, traverse with exploreInteriorFrontier, and exit on
                 // the other side.
-                if (fog.isBlocked(wx, wy) && !isDestination) continue
-                val tileCost = if (isDestination) 1 else tile.cost()
+                if (!isDestination) {
+                    val wx = pwx + (nx - plx)
+                    val wy = pwy + (ny - ply)
+                    if (fog.inBounds(wx, wy) && fog.isBlocked(wx, wy)) continue
+                }
+                val tileCost = if (isDestination) 1 else TileType.byOrdinal(viewport.ordinalAt(nx, ny)).cost()
                 val nCost = cost + tileCost
-                if (nCost < dist[ny][nx]) {
-                    dist[ny][nx] = nCost
-                    viaDir[ny][nx] = dir
-                    pq.add(intArrayOf(nCost, nx, ny))
+                if (nCost < search.costOf(next)) {
+                    search.mark(next, nCost, dir)
+                    search.push(nCost + heuristic(nx, ny, targetLocal), next)
                 }
             }
         }
@@ -96,9 +112,9 @@ class ViewportPathfinder(private val maxSteps: Int = 32) : Pathfinder {
         // is in viewport but unreachable (e.g. WATER target from FOREST start).
         // GPP lesson: callers should never see a bare "no path" boolean when
         // there's still progress to be made toward the goal.
-        val (closestWX, closestWY) = viewport.localToWorld(bestReachable.first, bestReachable.second)
-        if (bestReachable != start) {
-            val steps = reconstruct(bestReachable.first, bestReachable.second, start, viaDir).take(maxSteps)
+        val (closestWX, closestWY) = viewport.localToWorld(bestReachable % w, bestReachable / w)
+        if (bestReachable != startNode) {
+            val steps = search.reconstruct(bestReachable, w).take(maxSteps)
             val reason = when {
                 targetLocal == null -> "target outside viewport; walked toward it"
                 targetPassable == false ->
@@ -136,20 +152,12 @@ class ViewportPathfinder(private val maxSteps: Int = 32) : Pathfinder {
         return px + dx to py + dy
     }
 
-    private fun distSq(a: Pair<Int, Int>, b: Pair<Int, Int>): Int {
-        val dx = a.first - b.first; val dy = a.second - b.second
-        return dx * dx + dy * dy
-    }
+    private fun heuristic(x: Int, y: Int, target: Pair<Int, Int>?): Int =
+        if (target == null) 0 else Math.abs(x - target.first) + Math.abs(y - target.second)
 
-    private fun reconstruct(endX: Int, endY: Int, start: Pair<Int, Int>, viaDir: Array<Array<Direction?>>): List<Direction> {
-        val out = ArrayDeque<Direction>()
-        var cx = endX; var cy = endY
-        while (cx != start.first || cy != start.second) {
-            val dir = viaDir[cy][cx] ?: break
-            out.addFirst(dir)
-            cx -= dir.dx; cy -= dir.dy
-        }
-        return out.toList()
+    private fun distSq(ax: Int, ay: Int, bx: Int, by: Int): Int {
+        val dx = ax - bx; val dy = ay - by
+        return dx * dx + dy * dy
     }
 
     private fun reachedAfter(steps: List<Direction>, from: Pair<Int, Int>): Pair<Int, Int> {
@@ -157,4 +165,8 @@ class ViewportPathfinder(private val maxSteps: Int = 32) : Pathfinder {
         for (d in steps) { x += d.dx; y += d.dy }
         return x to y
     }
+
+    private companion object {
+        val DIRECTIONS = Direction.values()
+    }
 }
@@ -1,53 +1,228 @@
 package knes.agent.perception
 
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.IOException
+import java.io.InputStream
+import java.io.OutputStream
+
 /**
  * Per-run accumulator of seen tiles and confirmed-blocked tiles.
- * In-memory only (V2.3); cross-run persistence is V2.4.
+ *
+ * Packed over a [gridSize]×[gridSize] grid (256 = the FF1 overworld; interior maps fit
+ * inside it): one TileType ordinal byte per cell plus seen/blocked bitsets, so [merge] and
+ * [isBlocked] never box coordinates. Coordinates must lie in `0 until gridSize`; callers
+ * on the wrapping overworld wrap them first (see [inBounds]). [merge] skips viewport
+ * cells that fall off the grid. Bounds of the seen area are tracked as tiles arrive, so
+ * [bbox] is O(1).
+ *
+ * Persist with [writeSnapshot] / [readSnapshot] (binary, ~72 KB for 256×256).
  */
-class FogOfWar {
-    private val seen = mutableMapOf<Pair<Int, Int>, TileType>()
-    private val blocked = mutableSetOf<Pair<Int, Int>>()
+class FogOfWar(val gridSize: Int = DEFAULT_GRID_SIZE) {
+
+    init {
+        require(gridSize in 1..MAX_GRID_SIZE && (gridSize and (gridSize - 1)) == 0) {
+            "gridSize must be a power of two up to $MAX_GRID_SIZE, got $gridSize"
+        }
+    }
+
+    private val mask = gridSize - 1
+    private val shift = Integer.numberOfTrailingZeros(gridSize)
+    private val tiles = ByteArray(gridSize * gridSize) { UNKNOWN }
+    private val seenBits = LongArray((gridSize * gridSize + 63) / 64)
+    private val blockedBits = LongArray((gridSize * gridSize + 63) / 64)
+
+    private var minX = Int.MAX_VALUE
+    private var minY = Int.MAX_VALUE
+    private var maxX = Int.MIN_VALUE
+    private var maxY = Int.MIN_VALUE
+
+    /** Number of seen tiles. */
+    var size: Int = 0
+        private set
+
+    var blockedCount: Int = 0
+        private set
+
+    /** Bumped whenever a seen tile is added or reclassified. */
+    var seenVersion: Int = 0
+        private set
 
-    val size: Int get() = seen.size
+    /** Bumped whenever the blocked set changes, so derived routing data can resync lazily. */
+    var blockedVersion: Int = 0
+        private set
+
+    // allReachableKnown's flood-fill scratch, allocated on first use and reused.
+    private var reachVisited: LongArray? = null
+    private var reachQueue: IntArray? = null
+
+    /** True when ([worldX], [worldY]) is a cell of this grid. */
+    fun inBounds(worldX: Int, worldY: Int): Boolean =
+        worldX in 0 until gridSize && worldY in 0 until gridSize
 
     fun merge(viewport: ViewportMap) {
+        val (plx, ply) = viewport.partyLocalXY
+        val (pwx, pwy) = viewport.partyWorldXY
         for (ly in 0 until viewport.height) {
             for (lx in 0 until viewport.width) {
-                val type = viewport.tiles[ly][lx]
-                if (type == TileType.UNKNOWN) continue
-                seen[viewport.localToWorld(lx, ly)] = type
+                val ordinal = viewport.ordinalAt(lx, ly)
+                if (ordinal == UNKNOWN.toInt()) continue
+                val x = pwx + (lx - plx)
+                val y = pwy + (ly - ply)
+                if (inBounds(x, y)) record(x, y, ordinal.toByte())
             }
         }
     }
 
+    private fun record(x: Int, y: Int, ordinal: Byte) {
+        val cell = (y shl shift) or x
+        if (tiles[cell] == ordinal) return
+        if (!testBit(seenBits, cell)) {
+            setBit(seenBits, cell)
+            size++
+            if (x < minX) minX = x
+            if (x > maxX) maxX = x
+            if (y < minY) minY = y
+            if (y > maxY) maxY = y
+        }
+        tiles[cell] = ordinal
+        seenVersion++
+    }
+
     fun tileAt(worldX: Int, worldY: Int): TileType =
-        seen[worldX to worldY] ?: TileType.UNKNOWN
+        TileType.byOrdinal(tiles[cellOf(worldX, worldY)].toInt())
+
+    fun isSeen(worldX: Int, worldY: Int): Boolean = testBit(seenBits, cellOf(worldX, worldY))
 
     fun markBlocked(worldX: Int, worldY: Int) {
-        blocked += worldX to worldY
+        val cell = cellOf(worldX, worldY)
+        if (testBit(blockedBits, cell)) return
+        setBit(blockedBits, cell)
+        blockedCount++
+        blockedVersion++
     }
 
-    fun isBlocked(worldX: Int, worldY: Int): Boolean = (worldX to worldY) in blocked
+    fun isBlocked(worldX: Int, worldY: Int): Boolean = testBit(blockedBits, cellOf(worldX, worldY))
+
+    /** Calls [action] for every blocked tile, without materialising a set. */
+    fun forEachBlocked(action: (x: Int, y: Int) -> Unit) {
+        for (w in blockedBits.indices) {
+            var bits = blockedBits[w]
+            while (bits != 0L) {
+                val cell = (w shl 6) + java.lang.Long.numberOfTrailingZeros(bits)
+                action(cell and mask, cell ushr shift)
+                bits = bits and (bits - 1)
+            }
+        }
+    }
 
-    fun blockedTiles(): Set<Pair<Int, Int>> = blocked.toSet()
+    fun blockedTiles(): Set<Pair<Int, Int>> {
+        val out = HashSet<Pair<Int, Int>>(blockedCount * 2)
+        forEachBlocked { x, y -> out += x to y }
+        return out
+    }
 
     fun clear() {
-        seen.clear()
-        blocked.clear()
+        tiles.fill(UNKNOWN)
+        seenBits.fill(0)
+        if (size > 0) seenVersion++
+        size = 0
+        if (blockedCount > 0) blockedVersion++
+        blockedBits.fill(0)
+        blockedCount = 0
+        minX = Int.MAX_VALUE; minY = Int.MAX_VALUE
+        maxX = Int.MIN_VALUE; maxY = Int.MIN_VALUE
     }
 
     fun bbox(): Pair<Pair<Int, Int>, Pair<Int, Int>>? {
-        if (seen.isEmpty()) return null
-        val xs = seen.keys.map { it.first }
-        val ys = seen.keys.map { it.second }
-        return (xs.min() to ys.min()) to (xs.max() to ys.max())
+        if (size == 0) return null
+        return (minX to minY) to (maxX to maxY)
     }
 
     /**
-     * Used by knes-agent-v2 Cartographer as a frontier-exhausted check.
-     * First-cut: always returns false so the Cartographer keeps exploring
-     * until budget exhausted. A future refinement can check the four
-     * orthogonal neighbours of `from` against `seen`.
+     * Frontier-exhausted check used by the Cartographer: true when every tile reachable
+     * from [from] over seen, walkable, unblocked tiles has only seen neighbours, i.e.
+     * walking further can't reveal anything new. TOWN/CASTLE are not walked through
+     * (they trigger transitions). An unseen [from] is never "all known".
      */
-    fun allReachableKnown(from: Pair<Int, Int>): Boolean = false
+    fun allReachableKnown(from: Pair<Int, Int>): Boolean {
+        val start = cellOf(from.first, from.second)
+        if (!testBit(seenBits, start)) return false
+        val visited = reachVisited?.also { it.fill(0) } ?: LongArray(seenBits.size).also { reachVisited = it }
+        val queue = reachQueue ?: IntArray(gridSize * gridSize).also { reachQueue = it }
+        var head = 0; var tail = 0
+        setBit(visited, start)
+        queue[tail++] = start
+        while (head < tail) {
+            val cell = queue[head++]
+            val x = cell and mask
+            val y = cell ushr shift
+            for (d in 0 until 4) {
+                val nx = x + DX[d]
+                val ny = y + DY[d]
+                // Past the grid edge (the overworld seam) is ground the fog cannot show as seen.
+                if (!inBounds(nx, ny)) return false
+                val next = (ny shl shift) or nx
+                if (!testBit(seenBits, next)) return false
+                if (testBit(visited, next) || testBit(blockedBits, next)) continue
+                if (!isWalkable(tiles[next].toInt())) continue
+                setBit(visited, next)
+                queue[tail++] = next
+            }
+        }
+        return true
+    }
+
+    private fun isWalkable(ordinal: Int): Boolean =
+        (TileType.PASSABLE_MASK ushr ordinal) and 1 != 0 &&
+            (TileType.IMPASSABLE_TRANSIT_MASK ushr ordinal) and 1 == 0
+
+    /** Writes tiles and blocked marks as a binary snapshot. */
+    fun writeSnapshot(out: OutputStream) {
+        val data = DataOutputStream(BufferedOutputStream(out))
+        data.writeInt(MAGIC)
+        data.writeInt(FORMAT_VERSION)
+        data.writeInt(gridSize)
+        data.write(tiles)
+        for (w in blockedBits) data.writeLong(w)
+        data.flush()
+    }
+
+    private fun cellOf(worldX: Int, worldY: Int): Int {
+        require(inBounds(worldX, worldY)) { "($worldX, $worldY) is outside the ${gridSize}x$gridSize fog grid" }
+        return (worldY shl shift) or worldX
+    }
+
+    companion object {
+        const val DEFAULT_GRID_SIZE = 256
+        private const val MAX_GRID_SIZE = 1 shl 12
+        private const val MAGIC = 0x4B464F47  // "KFOG"
+        private const val FORMAT_VERSION = 1
+        private val UNKNOWN = TileType.UNKNOWN.ordinal.toByte()
+        private val DX = intArrayOf(0, 0, 1, -1)
+        private val DY = intArrayOf(-1, 1, 0, 0)
+
+        private fun testBit(bits: LongArray, i: Int): Boolean = (bits[i ushr 6] ushr (i and 63)) and 1L != 0L
+        private fun setBit(bits: LongArray, i: Int) { bits[i ushr 6] = bits[i ushr 6] or (1L shl (i and 63)) }
+
+        /** Reads a snapshot written by [writeSnapshot]. */
+        fun readSnapshot(input: InputStream): FogOfWar {
+            val data = DataInputStream(BufferedInputStream(input))
+            if (data.readInt() != MAGIC) throw IOException("not a fog snapshot")
+            val version = data.readInt()
+            if (version != FORMAT_VERSION) throw IOException("unsupported fog snapshot version $version")
+            val fog = FogOfWar(data.readInt())
+            val tiles = ByteArray(fog.tiles.size)
+            data.readFully(tiles)
+            for (cell in tiles.indices) {
+                if (tiles[cell] != UNKNOWN) fog.record(cell and fog.mask, cell ushr fog.shift, tiles[cell])
+            }
+            for (w in fog.blockedBits.indices) fog.blockedBits[w] = data.readLong()
+            fog.blockedCount = fog.blockedBits.sumOf { java.lang.Long.bitCount(it) }
+            fog.blockedVersion = if (fog.blockedCount > 0) 1 else 0
+            return fog
+        }
+    }
 }
@@ -63,7 +63,7 @@ object InteriorFrontier {
                 val ny = cy + dir.dy
                 if (nx !in 0 until w || ny !in 0 until h) continue
                 if (seen[ny][nx]) continue
-                if (!viewport.tiles[ny][nx].isPassable()) continue
+                if (!viewport.isPassableAt(nx, ny)) continue
                 seen[ny][nx] = true
                 viaDir[ny][nx] = dir
                 q.add(Triple(nx, ny, dist + 1))
@@ -1,10 +1,17 @@
 package knes.agent.perception
 
-class InteriorMap(internal val tiles: ByteArray) : ViewportSource {
+class InteriorMap internal constructor(
+    internal val tiles: ByteArray,
+    precomputed: ByteArray?,
+    precomputedExits: IntArray?,
+) : ViewportSource {
     init {
         require(tiles.size == WIDTH * HEIGHT) { "tiles must be ${WIDTH * HEIGHT}, got ${tiles.size}" }
+        require(precomputed == null || precomputed.size == tiles.size) { "classified cells must match tiles" }
     }
 
+    constructor(tiles: ByteArray) : this(tiles, null, null)
+
     val width: Int get() = WIDTH
     val height: Int get() = HEIGHT
 
@@ -13,22 +20,43 @@ class InteriorMap(internal val tiles: ByteArray) : ViewportSource {
         return tiles[y * WIDTH + x].toInt() and 0xFF
     }
 
+    /**
+     * TileType ordinals for the whole interior, classified once and shared by every view
+     * (or taken precomputed from an [InteriorMapArtifact]).
+     */
+    private val classified: ByteArray by lazy {
+        precomputed ?: ByteArray(WIDTH * HEIGHT) { InteriorTileClassifier.classify(tiles[it].toInt() and 0xFF).ordinal.toByte() }
+    }
+
+    /** DOOR / STAIRS / WARP cells, packed as `y * WIDTH + x`, in row-major order. */
+    val exitCells: IntArray by lazy {
+        precomputedExits ?: classified.indices.filter {
+            val t = TileType.byOrdinal(classified[it].toInt())
+            t == TileType.DOOR || t == TileType.STAIRS || t == TileType.WARP
+        }.toIntArray()
+    }
+
+    internal fun classifiedCells(): ByteArray = classified
+
     fun classifyAt(x: Int, y: Int): TileType =
-        InteriorTileClassifier.classify(tileAt(x, y))
+        if (x !in 0 until WIDTH || y !in 0 until HEIGHT) InteriorTileClassifier.classify(0)
+        else TileType.byOrdinal(classified[y * WIDTH + x].toInt())
 
     override fun readViewport(partyWorldXY: Pair<Int, Int>): ViewportMap {
         val size = ViewportMap.SIZE
         val partyLocal = size / 2 to size / 2
         val (px, py) = partyWorldXY
-        val grid = Array(size) { ly ->
-            Array(size) { lx ->
+        val unknown = TileType.UNKNOWN.ordinal.toByte()
+        val cells = ByteArray(size * size)
+        for (ly in 0 until size) {
+            val gy = py + (ly - partyLocal.second)
+            for (lx in 0 until size) {
                 val gx = px + (lx - partyLocal.first)
-                val gy = py + (ly - partyLocal.second)
-                if (gx in 0 until WIDTH && gy in 0 until HEIGHT) classifyAt(gx, gy)
-                else TileType.UNKNOWN
+                cells[ly * size + lx] =
+                    if (gx in 0 until WIDTH && gy in 0 until HEIGHT) classified[gy * WIDTH + gx] else unknown
             }
         }
-        return ViewportMap(grid, partyLocal, partyWorldXY)
+        return ViewportMap.owned(cells, size, size, partyLocal, partyWorldXY)
     }
 
     /**
@@ -37,11 +65,14 @@ class InteriorMap(internal val tiles: ByteArray) : ViewportSource {
      * when the party is far from them (originally V2.4.6-A in STATE doc; V2.5.x stalls
      * in mapId=24 sub-maps with party at (3, 2) where the 16×16 viewport doesn't reach
      * any exit). Local coords coincide with map coords (party-local = party-world).
+     * Zero-copy window over the shared classified grid.
      */
     override fun readFullMapView(partyWorldXY: Pair<Int, Int>): ViewportMap {
         val (px, py) = partyWorldXY
-        val grid = Array(HEIGHT) { y -> Array(WIDTH) { x -> classifyAt(x, y) } }
-        return ViewportMap(grid, partyLocalXY = px to py, partyWorldXY = partyWorldXY)
+        return ViewportMap.window(
+            classified, offset = 0, stride = WIDTH, width = WIDTH, height = HEIGHT,
+            partyLocalXY = px to py, partyWorldXY = partyWorldXY,
+        )
     }
 
     companion object {
@@ -0,0 +1,138 @@
+package knes.agent.perception
+
+import java.io.BufferedOutputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.nio.file.StandardOpenOption
+
+/**
+ * All [InteriorMapLoader.MAP_COUNT] interior maps of one ROM, decoded and classified
+ * once and stored as a flat binary file that is memory-mapped read-only, so several
+ * agent processes share one copy through the OS page cache.
+ *
+ * Layout (big-endian, fixed offsets):
+ *   - header: magic, version, map count, the 256-byte [InteriorTileClassifier]
+ *     fingerprint (ordinal per raw tile id), one present byte per map, then per map the
+ *     exit-table offset (int) and exit count (short)
+ *   - raw tile ids, 4096 bytes per map
+ *   - classified [TileType] ordinals, 4096 bytes per map
+ *   - exit tables: packed `y * 64 + x` shorts of the DOOR/STAIRS/WARP cells
+ *
+ * A file written by a different classifier (fingerprint mismatch) or format version is
+ * rebuilt. Maps whose pointer doesn't decode are marked absent and left to
+ * [InteriorMapLoader] to report.
+ */
+internal class InteriorMapArtifact private constructor(private val buffer: ByteBuffer) {
+
+    fun isPresent(mapId: Int): Boolean = buffer.get(PRESENT_OFFSET + mapId).toInt() != 0
+
+    /** Copies map [mapId] out of the mapping; null if it was absent at build time. */
+    fun read(mapId: Int): InteriorMap? {
+        if (!isPresent(mapId)) return null
+        val tiles = ByteArray(CELLS)
+        buffer.get(tilesOffset(mapId), tiles)
+        val classified = ByteArray(CELLS)
+        buffer.get(classifiedOffset(mapId), classified)
+        val exitOffset = buffer.getInt(EXIT_INDEX_OFFSET + mapId * 6)
+        val exits = IntArray(buffer.getShort(EXIT_INDEX_OFFSET + mapId * 6 + 4).toInt()) {
+            buffer.getShort(exitOffset + it * 2).toInt()
+        }
+        return InteriorMap(tiles, classified, exits)
+    }
+
+    companion object {
+        private const val MAGIC = 0x4B494D41  // "KIMA"
+        private const val FORMAT_VERSION = 1
+        private const val MAP_COUNT = InteriorMapLoader.MAP_COUNT
+        private const val CELLS = InteriorMap.WIDTH * InteriorMap.HEIGHT
+        private const val FINGERPRINT_OFFSET = 12
+        private const val PRESENT_OFFSET = FINGERPRINT_OFFSET + 256
+        private const val EXIT_INDEX_OFFSET = PRESENT_OFFSET + MAP_COUNT
+        private const val TILES_OFFSET = EXIT_INDEX_OFFSET + MAP_COUNT * 6
+        private const val CLASSIFIED_OFFSET = TILES_OFFSET + MAP_COUNT * CELLS
+        private const val EXITS_OFFSET = CLASSIFIED_OFFSET + MAP_COUNT * CELLS
+
+        private fun tilesOffset(mapId: Int) = TILES_OFFSET + mapId * CELLS
+        private fun classifiedOffset(mapId: Int) = CLASSIFIED_OFFSET + mapId * CELLS
+
+        /** Maps [file] if it is a valid artifact for the current classifier, else builds it from [rom]. */
+        fun openOrBuild(file: File, rom: ByteArray): InteriorMapArtifact {
+            if (file.isFile) {
+                try {
+                    open(file)?.let { return it }
+                } catch (e: IOException) {
+                    // Unreadable: rebuild below.
+                }
+            }
+            val maps = arrayOfNulls<InteriorMap>(MAP_COUNT)
+            for (id in 0 until MAP_COUNT) {
+                maps[id] = try {
+                    InteriorMapLoader.decode(rom, id)
+                } catch (e: IllegalArgumentException) {
+                    null
+                }
+            }
+            write(file, maps)
+            return open(file) ?: error("freshly written interior artifact ${file.path} failed validation")
+        }
+
+        private fun open(file: File): InteriorMapArtifact? {
+            val buffer = FileChannel.open(file.toPath(), StandardOpenOption.READ).use { ch ->
+                if (ch.size() < EXITS_OFFSET) return null
+                ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size())
+            }
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION || buffer.getInt(8) != MAP_COUNT) return null
+            val fingerprint = fingerprint()
+            for (i in 0 until 256) if (buffer.get(FINGERPRINT_OFFSET + i) != fingerprint[i]) return null
+            // A write cut short leaves a valid header; every exit table must fit in the file.
+            for (id in 0 until MAP_COUNT) {
+                val exitOffset = buffer.getInt(EXIT_INDEX_OFFSET + id * 6)
+                val count = buffer.getShort(EXIT_INDEX_OFFSET + id * 6 + 4).toInt()
+                if (exitOffset < EXITS_OFFSET || count < 0 || exitOffset.toLong() + count * 2 > buffer.capacity()) return null
+            }
+            return InteriorMapArtifact(buffer)
+        }
+
+        private fun fingerprint(): ByteArray =
+            ByteArray(256) { InteriorTileClassifier.classify(it).ordinal.toByte() }
+
+        private fun write(target: File, maps: Array<InteriorMap?>) {
+            val dir = target.absoluteFile.parentFile
+            dir.mkdirs()
+            // Unique per writer, so two processes building the artifact at once don't share a temp file.
+            val tmp = Files.createTempFile(dir.toPath(), target.name, ".tmp")
+            try {
+                writeTo(tmp.toFile(), maps)
+                Files.move(tmp, target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING)
+            } finally {
+                Files.deleteIfExists(tmp)
+            }
+        }
+
+        private fun writeTo(file: File, maps: Array<InteriorMap?>) {
+            DataOutputStream(BufferedOutputStream(file.outputStream())).use { out ->
+                out.writeInt(MAGIC)
+                out.writeInt(FORMAT_VERSION)
+                out.writeInt(MAP_COUNT)
+                out.write(fingerprint())
+                for (m in maps) out.writeByte(if (m != null) 1 else 0)
+                var exitOffset = EXITS_OFFSET
+                for (m in maps) {
+                    val count = m?.exitCells?.size ?: 0
+                    out.writeInt(exitOffset)
+                    out.writeShort(count)
+                    exitOffset += count * 2
+                }
+                val empty = ByteArray(CELLS)
+                for (m in maps) out.write(m?.tiles ?: empty)
+                for (m in maps) out.write(m?.classifiedCells() ?: empty)
+                for (m in maps) m?.exitCells?.forEach { out.writeShort(it) }
+            }
+        }
+    }
+}
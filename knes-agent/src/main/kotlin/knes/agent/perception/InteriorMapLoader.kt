@@ -1,24 +1,63 @@
 package knes.agent.perception
 
-class InteriorMapLoader(private val rom: ByteArray) {
+import java.io.File
+import java.io.IOException
 
-    fun load(mapId: Int): InteriorMap {
-        require(mapId in 0..127) { "mapId $mapId out of range" }
-        val ptrFile = POINTER_TABLE_OFFSET + mapId * 2
-        require(ptrFile + 1 < rom.size) { "ROM too small for mapId $mapId" }
-        val raw = (rom[ptrFile].toInt() and 0xFF) or
-                  ((rom[ptrFile + 1].toInt() and 0xFF) shl 8)
-        val bankIndex = (raw ushr 14) and 0x03
-        val bankBase = (4 + bankIndex) * 0x4000
-        val dataStart = bankBase + 0x10 + (raw and 0x3FFF)
-        require(dataStart in 0 until rom.size) {
-            "mapId $mapId pointer 0x${raw.toString(16)} resolves to invalid offset 0x${dataStart.toString(16)}"
+/**
+ * Interior maps of one ROM. Each map is decoded at most once per loader and then served
+ * from memory, so repeated map transitions cost no decode and no allocation.
+ *
+ * With [artifactFile] set, all maps are decoded and classified up front into a shared
+ * memory-mapped [InteriorMapArtifact] (built on first use, reused by later runs and
+ * other processes); maps are then copied out of the mapping instead of RLE-decoded.
+ */
+class InteriorMapLoader(
+    private val rom: ByteArray,
+    private val artifactFile: File? = null,
+) {
+    private val loaded = arrayOfNulls<InteriorMap>(MAP_COUNT)
+
+    private val artifact: InteriorMapArtifact? by lazy {
+        artifactFile?.let {
+            try {
+                InteriorMapArtifact.openOrBuild(it, rom)
+            } catch (e: IOException) {
+                // The artifact is an optimisation only; fall back to per-map decode.
+                null
+            }
         }
-        return InteriorMap(decodeRle(rom, dataStart))
+    }
+
+    @Synchronized
+    fun load(mapId: Int): InteriorMap {
+        require(mapId in 0 until MAP_COUNT) { "mapId $mapId out of range" }
+        loaded[mapId]?.let { return it }
+        val map = artifact?.read(mapId) ?: decode(rom, mapId)
+        loaded[mapId] = map
+        return map
     }
 
     companion object {
         const val POINTER_TABLE_OFFSET = 0x10010
+        const val MAP_COUNT = 128
+
+        /** `~/.knes/cache/ff1-interiors-<rom digest>.bin`. */
+        fun defaultArtifactFile(rom: ByteArray): File =
+            File(System.getProperty("user.home"), ".knes/cache/ff1-interiors-${OverworldMap.romDigest(rom)}.bin")
+
+        internal fun decode(rom: ByteArray, mapId: Int): InteriorMap {
+            val ptrFile = POINTER_TABLE_OFFSET + mapId * 2
+            require(ptrFile + 1 < rom.size) { "ROM too small for mapId $mapId" }
+            val raw = (rom[ptrFile].toInt() and 0xFF) or
+                      ((rom[ptrFile + 1].toInt() and 0xFF) shl 8)
+            val bankIndex = (raw ushr 14) and 0x03
+            val bankBase = (4 + bankIndex) * 0x4000
+            val dataStart = bankBase + 0x10 + (raw and 0x3FFF)
+            require(dataStart in 0 until rom.size) {
+                "mapId $mapId pointer 0x${raw.toString(16)} resolves to invalid offset 0x${dataStart.toString(16)}"
+            }
+            return InteriorMap(decodeRle(rom, dataStart))
+        }
 
         internal fun decodeRle(rom: ByteArray, start: Int): ByteArray {
             val grid = ByteArray(InteriorMap.WIDTH * InteriorMap.HEIGHT)
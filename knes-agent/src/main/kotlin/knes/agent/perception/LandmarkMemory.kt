@@ -44,6 +44,10 @@ class LandmarkMemory(
 
     init { load() }
 
+    /** Bumped on every change to the landmark set, so derived indexes can resync lazily. */
+    var version: Int = 0
+        private set
+
     private fun load() {
         if (!file.exists()) return
         try {
@@ -59,7 +63,10 @@ class LandmarkMemory(
         AtomicJsonWriter.write(file, json.encodeToString(LandmarkFile.serializer(), payload))
     }
 
-    fun record(l: Landmark) { byId[l.id] = l }
+    fun record(l: Landmark) {
+        byId[l.id] = l
+        version++
+    }
 
     /** Records iff no existing landmark matches on (kind + world coords) for overworld
      *  or (kind + mapId + local coords) for interior. Returns true if added.
@@ -95,10 +102,14 @@ class LandmarkMemory(
                 discoveredRunId = if (dup.discoveredRunId.isBlank() && l.discoveredRunId.isNotBlank())
                     l.discoveredRunId else dup.discoveredRunId,
             )
-            if (upgraded != dup) byId[dup.id] = upgraded
+            if (upgraded != dup) {
+                byId[dup.id] = upgraded
+                version++
+            }
             return false
         }
         byId[l.id] = l
+        version++
         return true
     }
 
@@ -120,11 +131,15 @@ class LandmarkMemory(
         }
         if (toRemove.isEmpty()) return false
         toRemove.forEach { byId.remove(it.id) }
+        version++
         return true
     }
 
     fun markVisited(id: String) {
-        byId[id]?.let { byId[id] = it.copy(visited = true) }
+        byId[id]?.let {
+            byId[id] = it.copy(visited = true)
+            version++
+        }
     }
 
     fun all(): List<Landmark> = byId.values.toList()
@@ -22,51 +22,82 @@ import java.io.File
  *                           (count == 0 means 256 tiles)
  *   0xFF                  -> end of row
  */
-class OverworldMap private constructor(val tiles: ByteArray) : ViewportSource {
+class OverworldMap private constructor(
+    val tiles: ByteArray,
+    /** [romDigest] of the ROM this map was decoded from. */
+    val romDigest: String,
+) : ViewportSource {
 
     init {
         require(tiles.size == 256 * 256) { "tiles must be 256x256, got ${tiles.size}" }
     }
 
+    /**
+     * TileType ordinals for the whole map, classified once and shared read-only by every
+     * view: [readFullMapView] windows straight into it, [readViewport] copies 16x16 cells.
+     */
+    private val classified: ByteArray by lazy {
+        ByteArray(256 * 256) { OverworldTileClassifier.classify(tiles[it].toInt() and 0xFF).ordinal.toByte() }
+    }
+
     fun tileAt(worldX: Int, worldY: Int): Int {
         val x = ((worldX % 256) + 256) % 256
         val y = ((worldY % 256) + 256) % 256
         return tiles[y * 256 + x].toInt() and 0xFF
     }
 
-    fun classifyAt(worldX: Int, worldY: Int): TileType =
-        OverworldTileClassifier.classify(tileAt(worldX, worldY))
+    fun classifyAt(worldX: Int, worldY: Int): TileType {
+        val x = worldX and 0xFF
+        val y = worldY and 0xFF
+        return TileType.byOrdinal(classified[(y shl 8) or x].toInt())
+    }
 
-    /** Build a 16x16 ViewportMap centered on the given world coordinate. */
+    /** Build a 16x16 ViewportMap centered on the given world coordinate (wrapping at map edges). */
     override fun readViewport(partyWorldXY: Pair<Int, Int>): ViewportMap {
         val size = ViewportMap.SIZE
         val partyLocal = size / 2 to size / 2
         val (pwx, pwy) = partyWorldXY
-        val grid = Array(size) { ly ->
-            Array(size) { lx ->
-                val wx = pwx + (lx - partyLocal.first)
-                val wy = pwy + (ly - partyLocal.second)
-                classifyAt(wx, wy)
+        val cells = ByteArray(size * size)
+        for (ly in 0 until size) {
+            val wy = (pwy + (ly - partyLocal.second)) and 0xFF
+            for (lx in 0 until size) {
+                val wx = (pwx + (lx - partyLocal.first)) and 0xFF
+                cells[ly * size + lx] = classified[(wy shl 8) or wx]
             }
         }
-        return ViewportMap(grid, partyLocal, partyWorldXY)
+        return ViewportMap.owned(cells, size, size, partyLocal, partyWorldXY)
     }
 
     /**
      * 256×256 ViewportMap covering the whole overworld. Local coords coincide with
      * world coords (party-local = party-world). Used by the global pathfinder so it
-     * can plan around large blockers that span the 16×16 window.
+     * can plan around large blockers that span the 16×16 window. Zero-copy: the view
+     * is a read-only window over the shared classified grid.
      */
     override fun readFullMapView(partyWorldXY: Pair<Int, Int>): ViewportMap {
         val (pwx, pwy) = partyWorldXY
-        val grid = Array(256) { y -> Array(256) { x -> classifyAt(x, y) } }
-        return ViewportMap(grid, partyLocalXY = pwx to pwy, partyWorldXY = partyWorldXY)
+        return ViewportMap.window(
+            classified, offset = 0, stride = 256, width = 256, height = 256,
+            partyLocalXY = pwx to pwy, partyWorldXY = partyWorldXY,
+        )
     }
 
     companion object {
         fun fromRom(romFile: File): OverworldMap = fromRom(romFile.readBytes())
 
-        fun fromRom(rom: ByteArray): OverworldMap {
+        // Decoded maps by ROM digest, so every caller loading the same ROM shares one
+        // classified grid.
+        private val byRom = java.util.concurrent.ConcurrentHashMap<String, OverworldMap>()
+
+        fun fromRom(rom: ByteArray): OverworldMap =
+            romDigest(rom).let { digest -> byRom.computeIfAbsent(digest) { decode(rom, it) } }
+
+        /** Hex SHA-256 of the whole ROM image; stable key for per-ROM caches. */
+        fun romDigest(rom: ByteArray): String =
+            java.security.MessageDigest.getInstance("SHA-256").digest(rom)
+                .joinToString("") { "%02x".format(it) }
+
+        private fun decode(rom: ByteArray, digest: String): OverworldMap {
             require(rom.size >= 0x8010) { "ROM too small (${rom.size} bytes); expected at least 32 KB PRG" }
             // Pointer table at file offset 0x4010 (start of bank 1).
             val pointerTableFileOffset = 0x4010
@@ -82,7 +113,7 @@ class OverworldMap private constructor(val tiles: ByteArray) : ViewportSource {
                 }
                 decodeRow(rom, rowFileOffset, grid, row)
             }
-            return OverworldMap(grid)
+            return OverworldMap(grid, digest)
         }
 
         private fun decodeRow(rom: ByteArray, startOffset: Int, grid: ByteArray, row: Int) {
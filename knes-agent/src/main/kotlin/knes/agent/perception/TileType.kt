@@ -42,4 +42,19 @@ enum class TileType(val glyph: Char) {
         TOWN, CASTLE -> true
         else -> false
     }
+
+    companion object {
+        private val BY_ORDINAL = values()
+
+        fun byOrdinal(ordinal: Int): TileType = BY_ORDINAL[ordinal]
+
+        /** Bit N set iff TileType with ordinal N [isPassable]. For packed-grid lookups. */
+        val PASSABLE_MASK: Long = mask { it.isPassable() }
+
+        /** Bit N set iff TileType with ordinal N [isImpassableTransit]. */
+        val IMPASSABLE_TRANSIT_MASK: Long = mask { it.isImpassableTransit() }
+
+        private fun mask(predicate: (TileType) -> Boolean): Long =
+            BY_ORDINAL.fold(0L) { acc, t -> if (predicate(t)) acc or (1L shl t.ordinal) else acc }
+    }
 }
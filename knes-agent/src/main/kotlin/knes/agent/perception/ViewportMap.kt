@@ -1,23 +1,81 @@
 package knes.agent.perception
 
 /**
- * 16x16 grid of TileType centered on the party.
+ * Grid of TileType centered on the party (16x16 window, or a whole map for global planners).
  *
- * @param tiles row-major, tiles[y][x] where y=0 is north edge.
- * @param partyLocalXY party position within the 16x16 grid (typically (8,8)).
+ * Backed by a packed ByteArray of [TileType] ordinals addressed as
+ * `cells[offset + y * stride + x]`, so a view over a shared classified map (see
+ * [OverworldMap.readFullMapView]) is a zero-copy window. Such windows are read-only;
+ * maps built from an `Array<Array<TileType>>` or [ofUnknown] own their cells and can be
+ * edited through [tiles].
+ *
+ * Hot paths should use [ordinalAt] / [isPassableAt] / [isImpassableTransitAt], which test
+ * the ordinal against [TileType] bitmasks without touching the enum.
+ *
+ * @param partyLocalXY party position within the grid (typically (8,8)).
  * @param partyWorldXY party position in world coordinates; used to translate
  *                     local (gridX, gridY) into world (worldX, worldY).
  */
-data class ViewportMap(
-    val tiles: Array<Array<TileType>>,
+class ViewportMap internal constructor(
+    private val cells: ByteArray,
+    private val offset: Int,
+    private val stride: Int,
+    val width: Int,
+    val height: Int,
     val partyLocalXY: Pair<Int, Int>,
     val partyWorldXY: Pair<Int, Int>,
+    private val readOnly: Boolean,
 ) {
-    val width: Int get() = tiles[0].size
-    val height: Int get() = tiles.size
+    init {
+        require(width > 0 && height > 0) { "viewport must be non-empty, got ${width}x$height" }
+        require(stride >= width && offset + (height - 1) * stride + width <= cells.size) {
+            "window ${width}x$height @ $offset/$stride exceeds ${cells.size} cells"
+        }
+    }
+
+    /** @param tiles row-major, tiles[y][x] where y=0 is north edge. Copied into packed cells. */
+    constructor(
+        tiles: Array<Array<TileType>>,
+        partyLocalXY: Pair<Int, Int>,
+        partyWorldXY: Pair<Int, Int>,
+    ) : this(pack(tiles), 0, tiles[0].size, tiles[0].size, tiles.size, partyLocalXY, partyWorldXY, readOnly = false)
+
+    /** Row-major `tiles[y][x]` view. Writes go straight to the packed cells (owned maps only). */
+    val tiles: Rows get() = Rows()
+
+    inner class Rows internal constructor() {
+        val size: Int get() = height
+        operator fun get(y: Int): Row {
+            if (y !in 0 until height) throw IndexOutOfBoundsException("row $y outside 0 until $height")
+            return Row(y)
+        }
+    }
+
+    inner class Row internal constructor(private val y: Int) {
+        val size: Int get() = width
+        operator fun get(x: Int): TileType = TileType.byOrdinal(ordinalAt(checkX(x), y))
+        operator fun set(x: Int, type: TileType) {
+            check(!readOnly) { "ViewportMap window over a shared map is read-only" }
+            cells[index(checkX(x), y)] = type.ordinal.toByte()
+        }
+
+        private fun checkX(x: Int): Int {
+            if (x !in 0 until width) throw IndexOutOfBoundsException("column $x outside 0 until $width")
+            return x
+        }
+    }
+
+    /** TileType ordinal at an in-bounds local coordinate. No bounds check. */
+    fun ordinalAt(localX: Int, localY: Int): Int = cells[index(localX, localY)].toInt()
+
+    fun isPassableAt(localX: Int, localY: Int): Boolean =
+        (TileType.PASSABLE_MASK ushr ordinalAt(localX, localY)) and 1 != 0
+
+    fun isImpassableTransitAt(localX: Int, localY: Int): Boolean =
+        (TileType.IMPASSABLE_TRANSIT_MASK ushr ordinalAt(localX, localY)) and 1 != 0
 
     fun at(localX: Int, localY: Int): TileType =
-        if (localX in 0 until width && localY in 0 until height) tiles[localY][localX]
+        if (localX in 0 until width && localY in 0 until height) TileType.byOrdinal(ordinalAt(localX, localY))
         else TileType.UNKNOWN
 
     fun localToWorld(localX: Int, localY: Int): Pair<Int, Int> {
@@ -34,28 +92,78 @@ data class ViewportMap(
         return if (lx in 0 until width && ly in 0 until height) lx to ly else null
     }
 
+    private fun index(x: Int, y: Int): Int = offset + y * stride + x
+
     override fun equals(other: Any?): Boolean {
         if (this === other) return true
         if (other !is ViewportMap) return false
         if (partyLocalXY != other.partyLocalXY) return false
         if (partyWorldXY != other.partyWorldXY) return false
-        if (tiles.size != other.tiles.size) return false
-        return tiles.indices.all { tiles[it].contentEquals(other.tiles[it]) }
+        if (width != other.width || height != other.height) return false
+        if (cells === other.cells && offset == other.offset && stride == other.stride) return true
+        for (y in 0 until height) {
+            if (!java.util.Arrays.equals(
+                    cells, index(0, y), index(width, y),
+                    other.cells, other.index(0, y), other.index(width, y),
+                )) return false
+        }
+        return true
     }
 
     override fun hashCode(): Int {
         var result = partyLocalXY.hashCode()
         result = 31 * result + partyWorldXY.hashCode()
-        result = 31 * result + tiles.sumOf { it.contentHashCode() }
+        for (y in 0 until height) {
+            for (x in 0 until width) result = 31 * result + cells[index(x, y)]
+        }
         return result
     }
 
+    override fun toString(): String =
+        "ViewportMap(${width}x$height, partyLocalXY=$partyLocalXY, partyWorldXY=$partyWorldXY)"
+
     companion object {
         const val SIZE = 16
+
         fun ofUnknown(partyWorldXY: Pair<Int, Int>): ViewportMap = ViewportMap(
-            tiles = Array(SIZE) { Array(SIZE) { TileType.UNKNOWN } },
+            cells = ByteArray(SIZE * SIZE) { TileType.UNKNOWN.ordinal.toByte() },
+            offset = 0,
+            stride = SIZE,
+            width = SIZE,
+            height = SIZE,
             partyLocalXY = SIZE / 2 to SIZE / 2,
             partyWorldXY = partyWorldXY,
+            readOnly = false,
         )
+
+        /** Read-only window over [cells] (row-major with [stride]); [cells] is shared, not copied. */
+        internal fun window(
+            cells: ByteArray,
+            offset: Int,
+            stride: Int,
+            width: Int,
+            height: Int,
+            partyLocalXY: Pair<Int, Int>,
+            partyWorldXY: Pair<Int, Int>,
+        ): ViewportMap = ViewportMap(cells, offset, stride, width, height, partyLocalXY, partyWorldXY, readOnly = true)
+
+        /** Map owning [cells] (row-major, [width] per row), e.g. freshly classified tiles. */
+        internal fun owned(
+            cells: ByteArray,
+            width: Int,
+            height: Int,
+            partyLocalXY: Pair<Int, Int>,
+            partyWorldXY: Pair<Int, Int>,
+        ): ViewportMap = ViewportMap(cells, 0, width, width, height, partyLocalXY, partyWorldXY, readOnly = false)
+
+        private fun pack(tiles: Array<Array<TileType>>): ByteArray {
+            val w = tiles[0].size
+            val out = ByteArray(tiles.size * w)
+            for (y in tiles.indices) {
+                require(tiles[y].size == w) { "ragged tiles: row $y has ${tiles[y].size}, expected $w" }
+                for (x in 0 until w) out[y * w + x] = tiles[y][x].ordinal.toByte()
+            }
+            return out
+        }
     }
 }
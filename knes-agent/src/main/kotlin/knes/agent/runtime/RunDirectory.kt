@@ -58,6 +58,14 @@ class RunDirectory(val root: Path) {
     fun savestate(turn: Int): Path =
         savestateDir.resolve("T%d.nss".format(turn))
 
+    /** Session video of a run (or resumed run) starting at [turn]. */
+    fun video(turn: Int): Path =
+        root.resolve("video-T%05d.knv".format(turn))
+
+    /** Input movie of a run (or resumed run) starting at [turn]. */
+    fun movie(turn: Int): Path =
+        root.resolve("movie-T%05d.kmv".format(turn))
+
     companion object {
         private val TS_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd-HHmm")
         private fun runsRoot(): Path =
@@ -1,28 +1,39 @@
 package knes.agent.runtime
 
 import knes.agent.tools.EmulatorToolset
-import java.nio.file.Files
-import java.util.Base64
+import knes.api.FrameSink
+import java.nio.file.Path
 
+/**
+ * Per-iteration screenshots, written by a [FrameSink] off the agent loop. A local toolset
+ * hands over the raw frame, so nothing is PNG-encoded on the calling thread; a remote one
+ * only serves PNGs, which are decoded and written on the sink's workers.
+ */
 class SnapshotDumper(
     private val toolset: EmulatorToolset,
     private val run: RunDirectory,
-) {
-    /** Dump per-iter screenshot. Idempotent — overwrites if same turn called twice. */
-    fun dump(turn: Int): String {
-        val b64 = toolset.getScreen().base64
-        val bytes = Base64.getDecoder().decode(b64)
-        val out = run.turnSnapshot(turn)
-        Files.write(out, bytes)
-        return run.root.relativize(out).toString()
-    }
+    private val sink: FrameSink = FrameSink(policy = FrameSink.Policy.BLOCK),
+) : AutoCloseable {
+    /**
+     * Dump per-iter screenshot. Idempotent — overwrites if same turn called twice. Pass
+     * [screenB64] when the caller already fetched the screen, to spare a remote round trip.
+     */
+    fun dump(turn: Int, screenB64: String? = null): String = write(run.turnSnapshot(turn), screenB64)
 
     /** Pre-campaign Cartographer iterations get their own file prefix. */
-    fun dumpCartographer(iter: Int): String {
-        val b64 = toolset.getScreen().base64
-        val bytes = Base64.getDecoder().decode(b64)
-        val out = run.snapshotsDir.resolve("cart-%05d.png".format(iter))
-        Files.write(out, bytes)
+    fun dumpCartographer(iter: Int, screenB64: String? = null): String =
+        write(run.snapshotsDir.resolve("cart-%05d.png".format(iter)), screenB64)
+
+    private fun write(out: Path, screenB64: String?): String {
+        val frame = toolset.frameBuffer()
+        if (frame != null) {
+            sink.submit(frame, 256, 240, out)
+        } else {
+            sink.submitBase64(screenB64 ?: toolset.getScreen().base64, out)
+        }
         return run.root.relativize(out).toString()
     }
+
+    /** Waits for queued snapshots to reach the disk. */
+    override fun close() = sink.close()
 }
@@ -9,6 +9,12 @@ import knes.agent.pathfinding.InteriorPathfinder
 import knes.agent.pathfinding.Pathfinder
 import knes.agent.runtime.ToolCallLog
 import knes.agent.tools.EmulatorToolset
+import knes.agent.tools.results.PlanMove
+import knes.agent.tools.results.PlanRequest
+import knes.agent.tools.results.PlanResult
+import knes.agent.tools.results.StepEntry
+import knes.agent.tools.results.StopCondition
+import knes.agent.tools.results.StopKind
 
 /**
  * Walks toward the nearest exit (DOOR / STAIRS / WARP or south-edge implicit exit)
@@ -41,6 +47,9 @@ class ExitInterior(
     private val PRESS_FRAMES = 6
     private val GAP_FRAMES = 14
     private val SETTLE_FRAMES = 8
+    private val tapMoves = listOf("Up", "Down", "Left", "Right").map {
+        PlanMove(it, listOf(StepEntry(listOf(it), PRESS_FRAMES), StepEntry(emptyList(), GAP_FRAMES + SETTLE_FRAMES)))
+    }
 
     override suspend fun invoke(args: Map<String, String>): SkillResult {
         val maxSteps = args["maxSteps"]?.toIntOrNull() ?: 64
@@ -130,7 +139,9 @@ class ExitInterior(
                 "from=($partyX,$partyY) dir=${nextDir.name} → after=($partyX1,$partyY1) " +
                     "mapId=$mid1 pathLen=${path.steps.size}")
             if (mid1 == mapId && partyX1 == partyX && partyY1 == partyY) {
-                fog.markBlocked(partyX + nextDir.dx, partyY + nextDir.dy)
+                val bx = partyX + nextDir.dx
+                val by = partyY + nextDir.dy
+                if (fog.inBounds(bx, by)) fog.markBlocked(bx, by)
             }
 
             // V5.9: detect transition out of interior, log EXIT_CONFIRMED with direction.
@@ -170,6 +181,40 @@ class ExitInterior(
         }
     }
 
+    /**
+     * Search-first town-overlay exit: BFS over single taps from forked savestates until
+     * mapflags bit 0 clears, deduplicated on the party tile. States that open a doorway
+     * dialog (mapflags bit 1), enter an interior or start a battle are dropped. The plan
+     * is replayed live. Null when the planner can't run (shared/UI session) or finds no
+     * exit, leaving the blind walker below as the fallback.
+     */
+    private fun planOutOfTownOverlay(maxTaps: Int): PlanResult? {
+        val result = try {
+            toolset.planInputs(
+                PlanRequest(
+                    goal = listOf(StopCondition(StopKind.EQUALS, "mapflags", value = 0, mask = 0x01)),
+                    avoid = listOf(
+                        StopCondition(StopKind.EQUALS, "mapflags", value = 0x02, mask = 0x02),
+                        StopCondition(StopKind.NOT_EQUALS, "currentMapId", value = 0),
+                        StopCondition(StopKind.EQUALS, "screenState", value = 0x68),
+                    ),
+                    moves = tapMoves,
+                    dedupAddresses = listOf("smPlayerX", "smPlayerY"),
+                    maxDepth = maxTaps.coerceIn(1, 64),
+                )
+            )
+        } catch (e: Exception) {
+            toolCallLog?.append("exitInterior.plan", "planner error: ${e.message}")
+            return null
+        }
+        toolCallLog?.append(
+            "exitInterior.plan",
+            "found=${result.found} moves=${result.moves} expanded=${result.expanded} " +
+                "elapsedMs=${result.elapsedMs} reason=${result.reason ?: ""}",
+        )
+        return result.takeIf { it.found }
+    }
+
     /**
      * Town-overlay blind walker: prefer DOWN (towns are entered from the south,
      * so the south edge is the universal exit). On stuck (no world-coord change
@@ -178,6 +223,7 @@ class ExitInterior(
      * Returns (totalFrames, exited). exited=true iff mapflags bit 0 cleared.
      */
     private suspend fun walkOutOfTownOverlay(maxTaps: Int): Pair<Int, Boolean> {
+        planOutOfTownOverlay(maxTaps)?.let { return it.frames to true }
         // 2026-05-09 cont 3 user-confirmed: "to exit the city you need to go down
         // from shop". DOWN is the universal Coneria-town exit direction. Earlier
         // runs (cont 3 #1-#3) tried rotating to LEFT/RIGHT after 3-6 stuck DOWN
@@ -154,7 +154,8 @@ class WalkOverworldTo(
                 // where (151,151) was fog-marked after a single failed W step
                 // post-battle, then BFS reported "no path" on next iteration.
                 if (consecutiveNoMove >= 2) {
-                    fog.markBlocked(cx + nextDir.dx, cy + nextDir.dy)
+                    // The overworld wraps; the fog grid doesn't, so fold the seam here.
+                    fog.markBlocked(Math.floorMod(cx + nextDir.dx, fog.gridSize), Math.floorMod(cy + nextDir.dy, fog.gridSize))
                 }
                 if (consecutiveNoMove >= INPUT_DEAD_THRESHOLD) {
                     val ram = toolset.getState().ram
@@ -7,8 +7,12 @@ import knes.agent.skills.RestAtInn
 import knes.agent.skills.SkillResult
 import knes.agent.skills.WalkOverworldTo
 import knes.agent.tools.EmulatorToolset
+import knes.agent.tools.results.PlanRequest
+import knes.agent.tools.results.StopCondition
+import knes.agent.tools.results.StopKind
 import knes.agent.llm.HaikuClient
 import knes.agent.runtime.Phase
+import knes.agent.runtime.ToolCallLog
 
 sealed class ToolOutcome {
     data class Ok(val message: String = "", val data: Map<String, String> = emptyMap()) : ToolOutcome()
@@ -40,6 +44,7 @@ class DefaultToolSurface(
     private val haiku: HaikuClient? = null,
     private val menuWalker: MenuWalker = MenuWalker(),
     private val livePngFile: java.nio.file.Path? = null,
+    private val toolCallLog: ToolCallLog? = null,
 ) : ToolSurface {
 
     override suspend fun boot(): ToolOutcome = wrap(pressStartUntilOverworld.invoke(emptyMap()))
@@ -120,6 +125,7 @@ class DefaultToolSurface(
      *    those need outside coordination to escape, not a same-loop recovery.
      */
     private suspend fun townWalkVision(tx: Int, ty: Int, maxSteps: Int): ToolOutcome {
+        planTownWalk(tx, ty, maxSteps)?.let { return it }
         val haiku = this.haiku ?: return ToolOutcome.Reject(
             "townWalkVision: Haiku not wired (DefaultToolSurface haiku=null)"
         )
@@ -249,6 +255,45 @@ class DefaultToolSurface(
         return ToolOutcome.Fail("townWalk: maxSteps=$maxSteps reached, sm=(${r["smPlayerX"]},${r["smPlayerY"]}) target=($tx,$ty) recoveries=$transitionsRecovered")
     }
 
+    /**
+     * Search-first town walk: BFS over d-pad taps from forked savestates until the party
+     * stands on local (tx, ty), deduplicated on the party tile; states that leave the
+     * overlay or open a dialog are dropped. Null (fall back to Haiku vision) when the
+     * planner can't run here or finds no route within [maxSteps] taps.
+     */
+    private fun planTownWalk(tx: Int, ty: Int, maxSteps: Int): ToolOutcome? {
+        val result = try {
+            toolset.planInputs(
+                PlanRequest(
+                    goal = listOf(
+                        StopCondition(StopKind.EQUALS, "smPlayerX", value = tx),
+                        StopCondition(StopKind.EQUALS, "smPlayerY", value = ty),
+                    ),
+                    avoid = listOf(
+                        StopCondition(StopKind.EQUALS, "mapflags", value = 0, mask = 0x01),
+                        StopCondition(StopKind.EQUALS, "mapflags", value = 0x02, mask = 0x02),
+                        StopCondition(StopKind.CHANGES, "currentMapId"),
+                    ),
+                    dedupAddresses = listOf("smPlayerX", "smPlayerY"),
+                    maxDepth = maxSteps,
+                )
+            )
+        } catch (e: Exception) {
+            toolCallLog?.append("townWalk.plan", "planner error: ${e.message}")
+            return null
+        }
+        toolCallLog?.append(
+            "townWalk.plan",
+            "found=${result.found} moves=${result.moves} expanded=${result.expanded} " +
+                "elapsedMs=${result.elapsedMs} reason=${result.reason ?: ""}",
+        )
+        if (!result.found) return null
+        return ToolOutcome.Ok(
+            "townWalk: planned ${result.moves.size} taps to ($tx,$ty) " +
+                "(expanded=${result.expanded}, ${result.elapsedMs}ms, no model calls)"
+        )
+    }
+
     private data class CardinalTryResult(val tried: List<String>, val tapsUsed: Int)
 
     /**
@@ -312,13 +357,18 @@ class DefaultToolSurface(
         else -> null
     }
 
-    private suspend fun snapshotMenuRam(): List<Int> {
+    private suspend fun snapshotMenuRam(): List<Any> {
         val r = toolset.getState().ram
+        // Window text and cursor cells decoded from the nametables also catch screens
+        // that change without moving the cursor bytes (dialog pages, shop sub-lists).
+        val text = toolset.readScreenText()
         return listOf(
             r["screenState"] ?: 0,
             r["menuCursor"] ?: 0,
             r["menuHandX"] ?: 0,
             r["menuHandY"] ?: 0,
+            text.windows.map { it.lines },
+            text.cursors.map { it.col to it.row },
         )
     }
 
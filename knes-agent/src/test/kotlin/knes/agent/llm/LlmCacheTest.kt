@@ -0,0 +1,77 @@
+package knes.agent.llm
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.StringSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.shouldNotBe
+import java.nio.file.Files
+
+class LlmCacheTest : StringSpec({
+    fun tempDir() = Files.createTempDirectory("llm-cache").toFile().apply { deleteOnExit() }
+
+    "key depends on every request field and the image" {
+        val base = LlmCache.key("m", "sys", "user", "aW1n", 400)
+        LlmCache.key("m", "sys", "user", "aW1n", 400) shouldBe base
+        LlmCache.key("m2", "sys", "user", "aW1n", 400) shouldNotBe base
+        LlmCache.key("m", "sysu", "ser", "aW1n", 400) shouldNotBe base
+        LlmCache.key("m", "sys", "user", null, 400) shouldNotBe base
+        LlmCache.key("m", "sys", "user", "aW1o", 400) shouldNotBe base
+        LlmCache.key("m", "sys", "user", "aW1n", 800) shouldNotBe base
+    }
+
+    "record stores a miss and serves it back without calling the model" {
+        val dir = tempDir()
+        var calls = 0
+        val cache = LlmCache(LlmCache.Mode.RECORD, dir)
+        cache.getOrPut("k1") { calls++; "answer" } shouldBe "answer"
+        cache.getOrPut("k1") { calls++; "other" } shouldBe "answer"
+        calls shouldBe 1
+
+        // A fresh instance over the same directory replays it offline.
+        LlmCache(LlmCache.Mode.REPLAY, dir).getOrPut("k1") { error("no network in replay") } shouldBe "answer"
+    }
+
+    "a response generated with keep = false is returned but not stored" {
+        val dir = tempDir()
+        val cache = LlmCache(LlmCache.Mode.RECORD, dir)
+        cache.getOrPutIf("k") { "fallback" to false } shouldBe "fallback"
+        dir.listFiles()!!.size shouldBe 0
+        cache.getOrPutIf("k") { "primary" to true } shouldBe "primary"
+        cache.getOrPut("k") { error("cached") } shouldBe "primary"
+    }
+
+    "replay miss throws instead of calling the model" {
+        val cache = LlmCache(LlmCache.Mode.REPLAY, tempDir())
+        shouldThrow<LlmCache.Miss> { cache.getOrPut("absent") { "live" } }
+    }
+
+    "passthrough always calls the model and writes nothing" {
+        val dir = tempDir()
+        var calls = 0
+        val cache = LlmCache(LlmCache.Mode.PASSTHROUGH, dir)
+        repeat(2) { cache.getOrPut("k") { calls++; "x" } }
+        calls shouldBe 2
+        dir.listFiles()!!.size shouldBe 0
+    }
+
+    "least recently used entries are evicted past the size bound" {
+        val dir = tempDir()
+        val cache = LlmCache(LlmCache.Mode.RECORD, dir, maxBytes = 25)
+        cache.getOrPut("a") { "a".repeat(10) }
+        cache.getOrPut("b") { "b".repeat(10) }
+        cache.getOrPut("a") { error("a is cached") }
+        cache.getOrPut("c") { "c".repeat(10) }
+
+        dir.resolve("a.txt").exists() shouldBe true
+        dir.resolve("b.txt").exists() shouldBe false
+        dir.resolve("c.txt").exists() shouldBe true
+    }
+
+    "parseMode accepts the CLI spellings" {
+        LlmCache.parseMode(null) shouldBe LlmCache.Mode.PASSTHROUGH
+        LlmCache.parseMode("off") shouldBe LlmCache.Mode.PASSTHROUGH
+        LlmCache.parseMode("Record") shouldBe LlmCache.Mode.RECORD
+        LlmCache.parseMode("replay") shouldBe LlmCache.Mode.REPLAY
+        shouldThrow<IllegalArgumentException> { LlmCache.parseMode("sometimes") }
+    }
+})
@@ -0,0 +1,49 @@
+package knes.agent.pathfinding
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.collections.shouldContainExactly
+import io.kotest.matchers.shouldBe
+
+class GridSearchTest : FunSpec({
+
+    test("heap pops by priority, then by node index") {
+        val s = GridSearch()
+        s.reset(16)
+        s.push(5, 3); s.push(1, 9); s.push(5, 2); s.push(0, 7); s.push(3, 1)
+        val popped = mutableListOf<Int>()
+        while (!s.heapIsEmpty()) popped += s.popNode()
+        popped.shouldContainExactly(7, 9, 1, 2, 3)
+    }
+
+    test("heap grows past its initial capacity") {
+        val s = GridSearch()
+        s.reset(1000)
+        for (n in 999 downTo 0) s.push(n, n)
+        for (n in 0 until 1000) s.popNode() shouldBe n
+        s.heapIsEmpty() shouldBe true
+    }
+
+    test("reset forgets previous search state without clearing arrays") {
+        val s = GridSearch()
+        s.reset(4)
+        s.mark(2, 7, Direction.E)
+        s.close(2)
+        s.costOf(2) shouldBe 7
+        s.reset(4)
+        s.isSeen(2) shouldBe false
+        s.isClosed(2) shouldBe false
+        s.costOf(2) shouldBe Int.MAX_VALUE
+    }
+
+    test("reconstruct walks predecessors back to the start") {
+        val w = 4
+        val s = GridSearch()
+        s.reset(w * w)
+        s.mark(0, 0, null)
+        s.mark(1, 1, Direction.E)
+        s.mark(1 + w, 2, Direction.S)
+        s.mark(2 + w, 3, Direction.E)
+        s.reconstruct(2 + w, w).shouldContainExactly(Direction.E, Direction.S, Direction.E)
+        s.reconstruct(0, w) shouldBe emptyList()
+    }
+})
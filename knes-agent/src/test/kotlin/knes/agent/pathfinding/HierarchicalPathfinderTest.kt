@@ -0,0 +1,146 @@
+package knes.agent.pathfinding
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.shouldBe
+import knes.agent.perception.FogOfWar
+import knes.agent.perception.TileType
+import knes.agent.perception.ViewportMap
+import java.nio.file.Files
+
+private fun fullMap(size: Int = 64, edits: (Array<Array<TileType>>) -> Unit = {}): ViewportMap {
+    val tiles = Array(size) { Array(size) { TileType.GRASS } }
+    edits(tiles)
+    return ViewportMap(tiles, partyLocalXY = 0 to 0, partyWorldXY = 0 to 0)
+}
+
+/** Tiles visited when walking [steps] from [from], excluding the start. */
+private fun walk(from: Pair<Int, Int>, steps: List<Direction>): List<Pair<Int, Int>> {
+    var (x, y) = from
+    return steps.map { x += it.dx; y += it.dy; x to y }
+}
+
+// Vertical mountain wall at x=40 with gaps at the given rows.
+private fun wallWithGaps(vararg gaps: Int) = fullMap { tiles ->
+    for (y in tiles.indices) if (y !in gaps) tiles[y][40] = TileType.MOUNTAIN
+}
+
+class HierarchicalPathfinderTest : FunSpec({
+
+    test("open map route reaches the target across several clusters") {
+        val map = fullMap()
+        val res = HierarchicalPathfinder(map).findPath(2 to 3, 60 to 58, map, FogOfWar())
+        res.found shouldBe true
+        res.partial shouldBe false
+        res.searchSpace shouldBe SearchSpace.FULL_MAP
+        walk(2 to 3, res.steps).last() shouldBe (60 to 58)
+    }
+
+    test("route threads the only gap in a wall and never enters impassable tiles") {
+        val map = wallWithGaps(50)
+        val res = HierarchicalPathfinder(map).findPath(10 to 10, 60 to 10, map, FogOfWar())
+        res.found shouldBe true
+        val tiles = walk(10 to 10, res.steps)
+        tiles.last() shouldBe (60 to 10)
+        tiles.all { (x, y) -> map.isPassableAt(x, y) } shouldBe true
+        (40 to 50 in tiles) shouldBe true
+    }
+
+    test("fog block invalidates the affected clusters and the route reroutes") {
+        val map = wallWithGaps(5, 50)
+        val fog = FogOfWar()
+        val pf = HierarchicalPathfinder(map)
+        val first = walk(10 to 8, pf.findPath(10 to 8, 60 to 8, map, fog).steps)
+        (40 to 5 in first) shouldBe true
+
+        fog.markBlocked(40, 5)
+        val rerouted = pf.findPath(10 to 8, 60 to 8, map, fog)
+        rerouted.found shouldBe true
+        val tiles = walk(10 to 8, rerouted.steps)
+        tiles.last() shouldBe (60 to 8)
+        (40 to 5 in tiles) shouldBe false
+        (40 to 50 in tiles) shouldBe true
+
+        fog.clear()
+        (40 to 5 in walk(10 to 8, pf.findPath(10 to 8, 60 to 8, map, fog).steps)) shouldBe true
+    }
+
+    test("TOWN target is entered as a destination but never crossed") {
+        val map = fullMap { tiles ->
+            for (x in 20..30) tiles[30][x] = TileType.TOWN
+        }
+        val res = HierarchicalPathfinder(map).findPath(25 to 10, 25 to 30, map, FogOfWar())
+        res.found shouldBe true
+        val tiles = walk(25 to 10, res.steps)
+        tiles.last() shouldBe (25 to 30)
+        tiles.dropLast(1).none { (x, y) -> map.at(x, y) == TileType.TOWN } shouldBe true
+    }
+
+    test("start and goal on facing cluster borders are one step apart") {
+        val map = fullMap()
+        val res = HierarchicalPathfinder(map).findPath(15 to 20, 16 to 20, map, FogOfWar())
+        res.found shouldBe true
+        res.steps.size shouldBe 1
+        walk(15 to 20, res.steps).last() shouldBe (16 to 20)
+    }
+
+    test("goals on cluster corners and the map edge are reached") {
+        val map = wallWithGaps(5, 50)
+        val pf = HierarchicalPathfinder(map)
+        for (goal in listOf(16 to 16, 31 to 47, 63 to 63, 63 to 0, 0 to 63)) {
+            val res = pf.findPath(20 to 30, goal, map, FogOfWar())
+            res.found shouldBe true
+            res.searchSpace shouldBe SearchSpace.FULL_MAP
+            val tiles = walk(20 to 30, res.steps)
+            tiles.last() shouldBe goal
+            tiles.all { (x, y) -> map.isPassableAt(x, y) } shouldBe true
+        }
+    }
+
+    test("goal on a border with no entrance is reached from inside its cluster") {
+        // Column x=48 is mountain except row 40, so the x=47 border of cluster (32..47)
+        // has a single entrance; (47, 10) is a border tile with a blocked neighbour.
+        val map = fullMap { tiles -> for (y in tiles.indices) if (y != 40) tiles[y][48] = TileType.MOUNTAIN }
+        val res = HierarchicalPathfinder(map).findPath(60 to 10, 47 to 10, map, FogOfWar())
+        res.found shouldBe true
+        val tiles = walk(60 to 10, res.steps)
+        tiles.last() shouldBe (47 to 10)
+        (48 to 40 in tiles) shouldBe true
+        tiles.all { (x, y) -> map.isPassableAt(x, y) } shouldBe true
+    }
+
+    test("start and goal in one cluster split by a wall route through a neighbour") {
+        // Wall at x=24 across the whole cluster (16..31, 16..31) but open above and below it.
+        val map = fullMap { tiles -> for (y in 16..31) tiles[y][24] = TileType.MOUNTAIN }
+        val res = HierarchicalPathfinder(map).findPath(20 to 20, 28 to 20, map, FogOfWar())
+        res.found shouldBe true
+        val tiles = walk(20 to 20, res.steps)
+        tiles.last() shouldBe (28 to 20)
+        tiles.any { (_, y) -> y !in 16..31 } shouldBe true
+        tiles.all { (x, y) -> map.isPassableAt(x, y) } shouldBe true
+    }
+
+    test("impassable target falls back to the flat pathfinder feedback") {
+        val map = fullMap { tiles -> tiles[20][20] = TileType.WATER }
+        val res = HierarchicalPathfinder(map).findPath(18 to 20, 20 to 20, map, FogOfWar())
+        res.targetPassable shouldBe false
+        res.searchSpace shouldBe SearchSpace.VIEWPORT
+    }
+
+    test("graph is cached to disk and reloaded with identical routes") {
+        val dir = Files.createTempDirectory("hpa-cache").toFile()
+        try {
+            val map = wallWithGaps(5, 50)
+            val file = dir.resolve("graph.bin")
+            val built = HierarchicalPathfinder(map, cacheFile = file)
+            val expected = built.findPath(10 to 30, 60 to 30, map, FogOfWar()).steps
+            file.isFile shouldBe true
+
+            val loaded = HierarchicalPathfinder(map, cacheFile = file)
+            loaded.graph.entranceCount shouldBe built.graph.entranceCount
+            loaded.findPath(10 to 30, 60 to 30, map, FogOfWar()).steps shouldBe expected
+            dir.listFiles()!!.map { it.name } shouldBe listOf("graph.bin")
+        } finally {
+            dir.deleteRecursively()
+        }
+    }
+})
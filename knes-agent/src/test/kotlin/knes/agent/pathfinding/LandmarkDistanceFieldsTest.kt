@@ -0,0 +1,102 @@
+package knes.agent.pathfinding
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.nulls.shouldBeNull
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import knes.agent.perception.FogOfWar
+import knes.agent.perception.Landmark
+import knes.agent.perception.LandmarkKind
+import knes.agent.perception.LandmarkMemory
+import knes.agent.perception.TileType
+import knes.agent.perception.ViewportMap
+import java.nio.file.Files
+
+private fun gridOf(size: Int = 32, edits: (Array<Array<TileType>>) -> Unit = {}): ViewportMap {
+    val tiles = Array(size) { Array(size) { TileType.GRASS } }
+    edits(tiles)
+    return ViewportMap(tiles, partyLocalXY = 0 to 0, partyWorldXY = 0 to 0)
+}
+
+private fun tempLandmarks(): LandmarkMemory =
+    LandmarkMemory(file = Files.createTempFile("lm-fields-", ".json").toFile().apply { deleteOnExit() })
+
+class LandmarkDistanceFieldsTest : FunSpec({
+
+    test("distance field gives distance, nearest source and a descending next step") {
+        val field = DistanceField(8, 1, BooleanArray(8) { true })
+        field.addSources(listOf(0, 7))
+        field.distanceAt(2, 0) shouldBe 2
+        field.nearestFrom(2, 0) shouldBe (0 to 0)
+        field.nextStep(2, 0) shouldBe Direction.W
+        field.nearestFrom(5, 0) shouldBe (7 to 0)
+        field.nextStep(7, 0).shouldBeNull()
+    }
+
+    test("walls lengthen distances and sealed cells stay unreachable") {
+        val map = gridOf(5) { tiles ->
+            for (y in 0..3) tiles[y][2] = TileType.MOUNTAIN
+            tiles[0][4] = TileType.WATER
+        }
+        val fields = LandmarkDistanceFields(map, tempLandmarks(), FogOfWar())
+        val field = fields.overworldTiles(setOf(TileType.FOREST))
+        field.sourceCount shouldBe 0
+        field.distanceAt(0, 0) shouldBe -1
+
+        val lm = tempLandmarks()
+        lm.record(Landmark("inn", LandmarkKind.NPC_INNKEEPER, worldX = 0, worldY = 0))
+        val inn = LandmarkDistanceFields(map, lm, FogOfWar()).overworld(setOf(LandmarkKind.NPC_INNKEEPER))
+        inn.distanceAt(3, 0) shouldBe 11  // down to row 4, across, back up
+        inn.distanceAt(4, 0) shouldBe -1
+    }
+
+    test("TOWN source is a destination but never crossed") {
+        val map = gridOf(5) { tiles -> tiles[2][2] = TileType.TOWN; tiles[2][3] = TileType.TOWN }
+        val lm = tempLandmarks()
+        lm.record(Landmark("town", LandmarkKind.TOWN_ENTRY, worldX = 2, worldY = 2))
+        val field = LandmarkDistanceFields(map, lm, FogOfWar()).overworld(setOf(LandmarkKind.TOWN_ENTRY))
+        field.distanceAt(2, 1) shouldBe 1
+        field.distanceAt(3, 2) shouldBe -1  // second TOWN tile is not walkable transit
+        field.distanceAt(4, 2) shouldBe 4  // around via row 1
+    }
+
+    test("recording a landmark updates the cached field incrementally") {
+        val map = gridOf()
+        val lm = tempLandmarks()
+        lm.record(Landmark("a", LandmarkKind.NPC_INNKEEPER, worldX = 0, worldY = 0))
+        val fields = LandmarkDistanceFields(map, lm, FogOfWar())
+        val kinds = setOf(LandmarkKind.NPC_INNKEEPER)
+        val before = fields.overworld(kinds)
+        before.distanceAt(30, 30) shouldBe 60
+
+        lm.record(Landmark("b", LandmarkKind.NPC_INNKEEPER, worldX = 31, worldY = 31))
+        val after = fields.overworld(kinds)
+        after shouldBeSameInstanceAs before
+        after.distanceAt(30, 30) shouldBe 2
+        after.nearestFrom(30, 30) shouldBe (31 to 31)
+    }
+
+    test("fog blocks and removed landmarks rebuild the field") {
+        val map = gridOf(5)
+        val lm = tempLandmarks()
+        lm.record(Landmark("a", LandmarkKind.TOWN_ENTRY, worldX = 0, worldY = 0))
+        val fog = FogOfWar()
+        val fields = LandmarkDistanceFields(map, lm, fog)
+        val kinds = setOf(LandmarkKind.TOWN_ENTRY)
+        fields.overworld(kinds).distanceAt(2, 0) shouldBe 2
+
+        fog.markBlocked(1, 0)
+        fields.overworld(kinds).distanceAt(2, 0) shouldBe 4
+
+        lm.removeTileTaggedAt(0, 0) shouldBe true
+        fields.overworld(kinds).distanceAt(2, 0) shouldBe -1
+    }
+
+    test("interior fields are keyed by mapId and use interior passability") {
+        val map = gridOf(8) { tiles -> tiles[7][4] = TileType.DOOR }
+        val fields = LandmarkDistanceFields(gridOf(), tempLandmarks(), FogOfWar())
+        val exits = fields.interiorTiles(3, map, setOf(TileType.DOOR, TileType.STAIRS, TileType.WARP))
+        exits.distanceAt(4, 0) shouldBe 7
+        exits.nextStep(4, 0) shouldBe Direction.S
+    }
+})
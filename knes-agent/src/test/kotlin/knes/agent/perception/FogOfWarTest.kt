@@ -1,5 +1,6 @@
 package knes.agent.perception
 
+import io.kotest.assertions.throwables.shouldThrow
 import io.kotest.core.spec.style.FunSpec
 import io.kotest.matchers.shouldBe
 
@@ -54,4 +55,68 @@ class FogOfWarTest : FunSpec({
         fog.merge(ViewportMap.ofUnknown(30 to 40).also { it.tiles[8][8] = TileType.GRASS })
         fog.bbox() shouldBe (10 to 20 to (30 to 40))
     }
+
+    test("coordinates outside the grid are rejected, not wrapped") {
+        val fog = FogOfWar()
+        fog.merge(ViewportMap.ofUnknown(0 to 0).also {
+            it.tiles[8][7] = TileType.FOREST
+            it.tiles[8][8] = TileType.GRASS
+        })
+        // The cell left of the party is off the grid: skipped, not aliased onto x = 255.
+        fog.size shouldBe 1
+        fog.tileAt(255, 0) shouldBe TileType.UNKNOWN
+        shouldThrow<IllegalArgumentException> { fog.tileAt(-1, 0) }
+        shouldThrow<IllegalArgumentException> { fog.markBlocked(0, 256) }
+        shouldThrow<IllegalArgumentException> { fog.isBlocked(256, 0) }
+        fog.blockedCount shouldBe 0
+        fog.inBounds(255, 255) shouldBe true
+        fog.inBounds(-1, 0) shouldBe false
+    }
+
+    test("allReachableKnown is false while a walkable tile borders unseen ground") {
+        val fog = FogOfWar(gridSize = 16)
+        // 5x5 grass pocket at (2..6, 2..6) walled by mountains at ring 1 and 7.
+        val tiles = Array(16) { y ->
+            Array(16) { x ->
+                when {
+                    x in 2..6 && y in 2..6 -> TileType.GRASS
+                    x in 1..7 && y in 1..7 -> TileType.MOUNTAIN
+                    else -> TileType.UNKNOWN
+                }
+            }
+        }
+        fog.merge(ViewportMap(tiles, partyLocalXY = 4 to 4, partyWorldXY = 4 to 4))
+        fog.allReachableKnown(4 to 4) shouldBe true
+        fog.allReachableKnown(10 to 10) shouldBe false
+
+        // Open a gap in the wall: the gap's outer neighbour is unseen, so the frontier reopens.
+        fog.merge(ViewportMap(Array(1) { Array(1) { TileType.GRASS } }, partyLocalXY = 0 to 0, partyWorldXY = 7 to 4))
+        fog.allReachableKnown(4 to 4) shouldBe false
+        fog.markBlocked(7, 4)
+        fog.allReachableKnown(4 to 4) shouldBe true
+    }
+
+    test("binary snapshot round-trips tiles, bounds and blocks") {
+        val fog = FogOfWar()
+        fog.merge(ViewportMap.ofUnknown(10 to 20).also { it.tiles[8][8] = TileType.GRASS; it.tiles[0][0] = TileType.WATER })
+        fog.markBlocked(11, 20)
+        val bytes = java.io.ByteArrayOutputStream().also { fog.writeSnapshot(it) }.toByteArray()
+        val restored = FogOfWar.readSnapshot(bytes.inputStream())
+        restored.size shouldBe 2
+        restored.tileAt(10, 20) shouldBe TileType.GRASS
+        restored.tileAt(2, 12) shouldBe TileType.WATER
+        restored.isBlocked(11, 20) shouldBe true
+        restored.bbox() shouldBe fog.bbox()
+    }
+
+    test("blockedVersion moves only when the blocked set changes") {
+        val fog = FogOfWar()
+        fog.markBlocked(3, 3)
+        val v = fog.blockedVersion
+        fog.markBlocked(3, 3)
+        fog.blockedVersion shouldBe v
+        fog.clear()
+        (fog.blockedVersion > v) shouldBe true
+        fog.bbox() shouldBe null
+    }
 })
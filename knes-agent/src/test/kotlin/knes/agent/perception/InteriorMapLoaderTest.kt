@@ -2,6 +2,8 @@ package knes.agent.perception
 
 import io.kotest.core.spec.style.FunSpec
 import io.kotest.matchers.shouldBe
+import java.io.RandomAccessFile
+import java.nio.file.Files
 
 class InteriorMapLoaderTest : FunSpec({
     test("decodes a simple RLE map (single 1-byte tiles)") {
@@ -67,4 +69,62 @@ class InteriorMapLoaderTest : FunSpec({
             error("expected throw")
         } catch (_: IllegalArgumentException) { /* ok */ }
     }
+
+    test("repeated loads of a mapId return the same decoded instance") {
+        val rom = ByteArray(0x10010 + 0x4000)
+        rom[0x10010] = 0x00; rom[0x10011] = 0x02
+        rom[0x10210] = 0x05; rom[0x10211] = 0xFF.toByte()
+        val loader = InteriorMapLoader(rom)
+        (loader.load(0) === loader.load(0)) shouldBe true
+    }
+
+    test("artifact serves the same tiles, classification and exits as RLE decode") {
+        val rom = ByteArray(0x10010 + 0x4000)
+        rom[0x10010] = 0x00; rom[0x10011] = 0x02
+        var off = 0x10210
+        for (id in 0 until 0x80) rom[off++] = id.toByte()
+        rom[off] = 0xFF.toByte()
+        val dir = Files.createTempDirectory("interior-artifact").toFile()
+        try {
+            val file = dir.resolve("interiors.bin")
+            val decoded = InteriorMapLoader(rom).load(0)
+            val fromArtifact = InteriorMapLoader(rom, file).load(0)
+            file.isFile shouldBe true
+            fromArtifact.tiles.contentEquals(decoded.tiles) shouldBe true
+            fromArtifact.exitCells.contentEquals(decoded.exitCells) shouldBe true
+            for (id in 0 until 0x80) {
+                fromArtifact.classifyAt(id % 64, id / 64) shouldBe decoded.classifyAt(id % 64, id / 64)
+            }
+
+            // A second loader maps the existing file instead of rebuilding it.
+            val written = file.lastModified()
+            InteriorMapLoader(rom, file).load(0).tileAt(3, 0) shouldBe 0x03
+            file.lastModified() shouldBe written
+        } finally {
+            dir.deleteRecursively()
+        }
+    }
+
+    test("a truncated artifact is rebuilt, and no temp file is left behind") {
+        val rom = ByteArray(0x10010 + 0x4000)
+        rom[0x10010] = 0x00; rom[0x10011] = 0x02
+        var off = 0x10210
+        for (id in 0 until 0x80) rom[off++] = id.toByte()
+        rom[off] = 0xFF.toByte()
+        val dir = Files.createTempDirectory("interior-artifact").toFile()
+        try {
+            val file = dir.resolve("interiors.bin")
+            val decoded = InteriorMapLoader(rom, file).load(0)
+            val size = file.length()
+            RandomAccessFile(file, "rw").use { it.setLength(size - 1) }
+
+            val rebuilt = InteriorMapLoader(rom, file).load(0)
+            rebuilt.tiles.contentEquals(decoded.tiles) shouldBe true
+            rebuilt.exitCells.contentEquals(decoded.exitCells) shouldBe true
+            file.length() shouldBe size
+            dir.list()!!.toList() shouldBe listOf("interiors.bin")
+        } finally {
+            dir.deleteRecursively()
+        }
+    }
 })
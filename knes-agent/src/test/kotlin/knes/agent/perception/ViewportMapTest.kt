@@ -0,0 +1,47 @@
+package knes.agent.perception
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.shouldBe
+
+class ViewportMapTest : FunSpec({
+
+    test("array constructor packs tiles and tiles[y][x] writes through") {
+        val grid = Array(4) { Array(5) { TileType.GRASS } }
+        grid[1][3] = TileType.WATER
+        val vm = ViewportMap(grid, partyLocalXY = 2 to 2, partyWorldXY = 10 to 10)
+
+        vm.width shouldBe 5
+        vm.height shouldBe 4
+        vm.at(3, 1) shouldBe TileType.WATER
+        vm.isPassableAt(3, 1) shouldBe false
+        vm.isPassableAt(0, 0) shouldBe true
+
+        vm.tiles[2][4] = TileType.TOWN
+        vm.at(4, 2) shouldBe TileType.TOWN
+        vm.isImpassableTransitAt(4, 2) shouldBe true
+        vm.at(5, 0) shouldBe TileType.UNKNOWN
+    }
+
+    test("passability masks agree with TileType") {
+        for (type in TileType.values()) {
+            val vm = ViewportMap(arrayOf(arrayOf(type)), 0 to 0, 0 to 0)
+            vm.isPassableAt(0, 0) shouldBe type.isPassable()
+            vm.isImpassableTransitAt(0, 0) shouldBe type.isImpassableTransit()
+        }
+    }
+
+    test("window shares cells, is read-only and equals an owned copy") {
+        val cells = ByteArray(8 * 8) { (it % TileType.values().size).toByte() }
+        val window = ViewportMap.window(cells, offset = 9, stride = 8, width = 3, height = 2,
+            partyLocalXY = 1 to 1, partyWorldXY = 4 to 4)
+        val copy = ViewportMap(
+            Array(2) { y -> Array(3) { x -> TileType.byOrdinal(cells[9 + y * 8 + x].toInt()) } },
+            partyLocalXY = 1 to 1, partyWorldXY = 4 to 4,
+        )
+
+        window shouldBe copy
+        window.hashCode() shouldBe copy.hashCode()
+        shouldThrow<IllegalStateException> { window.tiles[0][0] = TileType.GRASS }
+    }
+})
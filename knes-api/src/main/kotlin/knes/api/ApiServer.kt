@@ -9,6 +9,8 @@ import io.ktor.server.response.*
 import io.ktor.server.routing.*
 import knes.agent.tools.LocalEmulatorToolset
 import knes.emulator.input.InputHandler
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.withContext
 import kotlinx.serialization.Serializable
 import kotlinx.serialization.json.Json
 
@@ -18,6 +20,8 @@ import kotlinx.serialization.json.Json
 @Serializable data class TapRequest(val button: String, val count: Int = 1, val pressFrames: Int = 5, val gapFrames: Int = 15, val screenshot: Boolean = false)
 @Serializable data class ButtonsRequest(val buttons: List<String>)
 @Serializable data class WatchRequest(val addresses: Map<String, String>)
+@Serializable data class RunAheadRequest(val frames: Int)
+@Serializable data class TimingsRequest(val enabled: Boolean)
 @Serializable data class StatusResponse(val status: String, val romLoaded: Boolean = false, val frames: Int = 0)
 @Serializable data class StepResponse(val frame: Int, val ram: Map<String, Int> = emptyMap(), val screenshot: String? = null)
 @Serializable data class ScreenBase64Response(val frame: Int, val image: String)
@@ -25,6 +29,23 @@ import kotlinx.serialization.json.Json
 @Serializable data class CpuState(val pc: Int, val a: Int, val x: Int, val y: Int, val sp: Int)
 @Serializable data class Fm2Response(val framesExecuted: Int, val frame: Int)
 @Serializable data class ButtonStateResponse(val status: String, val held: List<String>)
+@Serializable data class ProfilerRequest(val sampleEvery: Int = 1)
+@Serializable data class ProfiledRoutine(val name: String, val address: Int, val bank: Int, val calls: Long, val selfCycles: Long, val totalCycles: Long)
+@Serializable data class ProfiledAddress(val location: String, val pc: Int, val bank: Int, val instructions: Long, val cycles: Long)
+@Serializable
+data class ProfilerResponse(
+    val running: Boolean,
+    val sampleEvery: Int,
+    val instructions: Long,
+    val cycles: Long,
+    val routines: List<ProfiledRoutine>,
+    val addresses: List<ProfiledAddress>,
+)
+@Serializable data class BreakpointRequest(val kind: String, val address: String? = null, val bank: Int = -1, val condition: String? = null)
+@Serializable data class BreakpointInfo(val id: Int, val kind: String, val address: Int, val name: String? = null, val bank: Int, val condition: String? = null)
+@Serializable data class BreakpointHit(val breakpoint: BreakpointInfo, val pc: Int, val address: Int, val old: Int, val value: Int)
+@Serializable data class RunUntilBreakRequest(val maxFrames: Int = 600, val screenshot: Boolean = false)
+@Serializable data class RunUntilBreakResponse(val hit: BreakpointHit? = null, val frame: Int, val cpu: Map<String, Int>, val ram: Map<String, Int> = emptyMap(), val screenshot: String? = null)
 
 @Serializable
 data class ActionInfo(
@@ -52,8 +73,15 @@ data class ActionExecuteResponse(
     val screenshot: String? = null
 )
 
+private const val WATCH_EVENTS_KEEPALIVE_MS = 15_000L
+
+private fun knes.debug.Debugger.Breakpoint.toInfo(session: EmulatorSession) = BreakpointInfo(
+    id, kind.name.lowercase(), address, session.watchedName(address).takeIf { address >= 0 }, bank, condition?.toString()
+)
+
 fun Application.configureRoutes(session: EmulatorSession) {
     val toolset = LocalEmulatorToolset(session)
+    monitor.subscribe(ApplicationStopped) { toolset.close() }
 
     install(ContentNegotiation) {
         json(Json { prettyPrint = true })
@@ -65,6 +93,27 @@ fun Application.configureRoutes(session: EmulatorSession) {
             call.respond(StatusResponse("ok", session.romLoaded, session.frameCount))
         }
 
+        // Metrics — NOT delegated: Prometheus text exposition of the session's counters and histograms
+        get("/metrics") {
+            call.respondText(
+                session.metrics.toPrometheusText(),
+                ContentType.parse("text/plain; version=0.0.4; charset=utf-8")
+            )
+        }
+
+        // Component timings — NOT delegated: opt-in for the sampled knes_ppu/papu/mapper_* counters,
+        // off by default since it routes every mapper access through a timing wrapper.
+        post("/metrics/timings") {
+            val req = try {
+                call.receive<TimingsRequest>()
+            } catch (e: Exception) {
+                call.respond(HttpStatusCode.BadRequest, StatusResponse("invalid request: ${e.message}"))
+                return@post
+            }
+            session.componentTimings = req.enabled
+            call.respond(StatusResponse(if (req.enabled) "timings on" else "timings off", session.romLoaded, session.frameCount))
+        }
+
         // ROM load — delegated; shared-mode guard preserved in route
         post("/rom") {
             if (session.shared) {
@@ -86,6 +135,147 @@ fun Application.configureRoutes(session: EmulatorSession) {
             call.respond(StatusResponse("reset", session.romLoaded, session.frameCount))
         }
 
+        // Run-ahead — NOT delegated: a session display setting, not an agent action.
+        // The screen shows `frames` frames ahead of RAM; cost is knes_runahead_frames_total.
+        post("/runahead") {
+            val req = try {
+                call.receive<RunAheadRequest>()
+            } catch (e: Exception) {
+                call.respond(HttpStatusCode.BadRequest, StatusResponse("invalid request: ${e.message}"))
+                return@post
+            }
+            try {
+                session.runAheadFrames = req.frames
+            } catch (e: IllegalArgumentException) {
+                call.respond(HttpStatusCode.BadRequest, StatusResponse("invalid request: ${e.message}"))
+                return@post
+            }
+            call.respond(StatusResponse("runahead ${req.frames}", session.romLoaded, session.frameCount))
+        }
+
+        // Profiler — NOT delegated: a diagnostic of the emulated 6502 code, not an agent action.
+        // start/stop install and remove a CpuProfiler; GET reports the last one, running or not.
+        post("/profiler/start") {
+            val req = try {
+                call.receive<ProfilerRequest>()
+            } catch (e: Exception) {
+                call.respond(HttpStatusCode.BadRequest, StatusResponse("invalid request: ${e.message}"))
+                return@post
+            }
+            try {
+                session.startProfiling(req.sampleEvery)
+            } catch (e: IllegalArgumentException) {
+                call.respond(HttpStatusCode.BadRequest, StatusResponse("invalid request: ${e.message}"))
+                return@post
+            }
+            call.respond(StatusResponse("profiling", session.romLoaded, session.frameCount))
+        }
+
+        post("/profiler/stop") {
+            session.stopProfiling()
+            call.respond(StatusResponse("stopped", session.romLoaded, session.frameCount))
+        }
+
+        get("/profiler") {
+            val profiler = session.cpuProfiler
+            if (profiler == null) {
+                call.respond(HttpStatusCode.NotFound, StatusResponse("no profile: POST /profiler/start first"))
+                return@get
+            }
+            val limit = call.request.queryParameters["limit"]?.toIntOrNull() ?: knes.emulator.cpu.CpuProfiler.DEFAULT_LIMIT
+            call.respond(
+                ProfilerResponse(
+                    running = session.profiling,
+                    sampleEvery = profiler.sampleEvery,
+                    instructions = profiler.instructions,
+                    cycles = profiler.totalCycles,
+                    routines = profiler.hotRoutines(limit).map {
+                        ProfiledRoutine(it.name, it.address, it.bank, it.calls, it.selfCycles, it.totalCycles)
+                    },
+                    addresses = profiler.hotSpots(limit).map {
+                        ProfiledAddress(it.location, it.pc, it.bank, it.instructions, it.cycles)
+                    },
+                )
+            )
+        }
+
+        // Folded stacks (`main;caller;callee cycles`) for flamegraph.pl / speedscope.
+        get("/profiler/folded") {
+            val profiler = session.cpuProfiler
+            if (profiler == null) {
+                call.respond(HttpStatusCode.NotFound, StatusResponse("no profile: POST /profiler/start first"))
+                return@get
+            }
+            call.respondText(profiler.foldedStacks(), ContentType.Text.Plain)
+        }
+
+        // Breakpoints — NOT delegated: execution breakpoints and read/write watchpoints on the
+        // emulated CPU. `address` is hex (0x1F, $1F), decimal, or a RAM name from the applied profile.
+        get("/breakpoints") {
+            call.respond(session.debugger.list().map { it.toInfo(session) })
+        }
+
+        post("/breakpoints") {
+            val bp = try {
+                val req = call.receive<BreakpointRequest>()
+                val kind = knes.debug.Debugger.Kind.valueOf(req.kind.uppercase())
+                val address = req.address?.let { session.watchedAddress(it) ?: knes.debug.Debugger.parseNumber(it) } ?: -1
+                val condition = req.condition?.let { knes.debug.Debugger.Condition.parse(it) }
+                session.debugger.add(kind, address, req.bank, condition)
+            } catch (e: Exception) {
+                call.respond(HttpStatusCode.BadRequest, StatusResponse("invalid request: ${e.message}"))
+                return@post
+            }
+            call.respond(bp.toInfo(session))
+        }
+
+        delete("/breakpoints") {
+            session.debugger.clear()
+            call.respond(StatusResponse("cleared", session.romLoaded, session.frameCount))
+        }
+
+        delete("/breakpoints/{id}") {
+            val id = call.parameters["id"]?.toIntOrNull()
+            if (id == null || !session.debugger.remove(id)) {
+                call.respond(HttpStatusCode.NotFound, StatusResponse("no breakpoint ${call.parameters["id"]}"))
+                return@delete
+            }
+            call.respond(StatusResponse("removed", session.romLoaded, session.frameCount))
+        }
+
+        // Run until break — runs up to maxFrames frames and stops on the first breakpoint hit,
+        // mid-frame. `hit` is null when maxFrames ran out first. Standalone only.
+        post("/run-until-break") {
+            if (!session.romLoaded) {
+                call.respond(HttpStatusCode.BadRequest, StatusResponse("no ROM loaded"))
+                return@post
+            }
+            if (session.shared) {
+                call.respond(HttpStatusCode.BadRequest, StatusResponse("shared mode: breakpoints need a standalone session"))
+                return@post
+            }
+            val req = try {
+                call.receive<RunUntilBreakRequest>()
+            } catch (e: Exception) {
+                call.respond(HttpStatusCode.BadRequest, StatusResponse("invalid request: ${e.message}"))
+                return@post
+            }
+            if (req.maxFrames <= 0) {
+                call.respond(HttpStatusCode.BadRequest, StatusResponse("invalid request: maxFrames must be positive"))
+                return@post
+            }
+            val hit = session.runUntilBreak(req.maxFrames)
+            call.respond(
+                RunUntilBreakResponse(
+                    hit = hit?.let { BreakpointHit(it.breakpoint.toInfo(session), it.pc, it.address, it.old, it.value) },
+                    frame = session.frameCount,
+                    cpu = session.readCpuRegs(),
+                    ram = session.getWatchedState(),
+                    screenshot = if (req.screenshot) session.getScreenBase64() else null,
+                )
+            )
+        }
+
         // Step — delegated: toolset.sequence / toolset.step handle both standalone and shared mode.
         post("/step") {
             if (!session.romLoaded) {
@@ -141,6 +331,52 @@ fun Application.configureRoutes(session: EmulatorSession) {
             }
         }
 
+        // Batch — delegated: toolset.batch runs a script of step/tap/wait ops server-side with
+        // RAM / frame-hash stop conditions and returns one consolidated BatchResult.
+        post("/batch") {
+            if (!session.romLoaded) {
+                call.respond(HttpStatusCode.BadRequest, StatusResponse("no ROM loaded"))
+                return@post
+            }
+            val req: knes.agent.tools.results.BatchRequest
+            try {
+                req = call.receive()
+            } catch (e: Exception) {
+                call.respond(HttpStatusCode.BadRequest, StatusResponse("invalid request: ${e.message}"))
+                return@post
+            }
+            try {
+                call.respond(toolset.batch(req))
+            } catch (e: IllegalArgumentException) {
+                call.respond(HttpStatusCode.BadRequest, StatusResponse("invalid request: ${e.message}"))
+            } catch (e: Exception) {
+                call.respond(HttpStatusCode.InternalServerError, StatusResponse("batch failed: ${e.message}"))
+            }
+        }
+
+        // Plan — delegated: toolset.planInputs searches input sequences over forked savestates
+        // on all cores and replays the shortest one that meets the RAM goal.
+        post("/plan") {
+            if (!session.romLoaded) {
+                call.respond(HttpStatusCode.BadRequest, StatusResponse("no ROM loaded"))
+                return@post
+            }
+            val req: knes.agent.tools.results.PlanRequest
+            try {
+                req = call.receive()
+            } catch (e: Exception) {
+                call.respond(HttpStatusCode.BadRequest, StatusResponse("invalid request: ${e.message}"))
+                return@post
+            }
+            try {
+                call.respond(toolset.planInputs(req))
+            } catch (e: IllegalArgumentException) {
+                call.respond(HttpStatusCode.BadRequest, StatusResponse("invalid request: ${e.message}"))
+            } catch (e: Exception) {
+                call.respond(HttpStatusCode.InternalServerError, StatusResponse("plan failed: ${e.message}"))
+            }
+        }
+
         // Screen (binary PNG) — delegated; base64-decode toolset result
         get("/screen") {
             if (!session.romLoaded) {
@@ -161,6 +397,16 @@ fun Application.configureRoutes(session: EmulatorSession) {
             call.respond(ScreenBase64Response(session.frameCount, screen.base64))
         }
 
+        // Screen text — delegated; windows and cursors decoded from nametables with the
+        // applied profile's text table (no PNG encoding).
+        get("/screen/text") {
+            if (!session.romLoaded) {
+                call.respond(HttpStatusCode.BadRequest, StatusResponse("no ROM loaded"))
+                return@get
+            }
+            call.respond(toolset.readScreenText())
+        }
+
         // State — delegated; StateSnapshot serializes ram/cpu/heldButtons (compatible with tests)
         get("/state") {
             if (!session.romLoaded) {
@@ -180,6 +426,34 @@ fun Application.configureRoutes(session: EmulatorSession) {
             call.respond(StatusResponse("ok", session.romLoaded, session.frameCount))
         }
 
+        // Watch events — NOT delegated: Server-Sent Events stream of RAM write-watchpoint hits.
+        // One `write` event per changed byte on the addresses set via /watch or a profile,
+        // stamped with the frame it happened in. Clients subscribe once instead of polling /state.
+        get("/watch/events") {
+            val cursor = session.watchpoints.subscribe()
+            call.response.header(HttpHeaders.CacheControl, "no-cache")
+            call.respondTextWriter(ContentType.Text.EventStream) {
+                var reportedDropped = 0L
+                while (true) {
+                    val delivered = cursor.drain { frame, address, old, new ->
+                        val name = session.watchedName(address)?.let { "\"$it\"" } ?: "null"
+                        write("event: write\ndata: {\"frame\":$frame,\"address\":$address,\"name\":$name,\"old\":$old,\"new\":$new}\n\n")
+                    }
+                    if (cursor.dropped != reportedDropped) {
+                        reportedDropped = cursor.dropped
+                        write("event: dropped\ndata: {\"dropped\":$reportedDropped}\n\n")
+                    }
+                    if (delivered > 0) {
+                        flush()
+                    } else if (!withContext(Dispatchers.IO) { cursor.await(WATCH_EVENTS_KEEPALIVE_MS) }) {
+                        // Keep-alive comment doubles as disconnect detection: write fails once the client is gone.
+                        write(": keepalive\n\n")
+                        flush()
+                    }
+                }
+            }
+        }
+
         // Profiles list — delegated; ProfileSummary serializes id/name/description
         get("/profiles") {
             call.respond(toolset.listProfiles())
@@ -68,19 +68,19 @@ class ApiControllerTest : FunSpec({
         val c = ApiController()
         c.pressButton(InputHandler.KEY_A) // persistent hold
 
-        val latch = c.enqueueSteps(listOf(StepRequest(listOf("B"), 1)))
+        val ticket = c.enqueueSteps(listOf(StepRequest(listOf("B"), 1)))
         c.getKeyState(InputHandler.KEY_A) shouldBe 0x41.toShort()  // persistent
         c.getKeyState(InputHandler.KEY_B) shouldBe 0x41.toShort()  // from queue
 
         c.onFrameBoundary() // consume queue entry
-        latch.await(100, java.util.concurrent.TimeUnit.MILLISECONDS) shouldBe true
+        c.inputQueue.awaitCompletion(ticket, 100, java.util.concurrent.TimeUnit.MILLISECONDS) shouldBe true
         c.getKeyState(InputHandler.KEY_A) shouldBe 0x41.toShort()  // still persistent
         c.getKeyState(InputHandler.KEY_B) shouldBe 0x40.toShort()  // queue empty
     }
 
-    test("enqueueSteps converts StepRequest to FrameInput") {
+    test("enqueueSteps converts StepRequest to per-frame masks") {
         val c = ApiController()
-        val latch = c.enqueueSteps(listOf(
+        val ticket = c.enqueueSteps(listOf(
             StepRequest(listOf("A"), 2),
             StepRequest(emptyList(), 1),
             StepRequest(listOf("B"), 1)
@@ -99,7 +99,7 @@ class ApiControllerTest : FunSpec({
         c.getKeyState(InputHandler.KEY_B) shouldBe 0x41.toShort()
 
         c.onFrameBoundary() // done
-        latch.await(100, java.util.concurrent.TimeUnit.MILLISECONDS) shouldBe true
+        c.inputQueue.awaitCompletion(ticket, 100, java.util.concurrent.TimeUnit.MILLISECONDS) shouldBe true
         c.getKeyState(InputHandler.KEY_B) shouldBe 0x40.toShort()
     }
 
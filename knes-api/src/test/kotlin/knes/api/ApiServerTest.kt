@@ -173,4 +173,109 @@ class ApiServerTest : FunSpec({
             response.status shouldBe HttpStatusCode.BadRequest
         }
     }
+
+    test("GET /metrics returns Prometheus text") {
+        testApplication {
+            application { configureRoutes(EmulatorSession()) }
+            val response = client.get("/metrics")
+            response.status shouldBe HttpStatusCode.OK
+            val body = response.bodyAsText()
+            body shouldContain "# TYPE knes_frames_total counter"
+            body shouldContain "knes_cpu_instructions_total 0"
+            body shouldContain "knes_advance_frames_seconds_bucket{le=\"+Inf\"} 0"
+            body shouldContain "knes_png_encode_seconds_count 0"
+        }
+    }
+
+    test("component timings are off until enabled") {
+        val session = EmulatorSession()
+        session.componentTimings shouldBe false
+        testApplication {
+            application { configureRoutes(session) }
+            client.post("/metrics/timings") {
+                contentType(ContentType.Application.Json)
+                setBody("not json")
+            }.status shouldBe HttpStatusCode.BadRequest
+            client.post("/metrics/timings") {
+                contentType(ContentType.Application.Json)
+                setBody("""{"enabled": true}""")
+            }.status shouldBe HttpStatusCode.OK
+            session.componentTimings shouldBe true
+        }
+    }
+
+    test("POST /runahead validates the depth") {
+        testApplication {
+            application { configureRoutes(EmulatorSession()) }
+            client.post("/runahead") {
+                contentType(ContentType.Application.Json)
+                setBody("""{"frames": 2}""")
+            }.status shouldBe HttpStatusCode.OK
+            client.post("/runahead") {
+                contentType(ContentType.Application.Json)
+                setBody("""{"frames": 99}""")
+            }.status shouldBe HttpStatusCode.BadRequest
+            client.post("/runahead") {
+                contentType(ContentType.Application.Json)
+                setBody("""{"frames": "two"}""")
+            }.status shouldBe HttpStatusCode.BadRequest
+        }
+    }
+
+    test("profiler start, report and stop") {
+        testApplication {
+            application { configureRoutes(EmulatorSession()) }
+            client.get("/profiler").status shouldBe HttpStatusCode.NotFound
+            client.post("/profiler/start") {
+                contentType(ContentType.Application.Json)
+                setBody("""{"sampleEvery": 3}""")
+            }.status shouldBe HttpStatusCode.BadRequest
+            client.post("/profiler/start") {
+                contentType(ContentType.Application.Json)
+                setBody("{}")
+            }.status shouldBe HttpStatusCode.OK
+            client.get("/profiler").bodyAsText() shouldContain "\"running\": true"
+            client.post("/profiler/stop").status shouldBe HttpStatusCode.OK
+            client.get("/profiler").bodyAsText() shouldContain "\"running\": false"
+            client.get("/profiler/folded").status shouldBe HttpStatusCode.OK
+        }
+    }
+
+    test("breakpoints add, list and remove; run-until-break needs a ROM") {
+        testApplication {
+            application { configureRoutes(EmulatorSession()) }
+            val created = client.post("/breakpoints") {
+                contentType(ContentType.Application.Json)
+                setBody("""{"kind": "write", "address": "0x48", "condition": "changed"}""")
+            }
+            created.status shouldBe HttpStatusCode.OK
+            created.bodyAsText() shouldContain "\"address\": 72"
+            client.post("/breakpoints") {
+                contentType(ContentType.Application.Json)
+                setBody("""{"kind": "execute", "address": "$8000", "condition": "== 1"}""")
+            }.status shouldBe HttpStatusCode.BadRequest
+            client.post("/breakpoints") {
+                contentType(ContentType.Application.Json)
+                setBody("""{"kind": "sometimes"}""")
+            }.status shouldBe HttpStatusCode.BadRequest
+            client.get("/breakpoints").bodyAsText() shouldContain "\"condition\": \"changed\""
+            client.delete("/breakpoints/1").status shouldBe HttpStatusCode.OK
+            client.delete("/breakpoints/1").status shouldBe HttpStatusCode.NotFound
+            client.post("/run-until-break") {
+                contentType(ContentType.Application.Json)
+                setBody("{}")
+            }.status shouldBe HttpStatusCode.BadRequest
+        }
+    }
+
+    test("POST /batch without ROM returns 400") {
+        testApplication {
+            application { configureRoutes(EmulatorSession()) }
+            val response = client.post("/batch") {
+                contentType(ContentType.Application.Json)
+                setBody("""{"ops": [{"op": "wait", "frames": 10}]}""")
+            }
+            response.status shouldBe HttpStatusCode.BadRequest
+        }
+    }
 })
@@ -0,0 +1,107 @@
+package knes.api
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.shouldBe
+import knes.emulator.mappers.MapperDefault
+import java.io.RandomAccessFile
+import java.nio.file.Files
+import javax.imageio.ImageIO
+
+class FrameRecorderTest : FunSpec({
+
+    val dir = Files.createTempDirectory("frame-recorder")
+
+    // A scrolling pattern over [colors] distinct colours; consecutive frames differ slightly.
+    fun frame(n: Int, colors: Int = 24) = IntArray(256 * 240) { i ->
+        val x = i % 256
+        val y = i / 256
+        (((x + n) / 8 + y / 8) % colors) * 0x010203
+    }
+
+    fun decode(recording: FrameRecording): List<Triple<Int, Int, List<Int>>> {
+        val frames = mutableListOf<Triple<Int, Int, List<Int>>>()
+        recording.forEachFrame { f -> frames += Triple(f.number, f.buttons, f.pixels().toList()) }
+        return frames
+    }
+
+    test("frames, numbers and buttons round-trip losslessly across keyframes") {
+        val path = dir.resolve("roundtrip.knv")
+        val expected = (0 until 25).map { Triple(100 + it, it and 0xFF, frame(it).toList()) }
+        FrameRecorder(path, keyframeInterval = 10).use { rec ->
+            for ((number, buttons, pixels) in expected) rec.record(pixels.toIntArray(), number, buttons)
+        }
+
+        decode(FrameRecording(path)) shouldBe expected
+        // Mostly-unchanged deltas should compress far below the raw index planes.
+        (Files.size(path) < 25L * 256 * 240 / 20) shouldBe true
+    }
+
+    test("a palette overflow starts a new palette without losing colours") {
+        val path = dir.resolve("overflow.knv")
+        // 200 colours each, but disjoint between the two frames: 400 total.
+        val a = IntArray(256 * 240) { (it % 200) + 1 }
+        val b = IntArray(256 * 240) { (it % 200) + 1000 }
+        FrameRecorder(path).use { rec ->
+            rec.record(a, 1, 0)
+            rec.record(b, 2, 0)
+            rec.record(a, 3, 0)
+        }
+        decode(FrameRecording(path)).map { it.third } shouldBe listOf(a.toList(), b.toList(), a.toList())
+    }
+
+    test("a frame with too many colours fails the recording instead of leaking a buffer") {
+        val path = dir.resolve("too-many-colours.knv")
+        val rec = FrameRecorder(path)
+        rec.record(frame(0), 0, 0)
+        // More frames than the buffer pool holds; each must be rejected, not block.
+        repeat(6) {
+            shouldThrow<IllegalStateException> { rec.record(IntArray(256 * 240) { i -> i }, 1, 0) }
+        }
+        shouldThrow<IllegalStateException> { rec.close() }
+    }
+
+    test("a truncated file decodes up to the damage") {
+        val path = dir.resolve("truncated.knv")
+        FrameRecorder(path).use { rec -> repeat(5) { rec.record(frame(it), it, 0) } }
+        RandomAccessFile(path.toFile(), "rw").use { it.setLength(it.length() - 3) }
+
+        FrameRecording(path).frameCount() shouldBe 4
+    }
+
+    test("exports PNGs and an animated GIF with exact colours") {
+        val path = dir.resolve("export.knv")
+        FrameRecorder(path).use { rec -> repeat(6) { rec.record(frame(it), it, 0) } }
+        val recording = FrameRecording(path)
+
+        recording.exportPngs(dir.resolve("pngs"), step = 2) shouldBe 3
+        val png = ImageIO.read(dir.resolve("pngs").resolve("frame-000002.png").toFile())
+        png.getRGB(0, 0, 256, 240, null, 0, 256).map { it and 0xFFFFFF } shouldBe frame(2).toList()
+
+        val gif = dir.resolve("clip.gif")
+        recording.exportGif(gif, from = 1, until = 5) shouldBe 4
+        val reader = ImageIO.getImageReadersByFormatName("gif").next()
+        ImageIO.createImageInputStream(gif.toFile()).use { stream ->
+            reader.input = stream
+            reader.getNumImages(true) shouldBe 4
+            reader.read(0).getRGB(0, 0, 256, 240, null, 0, 256).map { it and 0xFFFFFF } shouldBe frame(1).toList()
+        }
+    }
+
+    test("a session records the buttons the game latched, not the ones held at frame end") {
+        val session = EmulatorSession()
+        val mapper = MapperDefault(session.nes)
+        session.nes.memoryMapper = mapper
+        session.controller.setButtons(listOf("A"))
+        mapper.write(0x4016, 1)
+        mapper.write(0x4016, 0)
+        session.controller.setButtons(listOf("B"))
+
+        val path = dir.resolve("latched.knv")
+        session.startRecording(path)
+        session.updateFrameBuffer(frame(0))
+        session.stopRecording() shouldBe 1L
+
+        decode(FrameRecording(path)).single().second shouldBe 1
+    }
+})
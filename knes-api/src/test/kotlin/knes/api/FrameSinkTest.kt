@@ -0,0 +1,66 @@
+package knes.api
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.shouldBe
+import java.nio.file.Files
+import java.util.Base64
+import javax.imageio.ImageIO
+
+class FrameSinkTest : FunSpec({
+
+    val dir = Files.createTempDirectory("frame-sink")
+
+    test("raw frames are encoded to lossless PNGs") {
+        val frame = IntArray(256 * 240) { it * 31 and 0xFFFFFF }
+        val out = dir.resolve("raw.png")
+
+        FrameSink(policy = FrameSink.Policy.BLOCK).use { sink ->
+            sink.submit(frame, 256, 240, out) shouldBe true
+            // The caller may reuse its buffer as soon as submit returns.
+            frame.fill(0)
+            sink.flush()
+            sink.written.sum() shouldBe 1L
+        }
+
+        val img = ImageIO.read(out.toFile())
+        img.getRGB(0, 0, 256, 240, null, 0, 256).map { it and 0xFFFFFF } shouldBe
+            List(256 * 240) { it * 31 and 0xFFFFFF }
+        Files.list(dir).use { files -> files.noneMatch { it.toString().endsWith(".tmp") } } shouldBe true
+    }
+
+    test("jobs for one target on several workers all land, and failures leave no temp file") {
+        val target = Files.createTempDirectory("frame-sink-same")
+        val out = target.resolve("turn.png")
+        FrameSink(threads = 2, policy = FrameSink.Policy.BLOCK).use { sink ->
+            repeat(20) { i -> sink.submit(IntArray(256 * 240) { i }, 256, 240, out) }
+            sink.submitBase64("not base64!", target.resolve("broken.png"))
+            sink.flush()
+            sink.written.sum() shouldBe 20L
+            sink.failed.sum() shouldBe 1L
+        }
+        Files.list(target).use { files -> files.map { it.fileName.toString() }.toList() } shouldBe listOf("turn.png")
+    }
+
+    test("base64 images are written byte for byte") {
+        val bytes = byteArrayOf(1, 2, 3, 4)
+        val out = dir.resolve("remote.png")
+        FrameSink().use { sink ->
+            sink.submitBase64(Base64.getEncoder().encodeToString(bytes), out)
+        }
+        Files.readAllBytes(out).toList() shouldBe bytes.toList()
+    }
+
+    test("a full queue drops frames instead of blocking the caller") {
+        val frame = IntArray(256 * 240)
+        val submitted = 64
+        FrameSink(capacity = 1, threads = 1, policy = FrameSink.Policy.DROP).use { sink ->
+            var accepted = 0L
+            repeat(submitted) { i ->
+                if (sink.submit(frame, 256, 240, dir.resolve("burst-$i.png"))) accepted++
+            }
+            sink.flush()
+            sink.written.sum() shouldBe accepted
+            (sink.written.sum() + sink.dropped.sum()) shouldBe submitted.toLong()
+        }
+    }
+})
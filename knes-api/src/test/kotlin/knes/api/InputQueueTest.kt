@@ -42,29 +42,29 @@ class InputQueueTest : FunSpec({
         q.isPressed(InputHandler.KEY_A) shouldBe false
     }
 
-    test("latch counts down on each advanceFrame") {
+    test("pending frames count down on each advanceFrame") {
         val q = InputQueue()
-        val latch = q.enqueue(listOf(
+        val ticket = q.enqueue(listOf(
             FrameInput(setOf(InputHandler.KEY_A)),
             FrameInput(setOf(InputHandler.KEY_A)),
             FrameInput(setOf(InputHandler.KEY_A))
         ))
-        latch.count shouldBe 3
+        q.pending(ticket) shouldBe 3
 
         q.advanceFrame()
-        latch.count shouldBe 2
+        q.pending(ticket) shouldBe 2
 
         q.advanceFrame()
-        latch.count shouldBe 1
+        q.pending(ticket) shouldBe 1
 
         q.advanceFrame()
-        latch.count shouldBe 0
-        latch.await(0, TimeUnit.MILLISECONDS) shouldBe true
+        q.pending(ticket) shouldBe 0
+        q.awaitCompletion(ticket, 0, TimeUnit.MILLISECONDS) shouldBe true
     }
 
     test("empty buttons enqueue correctly") {
         val q = InputQueue()
-        val latch = q.enqueue(listOf(
+        val ticket = q.enqueue(listOf(
             FrameInput(emptySet()),
             FrameInput(emptySet())
         ))
@@ -73,7 +73,7 @@ class InputQueueTest : FunSpec({
 
         q.advanceFrame()
         q.advanceFrame()
-        latch.await(0, TimeUnit.MILLISECONDS) shouldBe true
+        q.awaitCompletion(ticket, 0, TimeUnit.MILLISECONDS) shouldBe true
     }
 
     test("advanceFrame with no queue is a no-op") {
@@ -84,18 +84,67 @@ class InputQueueTest : FunSpec({
 
     test("second enqueue appends to existing queue") {
         val q = InputQueue()
-        val latch1 = q.enqueue(listOf(FrameInput(setOf(InputHandler.KEY_A))))
-        val latch2 = q.enqueue(listOf(FrameInput(setOf(InputHandler.KEY_B))))
+        val ticket1 = q.enqueue(listOf(FrameInput(setOf(InputHandler.KEY_A))))
+        val ticket2 = q.enqueue(listOf(FrameInput(setOf(InputHandler.KEY_B))))
 
         // First entry already set as currentFrame
         q.isPressed(InputHandler.KEY_A) shouldBe true
 
         q.advanceFrame() // completes first enqueue's entry, pops second
-        latch1.await(0, TimeUnit.MILLISECONDS) shouldBe true
+        q.awaitCompletion(ticket1, 0, TimeUnit.MILLISECONDS) shouldBe true
         q.isPressed(InputHandler.KEY_B) shouldBe true
 
         q.advanceFrame() // completes second enqueue's entry
-        latch2.await(0, TimeUnit.MILLISECONDS) shouldBe true
+        q.awaitCompletion(ticket2, 0, TimeUnit.MILLISECONDS) shouldBe true
         q.isActive shouldBe false
     }
+
+    test("packed masks enqueue without FrameInput and report held keys") {
+        val q = InputQueue()
+        val mask = (1 shl InputHandler.KEY_UP) or (1 shl InputHandler.KEY_A)
+        q.enqueue(byteArrayOf(mask.toByte()))
+        q.currentMask shouldBe mask
+        q.isPressed(InputHandler.KEY_UP) shouldBe true
+        q.isPressed(InputHandler.KEY_A) shouldBe true
+        q.isPressed(InputHandler.KEY_B) shouldBe false
+    }
+
+    test("ring wraps around capacity and keeps frame order") {
+        val q = InputQueue(capacity = 4)
+        repeat(3) { round ->
+            val ticket = q.enqueue(ByteArray(3) { (1 shl ((round + it) % 8)).toByte() })
+            for (i in 0 until 3) {
+                q.isPressed((round + i) % 8) shouldBe true
+                q.advanceFrame()
+            }
+            q.isCompleted(ticket) shouldBe true
+        }
+        q.isActive shouldBe false
+    }
+
+    test("awaitCompletion times out while frames are pending") {
+        val q = InputQueue()
+        val ticket = q.enqueue(listOf(FrameInput(setOf(InputHandler.KEY_A))))
+        q.awaitCompletion(ticket, 1, TimeUnit.MILLISECONDS) shouldBe false
+    }
+
+    test("a batch longer than capacity is fed in chunks as frames are played") {
+        val q = InputQueue(capacity = 4)
+        val masks = ByteArray(11) { (1 shl (it % 8)).toByte() }
+        var ticket = -1L
+        val producer = Thread { ticket = q.enqueue(masks) }.apply { start() }
+        val played = mutableListOf<Int>()
+        while (played.size < masks.size) {
+            if (q.isActive) {
+                played.add(q.currentMask)
+                q.advanceFrame()
+            } else {
+                Thread.sleep(1)
+            }
+        }
+        producer.join(1000)
+        producer.isAlive shouldBe false
+        played shouldBe masks.map { it.toInt() and 0xFF }
+        q.isCompleted(ticket) shouldBe true
+    }
 })
@@ -0,0 +1,54 @@
+package knes.api
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.collections.shouldBeEmpty
+import io.kotest.matchers.shouldBe
+
+class ScreenStateTest : FunSpec({
+
+    fun sessionWithVerticalMirroring(): EmulatorSession {
+        val session = EmulatorSession()
+        session.nes.ppu.ntable1 = intArrayOf(0, 1, 0, 1)
+        for (i in 0 until 64) session.nes.sprMemory.write(i * 4, 0xFF.toShort())
+        return session
+    }
+
+    test("scroll offsets select the visible tiles across nametables") {
+        val session = sessionWithVerticalMirroring()
+        val ppu = session.nes.ppu
+        ppu.nameTable[1]!!.writeTileIndex(2 * 32 + 1, 0x42)
+        ppu.nameTable[1]!!.writeAttrib(0, 0x30)
+        ppu.nameTable[0]!!.writeTileIndex(2 * 32 + 0, 0x07)
+
+        ppu.updateControlReg1(0x01)          // base nametable $2400
+        ppu.scrollWrite(0x0C.toShort())      // coarse X 1, fine X 4
+        ppu.scrollWrite(0x10.toShort())      // coarse Y 2
+
+        val state = session.screenState()
+        state.scrollX shouldBe 256 + 12
+        state.scrollY shouldBe 16
+        state.fineX shouldBe 4
+        state.tileAt(0, 0) shouldBe 0x42
+        state.paletteAt(0, 0) shouldBe 3
+        state.tileAt(31, 0) shouldBe 0x07    // wrapped back into $2000
+        state.tileAtPixel(3, 0) shouldBe 0x42
+    }
+
+    test("sprites are decoded from OAM and parked entries are skipped") {
+        val session = sessionWithVerticalMirroring()
+        session.screenState().sprites.shouldBeEmpty()
+
+        val oam = session.nes.sprMemory
+        oam.write(8, 0x20.toShort())
+        oam.write(9, 0x05.toShort())
+        oam.write(10, 0x61.toShort())
+        oam.write(11, 0x30.toShort())
+
+        session.screenState().sprites shouldBe listOf(
+            ScreenSprite(
+                index = 2, x = 0x30, y = 0x21, tile = 0x05, palette = 1,
+                flipHorizontal = true, flipVertical = false, behindBackground = true,
+            )
+        )
+    }
+})
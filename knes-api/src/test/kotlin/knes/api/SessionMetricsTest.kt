@@ -0,0 +1,27 @@
+package knes.api
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.string.shouldContain
+import io.kotest.matchers.string.shouldNotContain
+import knes.emulator.input.InputHandler
+import knes.emulator.input.InputPipeline
+
+class SessionMetricsTest : FunSpec({
+
+    test("input devices are exported as a labelled latch-latency histogram") {
+        val metrics = SessionMetrics()
+        metrics.toPrometheusText() shouldNotContain "knes_input_latch_latency_seconds"
+
+        val pipeline = InputPipeline()
+        val keyboard = pipeline.device("keyboard")
+        keyboard.press(InputHandler.KEY_A, true, System.nanoTime() - 3_000_000)
+        pipeline.latch()
+        metrics.inputDevices = { pipeline.devices() }
+
+        val text = metrics.toPrometheusText()
+        text shouldContain "# TYPE knes_input_latch_latency_seconds histogram"
+        text shouldContain "knes_input_latch_latency_seconds_bucket{device=\"keyboard\",le=\"+Inf\"} 1"
+        text shouldContain "knes_input_latch_latency_seconds_count{device=\"keyboard\"} 1"
+        text shouldContain "knes_advance_frames_seconds_count 0"
+    }
+})
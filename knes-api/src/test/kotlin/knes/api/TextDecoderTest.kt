@@ -0,0 +1,52 @@
+package knes.api
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.shouldBe
+import knes.debug.GameProfile
+
+class TextDecoderTest : FunSpec({
+
+    fun drawMenu(session: EmulatorSession) {
+        val nt = session.nes.ppu.nameTable[0]!!
+        fun put(x: Int, y: Int, tile: Int) = nt.writeTileIndex(y * 32 + x, tile)
+        put(1, 2, 0xF7); for (x in 2..5) put(x, 2, 0xF8); put(6, 2, 0xF9)
+        for (y in 3..5) { put(1, y, 0xFA); put(6, y, 0xFB) }
+        put(1, 6, 0xFC); for (x in 2..5) put(x, 6, 0xFD); put(6, 6, 0xFE)
+        "BUY".forEachIndexed { i, c -> put(3 + i, 3, 0x8A + (c - 'A')) }
+        "SELL".forEachIndexed { i, c -> put(2 + i, 5, 0x8A + (c - 'A')) }
+
+        val oam = session.nes.sprMemory
+        for (i in 0 until 64) oam.write(i * 4, 0xFF.toShort())
+        listOf(Triple(0xF0, 0, 32), Triple(0xF1, 8, 32), Triple(0xF2, 0, 40), Triple(0xF3, 8, 40))
+            .forEachIndexed { i, (tile, x, y) ->
+                oam.write(i * 4, (y - 1).toShort())
+                oam.write(i * 4 + 1, tile.toShort())
+                oam.write(i * 4 + 3, x.toShort())
+            }
+    }
+
+    test("no text table means no decoded text") {
+        EmulatorSession().screenText() shouldBe null
+    }
+
+    test("ff1 table decodes a framed window and the line under the cursor") {
+        val session = EmulatorSession()
+        session.applyProfile(GameProfile.get("ff1")!!)
+        drawMenu(session)
+
+        val text = session.screenText()!!
+        text.windows shouldBe listOf(TextWindow(col = 1, row = 2, width = 6, height = 5, lines = listOf(" BUY", "", "SELL")))
+        text.windows[0].text() shouldBe " BUY\nSELL"
+        text.cursors shouldBe listOf(TextCursor(x = 0, y = 32, col = 2, row = 5, window = 0, line = 2))
+        text.selectedLines() shouldBe listOf("SELL")
+    }
+
+    test("an unclosed frame is not a window") {
+        val session = EmulatorSession()
+        session.applyProfile(GameProfile.get("ff1")!!)
+        drawMenu(session)
+        session.nes.ppu.nameTable[0]!!.writeTileIndex(6 * 32 + 6, 0)
+
+        session.screenText()!!.windows shouldBe emptyList()
+    }
+})
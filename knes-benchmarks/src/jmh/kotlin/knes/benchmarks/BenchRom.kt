@@ -0,0 +1,18 @@
+package knes.benchmarks
+
+import java.io.File
+
+/**
+ * Locates the ROM used by ROM-backed benchmarks. Set with `-PknesBenchRom=...` or
+ * `FF1_ROM`; the Gradle build forwards it as the `knes.bench.rom` system property.
+ */
+object BenchRom {
+    val path: String
+        get() {
+            val rom = System.getProperty("knes.bench.rom") ?: System.getenv("FF1_ROM")
+            require(rom != null && File(rom).isFile) {
+                "ROM-backed benchmark needs -PknesBenchRom=/path/to/ff.nes (or FF1_ROM); got $rom"
+            }
+            return rom
+        }
+}
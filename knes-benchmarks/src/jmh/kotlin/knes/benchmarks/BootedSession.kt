@@ -0,0 +1,27 @@
+package knes.benchmarks
+
+import knes.api.EmulatorSession
+
+/**
+ * Standalone [EmulatorSession] with the benchmark ROM loaded and run for [frames] frames,
+ * plus a savestate of that point so benchmarks can reset to identical VRAM/CPU state.
+ */
+class BootedSession(frames: Int = DEFAULT_BOOT_FRAMES) {
+    val session = EmulatorSession()
+    val snapshot: ByteArray
+
+    init {
+        check(session.loadRom(BenchRom.path)) { "failed to load ${BenchRom.path}" }
+        session.advanceFrames(frames)
+        snapshot = session.saveState()
+    }
+
+    fun restore() {
+        check(session.loadState(snapshot)) { "failed to restore boot snapshot" }
+    }
+
+    companion object {
+        /** Far enough into FF1 for the title/intro screen to be fully drawn. */
+        const val DEFAULT_BOOT_FRAMES = 600
+    }
+}
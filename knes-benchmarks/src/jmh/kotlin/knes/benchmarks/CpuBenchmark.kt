@@ -0,0 +1,86 @@
+package knes.benchmarks
+
+import knes.emulator.Memory
+import knes.emulator.cpu.CPU
+import knes.emulator.cpu.CpuProfiler
+import knes.emulator.memory.MemoryAccess
+import knes.emulator.papu.PAPUClockFrame
+import knes.emulator.ppu.PPUCycles
+import knes.emulator.utils.Globals
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OperationsPerInvocation
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.TimeUnit
+
+/**
+ * Raw 6502 instruction throughput: the CPU runs a synthetic loop from flat memory with
+ * PPU and PAPU clocking stubbed out, so only decode/execute and memory access are measured.
+ * [profileSampleEvery] > 0 runs it under a [CpuProfiler]; 0 is the unprofiled baseline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class CpuBenchmark {
+
+    private lateinit var cpu: CPU
+
+    @Param("0", "1", "16")
+    var profileSampleEvery = 0
+
+    @Setup
+    fun setUp() {
+        Globals.appletMode = false
+        Globals.enableSound = false
+        Globals.palEmulation = false
+
+        val memory = Memory(0x10000)
+        cpu = CPU(
+            object : PAPUClockFrame { override fun clockFrameCounter(cycleCount: Int) {} },
+            object : PPUCycles {
+                override fun setCycles(cycles: Int) {}
+                override fun emulateCycles() {}
+            },
+        )
+        cpu.init(memory)
+        cpu.setMapper(object : MemoryAccess {
+            override fun write(address: Int, value: Short) = memory.write(address and 0xFFFF, value)
+            override fun load(address: Int): Short = memory.load(address and 0xFFFF)
+        })
+        cpu.reset()
+
+        // $8000: a mix of register, ALU, zero-page, absolute-indexed and branch instructions.
+        val program = intArrayOf(
+            0xA2, 0x00,       // LDX #$00
+            0xE8,             // loop: INX
+            0xC8,             // INY
+            0x18,             // CLC
+            0x69, 0x03,       // ADC #$03
+            0x85, 0x10,       // STA $10
+            0x9D, 0x00, 0x02, // STA $0200,X
+            0xA5, 0x10,       // LDA $10
+            0x4A,             // LSR A
+            0x45, 0x11,       // EOR $11
+            0xD0, 0xEF,       // BNE loop
+            0x4C, 0x02, 0x80, // JMP loop
+        )
+        for (i in program.indices) memory.write(0x8000 + i, program[i].toShort())
+        cpu.REG_PC_NEW = 0x8000 - 1
+        if (profileSampleEvery > 0) cpu.profiler = CpuProfiler(profileSampleEvery)
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSTRUCTIONS)
+    fun instructions() {
+        repeat(INSTRUCTIONS) { cpu.step() }
+    }
+
+    companion object {
+        const val INSTRUCTIONS = 10_000
+    }
+}
@@ -0,0 +1,49 @@
+package knes.benchmarks
+
+import knes.agent.pathfinding.PathResult
+import knes.agent.pathfinding.ViewportPathfinder
+import knes.agent.perception.FogOfWar
+import knes.agent.perception.OverworldMap
+import knes.agent.perception.ViewportMap
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.io.File
+import java.util.concurrent.TimeUnit
+
+/**
+ * [ViewportPathfinder.findPath] on the real FF1 overworld decoded from ROM: once on the
+ * 16x16 window the agent plans in every step, once on the full 256x256 map.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class PathfinderBenchmark {
+
+    private val spawn = 146 to 158
+    private val nearTarget = 152 to 153
+    private val farTarget = 200 to 150
+
+    private lateinit var viewport: ViewportMap
+    private lateinit var fullMap: ViewportMap
+    private val fog = FogOfWar()
+    private val local = ViewportPathfinder()
+    private val global = ViewportPathfinder(maxSteps = 1024)
+
+    @Setup
+    fun setUp() {
+        val map = OverworldMap.fromRom(File(BenchRom.path))
+        viewport = map.readViewport(spawn)
+        fullMap = map.readFullMapView(spawn)
+    }
+
+    @Benchmark
+    fun viewportPath(): PathResult = local.findPath(spawn, nearTarget, viewport, fog)
+
+    @Benchmark
+    fun fullMapPath(): PathResult = global.findPath(spawn, farTarget, fullMap, fog)
+}
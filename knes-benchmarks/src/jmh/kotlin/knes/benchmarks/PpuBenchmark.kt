@@ -0,0 +1,46 @@
+package knes.benchmarks
+
+import knes.emulator.ppu.PPU
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Level
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.TimeUnit
+
+/**
+ * PPU frame rendering in isolation: VRAM, OAM and PPU registers come from a recorded
+ * savestate, and the PPU is clocked through one full frame of scanlines without the CPU.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class PpuBenchmark {
+
+    private lateinit var booted: BootedSession
+    private lateinit var ppu: PPU
+
+    @Setup(Level.Trial)
+    fun setUp() {
+        booted = BootedSession()
+        ppu = booted.session.nes.ppu
+    }
+
+    @Setup(Level.Iteration)
+    fun restore() {
+        booted.restore()
+    }
+
+    @Benchmark
+    fun renderFrame() {
+        repeat(SCANLINES_PER_FRAME) { ppu.endScanline() }
+        ppu.startVBlank()
+    }
+
+    companion object {
+        const val SCANLINES_PER_FRAME = 262
+    }
+}
@@ -0,0 +1,57 @@
+package knes.benchmarks
+
+import knes.api.EmulatorSession
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Level
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.TimeUnit
+
+/**
+ * [EmulatorSession.advanceFrames] with a [knes.api.FrameRecorder] attached; compare with
+ * [SessionBenchmark.advanceOneFrame] for the recording overhead.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class RecordingBenchmark {
+
+    private lateinit var booted: BootedSession
+    private lateinit var session: EmulatorSession
+    private lateinit var video: Path
+
+    @Setup(Level.Trial)
+    fun setUp() {
+        booted = BootedSession()
+        session = booted.session
+        video = Files.createTempFile("knes-bench", ".knv")
+    }
+
+    @Setup(Level.Iteration)
+    fun restore() {
+        booted.restore()
+        session.startRecording(video)
+    }
+
+    @TearDown(Level.Iteration)
+    fun stop() {
+        session.stopRecording()
+    }
+
+    @TearDown(Level.Trial)
+    fun cleanUp() {
+        Files.deleteIfExists(video)
+    }
+
+    @Benchmark
+    fun advanceOneFrameRecording() {
+        session.advanceFrames(1)
+    }
+}
@@ -0,0 +1,41 @@
+package knes.benchmarks
+
+import knes.api.EmulatorSession
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Level
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.TimeUnit
+
+/** The two hottest agent-facing calls: [EmulatorSession.advanceFrames] and [EmulatorSession.getScreenPng]. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class SessionBenchmark {
+
+    private lateinit var booted: BootedSession
+    private lateinit var session: EmulatorSession
+
+    @Setup(Level.Trial)
+    fun setUp() {
+        booted = BootedSession()
+        session = booted.session
+    }
+
+    @Setup(Level.Iteration)
+    fun restore() {
+        booted.restore()
+    }
+
+    @Benchmark
+    fun advanceOneFrame() {
+        session.advanceFrames(1)
+    }
+
+    @Benchmark
+    fun screenPng(): ByteArray = session.getScreenPng()
+}
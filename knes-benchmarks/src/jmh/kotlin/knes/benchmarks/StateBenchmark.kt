@@ -0,0 +1,40 @@
+package knes.benchmarks
+
+import knes.emulator.ByteBuffer
+import knes.emulator.NES
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.TimeUnit
+
+/** [NES.stateSave] / [NES.stateLoad] round-trip cost on a booted ROM. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class StateBenchmark {
+
+    private lateinit var nes: NES
+    private lateinit var snapshot: ByteArray
+
+    @Setup
+    fun setUp() {
+        val booted = BootedSession()
+        nes = booted.session.nes
+        snapshot = booted.snapshot
+    }
+
+    @Benchmark
+    fun stateSave(): ByteArray {
+        val buf = ByteBuffer(64 * 1024, ByteBuffer.BO_LITTLE_ENDIAN)
+        buf.setExpandable(true)
+        nes.stateSave(buf)
+        return buf.getBytes()
+    }
+
+    @Benchmark
+    fun stateLoad(): Boolean = nes.stateLoad(ByteBuffer(snapshot, ByteBuffer.BO_LITTLE_ENDIAN))
+}
@@ -18,21 +18,29 @@ import androidx.compose.ui.input.key.KeyEventType
 import androidx.compose.ui.input.key.key
 import androidx.compose.ui.input.key.type
 import knes.controllers.ControllerProvider
+import knes.controllers.GamepadController
 import knes.emulator.input.InputHandler
+import knes.emulator.input.InputPipeline
 
 /**
  * Input handler for the Compose UI.
  *
- * Handles keyboard input using Compose key codes (mapped internally to NES buttons)
- * and delegates gamepad input to the ControllerProvider.
+ * Keyboard and gamepad are event-driven devices of one [InputPipeline]: key events and
+ * gamepad events update their button masks as they arrive and the mapper latches the
+ * merged mask at the game's $4016 strobe. A gamepad that isn't a [GamepadController]
+ * and the API controller are sampled at the latch instead.
  */
-class ComposeInputHandler(val controllerProvider: ControllerProvider) : InputHandler {
+class ComposeInputHandler(val controllerProvider: ControllerProvider) : InputPipeline() {
 
-    private val keyStates = ShortArray(InputHandler.NUM_KEYS) { 0x40 }
+    private val keyboard = device("keyboard")
 
-    /** Additional input source (e.g. API controller) merged into getKeyState */
+    /** Additional input source (e.g. API controller) merged into the latched buttons */
     var additionalInput: ControllerProvider? = null
 
+    init {
+        if (controllerProvider is GamepadController) controllerProvider.attach(device("gamepad"))
+    }
+
     /** Map Compose Key to NES button index, or -1 if not mapped. */
     private fun mapKey(key: Key): Int {
         return when (key) {
@@ -49,21 +57,28 @@ class ComposeInputHandler(val controllerProvider: ControllerProvider) : InputHan
     }
 
     fun keyEventHandler(event: androidx.compose.ui.input.key.KeyEvent): Boolean {
+        val now = System.nanoTime()
         val nesButton = mapKey(event.key)
         if (nesButton == -1) return false
 
         when (event.type) {
-            KeyEventType.KeyDown -> keyStates[nesButton] = 0x41
-            KeyEventType.KeyUp -> keyStates[nesButton] = 0x40
+            KeyEventType.KeyDown -> keyboard.press(nesButton, true, now)
+            KeyEventType.KeyUp -> keyboard.press(nesButton, false, now)
         }
         return true
     }
 
-    override fun getKeyState(padKey: Int): Short {
-        // Merge keyboard, gamepad, and API: any one pressed = pressed
-        val keyboard = keyStates[padKey]
-        val gamepad = controllerProvider.getKeyState(padKey)
-        val api = additionalInput?.getKeyState(padKey) ?: 0x40
-        return if (keyboard == 0x41.toShort() || gamepad == 0x41.toShort() || api == 0x41.toShort()) 0x41 else 0x40
+    override fun polledButtons(): Int {
+        var mask = 0
+        val gamepad = controllerProvider.takeIf { it !is GamepadController }
+        val api = additionalInput
+        for (key in 0 until InputHandler.NUM_KEYS) {
+            if (gamepad?.getKeyState(key) == PRESSED || api?.getKeyState(key) == PRESSED) mask = mask or (1 shl key)
+        }
+        return mask
+    }
+
+    private companion object {
+        const val PRESSED: Short = 0x41
     }
 }
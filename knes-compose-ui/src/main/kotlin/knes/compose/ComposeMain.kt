@@ -62,6 +62,7 @@ fun main() {
 
         val apiServer = remember { EmbeddedApiServer(nes) }
         var apiRunning by remember { mutableStateOf(false) }
+        var runAhead by remember { mutableStateOf(nes.runAheadFrames) }
 
         // Wire API server to UI: frame buffer for /screen, input for /press and /step
         LaunchedEffect(apiRunning) {
@@ -131,6 +132,14 @@ fun main() {
                                 Text(if (showMonitor) "Hide Monitor" else "Monitor")
                             }
 
+                            Button(onClick = {
+                                runAhead = (runAhead + 1) % (NES.MAX_RUN_AHEAD_FRAMES + 1)
+                                nes.runAheadFrames = runAhead
+                                focusRequester.requestFocus()
+                            }) {
+                                Text(if (runAhead == 0) "Run-ahead off" else "Run-ahead $runAhead")
+                            }
+
                             Button(onClick = {
                                 if (apiRunning) {
                                     apiServer.stop()
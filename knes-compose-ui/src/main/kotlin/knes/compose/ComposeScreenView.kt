@@ -14,73 +14,84 @@
 package knes.compose
 
 import androidx.compose.ui.graphics.ImageBitmap
-import androidx.compose.ui.graphics.toComposeImageBitmap
+import androidx.compose.ui.graphics.asComposeImageBitmap
 import knes.emulator.ui.ScreenView
 import knes.emulator.utils.Globals
-import knes.emulator.utils.HiResTimer
+import org.jetbrains.skia.Bitmap
 import org.jetbrains.skia.ColorAlphaType
 import org.jetbrains.skia.ColorType
 import org.jetbrains.skia.ImageInfo
+import org.jetbrains.skia.impl.BufferUtil
+import java.nio.ByteOrder
+import java.nio.IntBuffer
 
+/**
+ * Screen view for the Compose UI.
+ *
+ * The emulation thread publishes each frame into a [TripleBuffer] and is then held to
+ * the console's frame rate by a [FramePacer]; publishing before waiting gets the frame on
+ * screen one wait sooner. The UI thread calls [presentFrame] once per display frame
+ * (vsync), which uploads the newest frame, if any, into one persistent Skia bitmap.
+ * PPU pixels (0x00RRGGBB) are already BGRA_8888 in little-endian memory, so with an
+ * opaque bitmap the upload is a single bulk copy and nothing is allocated per frame.
+ */
 class ComposeScreenView(val scale: Int) : ScreenView {
     private val width = 256
     private val height = 240
     private val pixelCount = width * height
 
-    // Reusable byte buffer — avoids allocation per frame
-    private val byteBuffer = ByteArray(pixelCount * 4)
+    private val frames = TripleBuffer(pixelCount)
+    private val pacer = FramePacer()
 
-    // Pre-built Skia ImageInfo — reused every frame
-    private val imageInfo = ImageInfo(width, height, ColorType.BGRA_8888, ColorAlphaType.PREMUL)
+    // UI-thread state: the bitmap, a view over its native pixel memory, and its Compose wrapper.
+    private val imageInfo = ImageInfo(width, height, ColorType.BGRA_8888, ColorAlphaType.OPAQUE)
+    private val bitmap = Bitmap().apply { allocPixels(imageInfo) }
+    private val bitmapPixels: IntBuffer = bitmap.peekPixels()!!.let { pixmap ->
+        BufferUtil.getByteBufferFromPointer(pixmap.addr, pixmap.computeByteSize())
+            .order(ByteOrder.LITTLE_ENDIAN)
+            .asIntBuffer()
+    }
+    private val imageBitmap = bitmap.asComposeImageBitmap()
 
-    private var currentBuffer = IntArray(pixelCount)
     private var scaleMode = 0
     private var showFPS = false
 
-    private val timer = HiResTimer()
-    private var t1: Long = timer.currentMicros()
-    private var sleepTime: Int = 0
-
     var onFrameReady: (() -> Unit)? = null
     var onApiFrameCallback: ((IntArray) -> Unit)? = null
 
-    fun getFrameBitmap(): ImageBitmap {
-        // Convert PPU RGB (0x00RRGGBB) directly to BGRA bytes — single pass, no intermediates
-        val bytes = byteBuffer
-        for (i in 0 until pixelCount) {
-            val c = currentBuffer[i]
-            val off = i * 4
-            bytes[off] = (c and 0xFF).toByte()              // B
-            bytes[off + 1] = ((c shr 8) and 0xFF).toByte()  // G
-            bytes[off + 2] = ((c shr 16) and 0xFF).toByte() // R
-            bytes[off + 3] = 0xFF.toByte()                   // A
-        }
-
-        val skiaImage = org.jetbrains.skia.Image.makeRaster(imageInfo, bytes, width * 4)
-        return skiaImage.toComposeImageBitmap()
+    /**
+     * Uploads the newest published frame into the bitmap. Call from the UI thread once
+     * per display frame; returns false when no new frame arrived since the last call.
+     */
+    fun presentFrame(): Boolean {
+        if (!frames.acquire()) return false
+        bitmapPixels.clear()
+        bitmapPixels.put(frames.frontBuffer)
+        bitmap.notifyPixelsChanged()
+        return true
     }
 
+    /** The persistent frame bitmap; its pixels change in place on [presentFrame]. */
+    fun getFrameBitmap(): ImageBitmap = imageBitmap
+
     override fun getBufferWidth(): Int = width
     override fun getBufferHeight(): Int = height
 
     override fun imageReady(skipFrame: Boolean, buffer: IntArray) {
-        if (Globals.timeEmulation && !Globals.enableSound) {
-            sleepTime = Globals.frameTime
-            val t2 = timer.currentMicros()
-            val elapsed = t2 - t1
-            if (elapsed < sleepTime) {
-                timer.sleepMicros(sleepTime - elapsed)
-            }
-        }
-
-        t1 = timer.currentMicros()
-        System.arraycopy(buffer, 0, currentBuffer, 0, pixelCount)
+        if (!skipFrame) frames.publish(buffer)
 
-        onApiFrameCallback?.invoke(currentBuffer)
+        onApiFrameCallback?.invoke(buffer)
 
         if (!skipFrame) {
             onFrameReady?.invoke()
         }
+
+        // With sound on, the PPU already paces frames by audio buffer fill.
+        if (Globals.timeEmulation && !Globals.enableSound) {
+            pacer.awaitNextFrame()
+        } else {
+            pacer.reset()
+        }
     }
 
     override fun scalingEnabled(): Boolean = scaleMode != 0
@@ -13,11 +13,12 @@
 
 package knes.compose
 
+import androidx.compose.animation.core.withInfiniteAnimationFrameNanos
 import androidx.compose.foundation.Canvas
 import androidx.compose.foundation.layout.aspectRatio
 import androidx.compose.foundation.layout.fillMaxSize
 import androidx.compose.runtime.Composable
-import androidx.compose.runtime.DisposableEffect
+import androidx.compose.runtime.LaunchedEffect
 import androidx.compose.runtime.getValue
 import androidx.compose.runtime.mutableStateOf
 import androidx.compose.runtime.remember
@@ -43,16 +44,16 @@ class ComposeUI(val nes: NES, val screenView: ComposeScreenView) {
     @Composable
     fun nesScreenRenderer() {
         var frameCount by remember { mutableStateOf(0) }
-        var currentBitmap by remember { mutableStateOf(screenView.getFrameBitmap()) }
+        val frameBitmap = remember { screenView.getFrameBitmap() }
 
-        DisposableEffect(Unit) {
-            screenView.onFrameReady = {
-                currentBitmap = screenView.getFrameBitmap()
-                frameCount++
-            }
-
-            onDispose {
-                screenView.onFrameReady = null
+        // Present on the display's frame clock: at most one upload per vsync, always the
+        // newest emulated frame, and the emulation thread never touches Compose state. The
+        // infinite-animation clock keeps UI tests from waiting on this loop to go idle.
+        LaunchedEffect(Unit) {
+            while (true) {
+                withInfiniteAnimationFrameNanos {
+                    if (screenView.presentFrame()) frameCount++
+                }
             }
         }
 
@@ -61,8 +62,10 @@ class ComposeUI(val nes: NES, val screenView: ComposeScreenView) {
                 .fillMaxSize()
                 .aspectRatio(256f / 240f)
         ) {
+            // Read so each presented frame invalidates this draw; the bitmap itself is reused.
+            frameCount
             drawImage(
-                image = currentBitmap,
+                image = frameBitmap,
                 dstSize = IntSize(size.width.toInt(), size.height.toInt())
             )
         }
@@ -0,0 +1,79 @@
+/*
+ *
+ *  * Copyright (C) 2025 Artur Skowroński
+ *  * This file is part of kNES, a fork of vNES (GPLv3) rewritten in Kotlin.
+ *  *
+ *  * vNES was originally developed by Brian F. R. (bfirsh) and released under the GPL-3.0 license.
+ *  * This project is a reimplementation and extension of that work.
+ *  *
+ *  * kNES is licensed under the GNU General Public License v3.0.
+ *  * See the LICENSE file for more details.
+ *
+ */
+
+
+package knes.compose
+
+import knes.emulator.utils.Globals
+import java.util.concurrent.locks.LockSupport
+
+/**
+ * Frame limiter for the emulation thread that holds an exact period without drift.
+ *
+ * Deadlines are absolute (previous deadline plus [periodNanos]), so oversleeping one
+ * frame is made up on the next. The thread parks until [spinNanos] before the deadline
+ * and then spins the rest, because a park on its own can overshoot by a millisecond
+ * or more. After a stall longer than [maxLagFrames] periods the schedule restarts from
+ * now instead of racing to catch up. The default period is [framePeriodNanos].
+ */
+class FramePacer(
+    val periodNanos: Long = framePeriodNanos(),
+    private val spinNanos: Long = 1_000_000L,
+    private val maxLagFrames: Int = 3,
+    private val clock: () -> Long = System::nanoTime,
+) {
+    private var deadline = 0L
+
+    /** Waits until the next frame is due. Call once per emulated frame. */
+    fun awaitNextFrame() {
+        val now = clock()
+        if (deadline == 0L || now - deadline > periodNanos * maxLagFrames) {
+            deadline = now + periodNanos
+            return
+        }
+        while (true) {
+            val left = deadline - clock()
+            if (left <= 0) break
+            if (left > spinNanos) LockSupport.parkNanos(left - spinNanos) else Thread.onSpinWait()
+        }
+        deadline += periodNanos
+    }
+
+    /** Drops the schedule, e.g. after a pause, so the next frame isn't rushed. */
+    fun reset() {
+        deadline = 0L
+    }
+
+    companion object {
+        /** NTSC frame: 29780.5 CPU cycles at 1.789773 MHz, i.e. 60.0988 Hz. */
+        const val NTSC_FRAME_NANOS = 16_639_267L
+
+        /** PAL frame: 33247.5 CPU cycles at 1.662607 MHz, i.e. 50.0070 Hz. */
+        const val PAL_FRAME_NANOS = 19_997_209L
+
+        // Globals.frameTime before anyone changes it: 60 fps in microseconds.
+        private const val STOCK_FRAME_TIME_MICROS = 1_000_000 / 60
+
+        /**
+         * Frame period for the current [Globals]: [Globals.frameTime] when it was set to
+         * another rate, otherwise the console's own rate, PAL under [Globals.palEmulation].
+         * The stock frameTime is a rounded 60 Hz, slower than either console, so it is not
+         * used as is.
+         */
+        fun framePeriodNanos(): Long = when {
+            Globals.frameTime != STOCK_FRAME_TIME_MICROS -> Globals.frameTime * 1_000L
+            Globals.palEmulation -> PAL_FRAME_NANOS
+            else -> NTSC_FRAME_NANOS
+        }
+    }
+}
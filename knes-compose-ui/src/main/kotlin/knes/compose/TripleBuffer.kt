@@ -0,0 +1,57 @@
+/*
+ *
+ *  * Copyright (C) 2025 Artur Skowroński
+ *  * This file is part of kNES, a fork of vNES (GPLv3) rewritten in Kotlin.
+ *  *
+ *  * vNES was originally developed by Brian F. R. (bfirsh) and released under the GPL-3.0 license.
+ *  * This project is a reimplementation and extension of that work.
+ *  *
+ *  * kNES is licensed under the GNU General Public License v3.0.
+ *  * See the LICENSE file for more details.
+ *
+ */
+
+
+package knes.compose
+
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Lock-free triple buffer for frames passed from the emulation thread to the UI thread.
+ *
+ * The producer owns a back slot and the consumer a front slot; the third slot sits in
+ * between and holds the newest complete frame. [publish] fills the back slot and swaps
+ * it into the middle, [acquire] swaps the middle into the front when a newer frame is
+ * there. Neither side ever waits for the other or sees a half-written frame, and a UI
+ * that falls behind simply skips to the latest frame.
+ */
+class TripleBuffer(size: Int) {
+    private val slots = Array(3) { IntArray(size) }
+
+    // Middle slot index in the low bits, FRESH while it holds a frame the consumer hasn't taken.
+    private val middle = AtomicInteger(1)
+    private var back = 0
+    private var front = 2
+
+    /** Copies [frame] in as the newest frame. Producer thread only. */
+    fun publish(frame: IntArray) {
+        val slot = slots[back]
+        System.arraycopy(frame, 0, slot, 0, minOf(frame.size, slot.size))
+        back = middle.getAndSet(back or FRESH) and INDEX
+    }
+
+    /** Takes the newest frame into [frontBuffer] if one arrived since the last call. Consumer thread only. */
+    fun acquire(): Boolean {
+        if (middle.get() and FRESH == 0) return false
+        front = middle.getAndSet(front) and INDEX
+        return true
+    }
+
+    /** The frame last taken by [acquire]. Consumer thread only. */
+    val frontBuffer: IntArray get() = slots[front]
+
+    private companion object {
+        const val INDEX = 0b11
+        const val FRESH = 0b100
+    }
+}
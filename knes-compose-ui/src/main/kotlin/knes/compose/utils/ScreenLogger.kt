@@ -30,10 +30,10 @@ You should have received a copy of the GNU General Public License along with
 this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import knes.api.FrameSink
 import java.awt.Color
 import java.awt.image.BufferedImage
 import java.io.File
-import javax.imageio.ImageIO
 
 /**
  * Utility class for logging screen-related information and debug data.
@@ -42,6 +42,11 @@ object ScreenLogger {
 
     // Flag to control whether to draw the buffer to the terminal
     private var drawBufferToTerminal = false
+
+    // Frames are encoded and written off the calling thread; a busy writer drops frames
+    // rather than stall the UI or the emulator.
+    private val frameSink by lazy { FrameSink(capacity = 4, threads = 1, policy = FrameSink.Policy.DROP) }
+
     /**
      * Logs the current frame image to a file.
      * 
@@ -50,6 +55,21 @@ object ScreenLogger {
      * @param directory The directory to save the file in (default: "debug")
      */
     fun logFrameImage(image: BufferedImage, filename: String = "frame.jpg", directory: String = "debug") {
+        val pixels = image.getRGB(0, 0, image.width, image.height, null, 0, image.width)
+        logFrame(pixels, image.width, image.height, filename, directory)
+    }
+
+    /**
+     * Logs a raw 0x00RRGGBB frame buffer to a file. Returns immediately; the image is
+     * encoded (JPEG or PNG, by extension) and written in the background.
+     *
+     * @param buffer The frame pixels, row-major
+     * @param width The width of the frame
+     * @param height The height of the frame
+     * @param filename The name of the file to save (default: "frame.jpg")
+     * @param directory The directory to save the file in (default: "debug")
+     */
+    fun logFrame(buffer: IntArray, width: Int, height: Int, filename: String = "frame.jpg", directory: String = "debug") {
         try {
             // Create a debug directory in the current working directory
             val debugDir = File(directory)
@@ -57,8 +77,9 @@ object ScreenLogger {
                 debugDir.mkdir()
             }
             val outputFile = File(debugDir, filename)
-            ImageIO.write(image, "jpg", outputFile)
-            println("[DEBUG] Image written to ${outputFile.absoluteFile}")
+            if (!frameSink.submit(buffer, width, height, outputFile.toPath())) {
+                println("[DEBUG] Image writer busy, dropped ${outputFile.absoluteFile}")
+            }
         } catch (e: Exception) {
             println("[DEBUG] Error writing image to file: ${e.message}")
         }
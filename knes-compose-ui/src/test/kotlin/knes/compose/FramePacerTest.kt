@@ -0,0 +1,53 @@
+package knes.compose
+
+import knes.emulator.utils.Globals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class FramePacerTest {
+
+    // Fake clock: 1 µs passes on every read, so waits are spins that end deterministically.
+    private var now = 0L
+    private val pacer = FramePacer(periodNanos = 100_000, spinNanos = Long.MAX_VALUE, clock = { now += 1_000; now })
+
+    @Test
+    fun `frames are due on an absolute schedule without drift`() {
+        pacer.awaitNextFrame() // starts the schedule at 1 µs
+        repeat(10) { pacer.awaitNextFrame() }
+        assertEquals(1_001_000L, now)
+    }
+
+    @Test
+    fun `a long stall restarts the schedule instead of rushing frames`() {
+        pacer.awaitNextFrame()
+        now += 10_000_000
+        val before = now
+        pacer.awaitNextFrame()
+        assertEquals(before + 1_000, now)
+        pacer.awaitNextFrame()
+        assertTrue(now >= before + 1_000 + 100_000)
+    }
+
+    @Test
+    fun `ntsc period is 60_0988 Hz`() {
+        assertEquals(60.0988, 1e9 / FramePacer.NTSC_FRAME_NANOS, 1e-4)
+    }
+
+    @Test
+    fun `the default period follows pal emulation and a custom frame time`() {
+        val pal = Globals.palEmulation
+        val frameTime = Globals.frameTime
+        try {
+            Globals.palEmulation = false
+            assertEquals(FramePacer.NTSC_FRAME_NANOS, FramePacer().periodNanos)
+            Globals.palEmulation = true
+            assertEquals(FramePacer.PAL_FRAME_NANOS, FramePacer().periodNanos)
+            Globals.frameTime = 1_000_000 / 30
+            assertEquals(33_333_000L, FramePacer().periodNanos)
+        } finally {
+            Globals.palEmulation = pal
+            Globals.frameTime = frameTime
+        }
+    }
+}
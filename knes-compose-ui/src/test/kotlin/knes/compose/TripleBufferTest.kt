@@ -0,0 +1,52 @@
+package knes.compose
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import kotlin.concurrent.thread
+
+class TripleBufferTest {
+
+    @Test
+    fun `acquire takes only the newest frame, once`() {
+        val frames = TripleBuffer(2)
+        assertFalse(frames.acquire())
+
+        frames.publish(intArrayOf(1, 1))
+        frames.publish(intArrayOf(2, 2))
+        assertTrue(frames.acquire())
+        assertArrayEquals(intArrayOf(2, 2), frames.frontBuffer)
+        assertFalse(frames.acquire())
+
+        frames.publish(intArrayOf(3, 3))
+        assertTrue(frames.acquire())
+        assertArrayEquals(intArrayOf(3, 3), frames.frontBuffer)
+    }
+
+    @Test
+    fun `consumer never sees a torn frame`() {
+        val size = 4096
+        val frames = TripleBuffer(size)
+        val producer = thread {
+            val frame = IntArray(size)
+            for (n in 1..20_000) {
+                frame.fill(n)
+                frames.publish(frame)
+            }
+        }
+        var last = 0
+        do {
+            val alive = producer.isAlive
+            if (frames.acquire()) {
+                val front = frames.frontBuffer
+                val n = front[0]
+                assertTrue("frames went backwards: $last -> $n", n >= last)
+                for (v in front) assertEquals(n, v)
+                last = n
+            }
+        } while (alive)
+        assertEquals(20_000, last)
+    }
+}
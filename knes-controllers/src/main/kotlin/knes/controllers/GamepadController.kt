@@ -14,6 +14,7 @@
 package knes.controllers
 
 import knes.emulator.input.InputHandler
+import knes.emulator.input.InputPipeline
 import com.badlogic.gdx.Gdx
 import com.badlogic.gdx.Application
 import com.badlogic.gdx.ApplicationListener
@@ -35,13 +36,25 @@ import knes.controllers.helpers.JoyConInitializer
 import knes.controllers.helpers.MacOsPermissionHelper
 import java.util.concurrent.Executors
 import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
 import kotlin.math.abs
 
+/**
+ * libGDX gamepads (including paired Joy-Cons) as one NES pad.
+ *
+ * Driven by controller events rather than by the emulator asking: every button, axis or
+ * connection event remaps the pads into a button mask, stamped with [System.nanoTime] at
+ * the callback, and hands it to the attached [InputPipeline.Device]. [getKeyState] only
+ * reads that mask, so the CPU thread never calls into the controller backend.
+ */
 class GamepadController : ControllerProvider {
 
-    private var controllers: Array<Controller>? = null
-    private var leftJoyCon: Controller? = null
-    private var rightJoyCon: Controller? = null
+    @Volatile private var controllers: Array<Controller>? = null
+    @Volatile private var leftJoyCon: Controller? = null
+    @Volatile private var rightJoyCon: Controller? = null
+
+    private val buttons = AtomicInteger()
+    @Volatile private var device: InputPipeline.Device? = null
 
     var statusMessage: String = "Initializing..."
         private set
@@ -54,6 +67,32 @@ class GamepadController : ControllerProvider {
                 Gdx.app = GDXApplication()
             }
             refreshControllers()
+            Controllers.addListener(object : ControllerAdapter() {
+                override fun connected(controller: Controller) {
+                    refreshControllers()
+                    publish(System.nanoTime())
+                }
+
+                override fun disconnected(controller: Controller) {
+                    refreshControllers()
+                    publish(System.nanoTime())
+                }
+
+                override fun buttonDown(controller: Controller, buttonCode: Int): Boolean {
+                    publish(System.nanoTime())
+                    return false
+                }
+
+                override fun buttonUp(controller: Controller, buttonCode: Int): Boolean {
+                    publish(System.nanoTime())
+                    return false
+                }
+
+                override fun axisMoved(controller: Controller, axisCode: Int, value: Float): Boolean {
+                    publish(System.nanoTime())
+                    return false
+                }
+            })
         } catch (e: Exception) {
             e.printStackTrace()
             statusMessage = "No controllers detected"
@@ -81,15 +120,33 @@ class GamepadController : ControllerProvider {
     }
 
 
+    /** Feeds this gamepad's events into [device] from now on. */
+    fun attach(device: InputPipeline.Device) {
+        this.device = device
+        device.setButtons(buttons.get())
+    }
+
     fun update() {
-        // No update needed usually, it's event based or polling.
+        // No update needed, state changes arrive as controller events.
+    }
+
+    private fun publish(nanos: Long) {
+        var mask = 0
+        for (key in 0 until InputHandler.NUM_KEYS) {
+            if (isPressed(key)) mask = mask or (1 shl key)
+        }
+        buttons.set(mask)
+        device?.setButtons(mask, nanos)
     }
 
-    override fun getKeyState(padKey: Int): Short {
+    override fun getKeyState(padKey: Int): Short =
+        if ((buttons.get() ushr padKey) and 1 != 0) 0x41 else 0x40
+
+    private fun isPressed(padKey: Int): Boolean {
         try {
             val currentControllers = controllers
             if (currentControllers == null || currentControllers.size == 0) {
-                return 0x40
+                return false
             }
 
             // Dual Joy-Con Mode
@@ -121,7 +178,7 @@ class GamepadController : ControllerProvider {
                     InputHandler.KEY_RIGHT -> leftJoyCon!!.getAxis(0) > 0.5f || leftJoyCon!!.getButton(3)
                     else -> false
                 }
-                return if (isPressed) 0x41 else 0x40
+                return isPressed
             }
 
             val controller = currentControllers.first()
@@ -159,10 +216,10 @@ class GamepadController : ControllerProvider {
                 }
             }
 
-            return if (isPressed) 0x41 else 0x40
+            return isPressed
         } catch (e: Exception) {
             e.printStackTrace()
-            return 0x40
+            return false
         }
     }
 
@@ -173,6 +230,11 @@ class GamepadController : ControllerProvider {
     }
 }
 
+/**
+ * Minimal libGDX application for running controllers without a libGDX window. The
+ * desktop controller backend polls its devices from a runnable that re-posts itself,
+ * so the delay here is the controller polling period.
+ */
 class GDXApplication : Application {
     private val executor = Executors.newSingleThreadScheduledExecutor()
     private var postRunnableCount = 0
@@ -205,7 +267,7 @@ class GDXApplication : Application {
     override fun postRunnable(runnable: Runnable?) {
         postRunnableCount++
         runnable?.let {
-            executor.schedule(it, 16, TimeUnit.MILLISECONDS)
+            executor.schedule(it, POLL_INTERVAL_MICROS, TimeUnit.MICROSECONDS)
         }
     }
 
@@ -217,6 +279,11 @@ class GDXApplication : Application {
     override fun removeLifecycleListener(listener: LifecycleListener?) {}
     override fun setApplicationLogger(p0: ApplicationLogger?) {}
     override fun getApplicationLogger(): ApplicationLogger? = null
+
+    private companion object {
+        // A 16 ms period could hold a press back by a whole frame before any event fires.
+        const val POLL_INTERVAL_MICROS = 1_000L
+    }
 }
 
 fun main() {
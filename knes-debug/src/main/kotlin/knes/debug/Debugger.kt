@@ -0,0 +1,207 @@
+package knes.debug
+
+import knes.emulator.cpu.CPU
+import knes.emulator.cpu.DebugTraps
+
+/**
+ * Breakpoints and watchpoints on the running game, where [MemoryMonitor] can only read
+ * RAM after the fact.
+ *
+ * - [Kind.EXECUTE]: the CPU reaches an address, optionally only while a given PRG bank
+ *   is mapped there (MMC1 games reuse $8000-$BFFF across banks).
+ * - [Kind.OPCODE]: any instruction with the given opcode byte runs.
+ * - [Kind.READ] / [Kind.WRITE]: an instruction reads or stores a data address, optionally
+ *   only when the value passes a [Condition] ("== 3", "changed", "& 0x80", ...).
+ * - [Kind.NMI] / [Kind.IRQ]: the CPU takes that interrupt.
+ *
+ * Install [traps] on the CPU (`cpu.traps = debugger.traps`) to arm them; the CPU checks a
+ * bitmap per instruction and only calls in here on a marked address. The first breakpoint
+ * that fires stops the CPU and is kept as [hit] until [resume].
+ *
+ * [add], [remove] and [clear] may be called from any thread; the CPU's handler walks an
+ * immutable snapshot of the breakpoints, replaced on every change.
+ */
+class Debugger {
+
+    enum class Kind { EXECUTE, OPCODE, READ, WRITE, NMI, IRQ }
+
+    /**
+     * A value test for read and write watchpoints. [test] gets the value before the access
+     * ([old]; equal to [value] for reads, -1 for stores to registers, so [Op.CHANGED] always
+     * passes there) and the value read or stored.
+     */
+    data class Condition(val op: Op, val operand: Int = 0) {
+        enum class Op(val symbol: String) {
+            EQ("=="), NE("!="), LT("<"), LE("<="), GT(">"), GE(">="), ANY_BITS("&"), CHANGED("changed")
+        }
+
+        fun test(old: Int, value: Int): Boolean = when (op) {
+            Op.EQ -> value == operand
+            Op.NE -> value != operand
+            Op.LT -> value < operand
+            Op.LE -> value <= operand
+            Op.GT -> value > operand
+            Op.GE -> value >= operand
+            Op.ANY_BITS -> value and operand != 0
+            Op.CHANGED -> value != old
+        }
+
+        override fun toString(): String = if (op == Op.CHANGED) op.symbol else "${op.symbol} 0x%02X".format(operand)
+
+        companion object {
+            private val PATTERN = Regex("""^\s*(==|!=|<=|>=|<|>|&)\s*(\S+)\s*$""")
+
+            /** Parses `changed` or an operator and a number: `== 3`, `>= 0x10`, `& $80`. */
+            fun parse(text: String): Condition {
+                if (text.trim().equals(Op.CHANGED.symbol, ignoreCase = true)) return Condition(Op.CHANGED)
+                val match = requireNotNull(PATTERN.matchEntire(text)) { "bad condition '$text': use changed, ==, !=, <, <=, >, >= or & and a value" }
+                val op = Op.values().first { it.symbol == match.groupValues[1] }
+                return Condition(op, parseNumber(match.groupValues[2]))
+            }
+        }
+    }
+
+    /** [address] is the opcode byte for [Kind.OPCODE] and -1 for interrupts; [bank] -1 matches any bank. */
+    data class Breakpoint(
+        val id: Int,
+        val kind: Kind,
+        val address: Int = -1,
+        val bank: Int = -1,
+        val condition: Condition? = null,
+    )
+
+    /**
+     * Why the CPU stopped. [pc] is the instruction that tripped a watchpoint, or the one
+     * about to run for execution and interrupt breaks. [old] and [value] are the data byte
+     * before and after the access (for reads both are the value read); -1 when not a data access.
+     * [old] is also -1 for stores outside RAM and PRG-RAM, which have no byte to read back.
+     */
+    data class Hit(val breakpoint: Breakpoint, val pc: Int, val address: Int, val old: Int = -1, val value: Int = -1)
+
+    private val breakpoints = LinkedHashMap<Int, Breakpoint>()
+    private var nextId = 1
+
+    // What the handler iterates; rebuilt under the lock whenever [breakpoints] changes.
+    @Volatile
+    private var snapshot: List<Breakpoint> = emptyList()
+
+    /** First breakpoint hit since the last [resume], or null. */
+    @Volatile
+    var hit: Hit? = null
+        private set
+
+    // Explicit types: the handler reads [traps], which is built from the handler.
+    private val handler: DebugTraps.Handler = object : DebugTraps.Handler {
+        override fun onExecute(pc: Int, opcode: Int): Boolean {
+            for (bp in snapshot) {
+                val matches = when (bp.kind) {
+                    Kind.EXECUTE -> bp.address == pc && (bp.bank < 0 || traps.banks?.prgBank(pc) == bp.bank)
+                    Kind.OPCODE -> bp.address == opcode
+                    else -> false
+                }
+                if (matches) return stop(Hit(bp, pc, pc))
+            }
+            return false
+        }
+
+        override fun onRead(pc: Int, address: Int, value: Int): Boolean =
+            access(Kind.READ, pc, address, value, value)
+
+        override fun onWrite(pc: Int, address: Int, old: Int, new: Int): Boolean =
+            access(Kind.WRITE, pc, address, old, new)
+
+        override fun onInterrupt(type: Int, target: Int): Boolean {
+            val kind = if (type == CPU.IRQ_NMI) Kind.NMI else Kind.IRQ
+            val bp = snapshot.firstOrNull { it.kind == kind } ?: return false
+            return stop(Hit(bp, target, target))
+        }
+    }
+
+    val traps: DebugTraps = DebugTraps(handler)
+
+    private fun access(kind: Kind, pc: Int, address: Int, old: Int, value: Int): Boolean {
+        for (bp in snapshot) {
+            if (bp.kind != kind || DebugTraps.normalize(bp.address) != address) continue
+            if (bp.condition == null || bp.condition.test(old, value)) return stop(Hit(bp, pc, address, old, value))
+        }
+        return false
+    }
+
+    // Keeps the first hit: a read-modify-write can trip a read and a write watchpoint in one instruction.
+    private fun stop(hit: Hit): Boolean {
+        if (this.hit == null) this.hit = hit
+        return true
+    }
+
+    /** Adds a breakpoint of [kind] on [address] (the opcode for [Kind.OPCODE]; ignored for interrupts). */
+    @Synchronized
+    fun add(kind: Kind, address: Int = -1, bank: Int = -1, condition: Condition? = null): Breakpoint {
+        when (kind) {
+            Kind.EXECUTE, Kind.READ, Kind.WRITE -> require(address in 0..0xFFFF) { "address must be 0x0000-0xFFFF, got $address" }
+            Kind.OPCODE -> require(address in 0..0xFF) { "opcode must be 0x00-0xFF, got $address" }
+            Kind.NMI, Kind.IRQ -> {}
+        }
+        require(condition == null || kind == Kind.READ || kind == Kind.WRITE) { "conditions apply to read and write watchpoints only" }
+        val bp = Breakpoint(
+            id = nextId++,
+            kind = kind,
+            address = if (kind == Kind.NMI || kind == Kind.IRQ) -1 else address,
+            bank = if (kind == Kind.EXECUTE) bank else -1,
+            condition = condition,
+        )
+        breakpoints[bp.id] = bp
+        snapshot = breakpoints.values.toList()
+        arm(bp, true)
+        return bp
+    }
+
+    @Synchronized
+    fun remove(id: Int): Boolean {
+        val bp = breakpoints.remove(id) ?: return false
+        snapshot = breakpoints.values.toList()
+        // Another breakpoint may still need the same bit; data addresses share it across RAM mirrors.
+        if (breakpoints.values.none { it.kind == bp.kind && trapBit(it) == trapBit(bp) }) arm(bp, false)
+        return true
+    }
+
+    @Synchronized
+    fun clear() {
+        breakpoints.clear()
+        snapshot = emptyList()
+        traps.clear()
+    }
+
+    fun list(): List<Breakpoint> = snapshot
+
+    /** Forgets the last [hit] so the next breakpoint can stop the CPU again. */
+    fun resume() {
+        hit = null
+    }
+
+    private fun trapBit(bp: Breakpoint): Int =
+        if (bp.kind == Kind.READ || bp.kind == Kind.WRITE) DebugTraps.normalize(bp.address) else bp.address
+
+    private fun arm(bp: Breakpoint, on: Boolean) {
+        when (bp.kind) {
+            Kind.EXECUTE -> traps.execute(bp.address, on)
+            Kind.OPCODE -> traps.opcode(bp.address, on)
+            Kind.READ -> traps.read(bp.address, on)
+            Kind.WRITE -> traps.write(bp.address, on)
+            Kind.NMI -> traps.interrupt(CPU.IRQ_NMI, on)
+            Kind.IRQ -> traps.interrupt(CPU.IRQ_NORMAL, on)
+        }
+    }
+
+    companion object {
+        /** Parses `0x1F`, `$1F` or decimal `31`. */
+        fun parseNumber(text: String): Int {
+            val t = text.trim()
+            val value = when {
+                t.startsWith("0x", ignoreCase = true) -> t.substring(2).toIntOrNull(16)
+                t.startsWith("$") -> t.substring(1).toIntOrNull(16)
+                else -> t.toIntOrNull()
+            }
+            return requireNotNull(value) { "not a number: '$text'" }
+        }
+    }
+}
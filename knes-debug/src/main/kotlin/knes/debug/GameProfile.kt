@@ -14,11 +14,24 @@ data class AddressEntry(
     val hidden: Boolean = false
 )
 
+/**
+ * Tile-id-to-glyph table for reading on-screen text straight from the PPU nametables.
+ * [frame] lists the window border tiles as top-left, top, top-right, left, right,
+ * bottom-left, bottom, bottom-right. [cursorSprites] are the OAM tile ids of the menu
+ * cursor (a sprite, not a nametable tile).
+ */
+data class TextTable(
+    val glyphs: Map<Int, Char>,
+    val frame: List<Int> = emptyList(),
+    val cursorSprites: Set<Int> = emptySet()
+)
+
 data class GameProfile(
     val name: String,
     val id: String,
     val description: String = "",
-    val addresses: Map<String, AddressEntry>
+    val addresses: Map<String, AddressEntry>,
+    val text: TextTable? = null
 ) {
     /** All addresses including hidden (debug/cheat) ones */
     fun toWatchMap(): Map<String, Int> = addresses.mapValues { it.value.address }
@@ -74,9 +87,49 @@ data class GameProfile(
                 addresses[varName] = AddressEntry(addrInt, desc, hidden)
             }
 
-            return GameProfile(name, id, description, addresses)
+            return GameProfile(name, id, description, addresses, parseTextTable(json, blockEnd))
+        }
+
+        /**
+         * Optional `"text"` block after `"addresses"`: `"glyphs"` maps a start tile id to a
+         * run of characters on consecutive ids; `"frame"` and `"cursorSprites"` are arrays
+         * of hex tile ids.
+         */
+        private fun parseTextTable(json: String, from: Int): TextTable? {
+            val textStart = json.indexOf("\"text\"", from)
+            if (textStart == -1) return null
+            val blockStart = json.indexOf('{', textStart + 6)
+            val blockEnd = findMatchingBrace(json, blockStart)
+            if (blockStart == -1 || blockEnd == -1) return null
+            val block = json.substring(blockStart + 1, blockEnd)
+
+            val glyphs = mutableMapOf<Int, Char>()
+            val glyphsStart = block.indexOf("\"glyphs\"")
+            if (glyphsStart != -1) {
+                val gStart = block.indexOf('{', glyphsStart)
+                val gEnd = findMatchingBrace(block, gStart)
+                if (gStart != -1 && gEnd != -1) {
+                    val runPattern = Regex(""""(0[xX][0-9A-Fa-f]+)"\s*:\s*"([^"]*)"""")
+                    for (match in runPattern.findAll(block.substring(gStart + 1, gEnd))) {
+                        val start = parseHex(match.groupValues[1]) ?: continue
+                        match.groupValues[2].forEachIndexed { i, c -> glyphs[start + i] = c }
+                    }
+                }
+            }
+            return TextTable(
+                glyphs = glyphs,
+                frame = hexArray(block, "frame"),
+                cursorSprites = hexArray(block, "cursorSprites").toSet()
+            )
+        }
+
+        private fun hexArray(json: String, key: String): List<Int> {
+            val body = Regex(""""$key"\s*:\s*\[([^\]]*)\]""").find(json)?.groupValues?.get(1) ?: return emptyList()
+            return Regex(""""(0[xX][0-9A-Fa-f]+)"""").findAll(body).mapNotNull { parseHex(it.groupValues[1]) }.toList()
         }
 
+        private fun parseHex(s: String): Int? = s.removePrefix("0x").removePrefix("0X").toIntOrNull(16)
+
         private fun extractString(json: String, key: String): String? {
             return Regex(""""$key"\s*:\s*"([^"]*)"""").find(json)?.groupValues?.get(1)
         }
@@ -0,0 +1,69 @@
+package knes.debug
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.shouldBe
+
+class DebuggerTest : FunSpec({
+
+    test("conditions parse hex, dollar and decimal operands") {
+        Debugger.Condition.parse("== 0x12") shouldBe Debugger.Condition(Debugger.Condition.Op.EQ, 0x12)
+        Debugger.Condition.parse(">=\$80") shouldBe Debugger.Condition(Debugger.Condition.Op.GE, 0x80)
+        Debugger.Condition.parse(" & 7 ") shouldBe Debugger.Condition(Debugger.Condition.Op.ANY_BITS, 7)
+        Debugger.Condition.parse("Changed") shouldBe Debugger.Condition(Debugger.Condition.Op.CHANGED)
+        shouldThrow<IllegalArgumentException> { Debugger.Condition.parse("= 3") }
+        shouldThrow<IllegalArgumentException> { Debugger.Condition.parse("== x") }
+    }
+
+    test("conditions test the new value, or it against the old one") {
+        Debugger.Condition.parse("< 3").test(old = 0, value = 2) shouldBe true
+        Debugger.Condition.parse("!= 2").test(old = 0, value = 2) shouldBe false
+        Debugger.Condition.parse("& 0x80").test(old = 0, value = 0x81) shouldBe true
+        Debugger.Condition.parse("changed").test(old = 5, value = 5) shouldBe false
+        Debugger.Condition.parse("changed").test(old = 5, value = 6) shouldBe true
+    }
+
+    test("breakpoints get ids and can be removed one by one or cleared") {
+        val debugger = Debugger()
+        val write = debugger.add(Debugger.Kind.WRITE, 0x48, condition = Debugger.Condition.parse("changed"))
+        val again = debugger.add(Debugger.Kind.WRITE, 0x48)
+        val nmi = debugger.add(Debugger.Kind.NMI, 0x1234)
+
+        debugger.list().map { it.id } shouldBe listOf(1, 2, 3)
+        nmi.address shouldBe -1
+        debugger.remove(write.id) shouldBe true
+        // The other watchpoint on $48 keeps the trap armed.
+        debugger.traps.isWriteWatched(0x48) shouldBe true
+        debugger.remove(again.id) shouldBe true
+        debugger.traps.isWriteWatched(0x48) shouldBe false
+        debugger.remove(again.id) shouldBe false
+        debugger.clear()
+        debugger.list() shouldBe emptyList()
+    }
+
+    test("watchpoints on mirrors of one RAM byte share its trap") {
+        val debugger = Debugger()
+        val low = debugger.add(Debugger.Kind.WRITE, 0x0048)
+        val mirror = debugger.add(Debugger.Kind.WRITE, 0x0848)
+
+        debugger.remove(low.id) shouldBe true
+        debugger.traps.isWriteWatched(0x48) shouldBe true
+        debugger.remove(mirror.id) shouldBe true
+        debugger.traps.isWriteWatched(0x48) shouldBe false
+    }
+
+    test("invalid breakpoints are rejected") {
+        val debugger = Debugger()
+        shouldThrow<IllegalArgumentException> { debugger.add(Debugger.Kind.EXECUTE, 0x10000) }
+        shouldThrow<IllegalArgumentException> { debugger.add(Debugger.Kind.OPCODE, 0x100) }
+        shouldThrow<IllegalArgumentException> { debugger.add(Debugger.Kind.EXECUTE, 0x8000, condition = Debugger.Condition.parse("== 1")) }
+        debugger.list() shouldBe emptyList()
+    }
+
+    test("numbers parse as hex with 0x or \$, decimal otherwise") {
+        Debugger.parseNumber("0x1F") shouldBe 31
+        Debugger.parseNumber("\$1f") shouldBe 31
+        Debugger.parseNumber("31") shouldBe 31
+        shouldThrow<IllegalArgumentException> { Debugger.parseNumber("1F") }
+    }
+})
@@ -47,6 +47,17 @@ class GameProfileTest : FunSpec({
         fair.containsKey("enemy1_hpLow") shouldBe false
     }
 
+    test("FF1 profile carries a text table") {
+        val text = GameProfile.get("ff1")!!.text!!
+        text.glyphs[0x80] shouldBe '0'
+        text.glyphs[0x8A] shouldBe 'A'
+        text.glyphs[0xBD] shouldBe 'z'
+        text.glyphs[0xC0] shouldBe '.'
+        text.frame.size shouldBe 8
+        text.cursorSprites.contains(0xF0) shouldBe true
+        GameProfile.get("smb")!!.text shouldBe null
+    }
+
     test("register custom profile") {
         val custom = GameProfile("Test", "test-game", "test", mapOf("hp" to AddressEntry(0x50, "health")))
         GameProfile.register(custom)
@@ -2,10 +2,11 @@ package knes.api
 
 import knes.controllers.ControllerProvider
 import knes.emulator.input.InputHandler
-import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicInteger
 
 class ApiController : ControllerProvider {
-    private val keyStates = ShortArray(InputHandler.NUM_KEYS) { 0x40 }
+    // Persistent holds as a packed mask: bit N = InputHandler key N.
+    private val heldMask = AtomicInteger(0)
 
     val inputQueue = InputQueue()
 
@@ -20,20 +21,21 @@ class ApiController : ControllerProvider {
         "RIGHT" to InputHandler.KEY_RIGHT,
     )
 
-    fun pressButton(key: Int) { keyStates[key] = 0x41 }
-    fun releaseButton(key: Int) { keyStates[key] = 0x40 }
-    fun releaseAll() { keyStates.fill(0x40) }
+    fun pressButton(key: Int) { heldMask.getAndUpdate { it or (1 shl key) } }
+    fun releaseButton(key: Int) { heldMask.getAndUpdate { it and (1 shl key).inv() } }
+    fun releaseAll() { heldMask.set(0) }
 
     fun setButtons(buttons: List<String>) {
-        releaseAll()
-        for (name in buttons) {
-            pressButton(resolveButton(name))
-        }
+        heldMask.set(buttonMask(buttons))
     }
 
+    /** Holds exactly the buttons in [mask] (bit N = InputHandler key N). */
+    fun setButtonMask(mask: Int) { heldMask.set(mask and 0xFF) }
+
     fun getHeldButtons(): List<String> {
+        val held = heldMask.get()
         return buttonNames.entries
-            .filter { keyStates[it.value] == 0x41.toShort() }
+            .filter { (held ushr it.value) and 1 != 0 }
             .map { it.key }
     }
 
@@ -42,12 +44,22 @@ class ApiController : ControllerProvider {
             ?: throw IllegalArgumentException("Unknown button: $name. Valid: ${buttonNames.keys}")
     }
 
-    fun enqueueSteps(steps: List<StepRequest>): CountDownLatch {
-        val frameInputs = steps.flatMap { step ->
-            val buttons = step.buttons.map { resolveButton(it) }.toSet()
-            List(step.frames) { FrameInput(buttons) }
+    fun buttonMask(buttons: List<String>): Int =
+        buttons.fold(0) { acc, name -> acc or (1 shl resolveButton(name)) }
+
+    /**
+     * Queues [steps] as one batch of per-frame button masks. Returns the completion ticket;
+     * wait for it with [InputQueue.awaitCompletion].
+     */
+    fun enqueueSteps(steps: List<StepRequest>): Long {
+        val masks = ByteArray(steps.sumOf { it.frames })
+        var i = 0
+        for (step in steps) {
+            val mask = buttonMask(step.buttons).toByte()
+            masks.fill(mask, i, i + step.frames)
+            i += step.frames
         }
-        return inputQueue.enqueue(frameInputs)
+        return inputQueue.enqueue(masks)
     }
 
     fun onFrameBoundary() {
@@ -56,9 +68,9 @@ class ApiController : ControllerProvider {
 
     override fun setKeyState(keyCode: Int, isPressed: Boolean) {}
 
-    override fun getKeyState(padKey: Int): Short {
-        val persistent = keyStates[padKey]
-        val queued = if (inputQueue.isPressed(padKey)) 0x41.toShort() else 0x40.toShort()
-        return if (persistent == 0x41.toShort() || queued == 0x41.toShort()) 0x41 else 0x40
-    }
+    /** Persistent holds merged with the queued input of the current frame, bit N = InputHandler key N. */
+    val buttons: Int get() = heldMask.get() or inputQueue.currentMask
+
+    override fun getKeyState(padKey: Int): Short =
+        if ((buttons ushr padKey) and 1 != 0) 0x41 else 0x40
 }
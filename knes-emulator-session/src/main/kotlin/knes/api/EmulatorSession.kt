@@ -1,8 +1,12 @@
 package knes.api
 
+import knes.debug.Debugger
 import knes.emulator.ByteBuffer
 import knes.emulator.NES
+import knes.emulator.cpu.CpuProfiler
 import knes.emulator.input.InputHandler
+import knes.emulator.input.InputPipeline
+import knes.emulator.memory.WriteWatchpoints
 import knes.emulator.ui.GUI
 import knes.emulator.utils.Globals
 import knes.emulator.utils.HiResTimer
@@ -30,12 +34,48 @@ class EmulatorSession(externalNes: NES? = null) {
 
     val shared: Boolean = externalNes != null
 
+    /** Path of the ROM loaded through [loadRom]; null in shared mode or before a load. */
+    var romPath: String? = null
+        private set
+
     // Double buffer: writeBuffer receives new frames, readyBuffer is served to API.
     // Swap happens atomically in updateFrameBuffer/imageReady — no torn frames.
     private var writeBuffer = IntArray(256 * 240)
     @Volatile private var readyBuffer = IntArray(256 * 240)
 
     private var watchedAddresses: MutableMap<String, Int> = mutableMapOf()
+    private var watchedNames: Map<Int, String> = emptyMap()
+
+    /**
+     * Write-watchpoints on every watchable address in [setWatchedAddresses]. The CPU
+     * publishes (frame, address, old, new) into this ring the moment a watched byte
+     * changes; subscribers drain it instead of polling [getWatchedState].
+     */
+    val watchpoints = WriteWatchpoints()
+
+    /** Frame/instruction counters and latency histograms, exported at `/metrics`. */
+    val metrics = SessionMetrics()
+
+    /**
+     * Run-ahead depth. When > 0, each [advanceFrames] call ends by emulating this many
+     * extra frames with the current input, publishing the last one as the screen, and
+     * rolling the emulator back. The screen then shows the result of an input as soon as
+     * the game would draw it, hiding the frames games spend polling before they render.
+     * RAM, [frameCount] and watch events stay on the real timeline; only the screen is
+     * ahead. The cost is counted in [SessionMetrics.runAheadFrames]. In shared mode this
+     * sets [NES.runAheadFrames], which does the same on the UI's emulation thread.
+     */
+    var runAheadFrames: Int = 0
+        set(value) {
+            require(value in 0..MAX_RUN_AHEAD_FRAMES) { "runAheadFrames must be 0..$MAX_RUN_AHEAD_FRAMES, got $value" }
+            if (shared) nes.runAheadFrames = value
+            field = value
+        }
+
+    // Run-ahead scratch: one reusable savestate buffer, and a flag routing frames away from the real timeline.
+    private val runAheadState = ByteBuffer(64 * 1024, ByteBuffer.BO_LITTLE_ENDIAN).apply { setExpandable(true) }
+    private var speculating = false
+    private var speculativeFrames = 0
 
     val nes: NES
 
@@ -63,32 +103,69 @@ class EmulatorSession(externalNes: NES? = null) {
                 override fun imageReady(skipFrame: Boolean, buffer: IntArray) {
                     System.arraycopy(buffer, 0, writeBuffer, 0, buffer.size)
                     readyBuffer = writeBuffer.also { writeBuffer = readyBuffer }
+                    if (speculating) {
+                        speculativeFrames++
+                        metrics.runAheadFrames.increment()
+                        return
+                    }
                     frameCount++
+                    watchpoints.frame = frameCount
+                    metrics.frames.increment()
+                    recordFrame(buffer)
                 }
             }
 
             nes = NES(gui)
         }
+        // The Compose UI's keyboard and gamepad, when this session observes its NES.
+        metrics.inputDevices = { (nes.inputHandler as? InputPipeline)?.devices() ?: emptyList() }
     }
 
+    /**
+     * Samples PPU/PAPU/mapper time into [SessionMetrics.timings]. Off by default, because
+     * while on every memory-mapper access goes through the timing wrapper. In shared mode
+     * the UI's CPU thread picks it up on its next instruction.
+     */
+    var componentTimings: Boolean
+        get() = nes.cpu.timings != null
+        set(value) {
+            nes.cpu.timings = if (value) metrics.timings else null
+        }
+
     fun loadRom(path: String): Boolean {
         if (shared) return false
+        stopMovie()
         romLoaded = try {
             nes.loadRom(path)
         } catch (e: Exception) {
             false
         }
-        if (romLoaded) frameCount = 0
+        if (romLoaded) {
+            romPath = path
+            frameCount = 0
+            watchpoints.frame = 0
+        }
         return romLoaded
     }
 
     fun reset() {
+        stopMovie()
         nes.reset()
         frameCount = 0
+        watchpoints.frame = 0
         controller.releaseAll()
     }
 
     fun advanceFrames(n: Int) {
+        val start = System.nanoTime()
+        try {
+            advanceFramesUntimed(n)
+        } finally {
+            metrics.advanceFrames.record(System.nanoTime() - start)
+        }
+    }
+
+    private fun advanceFramesUntimed(n: Int) {
         val target = frameCount + n
         if (shared) {
             // In shared mode, UI drives the CPU — wait for it to produce frames
@@ -100,17 +177,80 @@ class EmulatorSession(externalNes: NES? = null) {
                 }
             }
         } else {
-            val maxSteps = n * 300_000
-            var steps = 0
-            var lastFrame = frameCount
+            stepFrames(n, untilBreak = false)
+            if (runAheadFrames > 0 && romLoaded) runAhead(runAheadFrames)
+        }
+    }
+
+    // Steps the standalone CPU until [n] more frames are done or, with [untilBreak], a breakpoint hits.
+    private fun stepFrames(n: Int, untilBreak: Boolean) {
+        val target = frameCount + n
+        val maxSteps = n * 300_000
+        var steps = 0
+        var lastFrame = frameCount
+        try {
             while (frameCount < target) {
                 nes.cpu.step()
                 if (frameCount != lastFrame) {
+                    movie?.let { movieFrame(it) }
                     controller.onFrameBoundary()
                     lastFrame = frameCount
                 }
+                if (untilBreak && debugger.hit != null) break
                 if (++steps > maxSteps) throw IllegalStateException("advanceFrames($n) timed out")
             }
+        } finally {
+            metrics.instructions.add(steps.toLong())
+        }
+    }
+
+    /** Breakpoints and watchpoints for [runUntilBreak]. */
+    val debugger = Debugger()
+
+    /**
+     * Runs up to [maxFrames] frames with the [debugger]'s breakpoints armed and returns the
+     * one that stopped the CPU, or null if none hit. The emulator is left at the hit, mid-frame;
+     * the next call resumes from there. Standalone only. The breakpoints are checked only
+     * during this call, so [advanceFrames] keeps running at full speed while some are set.
+     */
+    fun runUntilBreak(maxFrames: Int): Debugger.Hit? {
+        check(!shared) { "breakpoints need a standalone session" }
+        debugger.resume()
+        nes.cpu.traps = debugger.traps
+        try {
+            stepFrames(maxFrames, untilBreak = true)
+        } finally {
+            nes.cpu.traps = null
+        }
+        val hit = debugger.hit
+        if (hit == null && runAheadFrames > 0 && romLoaded) runAhead(runAheadFrames)
+        return hit
+    }
+
+    private fun runAhead(n: Int) {
+        runAheadState.goTo(0)
+        nes.stateSave(runAheadState)
+        val watch = nes.cpu.writeWatch
+        val profiler = nes.cpu.profiler
+        nes.cpu.writeWatch = null
+        nes.cpu.profiler = null
+        speculating = true
+        nes.speculating = true
+        val target = speculativeFrames + n
+        var steps = 0
+        try {
+            while (speculativeFrames < target) {
+                nes.cpu.step()
+                if (++steps > n * 300_000) throw IllegalStateException("run-ahead of $n frames timed out")
+            }
+        } finally {
+            // Rolled-back instructions stay out of metrics.instructions; runAheadFrames counts the cost.
+            speculating = false
+            nes.speculating = false
+            nes.cpu.writeWatch = watch
+            nes.cpu.profiler = profiler
+            runAheadState.goTo(0)
+            nes.stateLoad(runAheadState)
         }
     }
 
@@ -141,6 +281,8 @@ class EmulatorSession(externalNes: NES? = null) {
      */
     fun loadState(bytes: ByteArray): Boolean {
         if (!romLoaded) error("loadState requires ROM loaded")
+        // A movie only replays from one continuous timeline.
+        stopMovie()
         val buf = ByteBuffer(bytes, ByteBuffer.BO_LITTLE_ENDIAN)
         return nes.stateLoad(buf)
     }
@@ -160,19 +302,127 @@ class EmulatorSession(externalNes: NES? = null) {
         return nt.getTileIndex(x, y).toInt() and 0xFF
     }
 
+    /**
+     * Background tiles, attribute palettes and visible sprites of the current PPU state,
+     * with scroll applied across the four logical nametables (mirroring honoured).
+     * Reads nametable and OAM memory directly; no rendering or PNG encoding.
+     */
+    fun screenState(): ScreenState {
+        val ppu = nes.ppu
+        val scrollX = ppu.scrollX
+        val scrollY = ppu.scrollY
+        val tiles = ByteArray(ScreenState.COLUMNS * ScreenState.ROWS)
+        val palettes = ByteArray(tiles.size)
+        val firstCol = scrollX shr 3
+        val firstRow = scrollY shr 3
+        for (row in 0 until ScreenState.ROWS) {
+            val planeRow = (firstRow + row) % PLANE_ROWS
+            val ntV = planeRow / NT_ROWS
+            val ty = planeRow % NT_ROWS
+            for (col in 0 until ScreenState.COLUMNS) {
+                val planeCol = (firstCol + col) and (PLANE_COLUMNS - 1)
+                val nt = ppu.logicalNameTable((ntV shl 1) or (planeCol shr 5)) ?: continue
+                val tx = planeCol and 31
+                val cell = row * ScreenState.COLUMNS + col
+                tiles[cell] = nt.getTileIndex(tx, ty).toByte()
+                palettes[cell] = (nt.getAttrib(tx, ty).toInt() shr 2).toByte()
+            }
+        }
+        return ScreenState(
+            scrollX = scrollX,
+            scrollY = scrollY,
+            tiles = tiles,
+            palettes = palettes,
+            sprites = visibleSprites(),
+            spriteHeight = ppu.spriteHeight,
+            backgroundVisible = ppu.isBackgroundVisible,
+            spritesVisible = ppu.isSpriteVisible,
+        )
+    }
+
+    private fun visibleSprites(): List<ScreenSprite> {
+        val oam = nes.sprMemory
+        val out = ArrayList<ScreenSprite>()
+        for (i in 0 until 64) {
+            val base = i shl 2
+            val y = oam.load(base).toInt() and 0xFF
+            // Y >= $EF puts the sprite below the visible 240 lines; games park unused entries there.
+            if (y >= OAM_HIDDEN_Y) continue
+            val attr = oam.load(base + 2).toInt() and 0xFF
+            out += ScreenSprite(
+                index = i,
+                x = oam.load(base + 3).toInt() and 0xFF,
+                y = y + 1,
+                tile = oam.load(base + 1).toInt() and 0xFF,
+                palette = attr and 3,
+                flipHorizontal = attr and 0x40 != 0,
+                flipVertical = attr and 0x80 != 0,
+                behindBackground = attr and 0x20 != 0,
+            )
+        }
+        return out
+    }
+
     fun setWatchedAddresses(addresses: Map<String, Int>) {
         watchedAddresses.clear()
         watchedAddresses.putAll(addresses)
+
+        val names = mutableMapOf<Int, String>()
+        watchpoints.clear()
+        for ((name, addr) in addresses) {
+            if (!WriteWatchpoints.isWatchable(addr)) continue
+            watchpoints.watch(addr)
+            names.putIfAbsent(WriteWatchpoints.normalize(addr), name)
+        }
+        watchedNames = names
+        nes.cpu.writeWatch = if (names.isEmpty()) null else watchpoints
     }
 
+    /** Address of the watched entry called [name], or null if nothing is watched under that name. */
+    fun watchedAddress(name: String): Int? = watchedAddresses[name]
+
+    /** Profile name of a watched address as reported by [watchpoints] events, or null. */
+    fun watchedName(address: Int): String? = watchedNames[address]
+
     fun getWatchedState(): Map<String, Int> = watchedAddresses.mapValues { readMemory(it.value) }
 
     fun getScreenPng(): ByteArray {
+        val start = System.nanoTime()
         val img = BufferedImage(256, 240, BufferedImage.TYPE_INT_RGB)
         img.setRGB(0, 0, 256, 240, readyBuffer, 0, 256)
         val out = ByteArrayOutputStream()
         ImageIO.write(img, "png", out)
-        return out.toByteArray()
+        val png = out.toByteArray()
+        metrics.pngEncode.record(System.nanoTime() - start)
+        return png
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the 2 KiB of CPU work RAM and the 8 KiB of cartridge RAM at
+     * $6000-$7FFF, where battery-backed games keep their state.
+     */
+    fun ramHash(): Long {
+        val mem = nes.cpuMemory.mem
+        var h = FNV_OFFSET_BASIS
+        for (i in 0 until 0x800) {
+            h = (h xor (mem[i].toLong() and 0xFF)) * FNV_PRIME
+        }
+        for (i in 0x6000 until 0x8000) {
+            h = (h xor (mem[i].toLong() and 0xFF)) * FNV_PRIME
+        }
+        return h
+    }
+
+    /** Copy of the last completed frame, 256x240 0x00RRGGBB pixels. No encoding. */
+    fun copyFrame(): IntArray = readyBuffer.copyOf()
+
+    /** 64-bit FNV-1a hash of the last completed frame. Identical frames hash identically. */
+    fun frameHash(): Long {
+        var h = FNV_OFFSET_BASIS
+        for (pixel in readyBuffer) {
+            h = (h xor (pixel.toLong() and 0xFFFFFF)) * FNV_PRIME
+        }
+        return h
     }
 
     fun getScreenBase64(): String = java.util.Base64.getEncoder().encodeToString(getScreenPng())
@@ -192,16 +442,142 @@ class EmulatorSession(externalNes: NES? = null) {
     /** Alias for toolset surface: returns base64-encoded PNG of the current frame. */
     fun screenshotBase64Png(): String = getScreenBase64()
 
+    /** Last profile passed to [applyProfile], or null. */
+    var profile: knes.debug.GameProfile? = null
+        private set
+
     /** Applies a [knes.debug.GameProfile]: sets watched addresses. */
     fun applyProfile(profile: knes.debug.GameProfile) {
+        this.profile = profile
         setWatchedAddresses(profile.toWatchMap())
     }
 
+    /**
+     * Text windows and menu cursors decoded from the nametables with [table] (default:
+     * the applied profile's). Null when no table is available.
+     */
+    fun screenText(table: knes.debug.TextTable? = profile?.text): ScreenText? =
+        table?.let { TextDecoder(it).decode(screenState()) }
+
     /** Allow external frame buffer updates (used by Compose UI to feed frames to shared session) */
     fun updateFrameBuffer(buffer: IntArray) {
         System.arraycopy(buffer, 0, writeBuffer, 0, buffer.size)
         readyBuffer = writeBuffer.also { writeBuffer = readyBuffer }
         frameCount++
+        watchpoints.frame = frameCount
+        metrics.frames.increment()
         romLoaded = nes.isRomLoaded
+        recordFrame(buffer)
+    }
+
+    /** Profiler installed by the last [startProfiling]; kept after [stopProfiling] for its reports. */
+    var cpuProfiler: CpuProfiler? = null
+        private set
+
+    val profiling: Boolean get() = nes.cpu.profiler != null
+
+    /**
+     * Profiles the emulated code from now on with a fresh [CpuProfiler] counting one
+     * instruction in [sampleEvery], replacing any profile in progress. In shared mode the
+     * UI's CPU thread picks it up on its next instruction. Run-ahead frames are not profiled.
+     */
+    fun startProfiling(sampleEvery: Int = 1): CpuProfiler {
+        val profiler = CpuProfiler(sampleEvery)
+        nes.cpu.profiler = profiler
+        cpuProfiler = profiler
+        return profiler
+    }
+
+    /** Stops profiling and returns the finished profile, or null if none was ever started. */
+    fun stopProfiling(): CpuProfiler? {
+        nes.cpu.profiler = null
+        return cpuProfiler
+    }
+
+    private var movie: InputMovie.Recorder? = null
+
+    /**
+     * Starts an input movie at [path] (see [InputMovie]): the current state, the ROM hash
+     * and from now on the input of every frame, with hashes every [hashInterval] frames.
+     * Standalone only, and on the thread that calls [advanceFrames]. [loadState], [reset]
+     * and [loadRom] end the movie, since its input no longer follows on from the state.
+     */
+    fun startMovie(path: java.nio.file.Path, hashInterval: Int = InputMovie.DEFAULT_HASH_INTERVAL) {
+        check(!shared) { "movies need a standalone session" }
+        val rom = checkNotNull(romPath) { "startMovie requires ROM loaded" }
+        stopMovie()
+        movie = InputMovie.Recorder(path, InputMovie.sha256(java.io.File(rom).readBytes()), hashInterval, frameCount, saveState())
+    }
+
+    private fun movieFrame(m: InputMovie.Recorder) {
+        try {
+            m.frame(controller.buttons, this)
+        } catch (e: java.io.IOException) {
+            // Like a failed video recording: the run goes on, the movie ends at its last checkpoint.
+            System.err.println("[EmulatorSession] movie stopped: ${e.message}")
+            if (movie === m) movie = null
+            try {
+                m.close()
+            } catch (_: java.io.IOException) {
+                // Same failure, already reported.
+            }
+        }
+    }
+
+    /** Finishes the current movie, if any, and returns the number of frames it holds. */
+    fun stopMovie(): Int {
+        val m = movie ?: return 0
+        movie = null
+        m.close()
+        return m.frames
+    }
+
+    @Volatile private var recorder: FrameRecorder? = null
+
+    val recording: Boolean get() = recorder != null
+
+    /**
+     * Records every completed frame from now on, with the buttons the game latched for it,
+     * to a `.knv` file at [path] (see [FrameRecorder]); replaces any recording in progress.
+     * Run-ahead frames are not recorded.
+     */
+    fun startRecording(path: java.nio.file.Path, keyframeInterval: Int = FrameRecorder.DEFAULT_KEYFRAME_INTERVAL) {
+        stopRecording()
+        recorder = FrameRecorder(path, keyframeInterval = keyframeInterval)
+    }
+
+    /** Finishes the current recording, if any, and returns the number of frames it holds. */
+    fun stopRecording(): Long {
+        val r = recorder ?: return 0
+        recorder = null
+        r.close()
+        return r.framesRecorded
+    }
+
+    private fun recordFrame(buffer: IntArray) {
+        val r = recorder ?: return
+        try {
+            // What the game read this frame, which can differ from what is held right now.
+            r.record(buffer, frameCount, nes.memoryMapper?.latchedJoy1Buttons() ?: 0)
+        } catch (e: IllegalStateException) {
+            // A full disk must not stop the emulator; the recording just ends here.
+            System.err.println("[EmulatorSession] recording stopped: ${e.message}")
+            if (recorder === r) recorder = null
+            try {
+                r.close()
+            } catch (_: IllegalStateException) {
+                // Same failure, already reported; close() has released the writer and file.
+            }
+        }
+    }
+
+    private companion object {
+        const val FNV_OFFSET_BASIS = -0x340d631b7bdddcdbL
+        const val FNV_PRIME = 0x100000001b3L
+        const val NT_ROWS = 30
+        const val PLANE_ROWS = 2 * NT_ROWS
+        const val PLANE_COLUMNS = 64
+        const val OAM_HIDDEN_Y = 0xEF
+        const val MAX_RUN_AHEAD_FRAMES = NES.MAX_RUN_AHEAD_FRAMES
     }
 }
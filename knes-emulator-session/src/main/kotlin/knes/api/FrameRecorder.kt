@@ -0,0 +1,231 @@
+package knes.api
+
+import java.io.BufferedOutputStream
+import java.io.DataOutputStream
+import java.nio.channels.Channels
+import java.nio.channels.FileChannel
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.zip.Deflater
+
+/**
+ * Lossless session video in the `.knv` frame-delta format, read back by [FrameRecording].
+ *
+ * NES frames use a few dozen colours, so [record] maps each 0x00RRGGBB pixel to a byte
+ * index into a palette built as colours first appear; that is the only per-pixel work on
+ * the emulation thread. A writer thread XORs each index plane with the previous one
+ * (unchanged pixels become zero runs), compresses it with Deflate at [Deflater.BEST_SPEED]
+ * and appends it through a 1 MiB buffered file channel. Every [keyframeInterval] frames,
+ * and whenever the palette is reset, a plane is stored whole so a damaged file can be
+ * decoded from the next keyframe on. Planes travel in a small pool of reusable jobs:
+ * when the writer falls behind, [record] waits instead of dropping a frame.
+ *
+ * File layout, big-endian: `KNV1`, u16 width, u16 height, then chunks, each one type byte:
+ * - [PALETTE_RESET]: no payload; all indices are free again.
+ * - [PALETTE]: u8 index, i32 rgb.
+ * - [KEYFRAME] / [DELTA]: i32 frame number, u8 controller buttons (bit N = InputHandler
+ *   key N), i32 length, then that many bytes of the deflated plane.
+ */
+class FrameRecorder(
+    path: Path,
+    val width: Int = 256,
+    val height: Int = 240,
+    private val keyframeInterval: Int = DEFAULT_KEYFRAME_INTERVAL,
+) : AutoCloseable {
+
+    private class Job(size: Int) {
+        val plane = ByteArray(size)
+        var frame = 0
+        var buttons = 0
+        var paletteReset = false
+        // (index shl 24) or rgb, for colours first seen in this frame.
+        var newColors = IntArray(16)
+        var newColorCount = 0
+        var end = false
+    }
+
+    private val out = DataOutputStream(
+        BufferedOutputStream(
+            Channels.newOutputStream(
+                FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+            ),
+            1 shl 20,
+        )
+    )
+
+    private val free = ArrayBlockingQueue<Job>(POOL_SIZE)
+    private val full = ArrayBlockingQueue<Job>(POOL_SIZE + 1)
+
+    // Open-addressed rgb -> index map; keys are rgb + 1 so 0 marks an empty slot.
+    private val paletteKeys = IntArray(PALETTE_SLOTS)
+    private val paletteValues = IntArray(PALETTE_SLOTS)
+    private var paletteSize = 0
+
+    @Volatile private var failure: Throwable? = null
+    private var closed = false
+
+    var framesRecorded = 0L
+        private set
+
+    private val writer: Thread
+
+    init {
+        require(keyframeInterval > 0) { "keyframeInterval must be positive" }
+        out.writeBytes(MAGIC)
+        out.writeShort(width)
+        out.writeShort(height)
+        repeat(POOL_SIZE) { free.add(Job(width * height)) }
+        writer = Thread(::writeLoop, "knes-frame-recorder").apply {
+            isDaemon = true
+            start()
+        }
+    }
+
+    /**
+     * Appends [frame] (row-major 0x00RRGGBB), tagged with the session [frameNumber] and held
+     * [buttons]. Frames arriving after [close] are ignored.
+     */
+    @Synchronized
+    fun record(frame: IntArray, frameNumber: Int, buttons: Int) {
+        if (closed) return
+        failure?.let { throw IllegalStateException("recording failed", it) }
+        val job = free.take()
+        job.frame = frameNumber
+        job.buttons = buttons
+        job.paletteReset = false
+        job.newColorCount = 0
+        if (!index(frame, job)) {
+            // More than 256 colours since the last reset: start a fresh palette with this frame.
+            paletteKeys.fill(0)
+            paletteSize = 0
+            job.paletteReset = true
+            job.newColorCount = 0
+            if (!index(frame, job)) {
+                // The palette no longer matches the file: give the job back and fail the recording.
+                free.put(job)
+                val e = IllegalStateException("frame $frameNumber has more than $MAX_COLORS colours")
+                failure = e
+                throw e
+            }
+        }
+        full.put(job)
+        framesRecorded++
+    }
+
+    /** Maps [frame] into [job]'s plane. Returns false when the palette runs out. */
+    private fun index(frame: IntArray, job: Job): Boolean {
+        val plane = job.plane
+        var lastRgb = -1
+        var lastIndex = 0
+        for (i in plane.indices) {
+            val rgb = frame[i] and 0xFFFFFF
+            if (rgb != lastRgb) {
+                lastRgb = rgb
+                lastIndex = paletteIndex(rgb, job)
+                if (lastIndex < 0) return false
+            }
+            plane[i] = lastIndex.toByte()
+        }
+        return true
+    }
+
+    private fun paletteIndex(rgb: Int, job: Job): Int {
+        val key = rgb + 1
+        var slot = (rgb * -0x61c88647 ushr (32 - PALETTE_BITS))
+        while (true) {
+            val k = paletteKeys[slot]
+            if (k == key) return paletteValues[slot]
+            if (k == 0) break
+            slot = (slot + 1) and (PALETTE_SLOTS - 1)
+        }
+        if (paletteSize == MAX_COLORS) return -1
+        val index = paletteSize++
+        paletteKeys[slot] = key
+        paletteValues[slot] = index
+        if (job.newColorCount == job.newColors.size) job.newColors = job.newColors.copyOf(job.newColors.size * 2)
+        job.newColors[job.newColorCount++] = (index shl 24) or rgb
+        return index
+    }
+
+    private fun writeLoop() {
+        val deflater = Deflater(Deflater.BEST_SPEED)
+        val previous = ByteArray(width * height)
+        val delta = ByteArray(width * height)
+        var compressed = ByteArray(width * height + width * height / 100 + 64)
+        var sinceKeyframe = keyframeInterval
+        while (true) {
+            val job = full.take()
+            if (job.end) return
+            try {
+                if (failure == null) {
+                    if (job.paletteReset) out.writeByte(PALETTE_RESET)
+                    for (c in 0 until job.newColorCount) {
+                        val entry = job.newColors[c]
+                        out.writeByte(PALETTE)
+                        out.writeByte(entry ushr 24)
+                        out.writeInt(entry and 0xFFFFFF)
+                    }
+                    val key = job.paletteReset || sinceKeyframe >= keyframeInterval
+                    val input = if (key) {
+                        sinceKeyframe = 0
+                        job.plane
+                    } else {
+                        for (i in delta.indices) delta[i] = (job.plane[i].toInt() xor previous[i].toInt()).toByte()
+                        delta
+                    }
+                    sinceKeyframe++
+                    System.arraycopy(job.plane, 0, previous, 0, previous.size)
+
+                    deflater.reset()
+                    deflater.setInput(input)
+                    deflater.finish()
+                    var length = 0
+                    while (!deflater.finished()) {
+                        if (length == compressed.size) compressed = compressed.copyOf(compressed.size * 2)
+                        length += deflater.deflate(compressed, length, compressed.size - length)
+                    }
+                    out.writeByte(if (key) KEYFRAME else DELTA)
+                    out.writeInt(job.frame)
+                    out.writeByte(job.buttons)
+                    out.writeInt(length)
+                    out.write(compressed, 0, length)
+                }
+            } catch (e: Throwable) {
+                failure = e
+            } finally {
+                free.put(job)
+            }
+        }
+    }
+
+    /** Writes out every recorded frame and closes the file. */
+    @Synchronized
+    override fun close() {
+        if (closed) return
+        closed = true
+        full.put(Job(0).apply { end = true })
+        writer.join()
+        try {
+            out.close()
+        } catch (e: Exception) {
+            if (failure == null) failure = e
+        }
+        failure?.let { throw IllegalStateException("recording failed", it) }
+    }
+
+    companion object {
+        const val MAGIC = "KNV1"
+        const val PALETTE_RESET = 0
+        const val PALETTE = 1
+        const val KEYFRAME = 2
+        const val DELTA = 3
+        const val MAX_COLORS = 256
+        /** Ten seconds of NTSC frames between full planes. */
+        const val DEFAULT_KEYFRAME_INTERVAL = 600
+
+        private const val POOL_SIZE = 4
+        private const val PALETTE_BITS = 10
+        private const val PALETTE_SLOTS = 1 shl PALETTE_BITS
+    }
+}
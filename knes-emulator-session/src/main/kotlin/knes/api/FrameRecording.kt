@@ -0,0 +1,213 @@
+package knes.api
+
+import org.w3c.dom.Node
+import java.awt.image.BufferedImage
+import java.awt.image.IndexColorModel
+import java.io.BufferedInputStream
+import java.io.DataInputStream
+import java.io.EOFException
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.zip.Inflater
+import javax.imageio.IIOImage
+import javax.imageio.ImageIO
+import javax.imageio.ImageTypeSpecifier
+import javax.imageio.metadata.IIOMetadataNode
+import kotlin.io.path.createDirectories
+import kotlin.math.roundToInt
+
+/**
+ * Player for `.knv` files written by [FrameRecorder].
+ *
+ * [forEachFrame] decodes the file front to back and hands every frame to a callback as a
+ * [Frame] whose buffers are reused between calls. [exportPngs] and [exportGif] are built on
+ * it; the GIF is exact, since every frame already fits a 256-colour palette.
+ */
+class FrameRecording(private val path: Path) {
+
+    /** One decoded frame. Valid only inside the [forEachFrame] callback. */
+    class Frame internal constructor(val width: Int, val height: Int) {
+        var number = 0
+            internal set
+        /** Controller buttons held on this frame, bit N = InputHandler key N. */
+        var buttons = 0
+            internal set
+        /** Palette index per pixel, row-major. */
+        val indices = ByteArray(width * height)
+        /** Palette as 0x00RRGGBB; entries above the highest used index are undefined. */
+        val palette = IntArray(FrameRecorder.MAX_COLORS)
+
+        /** Expands the frame into 0x00RRGGBB pixels. */
+        fun pixels(into: IntArray = IntArray(width * height)): IntArray {
+            for (i in indices.indices) into[i] = palette[indices[i].toInt() and 0xFF]
+            return into
+        }
+    }
+
+    /** Decodes every frame in order. Stops early, without error, at a truncated tail. */
+    fun forEachFrame(action: (Frame) -> Unit) {
+        DataInputStream(BufferedInputStream(Files.newInputStream(path), 1 shl 16)).use { input ->
+            val magic = ByteArray(4)
+            input.readFully(magic)
+            require(String(magic, Charsets.US_ASCII) == FrameRecorder.MAGIC) { "$path is not a .knv recording" }
+            val frame = Frame(input.readUnsignedShort(), input.readUnsignedShort())
+            val inflater = Inflater()
+            var compressed = ByteArray(0)
+            val delta = ByteArray(frame.indices.size)
+            var haveKeyframe = false
+            try {
+                while (true) {
+                    val type = input.read()
+                    if (type < 0) return
+                    when (type) {
+                        FrameRecorder.PALETTE_RESET -> frame.palette.fill(0)
+                        FrameRecorder.PALETTE -> frame.palette[input.readUnsignedByte()] = input.readInt()
+                        FrameRecorder.KEYFRAME, FrameRecorder.DELTA -> {
+                            frame.number = input.readInt()
+                            frame.buttons = input.readUnsignedByte()
+                            val length = input.readInt()
+                            if (compressed.size < length) compressed = ByteArray(length)
+                            input.readFully(compressed, 0, length)
+                            inflater.reset()
+                            inflater.setInput(compressed, 0, length)
+                            if (type == FrameRecorder.KEYFRAME) {
+                                inflate(inflater, frame.indices)
+                                haveKeyframe = true
+                            } else {
+                                check(haveKeyframe) { "delta frame ${frame.number} before any keyframe" }
+                                inflate(inflater, delta)
+                                for (i in delta.indices) {
+                                    frame.indices[i] = (frame.indices[i].toInt() xor delta[i].toInt()).toByte()
+                                }
+                            }
+                            action(frame)
+                        }
+                        else -> error("unknown chunk type $type in $path")
+                    }
+                }
+            } catch (_: EOFException) {
+                // Recording cut off mid-chunk (e.g. the process died); keep what decoded.
+            } finally {
+                inflater.end()
+            }
+        }
+    }
+
+    private fun inflate(inflater: Inflater, into: ByteArray): ByteArray {
+        var n = 0
+        while (n < into.size && !inflater.finished()) {
+            val got = inflater.inflate(into, n, into.size - n)
+            if (got == 0 && inflater.needsInput()) throw EOFException("truncated plane")
+            n += got
+        }
+        return into
+    }
+
+    /** Number of frames in the file. */
+    fun frameCount(): Int {
+        var n = 0
+        forEachFrame { n++ }
+        return n
+    }
+
+    /** Writes every [step]th frame to [dir] as `frame-<number>.png`. Returns the number written. */
+    fun exportPngs(dir: Path, step: Int = 1): Int {
+        require(step > 0) { "step must be positive" }
+        dir.createDirectories()
+        var i = 0
+        var written = 0
+        var image: BufferedImage? = null
+        var pixels: IntArray? = null
+        forEachFrame { frame ->
+            if (i++ % step != 0) return@forEachFrame
+            val img = image ?: BufferedImage(frame.width, frame.height, BufferedImage.TYPE_INT_RGB).also { image = it }
+            val px = frame.pixels(pixels ?: IntArray(frame.width * frame.height).also { pixels = it })
+            img.setRGB(0, 0, frame.width, frame.height, px, 0, frame.width)
+            ImageIO.write(img, "png", dir.resolve("frame-%06d.png".format(frame.number)).toFile())
+            written++
+        }
+        return written
+    }
+
+    /**
+     * Writes frames [from] until [until] (positions in the file, not frame numbers), every
+     * [step]th one, as a looping animated GIF timed to NTSC speed. Returns the frame count.
+     */
+    fun exportGif(out: Path, from: Int = 0, until: Int = Int.MAX_VALUE, step: Int = 1): Int {
+        require(step > 0) { "step must be positive" }
+        val writer = ImageIO.getImageWritersByFormatName("gif").next()
+        // GIF delays are in hundredths of a second.
+        val delay = (step * 100 / NTSC_FPS).roundToInt().coerceAtLeast(1).toString()
+        var written = 0
+        ImageIO.createImageOutputStream(out.toFile()).use { stream ->
+            writer.output = stream
+            writer.prepareWriteSequence(null)
+            var i = 0
+            forEachFrame { frame ->
+                val position = i++
+                if (position < from || position >= until || (position - from) % step != 0) return@forEachFrame
+                val colors = IndexColorModel(8, FrameRecorder.MAX_COLORS, reds(frame.palette), greens(frame.palette), blues(frame.palette))
+                val image = BufferedImage(frame.width, frame.height, BufferedImage.TYPE_BYTE_INDEXED, colors)
+                image.raster.setDataElements(0, 0, frame.width, frame.height, frame.indices)
+
+                val metadata = writer.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(image), null)
+                val format = metadata.nativeMetadataFormatName
+                val root = metadata.getAsTree(format) as IIOMetadataNode
+                child(root, "GraphicControlExtension").apply {
+                    setAttribute("disposalMethod", "none")
+                    setAttribute("userInputFlag", "FALSE")
+                    setAttribute("transparentColorFlag", "FALSE")
+                    setAttribute("delayTime", delay)
+                    setAttribute("transparentColorIndex", "0")
+                }
+                if (written == 0) {
+                    val loop = IIOMetadataNode("ApplicationExtension").apply {
+                        setAttribute("applicationID", "NETSCAPE")
+                        setAttribute("authenticationCode", "2.0")
+                        userObject = byteArrayOf(1, 0, 0)
+                    }
+                    child(root, "ApplicationExtensions").appendChild(loop)
+                }
+                metadata.setFromTree(format, root)
+                writer.writeToSequence(IIOImage(image, null, metadata), null)
+                written++
+            }
+            writer.endWriteSequence()
+        }
+        writer.dispose()
+        return written
+    }
+
+    companion object {
+        private const val NTSC_FPS = 60.0988
+
+        /** `FrameRecording <file.knv> <dir>|<out.gif> [step]`: exports a recording as PNGs or a GIF. */
+        @JvmStatic
+        fun main(args: Array<String>) {
+            require(args.size >= 2) { "usage: <file.knv> <png-dir|out.gif> [step]" }
+            val recording = FrameRecording(Path.of(args[0]))
+            val step = args.getOrNull(2)?.toInt() ?: 1
+            val target = Path.of(args[1])
+            val n = if (target.fileName.toString().endsWith(".gif", ignoreCase = true)) {
+                recording.exportGif(target, step = step)
+            } else {
+                recording.exportPngs(target, step)
+            }
+            println("exported $n frames to $target")
+        }
+
+        private fun reds(palette: IntArray) = ByteArray(palette.size) { (palette[it] shr 16).toByte() }
+        private fun greens(palette: IntArray) = ByteArray(palette.size) { (palette[it] shr 8).toByte() }
+        private fun blues(palette: IntArray) = ByteArray(palette.size) { palette[it].toByte() }
+
+        private fun child(root: IIOMetadataNode, name: String): IIOMetadataNode {
+            var node: Node? = root.firstChild
+            while (node != null) {
+                if (node.nodeName == name) return node as IIOMetadataNode
+                node = node.nextSibling
+            }
+            return IIOMetadataNode(name).also { root.appendChild(it) }
+        }
+    }
+}
+
@@ -0,0 +1,140 @@
+package knes.api
+
+import java.awt.image.BufferedImage
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.util.Base64
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.LongAdder
+import java.util.concurrent.locks.ReentrantLock
+import javax.imageio.ImageIO
+import kotlin.concurrent.withLock
+
+/**
+ * Asynchronous image writer for screenshots and frame dumps.
+ *
+ * [submit] copies a raw 0x00RRGGBB frame and returns; encoding and the file write happen
+ * on [threads] daemon workers, so the caller (an agent loop, a UI thread) never waits on
+ * ImageIO or the disk. The queue holds at most [capacity] jobs. When it is full, [Policy.DROP]
+ * discards the new frame and counts it in [dropped], while [Policy.BLOCK] waits for room.
+ * The format follows the file extension (`.jpg`/`.jpeg`, otherwise PNG), and files are
+ * written to a uniquely named temporary sibling and moved into place so readers never see a
+ * partial image.
+ */
+class FrameSink(
+    capacity: Int = 16,
+    threads: Int = 2,
+    private val policy: Policy = Policy.DROP,
+) : AutoCloseable {
+
+    enum class Policy { DROP, BLOCK }
+
+    private class Job(val out: Path, val pixels: IntArray?, val width: Int, val height: Int, val encoded: String?)
+
+    private val queue = ArrayBlockingQueue<Job>(capacity)
+    private val idleLock = ReentrantLock()
+    private val idle = idleLock.newCondition()
+    private var inFlight = 0
+    @Volatile private var running = true
+
+    val written = LongAdder()
+    val dropped = LongAdder()
+    val failed = LongAdder()
+
+    private val workers = List(threads.coerceAtLeast(1)) { i ->
+        Thread(::work, "knes-frame-sink-$i").apply {
+            isDaemon = true
+            start()
+        }
+    }
+
+    /** Queues [frame] (row-major, [width] x [height]) for writing to [out]. Returns false if dropped. */
+    fun submit(frame: IntArray, width: Int, height: Int, out: Path): Boolean =
+        enqueue(Job(out, frame.copyOf(width * height), width, height, null))
+
+    /**
+     * Queues an already encoded image given as base64 (e.g. a PNG from a remote toolset);
+     * the decode happens on the worker too. Returns false if dropped.
+     */
+    fun submitBase64(base64: String, out: Path): Boolean = enqueue(Job(out, null, 0, 0, base64))
+
+    private fun enqueue(job: Job): Boolean {
+        check(running) { "FrameSink is closed" }
+        idleLock.withLock { inFlight++ }
+        val queued = when (policy) {
+            Policy.DROP -> queue.offer(job)
+            Policy.BLOCK -> { queue.put(job); true }
+        }
+        if (!queued) {
+            dropped.increment()
+            done()
+        }
+        return queued
+    }
+
+    /** Blocks until every queued frame is on disk. */
+    fun flush() {
+        idleLock.withLock {
+            while (inFlight > 0) idle.await()
+        }
+    }
+
+    private fun work() {
+        var image: BufferedImage? = null
+        while (running || queue.isNotEmpty()) {
+            val job = queue.poll(100, TimeUnit.MILLISECONDS) ?: continue
+            var tmp: Path? = null
+            try {
+                // Unique per job: two workers can be writing the same target at once.
+                val out = job.out.toAbsolutePath()
+                tmp = Files.createTempFile(out.parent, out.fileName.toString(), ".tmp")
+                if (job.encoded != null) {
+                    Files.write(tmp, Base64.getDecoder().decode(job.encoded))
+                } else {
+                    var img = image
+                    if (img == null || img.width != job.width || img.height != job.height) {
+                        img = BufferedImage(job.width, job.height, BufferedImage.TYPE_INT_RGB)
+                        image = img
+                    }
+                    img.setRGB(0, 0, job.width, job.height, job.pixels, 0, job.width)
+                    if (!ImageIO.write(img, formatOf(job.out), tmp.toFile())) error("no ImageIO writer for ${job.out}")
+                }
+                Files.move(tmp, job.out, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+                written.increment()
+            } catch (e: Exception) {
+                failed.increment()
+                System.err.println("[FrameSink] failed to write ${job.out}: ${e.message}")
+            } finally {
+                try {
+                    if (tmp != null) Files.deleteIfExists(tmp)
+                } catch (_: Exception) {
+                }
+                done()
+            }
+        }
+    }
+
+    private fun done() {
+        idleLock.withLock {
+            inFlight--
+            if (inFlight == 0) idle.signalAll()
+        }
+    }
+
+    /** Writes out everything still queued, then stops the workers. */
+    override fun close() {
+        if (!running) return
+        flush()
+        running = false
+        workers.forEach { it.join(1_000) }
+    }
+
+    private companion object {
+        fun formatOf(path: Path): String {
+            val name = path.fileName.toString().lowercase()
+            return if (name.endsWith(".jpg") || name.endsWith(".jpeg")) "jpg" else "png"
+        }
+    }
+}
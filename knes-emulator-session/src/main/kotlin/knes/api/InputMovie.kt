@@ -0,0 +1,188 @@
+package knes.api
+
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.EOFException
+import java.io.File
+import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.Path
+import java.security.MessageDigest
+
+/**
+ * Input movies (`.kmv`): a run reduced to its starting savestate and the controller mask
+ * of every frame after it, so the run replays exactly on a standalone [EmulatorSession].
+ *
+ * Every [hashInterval] frames the recorder also stores the screen hash
+ * ([EmulatorSession.frameHash]) and a hash of work and cartridge RAM
+ * ([EmulatorSession.ramHash]), and flushes the file. [InputMovie.replay] compares them
+ * while replaying and stops at the first checkpoint that differs, so a change to the
+ * emulator that alters gameplay is located to within [hashInterval] frames.
+ *
+ * File layout, big-endian: `KNM2`, 32-byte SHA-256 of the ROM file, i32 hash interval,
+ * i32 session frame number at the start, i32 savestate length and the savestate, then per
+ * frame one mask byte (bit N = InputHandler key N), followed on every [hashInterval]th
+ * frame by i64 frame hash and i64 RAM hash. The file ends with the last frame, so a
+ * movie cut short by a crash still replays up to there.
+ */
+class InputMovie(
+    val romSha256: ByteArray,
+    val hashInterval: Int,
+    val startFrame: Int,
+    val savestate: ByteArray,
+    private val masks: ByteArray,
+    private val frameHashes: LongArray,
+    private val ramHashes: LongArray,
+) {
+    /** Number of frames of input in the movie. */
+    val frames: Int get() = masks.size
+
+    fun mask(frame: Int): Int = masks[frame].toInt() and 0xFF
+
+    /** Outcome of [replay]. [desyncFrame] is the session frame number of the first mismatch, or null. */
+    data class ReplayResult(
+        val framesReplayed: Int,
+        val checkpointsVerified: Int,
+        val desyncFrame: Int? = null,
+        val reason: String? = null,
+        val nanos: Long = 0,
+    ) {
+        val ok: Boolean get() = desyncFrame == null && reason == null
+    }
+
+    /**
+     * Replays the movie on a fresh standalone session running [romPath], as fast as the
+     * emulator goes, checking every stored hash. Stops at the first divergence.
+     */
+    fun replay(romPath: String): ReplayResult {
+        if (!sha256(File(romPath).readBytes()).contentEquals(romSha256)) {
+            return ReplayResult(0, 0, reason = "ROM $romPath does not match the recorded ROM")
+        }
+        val session = EmulatorSession()
+        if (!session.loadRom(romPath)) return ReplayResult(0, 0, reason = "failed to load $romPath")
+        if (!session.loadState(savestate)) return ReplayResult(0, 0, reason = "failed to load the start savestate")
+
+        val start = System.nanoTime()
+        var checkpoints = 0
+        for (i in 0 until frames) {
+            session.controller.setButtonMask(mask(i))
+            session.advanceFrames(1)
+            val n = i + 1
+            if (n % hashInterval != 0) continue
+            val c = n / hashInterval - 1
+            val frame = startFrame + n
+            if (session.frameHash() != frameHashes[c]) {
+                return ReplayResult(n, checkpoints, frame, "screen differs at frame $frame", System.nanoTime() - start)
+            }
+            if (session.ramHash() != ramHashes[c]) {
+                return ReplayResult(n, checkpoints, frame, "RAM differs at frame $frame", System.nanoTime() - start)
+            }
+            checkpoints++
+        }
+        return ReplayResult(frames, checkpoints, nanos = System.nanoTime() - start)
+    }
+
+    /** Appends frames to a `.kmv` file as a session plays them; see [EmulatorSession.startMovie]. */
+    class Recorder internal constructor(path: Path, romSha256: ByteArray, val hashInterval: Int, startFrame: Int, savestate: ByteArray) :
+        AutoCloseable {
+
+        private val out = DataOutputStream(BufferedOutputStream(Files.newOutputStream(path), 1 shl 16))
+
+        var frames = 0
+            private set
+
+        init {
+            require(hashInterval > 0) { "hashInterval must be positive" }
+            out.writeBytes(MAGIC)
+            out.write(romSha256)
+            out.writeInt(hashInterval)
+            out.writeInt(startFrame)
+            out.writeInt(savestate.size)
+            out.write(savestate)
+        }
+
+        /** Called at every frame boundary, with the mask the game saw during the frame. */
+        internal fun frame(buttons: Int, session: EmulatorSession) {
+            out.writeByte(buttons)
+            if (++frames % hashInterval == 0) {
+                out.writeLong(session.frameHash())
+                out.writeLong(session.ramHash())
+                // A crash then loses at most the frames since this checkpoint.
+                out.flush()
+            }
+        }
+
+        override fun close() = out.close()
+    }
+
+    companion object {
+        // KNM2: the RAM hash covers $6000-$7FFF as well; KNM1 movies would report false desyncs.
+        const val MAGIC = "KNM2"
+        /** One checkpoint a second. */
+        const val DEFAULT_HASH_INTERVAL = 60
+
+        /** `InputMovie <movie.kmv> <rom.nes>`: replays a movie and reports the first desync. Exits 1 on one. */
+        @JvmStatic
+        fun main(args: Array<String>) {
+            require(args.size == 2) { "usage: <movie.kmv> <rom.nes>" }
+            val movie = read(Path.of(args[0]))
+            val result = movie.replay(args[1])
+            val seconds = result.nanos / 1e9
+            println(
+                "replayed ${result.framesReplayed}/${movie.frames} frames, ${result.checkpointsVerified} checkpoints, " +
+                    "%.1f s (%.0f fps)".format(seconds, if (seconds > 0) result.framesReplayed / seconds else 0.0)
+            )
+            if (!result.ok) {
+                println("DESYNC: ${result.reason}")
+                kotlin.system.exitProcess(1)
+            }
+        }
+
+        fun sha256(bytes: ByteArray): ByteArray = MessageDigest.getInstance("SHA-256").digest(bytes)
+
+        /**
+         * Reads a movie; a truncated tail is dropped back to the last whole frame. A bad header
+         * throws [IOException].
+         */
+        fun read(path: Path): InputMovie {
+            DataInputStream(BufferedInputStream(Files.newInputStream(path), 1 shl 16)).use { input ->
+                val magic = ByteArray(4)
+                input.readFully(magic)
+                if (String(magic, Charsets.US_ASCII) != MAGIC) throw IOException("$path is not a .kmv movie")
+                val rom = ByteArray(32).also { input.readFully(it) }
+                val interval = input.readInt()
+                if (interval <= 0) throw IOException("$path has a bad hash interval $interval")
+                val startFrame = input.readInt()
+                val savestateSize = input.readInt()
+                if (savestateSize < 0) throw IOException("$path has a bad savestate size $savestateSize")
+                val savestate = ByteArray(savestateSize).also { input.readFully(it) }
+
+                val masks = java.io.ByteArrayOutputStream()
+                val frameHashes = ArrayList<Long>()
+                val ramHashes = ArrayList<Long>()
+                try {
+                    while (true) {
+                        val mask = input.read()
+                        if (mask < 0) break
+                        if ((masks.size() + 1) % interval == 0) {
+                            val f = input.readLong()
+                            val r = input.readLong()
+                            frameHashes += f
+                            ramHashes += r
+                        }
+                        masks.write(mask)
+                    }
+                } catch (_: EOFException) {
+                    // Checkpoint cut off: the frame before it is the last complete one.
+                }
+                return InputMovie(
+                    rom, interval, startFrame, savestate, masks.toByteArray(),
+                    frameHashes.toLongArray(), ramHashes.toLongArray(),
+                )
+            }
+        }
+    }
+}
+
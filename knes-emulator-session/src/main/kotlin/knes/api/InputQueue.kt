@@ -1,61 +1,122 @@
 package knes.api
 
-import java.util.concurrent.ConcurrentLinkedQueue
-import java.util.concurrent.CountDownLatch
-import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.locks.LockSupport
 
-data class FrameInput(val buttons: Set<Int>)
+/** One frame of queued input: the set of [knes.emulator.input.InputHandler] key indices held. */
+data class FrameInput(val buttons: Set<Int>) {
+    val mask: Int get() = buttons.fold(0) { acc, key -> acc or (1 shl key) }
+}
 
 /**
  * Frame-synchronized input queue for delivering button state to the NES one frame at a time.
  *
- * Thread safety: [enqueue] and [advanceFrame] are synchronized internally via [lock].
- * They may be called from different threads (API thread and UI thread respectively).
+ * Backed by a preallocated single-producer/single-consumer ring of packed 8-bit button
+ * masks (bit N = [knes.emulator.input.InputHandler] key N). Every frame gets a sequence
+ * number; [enqueue] returns a ticket (the sequence number just past its last frame) and
+ * [advanceFrame] moves the completion sequence forward. A caller waits for its input to
+ * be played with [awaitCompletion] instead of a per-enqueue latch.
+ *
+ * Thread safety: the consumer side ([advanceFrame], [isPressed], [currentMask]) runs on the
+ * emulation thread and never blocks. API handlers may enqueue concurrently, so producers are
+ * serialized among themselves by [producerLock]; the consumer never takes it.
  */
-class InputQueue {
-    private val lock = Any()
-    private val queue = ConcurrentLinkedQueue<FrameInput>()
-    private val latches = ConcurrentLinkedQueue<LatchEntry>()
+class InputQueue(val capacity: Int = DEFAULT_CAPACITY) {
 
-    @Volatile
-    var currentFrame: FrameInput? = null
-        private set
+    init {
+        require(capacity > 0 && (capacity and (capacity - 1)) == 0) {
+            "capacity must be a power of two, got $capacity"
+        }
+    }
 
-    val isActive: Boolean get() = currentFrame != null
+    private val mask = capacity - 1
+    private val slots = ByteArray(capacity)
+    private val producerLock = Any()
 
-    fun enqueue(inputs: List<FrameInput>): CountDownLatch {
-        require(inputs.isNotEmpty()) { "inputs must not be empty" }
-        val latch = CountDownLatch(inputs.size)
+    /** Sequence number of the next frame to be written by a producer. */
+    private val tail = AtomicLong(0)
 
-        synchronized(lock) {
-            latches.add(LatchEntry(latch, AtomicInteger(inputs.size)))
-            queue.addAll(inputs)
+    /** Sequence number of the frame currently being played; everything below it is completed. */
+    private val head = AtomicLong(0)
+
+    val isActive: Boolean get() = head.get() < tail.get()
+
+    /** Number of frames completed so far. A ticket is done once this reaches it. */
+    val completed: Long get() = head.get()
+
+    /** Button mask of the frame being played, or 0 when the queue is idle. */
+    val currentMask: Int
+        get() {
+            val h = head.get()
+            return if (h < tail.get()) slots[(h and mask.toLong()).toInt()].toInt() and 0xFF else 0
+        }
 
-            if (currentFrame == null) {
-                currentFrame = queue.poll()
+    /**
+     * Appends [length] frames of packed masks starting at [offset]. Waits for the emulation
+     * thread to free up ring space when the queue is full; a batch longer than [capacity]
+     * is written in chunks as the consumer drains it, and producers never interleave inside
+     * a batch. Returns the completion ticket for the batch.
+     */
+    fun enqueue(masks: ByteArray, offset: Int = 0, length: Int = masks.size - offset): Long {
+        require(length > 0) { "inputs must not be empty" }
+        synchronized(producerLock) {
+            var t = tail.get()
+            var written = 0
+            while (written < length) {
+                var room = capacity - (t - head.get()).toInt()
+                while (room <= 0) {
+                    LockSupport.parkNanos(WAIT_NANOS)
+                    room = capacity - (t - head.get()).toInt()
+                }
+                val n = minOf(room, length - written)
+                for (i in 0 until n) {
+                    slots[((t + i) and mask.toLong()).toInt()] = masks[offset + written + i]
+                }
+                t += n
+                written += n
+                tail.lazySet(t)
             }
+            return t
         }
+    }
 
-        return latch
+    fun enqueue(inputs: List<FrameInput>): Long {
+        require(inputs.isNotEmpty()) { "inputs must not be empty" }
+        return enqueue(ByteArray(inputs.size) { inputs[it].mask.toByte() })
     }
 
+    /** Completes the frame being played and moves to the next queued one. Emulation thread only. */
     fun advanceFrame() {
-        synchronized(lock) {
-            if (currentFrame == null) return
-            countDownOldest()
-            currentFrame = queue.poll()
-        }
+        val h = head.get()
+        if (h < tail.get()) head.lazySet(h + 1)
     }
 
-    fun isPressed(padKey: Int): Boolean = currentFrame?.buttons?.contains(padKey) == true
+    fun isPressed(padKey: Int): Boolean = (currentMask ushr padKey) and 1 != 0
+
+    /** Frames of [ticket] still waiting to be played. */
+    fun pending(ticket: Long): Int = (ticket - head.get()).coerceAtLeast(0).toInt()
+
+    fun isCompleted(ticket: Long): Boolean = head.get() >= ticket
 
-    private fun countDownOldest() {
-        val entry = latches.peek() ?: return
-        entry.latch.countDown()
-        if (entry.remaining.decrementAndGet() <= 0) {
-            latches.poll()
+    /** Waits until every frame up to [ticket] has been played. Returns false on timeout. */
+    fun awaitCompletion(ticket: Long, timeout: Long, unit: TimeUnit): Boolean {
+        val deadline = System.nanoTime() + unit.toNanos(timeout)
+        while (!isCompleted(ticket)) {
+            if (System.nanoTime() - deadline >= 0) return false
+            LockSupport.parkNanos(WAIT_NANOS)
         }
+        return true
     }
 
-    private class LatchEntry(val latch: CountDownLatch, val remaining: AtomicInteger)
+    fun awaitCompletion(ticket: Long) {
+        while (!isCompleted(ticket)) LockSupport.parkNanos(WAIT_NANOS)
+    }
+
+    companion object {
+        /** ~2.3 minutes of input at 60 fps. */
+        const val DEFAULT_CAPACITY = 8192
+
+        private const val WAIT_NANOS = 200_000L
+    }
 }
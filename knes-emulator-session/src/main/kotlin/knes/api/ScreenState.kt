@@ -0,0 +1,68 @@
+package knes.api
+
+/**
+ * Decoded PPU view of one frame: the background tiles under the visible screen with the
+ * scroll applied, their attribute palettes, and the on-screen sprites from OAM.
+ *
+ * The background grid is [COLUMNS]×[ROWS] tiles so partially scrolled-in edge tiles are
+ * included. Cell (col, row) is drawn at screen pixel `(col * 8 - fineX, row * 8 - fineY)`;
+ * with no fine scroll the last column and row lie off-screen.
+ *
+ * Built by [EmulatorSession.screenState] straight from nametable memory, without
+ * rendering, so it is cheap enough to take every frame.
+ */
+class ScreenState internal constructor(
+    /** Horizontal scroll in pixels across the 512-pixel nametable plane. */
+    val scrollX: Int,
+    /** Vertical scroll in pixels across the 480-pixel nametable plane. */
+    val scrollY: Int,
+    private val tiles: ByteArray,
+    private val palettes: ByteArray,
+    /** Visible sprites in OAM order (lower index = higher priority). */
+    val sprites: List<ScreenSprite>,
+    /** 8, or 16 in 8x16 sprite mode. */
+    val spriteHeight: Int,
+    val backgroundVisible: Boolean,
+    val spritesVisible: Boolean,
+) {
+    val fineX: Int get() = scrollX and 7
+    val fineY: Int get() = scrollY and 7
+
+    /** Pattern index of background cell (col, row), 0..255. */
+    fun tileAt(col: Int, row: Int): Int = tiles[cellOf(col, row)].toInt() and 0xFF
+
+    /** Attribute palette (0..3) of background cell (col, row). */
+    fun paletteAt(col: Int, row: Int): Int = palettes[cellOf(col, row)].toInt()
+
+    /** Pattern index of the background tile under screen pixel (x, y). */
+    fun tileAtPixel(x: Int, y: Int): Int = tileAt((x + fineX) shr 3, (y + fineY) shr 3)
+
+    /** Row [row] of the background grid as pattern indices, e.g. for text scraping. */
+    fun row(row: Int): IntArray = IntArray(COLUMNS) { tileAt(it, row) }
+
+    private fun cellOf(col: Int, row: Int): Int {
+        require(col in 0 until COLUMNS) { "col $col out of range" }
+        require(row in 0 until ROWS) { "row $row out of range" }
+        return row * COLUMNS + col
+    }
+
+    companion object {
+        const val COLUMNS = 33
+        const val ROWS = 31
+    }
+}
+
+/**
+ * One OAM entry that is on screen. [y] is the screen row of the sprite's top line (OAM Y
+ * plus one). In 8x16 mode bit 0 of [tile] selects the pattern table, as on hardware.
+ */
+data class ScreenSprite(
+    val index: Int,
+    val x: Int,
+    val y: Int,
+    val tile: Int,
+    val palette: Int,
+    val flipHorizontal: Boolean,
+    val flipVertical: Boolean,
+    val behindBackground: Boolean,
+)
@@ -0,0 +1,121 @@
+package knes.api
+
+import knes.debug.TextTable
+
+/**
+ * A bordered text window, in [ScreenState] grid cells with the border included.
+ * [lines] holds one entry per interior row (blank rows kept, so a row maps to a line by
+ * `row - this.row - 1`), trailing blanks trimmed. Tiles with no glyph read as spaces.
+ */
+data class TextWindow(
+    val col: Int,
+    val row: Int,
+    val width: Int,
+    val height: Int,
+    val lines: List<String>,
+) {
+    /** Non-blank lines joined with newlines. */
+    fun text(): String = lines.filter { it.isNotBlank() }.joinToString("\n")
+}
+
+/**
+ * A menu cursor: [x]/[y] is the screen pixel of the cursor sprite group's top-left,
+ * [col]/[row] the grid cell it points at (just right of the sprite, at its vertical
+ * middle). [window] indexes [ScreenText.windows] and [line] that window's [TextWindow.lines]
+ * when the pointed-at cell is inside a window.
+ */
+data class TextCursor(
+    val x: Int,
+    val y: Int,
+    val col: Int,
+    val row: Int,
+    val window: Int?,
+    val line: Int?,
+)
+
+class ScreenText(val windows: List<TextWindow>, val cursors: List<TextCursor>) {
+    /** The line each cursor points at, or null for cursors outside a window. */
+    fun selectedLines(): List<String?> = cursors.map { c ->
+        if (c.window == null || c.line == null) null else windows[c.window].lines[c.line].trim()
+    }
+}
+
+/**
+ * Reads text windows and cursors from a [ScreenState] using a per-game [TextTable]:
+ * finds rectangles drawn with the table's frame tiles, maps interior tiles to glyphs,
+ * and groups cursor sprites from OAM. Pure table lookups over the 33×31 grid.
+ */
+class TextDecoder(table: TextTable) {
+    private val glyphs = CharArray(256) { ' ' }.also { out ->
+        for ((tile, c) in table.glyphs) if (tile in 0..255) out[tile] = c
+    }
+    private val frame = table.frame.takeIf { it.size == 8 }?.toIntArray()
+    private val cursorSprites = table.cursorSprites
+
+    fun decode(state: ScreenState): ScreenText {
+        val windows = if (frame != null) findWindows(state, frame) else emptyList()
+        return ScreenText(windows, findCursors(state, windows))
+    }
+
+    private fun findWindows(state: ScreenState, f: IntArray): List<TextWindow> {
+        val out = ArrayList<TextWindow>()
+        for (row in 0 until ScreenState.ROWS) {
+            for (col in 0 until ScreenState.COLUMNS) {
+                if (state.tileAt(col, row) != f[TOP_LEFT]) continue
+                var right = col + 1
+                while (right < ScreenState.COLUMNS && state.tileAt(right, row) == f[TOP]) right++
+                if (right >= ScreenState.COLUMNS || state.tileAt(right, row) != f[TOP_RIGHT]) continue
+                var bottom = row + 1
+                while (bottom < ScreenState.ROWS && state.tileAt(col, bottom) == f[LEFT]) bottom++
+                if (bottom >= ScreenState.ROWS || state.tileAt(col, bottom) != f[BOTTOM_LEFT]) continue
+                if (state.tileAt(right, bottom) != f[BOTTOM_RIGHT]) continue
+                val lines = (row + 1 until bottom).map { r ->
+                    buildString {
+                        for (c in col + 1 until right) append(glyphs[state.tileAt(c, r)])
+                    }.trimEnd()
+                }
+                out += TextWindow(col, row, right - col + 1, bottom - row + 1, lines)
+            }
+        }
+        return out
+    }
+
+    private fun findCursors(state: ScreenState, windows: List<TextWindow>): List<TextCursor> {
+        if (cursorSprites.isEmpty()) return emptyList()
+        // A cursor is drawn as a block of sprites; the first (top-most, left-most) one anchors it.
+        val anchors = ArrayList<ScreenSprite>()
+        val parts = state.sprites
+            .filter { it.tile in cursorSprites }
+            .sortedWith(compareBy({ it.y }, { it.x }))
+        for (s in parts) {
+            val joined = anchors.any { a -> s.x - a.x in 0 until CURSOR_EXTENT && s.y - a.y in 0 until CURSOR_EXTENT }
+            if (!joined) anchors += s
+        }
+        return anchors.map { a ->
+            val extent = parts.filter { s -> s.x - a.x in 0 until CURSOR_EXTENT && s.y - a.y in 0 until CURSOR_EXTENT }
+            val width = extent.maxOf { it.x } - a.x + 8
+            val height = extent.maxOf { it.y } - a.y + state.spriteHeight
+            val col = ((a.x + width + state.fineX) shr 3).coerceAtMost(ScreenState.COLUMNS - 1)
+            val row = ((a.y + height / 2 + state.fineY) shr 3).coerceAtMost(ScreenState.ROWS - 1)
+            val w = windows.indexOfFirst { col > it.col && col < it.col + it.width - 1 && row > it.row && row < it.row + it.height - 1 }
+            TextCursor(
+                x = a.x,
+                y = a.y,
+                col = col,
+                row = row,
+                window = w.takeIf { it >= 0 },
+                line = if (w >= 0) row - windows[w].row - 1 else null,
+            )
+        }
+    }
+
+    private companion object {
+        const val TOP_LEFT = 0
+        const val TOP = 1
+        const val TOP_RIGHT = 2
+        const val LEFT = 3
+        const val BOTTOM_LEFT = 5
+        const val BOTTOM_RIGHT = 7
+        const val CURSOR_EXTENT = 16
+    }
+}
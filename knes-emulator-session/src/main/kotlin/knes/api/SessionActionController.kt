@@ -38,8 +38,8 @@ class SessionActionController(
 
     private fun executeSteps(steps: List<StepRequest>) {
         if (session.shared) {
-            val latch = session.controller.enqueueSteps(steps)
-            latch.await()
+            val ticket = session.controller.enqueueSteps(steps)
+            session.controller.inputQueue.awaitCompletion(ticket)
         } else {
             for (step in steps) {
                 session.controller.setButtons(step.buttons)
@@ -0,0 +1,92 @@
+package knes.api
+
+import knes.emulator.input.InputPipeline
+import knes.emulator.utils.EmulationTimings
+import knes.emulator.utils.LatencyHistogram
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Performance counters for one [EmulatorSession].
+ *
+ * Counters are monotonic totals, so frames/s and instructions/s are derived by the
+ * scraper (e.g. Prometheus `rate(knes_frames_total[1m])`) rather than sampled here.
+ * Everything is recorded with [LongAdder]s and [LatencyHistogram]s so the emulation
+ * thread never contends with a scrape.
+ *
+ * CPU instructions are only counted in standalone mode; in shared mode the UI runs the
+ * CPU outside the session.
+ */
+class SessionMetrics {
+    val frames = LongAdder()
+    val instructions = LongAdder()
+
+    /** Extra frames emulated for run-ahead and rolled back; their rate is the run-ahead cost. */
+    val runAheadFrames = LongAdder()
+
+    /** Sampled PPU/PAPU/mapper time; stays zero unless [EmulatorSession.componentTimings] is on. */
+    val timings = EmulationTimings()
+
+    val advanceFrames = LatencyHistogram()
+    val pngEncode = LatencyHistogram()
+
+    /**
+     * Event-driven input devices whose input-to-latch latency is exported, one labelled
+     * series per device. Empty unless the NES reads port 1 through an [InputPipeline].
+     */
+    var inputDevices: () -> List<InputPipeline.Device> = { emptyList() }
+
+    /** Renders all metrics in the Prometheus text exposition format (version 0.0.4). */
+    fun toPrometheusText(): String = buildString {
+        counter("knes_frames_total", "Emulated frames delivered to the session.", frames.sum().toString())
+        counter("knes_runahead_frames_total", "Frames emulated ahead for run-ahead and rolled back.", runAheadFrames.sum().toString())
+        counter("knes_cpu_instructions_total", "CPU instructions executed by advanceFrames.", instructions.sum().toString())
+        counter("knes_ppu_seconds_total", "Estimated wall time spent emulating PPU cycles (sampled).", seconds(timings.ppu.estimatedNanos))
+        counter("knes_papu_seconds_total", "Estimated wall time spent clocking the PAPU frame counter (sampled).", seconds(timings.papu.estimatedNanos))
+        counter("knes_mapper_seconds_total", "Estimated wall time spent in memory-mapper loads and stores (sampled).", seconds(timings.mapper.estimatedNanos))
+        counter("knes_mapper_accesses_total", "Estimated memory-mapper loads and stores.", timings.mapper.estimatedCalls.toString())
+        histogram("knes_advance_frames_seconds", "Wall time of one advanceFrames call.", advanceFrames)
+        histogram("knes_png_encode_seconds", "Wall time of one screen PNG encode.", pngEncode)
+        val devices = inputDevices()
+        if (devices.isNotEmpty()) {
+            header("knes_input_latch_latency_seconds", "Time from an input event to the game's \$4016 latch, per device.", "histogram")
+            for (d in devices) histogramSeries("knes_input_latch_latency_seconds", "device=\"${d.name}\",", d.latency)
+        }
+    }
+
+    private fun StringBuilder.header(name: String, help: String, type: String) {
+        append("# HELP ").append(name).append(' ').append(help).append('\n')
+        append("# TYPE ").append(name).append(' ').append(type).append('\n')
+    }
+
+    private fun StringBuilder.counter(name: String, help: String, value: String) {
+        header(name, help, "counter")
+        append(name).append(' ').append(value).append('\n')
+    }
+
+    private fun StringBuilder.histogram(name: String, help: String, h: LatencyHistogram) {
+        header(name, help, "histogram")
+        histogramSeries(name, "", h)
+    }
+
+    // [labels] is empty or `name="value",` and goes in front of `le`.
+    private fun StringBuilder.histogramSeries(name: String, labels: String, h: LatencyHistogram) {
+        val count = h.count
+        for (exponent in HISTOGRAM_MIN_EXPONENT..HISTOGRAM_MAX_EXPONENT) {
+            append(name).append("_bucket{").append(labels).append("le=\"").append(seconds(1L shl exponent)).append("\"} ")
+                .append(h.countAtMostPowerOfTwo(exponent)).append('\n')
+        }
+        append(name).append("_bucket{").append(labels).append("le=\"+Inf\"} ").append(count).append('\n')
+        val plain = labels.removeSuffix(",")
+        val suffix = if (plain.isEmpty()) " " else "{$plain} "
+        append(name).append("_sum").append(suffix).append(seconds(h.sumNanos)).append('\n')
+        append(name).append("_count").append(suffix).append(count).append('\n')
+    }
+
+    private fun seconds(nanos: Long): String = (nanos / 1e9).toString()
+
+    companion object {
+        // Histogram buckets exported as powers of two: 2^10 ns (~1 µs) .. 2^36 ns (~69 s).
+        const val HISTOGRAM_MIN_EXPONENT = 10
+        const val HISTOGRAM_MAX_EXPONENT = 36
+    }
+}
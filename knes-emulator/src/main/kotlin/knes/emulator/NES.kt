@@ -45,10 +45,39 @@ class NES(var gui: GUI) {
     val inputHandler: InputHandler = gui.getJoy1()
     val inputHandler2: InputHandler? = gui.getJoy2()
 
+    /**
+     * Run-ahead depth for the emulation thread started by [startEmulation], 0 (off) to
+     * [MAX_RUN_AHEAD_FRAMES]. At each frame end the thread saves state, emulates this many
+     * more frames with the buttons currently held, restores, and hands the last of them to
+     * [GUI.imageReady] in place of the real frame. A press then shows up on screen as soon
+     * as the game would draw it. The APU is not clocked while running ahead, since it is
+     * not part of the savestate.
+     */
+    @Volatile
+    var runAheadFrames: Int = 0
+        set(value) {
+            require(value in 0..MAX_RUN_AHEAD_FRAMES) { "runAheadFrames must be 0..$MAX_RUN_AHEAD_FRAMES, got $value" }
+            field = value
+        }
+
+    /**
+     * True while frames are emulated only to be rolled back, here or by a caller driving
+     * [CPU.step]. Controller strobes then [peek][InputHandler.peek] instead of latching.
+     */
+    @Volatile
+    var speculating: Boolean = false
+
+    // Run-ahead scratch, used only on the emulation thread.
+    private val runAheadState = ByteBuffer(64 * 1024, ByteBuffer.BO_LITTLE_ENDIAN).apply { setExpandable(true) }
+    private val runAheadFrame = IntArray(256 * 240)
+    private var runAheadTarget = 0
+    private var runAheadCount = 0
+
     init {
         cpu.init(cpuMemory)
+        cpu.frameBreak = ::runAhead
         ppu.init(
-            gui::imageReady,
+            ::frameReady,
             ppuMemory,
             sprMemory,
             cpuMemory,
@@ -73,12 +102,7 @@ class NES(var gui: GUI) {
         }
 
         if (buf.readByte().toInt() == 1) {
-            cpuMemory.stateLoad(buf)
-            ppuMemory.stateLoad(buf)
-            sprMemory.stateLoad(buf)
-            cpu.stateLoad(buf)
-            memoryMapper?.stateLoad(buf)
-            ppu.stateLoad(buf)
+            loadUnits(buf)
             success = true
         } else {
             success = false
@@ -99,17 +123,74 @@ class NES(var gui: GUI) {
         buf.putByte(1.toShort())
 
         // Let units save their state:
+        saveUnits(buf)
+
+        // Continue emulation:
+        if (continueEmulation) {
+            startEmulation()
+        }
+    }
+
+    private fun saveUnits(buf: ByteBuffer) {
         cpuMemory.stateSave(buf)
         ppuMemory.stateSave(buf)
         sprMemory.stateSave(buf)
         cpu.stateSave(buf)
         memoryMapper?.stateSave(buf)
         ppu.stateSave(buf)
+    }
 
-        // Continue emulation:
-        if (continueEmulation) {
-            startEmulation()
+    private fun loadUnits(buf: ByteBuffer) {
+        cpuMemory.stateLoad(buf)
+        ppuMemory.stateLoad(buf)
+        sprMemory.stateLoad(buf)
+        cpu.stateLoad(buf)
+        memoryMapper?.stateLoad(buf)
+        ppu.stateLoad(buf)
+    }
+
+    // PPU frame end. With run-ahead on the emulation thread, breaks out of the CPU loop
+    // so runAhead() can save state; the GUI gets the frame from there.
+    private fun frameReady(skipFrame: Boolean, buffer: IntArray) {
+        if (runAheadTarget > 0) {
+            if (++runAheadCount >= runAheadTarget) {
+                buffer.copyInto(runAheadFrame)
+                cpu.requestFrameBreak()
+            }
+            return
+        }
+        if (runAheadFrames > 0 && Thread.currentThread() === cpu.myThread) {
+            buffer.copyInto(runAheadFrame)
+            cpu.requestFrameBreak()
+            return
         }
+        gui.imageReady(skipFrame, buffer)
+    }
+
+    // Called by the CPU thread between emulate() runs, at the instruction that ended a frame.
+    private fun runAhead() {
+        val frames = runAheadFrames
+        if (frames > 0) {
+            runAheadState.goTo(0)
+            saveUnits(runAheadState)
+            speculating = true
+            cpu.muted = true
+            runAheadTarget = frames
+            runAheadCount = 0
+            try {
+                // Each run stops at a frame end; the last one leaves its frame in runAheadFrame.
+                while (runAheadCount < frames) {
+                    if (!cpu.emulateToFrameBreak()) break
+                }
+            } finally {
+                runAheadTarget = 0
+                cpu.muted = false
+                speculating = false
+                runAheadState.goTo(0)
+                loadUnits(runAheadState)
+            }
+        }
+        gui.imageReady(false, runAheadFrame)
     }
 
     fun startEmulation() {
@@ -181,4 +262,8 @@ class NES(var gui: GUI) {
     fun beginExecution() {
         cpu.beginExecution()
     }
+
+    companion object {
+        const val MAX_RUN_AHEAD_FRAMES = 4
+    }
 }
@@ -16,9 +16,12 @@ package knes.emulator.cpu
 import knes.emulator.ByteBuffer
 import knes.emulator.CpuInfo
 import knes.emulator.Memory
+import knes.emulator.mappers.MemoryMapper
 import knes.emulator.memory.MemoryAccess
+import knes.emulator.memory.WriteWatchpoints
 import knes.emulator.papu.PAPUClockFrame
 import knes.emulator.ppu.PPUCycles
+import knes.emulator.utils.EmulationTimings
 import knes.emulator.utils.Globals
 
 
@@ -26,6 +29,7 @@ class CPU(private val papuClockFrame: PAPUClockFrame, private val ppucycles: PPU
     var myThread: Thread? = null
 
     private lateinit var mmap: MemoryAccess
+    private var mapper: MemoryAccess? = null
     private lateinit var mem: ShortArray
 
     var REG_ACC_NEW: Int = 0
@@ -57,6 +61,40 @@ class CPU(private val papuClockFrame: PAPUClockFrame, private val ppucycles: PPU
     var crash: Boolean = false
     var singleStep: Boolean = false
 
+    // Skips APU clocking, for frames that are emulated and then rolled back.
+    var muted: Boolean = false
+
+    // Run-ahead hook: requestFrameBreak() stops emulate() at the next instruction boundary
+    // and the thread's run loop calls frameBreak before carrying on.
+    var frameBreak: (() -> Unit)? = null
+    private var frameBreakRequested = false
+    @Volatile
+    private var exitRequested = false
+
+    // Optional RAM write-watchpoints. Null keeps the store path to a single branch.
+    var writeWatch: WriteWatchpoints? = null
+
+    // Optional sampled PPU/PAPU/mapper timings. Null keeps the run loop untimed.
+    var timings: EmulationTimings? = null
+        set(value) {
+            field = value
+            mapper?.let { mmap = value?.wrap(it) ?: it }
+        }
+
+    // Optional breakpoint/watchpoint traps. Read once per emulate() call; null keeps the loop untrapped.
+    var traps: DebugTraps? = null
+        set(value) {
+            value?.banks = mapper as? MemoryMapper
+            field = value
+        }
+
+    // Optional execution profiler. Read once per instruction, so it can be installed on a running CPU.
+    var profiler: CpuProfiler? = null
+        set(value) {
+            value?.banks = mapper as? MemoryMapper
+            field = value
+        }
+
 
     // Initialize:
     fun init(
@@ -79,7 +117,8 @@ class CPU(private val papuClockFrame: PAPUClockFrame, private val ppucycles: PPU
     }
 
     fun stateLoad(buf: ByteBuffer) {
-        if (buf.readByte().toInt() == 1) {
+        val version = buf.readByte().toInt()
+        if (version == 1 || version == STATE_VERSION) {
             // Version 1
 
             // Registers:
@@ -93,13 +132,21 @@ class CPU(private val papuClockFrame: PAPUClockFrame, private val ppucycles: PPU
 
             // Cycles to halt:
             cyclesToHalt = buf.readInt()
+
+            // Pending interrupt; version 1 dropped an NMI requested just before the save.
+            if (version == STATE_VERSION) {
+                irqRequested = buf.readByte().toInt() != 0
+                irqType = buf.readInt()
+            } else {
+                irqRequested = false
+            }
         }
     }
 
     fun stateSave(buf: ByteBuffer) {
         // Save info version:
 
-        buf.putByte(1.toShort())
+        buf.putByte(STATE_VERSION.toShort())
 
         // Save registers:
         buf.putInt(this.status)
@@ -111,6 +158,10 @@ class CPU(private val papuClockFrame: PAPUClockFrame, private val ppucycles: PPU
 
         // Cycles to halt:
         buf.putInt(cyclesToHalt)
+
+        // Pending interrupt:
+        buf.putByte((if (irqRequested) 1 else 0).toShort())
+        buf.putInt(irqType)
     }
 
     fun reset() {
@@ -164,11 +215,14 @@ class CPU(private val papuClockFrame: PAPUClockFrame, private val ppucycles: PPU
         //System.out.println("* Attempting to stop CPU thread.");
         if (myThread != null && myThread!!.isAlive()) {
             try {
+                exitRequested = true
                 stopRunning = true
                 myThread!!.join()
             } catch (ie: InterruptedException) {
                 //System.out.println("** Unable to stop CPU thread!");
                 ie.printStackTrace()
+            } finally {
+                exitRequested = false
             }
         } else {
             //System.out.println("* CPU Thread was not alive.");
@@ -180,7 +234,24 @@ class CPU(private val papuClockFrame: PAPUClockFrame, private val ppucycles: PPU
 
     override fun run() {
         initRun()
+        while (emulateToFrameBreak()) frameBreak?.invoke()
+    }
+
+    /** Ends the current [emulate] call after this instruction; call from the CPU thread. */
+    fun requestFrameBreak() {
+        frameBreakRequested = true
+        stopRunning = true
+    }
+
+    /**
+     * Runs [emulate] and returns true if it stopped for [requestFrameBreak] rather than
+     * for [endExecution], a crash or a debug trap.
+     */
+    fun emulateToFrameBreak(): Boolean {
         emulate()
+        val onBreak = frameBreakRequested && !exitRequested
+        frameBreakRequested = false
+        return onBreak
     }
 
     @Synchronized
@@ -226,9 +297,12 @@ class CPU(private val papuClockFrame: PAPUClockFrame, private val ppucycles: PPU
         var add: Int
 
         val palEmu = Globals.palEmulation
-        val emulateSound = Globals.enableSound
+        val emulateSound = Globals.enableSound && !muted
         val asApplet = Globals.appletMode
-        stopRunning = false
+        val timings = this.timings
+        val traps = this.traps
+        // A stop from endExecution() between two frame breaks must not be lost here.
+        stopRunning = exitRequested
 
         while (true) {
             if (stopRunning) break
@@ -268,12 +342,17 @@ class CPU(private val papuClockFrame: PAPUClockFrame, private val ppucycles: PPU
                     }
                 }
 
+                // A masked NMI (VBlank interrupts off in $2000) leaves the PC where it was.
+                val taken = REG_PC_NEW != REG_PC
                 REG_PC = REG_PC_NEW
                 F_INTERRUPT = F_INTERRUPT_NEW
                 F_BRK = F_BRK_NEW
                 irqRequested = false
+                if (traps != null && taken && traps.afterInterrupt(irqType, REG_PC + 1)) break
             }
 
+            if (traps != null && executeTrapped(traps, REG_PC + 1)) break
+
             opinf = opdata!![mmap.load(REG_PC + 1).toInt()]
             cycleCount = (opinf shr 24)
             cycleAdd = 0
@@ -388,6 +467,10 @@ class CPU(private val papuClockFrame: PAPUClockFrame, private val ppucycles: PPU
             // Wrap around for addresses above 0xFFFF:
             addr = addr and 0xFFFF
 
+            if (traps != null && traps.watchesReads && traps.afterDecode(opinf and 0xFF, addrMode, addr, mem)) {
+                stopRunning = true
+            }
+
             // ----------------------------------------------------------------------------------------------------
             // Decode & execute instruction:
             // ----------------------------------------------------------------------------------------------------
@@ -1115,6 +1198,8 @@ class CPU(private val papuClockFrame: PAPUClockFrame, private val ppucycles: PPU
 
             } // end of switch
 
+            profiler?.record(opaddr + 1, opinf and 0xFF, cycleCount, REG_PC + 1)
+
             // ----------------------------------------------------------------------------------------------------
             if (palEmu) {
                 palCnt++
@@ -1125,12 +1210,25 @@ class CPU(private val papuClockFrame: PAPUClockFrame, private val ppucycles: PPU
             }
 
             if (asApplet) {
-                ppucycles.setCycles(cycleCount * 3)
-                ppucycles.emulateCycles()
+                if (timings != null && timings.ppu.sample()) {
+                    val start = System.nanoTime()
+                    ppucycles.setCycles(cycleCount * 3)
+                    ppucycles.emulateCycles()
+                    timings.ppu.record(System.nanoTime() - start)
+                } else {
+                    ppucycles.setCycles(cycleCount * 3)
+                    ppucycles.emulateCycles()
+                }
             }
 
             if (emulateSound) {
-                papuClockFrame.clockFrameCounter(cycleCount)
+                if (timings != null && timings.papu.sample()) {
+                    val start = System.nanoTime()
+                    papuClockFrame.clockFrameCounter(cycleCount)
+                    timings.papu.record(System.nanoTime() - start)
+                } else {
+                    papuClockFrame.clockFrameCounter(cycleCount)
+                }
             }
             if (singleStep) {
                 stopRunning = true
@@ -1175,6 +1273,48 @@ class CPU(private val papuClockFrame: PAPUClockFrame, private val ppucycles: PPU
     }
 
     private fun write(addr: Int, `val`: Short) {
+        val traps = this.traps
+        if (traps != null && traps.isWriteWatched(addr)) {
+            writeTrapped(traps, addr, `val`)
+            return
+        }
+        writeUntrapped(addr, `val`)
+    }
+
+    private fun writeUntrapped(addr: Int, `val`: Short) {
+        val watch = writeWatch
+        if (watch != null) {
+            writeWatched(watch, addr, `val`)
+            return
+        }
+        writeDirect(addr, `val`)
+    }
+
+    // Only RAM and PRG-RAM keep the stored byte in mem; elsewhere the store hits a register.
+    private fun writeTrapped(traps: DebugTraps, addr: Int, `val`: Short) {
+        val old = if (addr < 0x2000 || addr in 0x6000..0x7FFF) mem[DebugTraps.normalize(addr)].toInt() and 0xFF else -1
+        writeUntrapped(addr, `val`)
+        if (traps.afterWrite(addr, old, `val`.toInt() and 0xFF)) stopRunning = true
+    }
+
+    private fun executeTrapped(traps: DebugTraps, pc: Int): Boolean {
+        val opcode = if (traps.watchesOpcodes) mmap.load(pc).toInt() and 0xFF else -1
+        return traps.beforeExecute(pc and 0xFFFF, opcode)
+    }
+
+    private fun writeWatched(watch: WriteWatchpoints, addr: Int, `val`: Short) {
+        val key = WriteWatchpoints.normalize(addr)
+        if (!watch.isWatched(key)) {
+            writeDirect(addr, `val`)
+            return
+        }
+        val old = mem[key].toInt() and 0xFF
+        writeDirect(addr, `val`)
+        val new = mem[key].toInt() and 0xFF
+        if (old != new) watch.publish(key, old, new)
+    }
+
+    private fun writeDirect(addr: Int, `val`: Short) {
         if (addr < 0x2000) {
             mem[addr and 0x7FF] = `val`
         } else {
@@ -1229,12 +1369,14 @@ class CPU(private val papuClockFrame: PAPUClockFrame, private val ppucycles: PPU
 
             REG_PC_NEW = mmap.load(0xFFFA).toInt() or (mmap.load(0xFFFB).toInt() shl 8)
             REG_PC_NEW--
+            profiler?.interrupt(IRQ_NMI, REG_PC_NEW + 1)
         }
     }
 
     private fun doResetInterrupt() {
         REG_PC_NEW = mmap.load(0xFFFC).toInt() or (mmap.load(0xFFFD).toInt() shl 8)
         REG_PC_NEW--
+        profiler?.interrupt(IRQ_RESET, REG_PC_NEW + 1)
     }
 
     private fun doIrq(status: Int) {
@@ -1247,6 +1389,7 @@ class CPU(private val papuClockFrame: PAPUClockFrame, private val ppucycles: PPU
 
         REG_PC_NEW = mmap.load(0xFFFE).toInt() or (mmap.load(0xFFFF).toInt() shl 8)
         REG_PC_NEW--
+        profiler?.interrupt(IRQ_NORMAL, REG_PC_NEW + 1)
     }
 
     internal var status: Int
@@ -1272,7 +1415,10 @@ class CPU(private val papuClockFrame: PAPUClockFrame, private val ppucycles: PPU
      * @param memoryAccess the memory access component to use
      */
     fun setMapper(memoryAccess: MemoryAccess) {
-        mmap = memoryAccess
+        mapper = memoryAccess
+        mmap = timings?.wrap(memoryAccess) ?: memoryAccess
+        profiler?.banks = memoryAccess as? MemoryMapper
+        traps?.banks = memoryAccess as? MemoryMapper
     }
 
     fun destroy() {
@@ -1284,6 +1430,8 @@ class CPU(private val papuClockFrame: PAPUClockFrame, private val ppucycles: PPU
         const val IRQ_NORMAL: Int = 0
         const val IRQ_NMI: Int = 1
         const val IRQ_RESET: Int = 2
+
+        private const val STATE_VERSION = 2
     }
 
     fun clearCPUMemory() {
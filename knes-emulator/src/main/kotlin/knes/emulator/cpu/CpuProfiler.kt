@@ -0,0 +1,335 @@
+/*
+ *
+ *  * Copyright (C) 2025 Artur Skowroński
+ *  * This file is part of kNES, a fork of vNES (GPLv3) rewritten in Kotlin.
+ *  *
+ *  * vNES was originally developed by Brian F. R. (bfirsh) and released under the GPL-3.0 license.
+ *  * This project is a reimplementation and extension of that work.
+ *  *
+ *  * kNES is licensed under the GNU General Public License v3.0.
+ *  * See the LICENSE file for more details.
+ *
+ */
+
+package knes.emulator.cpu
+
+import knes.emulator.CpuInfo
+import knes.emulator.mappers.MemoryMapper
+
+/**
+ * Execution profiler for emulated 6502 code.
+ *
+ * The CPU calls [record] after every instruction while a profiler is installed. Each
+ * sampled instruction adds to a per-PC execution count and cycle total in flat
+ * `IntArray(65536)`s (read as unsigned), and, for code in $8000-$FFFF, to a per-bank
+ * copy keyed by the PRG bank [banks] reports mapped there, so a routine in one MMC1
+ * bank is not mixed up with whatever shares its address in another.
+ *
+ * JSR/RTS, BRK/RTI and NMI/IRQ entries drive a shadow call stack kept as a tree of
+ * routine entry points. Cycles are charged to the current tree node, which gives
+ * [foldedStacks] (the `a;b;c <weight>` input of flamegraph.pl and speedscope) and the
+ * self/total figures in [hotRoutines]. The stack is inferred: code that pushes a return
+ * address and RTSes into a jump table pops a frame it never pushed, so such dispatchers
+ * appear flattened into their caller.
+ *
+ * With [sampleEvery] > 1 only one instruction in [sampleEvery] is counted, weighted by
+ * [sampleEvery]; calls and returns are still followed on every instruction.
+ *
+ * Install with `cpu.profiler = CpuProfiler()`; null (the default) costs the CPU loop one
+ * branch per instruction. Emulation thread only, except for the reports, which may be
+ * taken while it runs and then reflect a slightly torn snapshot.
+ */
+class CpuProfiler(val sampleEvery: Int = 1) {
+
+    init {
+        require(sampleEvery > 0 && (sampleEvery and (sampleEvery - 1)) == 0) {
+            "sampleEvery must be a power of two, got $sampleEvery"
+        }
+    }
+
+    /** Mapper asked for the PRG bank behind each sampled ROM address. Set by [CPU.setMapper]. */
+    var banks: MemoryMapper? = null
+
+    /** Executions per CPU address, weighted by [sampleEvery]. */
+    val counts = IntArray(0x10000)
+
+    /** CPU cycles per CPU address, weighted by [sampleEvery]. */
+    val cycles = IntArray(0x10000)
+
+    // Per-bank copies of counts/cycles for $8000-$FFFF, allocated as banks are seen.
+    private val bankCounts = arrayOfNulls<IntArray>(MAX_BANKS)
+    private val bankCycles = arrayOfNulls<IntArray>(MAX_BANKS)
+
+    var instructions = 0L
+        private set
+    var totalCycles = 0L
+        private set
+
+    private var tick = 0
+
+    // Call tree. Node 0 is the root: code running outside any tracked call.
+    private val nodeParent = IntArray(MAX_NODES)
+    private val nodeFrame = IntArray(MAX_NODES)
+    private val nodeDepth = IntArray(MAX_NODES)
+    private val nodeCalls = LongArray(MAX_NODES)
+    private val nodeCycles = LongArray(MAX_NODES)
+    private var nodeCount = 1
+
+    // Open-addressed (parent, frame) -> child node; keys are stored + 1 so 0 marks an empty slot.
+    private val childKeys = LongArray(CHILD_SLOTS)
+    private val childNodes = IntArray(CHILD_SLOTS)
+
+    private var node = 0
+    // Calls entered past MAX_DEPTH or MAX_NODES: their returns must not pop a tracked frame.
+    private var untracked = 0
+
+    /** Called by the CPU after the instruction at [pc] ran for [cycleCount] cycles and left the PC at [next]. */
+    fun record(pc: Int, instruction: Int, cycleCount: Int, next: Int) {
+        if (sampleEvery == 1) {
+            sample(pc and 0xFFFF, cycleCount, 1)
+        } else {
+            tick = (tick + 1) and (sampleEvery - 1)
+            if (tick == 0) sample(pc and 0xFFFF, cycleCount, sampleEvery)
+        }
+        when (instruction) {
+            CpuInfo.INS_JSR -> enter(frame(KIND_CALL, next and 0xFFFF))
+            CpuInfo.INS_BRK -> enter(frame(KIND_IRQ, next and 0xFFFF))
+            CpuInfo.INS_RTS, CpuInfo.INS_RTI -> leave()
+        }
+    }
+
+    /** Called by the CPU once it has taken an interrupt of [type] (see [CPU.IRQ_NMI]) and jumped to [target]. */
+    fun interrupt(type: Int, target: Int) {
+        when (type) {
+            CPU.IRQ_RESET -> {
+                node = 0
+                untracked = 0
+            }
+            CPU.IRQ_NMI -> enter(frame(KIND_NMI, target and 0xFFFF))
+            else -> enter(frame(KIND_IRQ, target and 0xFFFF))
+        }
+    }
+
+    private fun sample(pc: Int, cycleCount: Int, weight: Int) {
+        val c = cycleCount * weight
+        counts[pc] += weight
+        cycles[pc] += c
+        instructions += weight
+        totalCycles += c
+        nodeCycles[node] += c.toLong()
+        if (pc >= 0x8000) {
+            val bank = banks?.prgBank(pc) ?: -1
+            if (bank in 0 until MAX_BANKS) {
+                val bc = bankCounts[bank] ?: newBank(bank)
+                bc[pc - 0x8000] += weight
+                bankCycles[bank]!![pc - 0x8000] += c
+            }
+        }
+    }
+
+    private fun newBank(bank: Int): IntArray {
+        bankCycles[bank] = IntArray(0x8000)
+        return IntArray(0x8000).also { bankCounts[bank] = it }
+    }
+
+    private fun frame(kind: Int, address: Int): Int {
+        val bank = if (address >= 0x8000) banks?.prgBank(address) ?: -1 else -1
+        val bankBits = if (bank in 0 until MAX_BANKS) bank + 1 else 0
+        return (kind shl 22) or (bankBits shl 16) or address
+    }
+
+    private fun enter(frame: Int) {
+        if (untracked == 0 && nodeDepth[node] < MAX_DEPTH) {
+            val c = child(node, frame)
+            if (c >= 0) {
+                node = c
+                nodeCalls[c]++
+                return
+            }
+        }
+        untracked++
+    }
+
+    private fun leave() {
+        if (untracked > 0) {
+            untracked--
+        } else if (node != 0) {
+            node = nodeParent[node]
+        }
+    }
+
+    private fun child(parent: Int, frame: Int): Int {
+        val key = ((parent.toLong() shl 24) or frame.toLong()) + 1
+        var slot = ((key * -0x61c8864680b583ebL) ushr (64 - CHILD_BITS)).toInt()
+        while (true) {
+            val k = childKeys[slot]
+            if (k == key) return childNodes[slot]
+            if (k == 0L) break
+            slot = (slot + 1) and (CHILD_SLOTS - 1)
+        }
+        if (nodeCount == MAX_NODES) return -1
+        val id = nodeCount++
+        nodeParent[id] = parent
+        nodeFrame[id] = frame
+        nodeDepth[id] = nodeDepth[parent] + 1
+        childKeys[slot] = key
+        childNodes[slot] = id
+        return id
+    }
+
+    /** Time spent at one CPU address. [bank] is the PRG bank it ran from, or -1 outside banked ROM. */
+    data class PcStat(val pc: Int, val bank: Int, val instructions: Long, val cycles: Long) {
+        val location: String get() = CpuProfiler.location(bank, pc)
+    }
+
+    /**
+     * Time spent in one routine, identified by its entry point ([address] -1 for [ROOT_NAME]).
+     * [selfCycles] ran in the routine's own code; [totalCycles] adds everything it called
+     * (recursion counted once).
+     */
+    data class RoutineStat(
+        val name: String,
+        val address: Int,
+        val bank: Int,
+        val calls: Long,
+        val selfCycles: Long,
+        val totalCycles: Long,
+    )
+
+    /** The [limit] addresses with the most cycles, split per bank where the mapper reports one. */
+    fun hotSpots(limit: Int = DEFAULT_LIMIT): List<PcStat> {
+        val out = ArrayList<PcStat>()
+        for (pc in 0 until 0x10000) {
+            var n = Integer.toUnsignedLong(counts[pc])
+            if (n == 0L) continue
+            var c = Integer.toUnsignedLong(cycles[pc])
+            if (pc >= 0x8000) {
+                for (bank in 0 until MAX_BANKS) {
+                    val bn = Integer.toUnsignedLong(bankCounts[bank]?.get(pc - 0x8000) ?: continue)
+                    if (bn == 0L) continue
+                    val bc = Integer.toUnsignedLong(bankCycles[bank]!![pc - 0x8000])
+                    out += PcStat(pc, bank, bn, bc)
+                    n -= bn
+                    c -= bc
+                }
+            }
+            if (n > 0) out += PcStat(pc, -1, n, c)
+        }
+        out.sortByDescending { it.cycles }
+        return out.take(limit)
+    }
+
+    /** The [limit] routines with the most self cycles, across every call path that reached them. */
+    fun hotRoutines(limit: Int = DEFAULT_LIMIT): List<RoutineStat> {
+        val n = nodeCount
+        val total = nodeCycles.copyOf(n)
+        // Children are always created after their parent, so one backwards pass sums subtrees.
+        for (i in n - 1 downTo 1) total[nodeParent[i]] += total[i]
+
+        class Acc(var calls: Long = 0, var self: Long = 0, var total: Long = 0)
+        val byFrame = HashMap<Int, Acc>()
+        for (i in 0 until n) {
+            val frame = if (i == 0) ROOT_FRAME else nodeFrame[i]
+            val acc = byFrame.getOrPut(frame) { Acc() }
+            acc.calls += nodeCalls[i]
+            acc.self += nodeCycles[i]
+            if (!recursive(i)) acc.total += total[i]
+        }
+        return byFrame.entries
+            .map { (frame, acc) ->
+                RoutineStat(frameName(frame), addressOf(frame), bankOf(frame), acc.calls, acc.self, acc.total)
+            }
+            .sortedByDescending { it.selfCycles }
+            .take(limit)
+    }
+
+    // True when an ancestor of node i entered the same routine; its subtree is already in that ancestor's total.
+    private fun recursive(i: Int): Boolean {
+        if (i == 0) return false
+        val frame = nodeFrame[i]
+        var p = nodeParent[i]
+        while (p != 0) {
+            if (nodeFrame[p] == frame) return true
+            p = nodeParent[p]
+        }
+        return false
+    }
+
+    /**
+     * Folded call stacks, one `main;caller;callee <self cycles>` line per call path, for
+     * flamegraph.pl, inferno or speedscope.
+     */
+    fun foldedStacks(): String {
+        val n = nodeCount
+        val sb = StringBuilder()
+        val path = ArrayList<String>()
+        for (i in 0 until n) {
+            val self = nodeCycles[i]
+            if (self == 0L) continue
+            path.clear()
+            var p = i
+            while (p != 0) {
+                path += frameName(nodeFrame[p])
+                p = nodeParent[p]
+            }
+            sb.append(ROOT_NAME)
+            for (j in path.indices.reversed()) sb.append(';').append(path[j])
+            sb.append(' ').append(self).append('\n')
+        }
+        return sb.toString()
+    }
+
+    /** Plain-text summary: totals, the hottest routines and the hottest addresses. */
+    fun report(limit: Int = DEFAULT_LIMIT): String {
+        val sb = StringBuilder()
+        val all = totalCycles.coerceAtLeast(1).toDouble()
+        sb.append("CPU profile: $instructions instructions, $totalCycles cycles")
+        if (sampleEvery > 1) sb.append(" (sampled 1 in $sampleEvery)")
+        sb.append('\n')
+        sb.append("\nHot routines (by self cycles):\n")
+        sb.append("  self%  total%      calls  routine\n")
+        for (r in hotRoutines(limit)) {
+            sb.append("%6.1f  %6.1f  %9d  %s\n".format(r.selfCycles * 100 / all, r.totalCycles * 100 / all, r.calls, r.name))
+        }
+        sb.append("\nHot addresses (by cycles):\n")
+        sb.append("cycles%  instructions  address\n")
+        for (s in hotSpots(limit)) {
+            sb.append("%7.1f  %12d  %s\n".format(s.cycles * 100 / all, s.instructions, s.location))
+        }
+        return sb.toString()
+    }
+
+    companion object {
+        const val DEFAULT_LIMIT = 20
+        /** 512 KiB of PRG ROM in 16 KiB banks: the largest MMC1 board (SUROM). */
+        const val MAX_BANKS = 32
+        const val MAX_DEPTH = 64
+        const val ROOT_NAME = "main"
+
+        private const val MAX_NODES = 1 shl 15
+        private const val CHILD_BITS = 16
+        private const val CHILD_SLOTS = 1 shl CHILD_BITS
+
+        // Frame layout: kind in bits 22-23, bank + 1 in bits 16-21 (0 = none), address in bits 0-15.
+        private const val KIND_CALL = 0
+        private const val KIND_NMI = 1
+        private const val KIND_IRQ = 2
+        private const val ROOT_FRAME = -1
+
+        private fun addressOf(frame: Int): Int = if (frame == ROOT_FRAME) -1 else frame and 0xFFFF
+        private fun bankOf(frame: Int): Int = if (frame == ROOT_FRAME) -1 else ((frame ushr 16) and 0x3F) - 1
+
+        fun location(bank: Int, address: Int): String =
+            if (bank >= 0) "b%02d:$%04X".format(bank, address) else "$%04X".format(address)
+
+        private fun frameName(frame: Int): String {
+            if (frame == ROOT_FRAME) return ROOT_NAME
+            val loc = location(bankOf(frame), frame and 0xFFFF)
+            return when (frame ushr 22) {
+                KIND_NMI -> "NMI $loc"
+                KIND_IRQ -> "IRQ $loc"
+                else -> loc
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ *
+ *  * Copyright (C) 2025 Artur Skowroński
+ *  * This file is part of kNES, a fork of vNES (GPLv3) rewritten in Kotlin.
+ *  *
+ *  * vNES was originally developed by Brian F. R. (bfirsh) and released under the GPL-3.0 license.
+ *  * This project is a reimplementation and extension of that work.
+ *  *
+ *  * kNES is licensed under the GNU General Public License v3.0.
+ *  * See the LICENSE file for more details.
+ *
+ */
+
+package knes.emulator.cpu
+
+import knes.emulator.CpuInfo
+import knes.emulator.mappers.MemoryMapper
+
+/**
+ * Breakpoint and watchpoint traps on the CPU loop.
+ *
+ * Sparse bitmaps mark the PCs, opcodes and data addresses worth a look; the CPU tests
+ * the matching bit and only on a set bit asks the [Handler], which owns the actual
+ * breakpoint definitions and conditions (see `knes.debug.Debugger`). A handler returning
+ * true stops the CPU:
+ * - execution traps and interrupt traps before the instruction runs, with the PC on it.
+ *   The next check at that PC passes, so resuming does not stop on the same spot again;
+ * - read and write traps right after the instruction that made the access.
+ *
+ * Reads are the data operands of instructions; writes are stores through the CPU's store
+ * path. Stack pushes and pulls, and the fetches of indirect pointers, are not observed.
+ * RAM mirrors are folded, so $0800 traps the same byte as $0000.
+ *
+ * Install with `cpu.traps = DebugTraps(handler)`; null (the default) leaves one branch per
+ * instruction. Takes effect from the next `emulate()` or `step()` call. Emulation thread only.
+ */
+class DebugTraps(private val handler: Handler) {
+
+    interface Handler {
+        /** The instruction [opcode] (-1 if no opcode traps are set) at [pc] is about to run. */
+        fun onExecute(pc: Int, opcode: Int): Boolean
+        /** The instruction at [pc] reads [address], whose current value is [value]. */
+        fun onRead(pc: Int, address: Int, value: Int): Boolean
+        /**
+         * The instruction at [pc] stored [new] at [address], which held [old]; [old] is -1
+         * outside RAM and PRG-RAM ($6000-$7FFF), where the store goes to a register.
+         */
+        fun onWrite(pc: Int, address: Int, old: Int, new: Int): Boolean
+        /** An interrupt of [type] ([CPU.IRQ_NORMAL] or [CPU.IRQ_NMI]) was taken and jumps to [target]. */
+        fun onInterrupt(type: Int, target: Int): Boolean
+    }
+
+    /** Mapper asked for the PRG bank behind a PC. Set by [CPU.setMapper]. */
+    var banks: MemoryMapper? = null
+
+    // One bit per address or opcode.
+    private val executeBits = IntArray(0x10000 ushr 5)
+    private val opcodeBits = IntArray(256 ushr 5)
+    private val readBits = IntArray(0x10000 ushr 5)
+    private val writeBits = IntArray(0x10000 ushr 5)
+    private var interrupts = 0
+
+    var watchesOpcodes = false
+        private set
+    var watchesReads = false
+        private set
+
+    /** PC of the instruction being executed, for read and write traps. */
+    var pc = 0
+        private set
+
+    private var skipPc = -1
+
+    fun execute(address: Int, on: Boolean = true) = set(executeBits, address and 0xFFFF, on)
+
+    fun opcode(opcode: Int, on: Boolean = true) {
+        set(opcodeBits, opcode and 0xFF, on)
+        watchesOpcodes = opcodeBits.any { it != 0 }
+    }
+
+    fun read(address: Int, on: Boolean = true) {
+        set(readBits, normalize(address), on)
+        watchesReads = readBits.any { it != 0 }
+    }
+
+    fun write(address: Int, on: Boolean = true) = set(writeBits, normalize(address), on)
+
+    /** Traps interrupts of [type] ([CPU.IRQ_NORMAL] or [CPU.IRQ_NMI]). */
+    fun interrupt(type: Int, on: Boolean = true) {
+        interrupts = if (on) interrupts or (1 shl type) else interrupts and (1 shl type).inv()
+    }
+
+    fun clear() {
+        executeBits.fill(0)
+        opcodeBits.fill(0)
+        readBits.fill(0)
+        writeBits.fill(0)
+        interrupts = 0
+        watchesOpcodes = false
+        watchesReads = false
+        skipPc = -1
+    }
+
+    fun isWriteWatched(address: Int): Boolean = isSet(writeBits, normalize(address))
+
+    /** Called by the CPU before each instruction. True stops it before [pc] runs. */
+    internal fun beforeExecute(pc: Int, opcode: Int): Boolean {
+        this.pc = pc
+        val skip = skipPc
+        skipPc = -1
+        if (pc == skip) return false
+        val hit = (isSet(executeBits, pc) || (opcode >= 0 && isSet(opcodeBits, opcode))) && handler.onExecute(pc, opcode)
+        if (hit) skipPc = pc
+        return hit
+    }
+
+    /** Called by the CPU once an instruction's operand [address] is known. True stops it after the instruction. */
+    internal fun afterDecode(instruction: Int, addrMode: Int, address: Int, mem: ShortArray): Boolean {
+        if (!READS_OPERAND[instruction] || !READS_FROM[addrMode]) return false
+        val a = normalize(address)
+        return isSet(readBits, a) && handler.onRead(pc, a, mem[a].toInt() and 0xFF)
+    }
+
+    /** Called by the CPU after a store to a watched [address]. True stops it after the instruction. */
+    internal fun afterWrite(address: Int, old: Int, new: Int): Boolean = handler.onWrite(pc, normalize(address), old, new)
+
+    /** Called by the CPU once it has taken an interrupt. True stops it before the handler's first instruction. */
+    internal fun afterInterrupt(type: Int, target: Int): Boolean {
+        if (((interrupts ushr type) and 1) == 0 || !handler.onInterrupt(type, target)) return false
+        skipPc = target
+        return true
+    }
+
+    companion object {
+        /** Folds RAM mirrors so $0800/$1000/$1800 trap the same byte as $0000. */
+        fun normalize(address: Int): Int = if (address < 0x2000) address and 0x7FF else address and 0xFFFF
+
+        private fun isSet(bits: IntArray, i: Int): Boolean = (bits[i ushr 5] and (1 shl (i and 31))) != 0
+
+        private fun set(bits: IntArray, i: Int, on: Boolean) {
+            bits[i ushr 5] = if (on) bits[i ushr 5] or (1 shl (i and 31)) else bits[i ushr 5] and (1 shl (i and 31)).inv()
+        }
+
+        // Instructions whose operand is a memory read (read-modify-write included).
+        private val READS_OPERAND = BooleanArray(256).also {
+            for (ins in intArrayOf(
+                CpuInfo.INS_ADC, CpuInfo.INS_AND, CpuInfo.INS_ASL, CpuInfo.INS_BIT, CpuInfo.INS_CMP,
+                CpuInfo.INS_CPX, CpuInfo.INS_CPY, CpuInfo.INS_DEC, CpuInfo.INS_EOR, CpuInfo.INS_INC,
+                CpuInfo.INS_LDA, CpuInfo.INS_LDX, CpuInfo.INS_LDY, CpuInfo.INS_LSR, CpuInfo.INS_ORA,
+                CpuInfo.INS_ROL, CpuInfo.INS_ROR, CpuInfo.INS_SBC,
+            )) it[ins] = true
+        }
+
+        // Addressing modes that name a data address (not immediate, accumulator, implied, relative or JMP ($nnnn)).
+        private val READS_FROM = BooleanArray(256) { mode ->
+            mode < CpuInfo.ADDR_INDABS && mode != CpuInfo.ADDR_REL && mode != CpuInfo.ADDR_IMP &&
+                mode != CpuInfo.ADDR_ACC && mode != CpuInfo.ADDR_IMM
+        }
+    }
+}
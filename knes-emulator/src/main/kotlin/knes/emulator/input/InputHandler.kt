@@ -16,6 +16,25 @@ package knes.emulator.input
 interface InputHandler {
     fun getKeyState(padKey: Int): Short
 
+    /**
+     * Samples all buttons as a mask (bit N = key N) at the moment the game strobes $4016.
+     * The mapper shifts the returned bits out on the following reads, so a port sees one
+     * consistent snapshot per poll. The default samples [getKeyState] once per key.
+     */
+    fun latch(): Int {
+        var mask = 0
+        for (key in 0 until NUM_KEYS) {
+            if (getKeyState(key).toInt() and 1 != 0) mask = mask or (1 shl key)
+        }
+        return mask
+    }
+
+    /**
+     * The buttons [latch] would return, for a strobe in a frame that will be rolled back
+     * (run-ahead). Implementations that record something per latch leave it untouched.
+     */
+    fun peek(): Int = latch()
+
     companion object {
         const val KEY_A: Int = 0
         const val KEY_B: Int = 1
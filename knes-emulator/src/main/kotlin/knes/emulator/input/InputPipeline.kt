@@ -0,0 +1,97 @@
+/*
+ *
+ *  * Copyright (C) 2025 Artur Skowroński
+ *  * This file is part of kNES, a fork of vNES (GPLv3) rewritten in Kotlin.
+ *  *
+ *  * vNES was originally developed by Brian F. R. (bfirsh) and released under the GPL-3.0 license.
+ *  * This project is a reimplementation and extension of that work.
+ *  *
+ *  * kNES is licensed under the GNU General Public License v3.0.
+ *  * See the LICENSE file for more details.
+ *
+ */
+
+package knes.emulator.input
+
+import knes.emulator.utils.LatencyHistogram
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Input for one controller port, merged from any number of event-driven devices.
+ *
+ * Each [Device] keeps its buttons in an atomic mask (bit N = [InputHandler] key N) that
+ * its listener thread updates as events arrive, stamped with [System.nanoTime]. Nothing
+ * is polled: when the game strobes $4016 the mapper calls [latch], which ORs the device
+ * masks together with [polledButtons] and, per device, records the time from the oldest
+ * change not yet seen by the game to this latch in [Device.latency].
+ */
+open class InputPipeline : InputHandler {
+
+    private val devices = CopyOnWriteArrayList<Device>()
+
+    /** Registers a new input device on this port. */
+    fun device(name: String): Device = Device(name).also { devices += it }
+
+    fun devices(): List<Device> = devices.toList()
+
+    /** Buttons of sources that have no events (e.g. the API controller), sampled at each latch. */
+    protected open fun polledButtons(): Int = 0
+
+    /** Merged buttons right now, without touching the latency statistics. */
+    fun buttons(): Int {
+        var mask = polledButtons()
+        for (d in devices) mask = mask or d.buttons
+        return mask
+    }
+
+    override fun latch(): Int {
+        val now = System.nanoTime()
+        var mask = polledButtons()
+        for (d in devices) mask = mask or d.latchAt(now)
+        return mask
+    }
+
+    override fun peek(): Int = buttons()
+
+    override fun getKeyState(padKey: Int): Short = if ((buttons() ushr padKey) and 1 != 0) 0x41 else 0x40
+
+    /** One line per device: event count and input-to-latch percentiles. */
+    fun latencyReport(): String = devices.joinToString("\n") { d ->
+        val h = d.latency
+        "${d.name}: ${h.count} events latched, p50 <= ${h.valueAtPercentile(50.0) / 1000} us, " +
+            "p99 <= ${h.valueAtPercentile(99.0) / 1000} us"
+    }
+
+    class Device internal constructor(val name: String) {
+        private val mask = AtomicInteger()
+        // nanoTime of the oldest change the game hasn't latched yet, or NONE.
+        private val pendingSince = AtomicLong(NONE)
+
+        val latency = LatencyHistogram()
+
+        val buttons: Int get() = mask.get()
+
+        fun press(key: Int, pressed: Boolean, nanos: Long = System.nanoTime()) {
+            val bit = 1 shl key
+            val old = mask.getAndUpdate { if (pressed) it or bit else it and bit.inv() }
+            if ((old and bit != 0) != pressed) pendingSince.compareAndSet(NONE, nanos)
+        }
+
+        /** Replaces all buttons at once, for devices that report their whole state per event. */
+        fun setButtons(buttons: Int, nanos: Long = System.nanoTime()) {
+            if (mask.getAndSet(buttons) != buttons) pendingSince.compareAndSet(NONE, nanos)
+        }
+
+        internal fun latchAt(now: Long): Int {
+            val since = pendingSince.getAndSet(NONE)
+            if (since != NONE) latency.record(now - since)
+            return mask.get()
+        }
+
+        private companion object {
+            const val NONE = Long.MIN_VALUE
+        }
+    }
+}
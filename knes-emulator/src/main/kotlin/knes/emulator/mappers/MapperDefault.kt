@@ -35,6 +35,10 @@ open class MapperDefault(nes: NES) : MemoryMapper {
     var joy1StrobeState: Int = 0
     var joy2StrobeState: Int = 0
     var joypadLastWrite: Int
+    // Buttons of port 1 as latched by the last $4016 strobe; bit N = InputHandler key N.
+    private var joy1Buttons: Int = 0
+    // 16 KiB PRG bank loaded at $8000 and at $C000, for the profiler's per-bank attribution; -1 if unknown.
+    private val prgBanks = intArrayOf(-1, -1)
     var mousePressed: Boolean = false
 
     var mouseX: Int = 0
@@ -42,6 +46,7 @@ open class MapperDefault(nes: NES) : MemoryMapper {
     var tmp: Int = 0
     private val inputHandler: InputHandler
     private val inputHandler2: InputHandler?
+    private val nes: NES = nes
 
     init {
         this.cpuMem = nes.cpuMemory
@@ -60,12 +65,15 @@ open class MapperDefault(nes: NES) : MemoryMapper {
     override fun stateLoad(buf: knes.emulator.ByteBuffer?) {
         // Check version:
 
-        if (buf!!.readByte().toInt() == 1) {
+        val version = buf!!.readByte().toInt()
+        if (version == 1 || version == STATE_VERSION) {
             // Joypad stuff:
 
             joy1StrobeState = buf.readInt()
             joy2StrobeState = buf.readInt()
             joypadLastWrite = buf.readInt()
+            // Version 1 predates the latch; the game re-strobes within a frame.
+            joy1Buttons = if (version == STATE_VERSION) buf.readInt() else 0
 
             // Mapper specific stuff:
             mapperInternalStateLoad(buf)
@@ -75,12 +83,13 @@ open class MapperDefault(nes: NES) : MemoryMapper {
     override fun stateSave(buf: knes.emulator.ByteBuffer?) {
         // Version:
 
-        buf!!.putByte(1.toShort())
+        buf!!.putByte(STATE_VERSION.toShort())
 
         // Joypad stuff:
         buf.putInt(joy1StrobeState)
         buf.putInt(joy2StrobeState)
         buf.putInt(joypadLastWrite)
+        buf.putInt(joy1Buttons)
 
         // Mapper specific stuff:
         mapperInternalStateSave(buf)
@@ -381,6 +390,7 @@ open class MapperDefault(nes: NES) : MemoryMapper {
                 if (value.toInt() == 0 && joypadLastWrite == 1) {
                     joy1StrobeState = 0
                     joy2StrobeState = 0
+                    joy1Buttons = sampleJoy1()
                 }
                 joypadLastWrite = value.toInt()
             }
@@ -399,18 +409,26 @@ open class MapperDefault(nes: NES) : MemoryMapper {
         }
     }
 
+    override fun latchedJoy1Buttons(): Int = joy1Buttons
+
+    // Frames that run-ahead rolls back must not count as the game seeing the input.
+    private fun sampleJoy1(): Int = if (nes.speculating) inputHandler.peek() else inputHandler.latch()
+
     override fun joy1Read(): Short {
         val ret: Short
 
+        // While the strobe is held high the shift register keeps reloading.
+        if (joypadLastWrite == 1) joy1Buttons = sampleJoy1()
+
         when (joy1StrobeState) {
-            0 -> ret = inputHandler.getKeyState(InputHandler.Companion.KEY_A)
-            1 -> ret = inputHandler.getKeyState(InputHandler.Companion.KEY_B)
-            2 -> ret = inputHandler.getKeyState(InputHandler.Companion.KEY_SELECT)
-            3 -> ret = inputHandler.getKeyState(InputHandler.Companion.KEY_START)
-            4 -> ret = inputHandler.getKeyState(InputHandler.Companion.KEY_UP)
-            5 -> ret = inputHandler.getKeyState(InputHandler.Companion.KEY_DOWN)
-            6 -> ret = inputHandler.getKeyState(InputHandler.Companion.KEY_LEFT)
-            7 -> ret = inputHandler.getKeyState(InputHandler.Companion.KEY_RIGHT)
+            0 -> ret = latchedKey(InputHandler.Companion.KEY_A)
+            1 -> ret = latchedKey(InputHandler.Companion.KEY_B)
+            2 -> ret = latchedKey(InputHandler.Companion.KEY_SELECT)
+            3 -> ret = latchedKey(InputHandler.Companion.KEY_START)
+            4 -> ret = latchedKey(InputHandler.Companion.KEY_UP)
+            5 -> ret = latchedKey(InputHandler.Companion.KEY_DOWN)
+            6 -> ret = latchedKey(InputHandler.Companion.KEY_LEFT)
+            7 -> ret = latchedKey(InputHandler.Companion.KEY_RIGHT)
             8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18 -> ret = 0.toShort()
             19 -> ret = 1.toShort()
             else -> ret = 0
@@ -424,6 +442,8 @@ open class MapperDefault(nes: NES) : MemoryMapper {
         return ret
     }
 
+    private fun latchedKey(key: Int): Short = (0x40 or ((joy1Buttons ushr key) and 1)).toShort()
+
     override fun joy2Read(): Short {
         ///TODO: Support for second controller
         return 0
@@ -496,6 +516,7 @@ open class MapperDefault(nes: NES) : MemoryMapper {
         val data = rom!!.getRomBank(bank)
         //cpuMem.write(address,data,data.length);
         System.arraycopy(rom!!.getRomBank(bank), 0, cpuMem.mem, address, 16384)
+        if (address >= 0x8000) prgBanks[(address - 0x8000) shr 14] = bank
     }
 
     protected fun loadVromBank(bank: Int, address: Int) {
@@ -563,8 +584,12 @@ open class MapperDefault(nes: NES) : MemoryMapper {
 
         val bank = rom!!.getRomBank(bank16k)
         cpuMem.write(address, bank!!, offset, 8192)
+        // Half of a 16 KiB slot now comes from elsewhere.
+        if (address >= 0x8000) prgBanks[(address - 0x8000) shr 14] = -1
     }
 
+    override fun prgBank(address: Int): Int = if (address >= 0x8000) prgBanks[(address - 0x8000) shr 14] else -1
+
     override fun clockIrqCounter() {
         // Does nothing. This is used by the MMC3 mapper.
     }
@@ -590,6 +615,7 @@ open class MapperDefault(nes: NES) : MemoryMapper {
     override fun reset() {
         joy1StrobeState = 0
         joy2StrobeState = 0
+        joy1Buttons = 0
         joypadLastWrite = 0
         mousePressed = false
     }
@@ -599,4 +625,9 @@ open class MapperDefault(nes: NES) : MemoryMapper {
         cpu = null
         ppu = null
     }
+
+    companion object {
+        // 2 adds the buttons latched at the last $4016 strobe.
+        private const val STATE_VERSION = 2
+    }
 }
@@ -31,4 +31,10 @@ interface MemoryMapper : MemoryAccess {
     fun stateSave(buf: ByteBuffer?)
     fun setMouseState(pressed: Boolean, x: Int, y: Int)
     fun latchAccess(address: Int)
+
+    /** 16 KiB PRG-ROM bank currently mapped at CPU [address], or -1 when unknown or not ROM. */
+    fun prgBank(address: Int): Int = -1
+
+    /** Buttons of port 1 as latched by the game's last $4016 strobe (bit N = InputHandler key N). */
+    fun latchedJoy1Buttons(): Int = 0
 }
\ No newline at end of file
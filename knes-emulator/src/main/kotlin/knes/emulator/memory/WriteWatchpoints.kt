@@ -0,0 +1,176 @@
+/*
+ *
+ *  * Copyright (C) 2025 Artur Skowroński
+ *  * This file is part of kNES, a fork of vNES (GPLv3) rewritten in Kotlin.
+ *  *
+ *  * vNES was originally developed by Brian F. R. (bfirsh) and released under the GPL-3.0 license.
+ *  * This project is a reimplementation and extension of that work.
+ *  *
+ *  * kNES is licensed under the GNU General Public License v3.0.
+ *  * See the LICENSE file for more details.
+ *
+ */
+
+package knes.emulator.memory
+
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+/**
+ * Write-watchpoints on the CPU store path.
+ *
+ * The CPU asks [isWatched] on every store while a watchpoint set is installed and,
+ * when the stored byte actually changed, calls [publish]. Each change is packed into
+ * a single Long (frame, address, old, new) and written into a fixed-size broadcast
+ * ring, so the emulation thread never allocates, locks or waits for consumers.
+ *
+ * Consumers call [subscribe] and drain their [Cursor] at their own pace. A cursor
+ * that falls a full ring behind skips ahead and counts the gap in [Cursor.dropped]
+ * instead of stalling the producer. [Cursor.await] blocks until there is something to
+ * drain; waiters are woken when the owner advances [frame], never from [publish].
+ *
+ * Threading: exactly one producer (the CPU thread), any number of consumers.
+ * Only internal RAM ($0000-$07FF, mirrors folded) and PRG-RAM ($6000-$7FFF) can be
+ * watched; stack pushes performed by interrupts are not observed.
+ */
+class WriteWatchpoints(val capacity: Int = DEFAULT_CAPACITY) {
+
+    init {
+        require(capacity > 0 && (capacity and (capacity - 1)) == 0) {
+            "capacity must be a power of two, got $capacity"
+        }
+    }
+
+    private val mask = (capacity - 1).toLong()
+    private val ring = LongArray(capacity)
+    private val published = AtomicLong(0)
+
+    // One bit per CPU address. Int words so concurrent watch()/isWatched() never tear.
+    private val watched = IntArray(0x10000 ushr 5)
+
+    // Consumers blocked in Cursor.await; the frame setter only takes the lock when there are any.
+    private val lock = ReentrantLock()
+    private val frameAdvanced = lock.newCondition()
+    private val waiters = AtomicInteger()
+
+    /**
+     * Frame number stamped onto published events. Updated by the owner at each frame
+     * boundary, which also wakes cursors blocked in [Cursor.await].
+     */
+    @Volatile
+    var frame: Int = 0
+        set(value) {
+            field = value
+            if (waiters.get() > 0) lock.withLock { frameAdvanced.signalAll() }
+        }
+
+    /** Total number of events published since creation. */
+    val publishedCount: Long get() = published.get()
+
+    fun watch(address: Int) {
+        require(isWatchable(address)) {
+            "address 0x${address.toString(16)} is not watchable (RAM \$0000-\$1FFF or PRG-RAM \$6000-\$7FFF only)"
+        }
+        val a = normalize(address)
+        watched[a ushr 5] = watched[a ushr 5] or (1 shl (a and 31))
+    }
+
+    fun clear() {
+        watched.fill(0)
+    }
+
+    fun isWatched(address: Int): Boolean =
+        (watched[address ushr 5] and (1 shl (address and 31))) != 0
+
+    /** Called by the CPU after a store to a watched [address] changed its value. */
+    fun publish(address: Int, old: Int, new: Int) {
+        val seq = published.get()
+        ring[(seq and mask).toInt()] = pack(frame, address, old, new)
+        published.lazySet(seq + 1)
+    }
+
+    /** New cursor positioned at the current head: only events published from now on are seen. */
+    fun subscribe(): Cursor = Cursor(published.get())
+
+    fun interface EventSink {
+        fun onWrite(frame: Int, address: Int, old: Int, new: Int)
+    }
+
+    inner class Cursor internal constructor(private var next: Long) {
+        /** Events overwritten before this cursor could read them. */
+        var dropped: Long = 0
+            private set
+
+        /** Delivers every event published since the last call to [sink]. Returns the count delivered. */
+        fun drain(sink: EventSink): Int {
+            var delivered = 0
+            val head = published.get()
+            while (next < head) {
+                if (head - next >= capacity) {
+                    skipTo(head - capacity + 1)
+                    continue
+                }
+                val event = ring[(next and mask).toInt()]
+                // The producer may have lapped this slot while we were reading it.
+                if (published.get() - next >= capacity) {
+                    skipTo(published.get() - capacity + 1)
+                    continue
+                }
+                sink.onWrite(frameOf(event), addressOf(event), oldOf(event), newOf(event))
+                next++
+                delivered++
+            }
+            return delivered
+        }
+
+        /**
+         * Blocks until there are events to [drain] or [timeoutMs] passes, and returns whether
+         * there are. Events are noticed at the next [frame] update, so they arrive once per
+         * frame rather than one by one.
+         */
+        fun await(timeoutMs: Long): Boolean {
+            if (published.get() > next) return true
+            var left = timeoutMs * 1_000_000
+            waiters.incrementAndGet()
+            try {
+                lock.withLock {
+                    while (published.get() <= next) {
+                        if (left <= 0) return false
+                        left = frameAdvanced.awaitNanos(left)
+                    }
+                }
+            } finally {
+                waiters.decrementAndGet()
+            }
+            return true
+        }
+
+        private fun skipTo(seq: Long) {
+            dropped += seq - next
+            next = seq
+        }
+    }
+
+    companion object {
+        const val DEFAULT_CAPACITY = 4096
+
+        fun isWatchable(address: Int): Boolean =
+            address in 0x0000..0x1FFF || address in 0x6000..0x7FFF
+
+        /** Folds RAM mirrors so $0800/$1000/$1800 watch the same byte as $0000. */
+        fun normalize(address: Int): Int = if (address < 0x2000) address and 0x7FF else address
+
+        fun pack(frame: Int, address: Int, old: Int, new: Int): Long =
+            (frame.toLong() shl 32) or
+                ((address.toLong() and 0xFFFF) shl 16) or
+                ((old.toLong() and 0xFF) shl 8) or
+                (new.toLong() and 0xFF)
+
+        fun frameOf(event: Long): Int = (event ushr 32).toInt()
+        fun addressOf(event: Long): Int = ((event ushr 16) and 0xFFFF).toInt()
+        fun oldOf(event: Long): Int = ((event ushr 8) and 0xFF).toInt()
+        fun newOf(event: Long): Int = (event and 0xFF).toInt()
+    }
+}
@@ -127,6 +127,30 @@ class PPU : PPUCycles {
     var nameTable: Array<NameTable?> = arrayOfNulls<NameTable>(4)
     var currentMirroring: Int = -1
 
+    // Read-only views of the latched $2000/$2001/$2005 state for tooling. Scroll is the
+    // value the next frame starts from (games write it during VBlank).
+
+    /** Horizontal scroll in pixels across the two horizontal nametables (0..511). */
+    val scrollX: Int
+        get() = (regH shl 8) or (regHT shl 3) or regFH
+
+    /** Vertical scroll in pixels across the two vertical nametables (0..479). */
+    val scrollY: Int
+        get() = (regV * 240 + (regVT shl 3) + regFV) % 480
+
+    /** Sprite height in pixels: 8, or 16 in 8x16 mode. */
+    val spriteHeight: Int
+        get() = if (f_spriteSize == 1) 16 else 8
+
+    val isBackgroundVisible: Boolean
+        get() = f_bgVisibility == 1
+
+    val isSpriteVisible: Boolean
+        get() = f_spVisibility == 1
+
+    /** Nametable behind logical slot [slot] (0=$2000 .. 3=$2C00) after mirroring. */
+    fun logicalNameTable(slot: Int): NameTable? = nameTable.getOrNull(ntable1[slot and 3])
+
     // Palette data:
     private val sprPalette = IntArray(16)
     private val imgPalette = IntArray(16)
@@ -0,0 +1,87 @@
+/*
+ *
+ *  * Copyright (C) 2025 Artur Skowroński
+ *  * This file is part of kNES, a fork of vNES (GPLv3) rewritten in Kotlin.
+ *  *
+ *  * vNES was originally developed by Brian F. R. (bfirsh) and released under the GPL-3.0 license.
+ *  * This project is a reimplementation and extension of that work.
+ *  *
+ *  * kNES is licensed under the GNU General Public License v3.0.
+ *  * See the LICENSE file for more details.
+ *
+ */
+
+package knes.emulator.utils
+
+import knes.emulator.memory.MemoryAccess
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Sampled wall-time accounting for the work the CPU hands off on every instruction:
+ * PPU cycle emulation, the PAPU frame counter and memory-mapper I/O.
+ *
+ * Timing every call would cost more than the calls themselves, so each [Component]
+ * measures only one call in [sampleEvery] and scales the result up. Totals live in
+ * [LongAdder]s, so a metrics scrape on another thread never contends with emulation.
+ *
+ * Install with `cpu.timings = EmulationTimings()`; null (the default) keeps the CPU
+ * loop on its original path.
+ */
+class EmulationTimings(val sampleEvery: Int = DEFAULT_SAMPLE_EVERY) {
+
+    init {
+        require(sampleEvery > 0 && (sampleEvery and (sampleEvery - 1)) == 0) {
+            "sampleEvery must be a power of two, got $sampleEvery"
+        }
+    }
+
+    val ppu = Component()
+    val papu = Component()
+    val mapper = Component()
+
+    inner class Component internal constructor() {
+        // Emulation thread only.
+        private var tick = 0
+        private val sampledNanos = LongAdder()
+        private val calls = LongAdder()
+
+        /** True for the one call in [sampleEvery] that should be timed. */
+        fun sample(): Boolean {
+            tick = (tick + 1) and (sampleEvery - 1)
+            return tick == 0
+        }
+
+        fun record(nanos: Long) {
+            sampledNanos.add(nanos)
+            calls.add(sampleEvery.toLong())
+        }
+
+        /** Estimated total wall time spent in this component, in nanoseconds. */
+        val estimatedNanos: Long get() = sampledNanos.sum() * sampleEvery
+
+        /** Estimated number of calls made into this component. */
+        val estimatedCalls: Long get() = calls.sum()
+    }
+
+    /** Wraps [target] so that its loads and stores are sampled into [mapper]. */
+    fun wrap(target: MemoryAccess): MemoryAccess = object : MemoryAccess {
+        override fun load(address: Int): Short {
+            if (!mapper.sample()) return target.load(address)
+            val start = System.nanoTime()
+            val value = target.load(address)
+            mapper.record(System.nanoTime() - start)
+            return value
+        }
+
+        override fun write(address: Int, value: Short) {
+            if (!mapper.sample()) return target.write(address, value)
+            val start = System.nanoTime()
+            target.write(address, value)
+            mapper.record(System.nanoTime() - start)
+        }
+    }
+
+    companion object {
+        const val DEFAULT_SAMPLE_EVERY = 64
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ *
+ *  * Copyright (C) 2025 Artur Skowroński
+ *  * This file is part of kNES, a fork of vNES (GPLv3) rewritten in Kotlin.
+ *  *
+ *  * vNES was originally developed by Brian F. R. (bfirsh) and released under the GPL-3.0 license.
+ *  * This project is a reimplementation and extension of that work.
+ *  *
+ *  * kNES is licensed under the GNU General Public License v3.0.
+ *  * See the LICENSE file for more details.
+ *
+ */
+
+package knes.emulator.utils
+
+import java.util.concurrent.atomic.AtomicLongArray
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Fixed-size log-linear latency histogram (HDR-style) over nanosecond values.
+ *
+ * Every power of two is split into [SUB_BUCKETS] linear sub-buckets, which gives about
+ * 25% relative precision from 1 ns to 2^[MAX_EXPONENT] ns (~18 minutes). Larger values are
+ * clamped into the last bucket. Buckets include their upper bound, like Prometheus `le`
+ * buckets. [record] is two array/adder increments and never allocates.
+ */
+class LatencyHistogram {
+    private val counts = AtomicLongArray(BUCKETS)
+    private val total = LongAdder()
+    private val sum = LongAdder()
+
+    fun record(nanos: Long) {
+        val v = nanos.coerceIn(0, MAX_VALUE)
+        counts.incrementAndGet(bucketOf(v))
+        total.increment()
+        sum.add(v)
+    }
+
+    val count: Long get() = total.sum()
+
+    val sumNanos: Long get() = sum.sum()
+
+    /** Number of recorded values at or below 2^[exponent] ns. */
+    fun countAtMostPowerOfTwo(exponent: Int): Long {
+        require(exponent in SUB_BUCKET_BITS..MAX_EXPONENT) { "exponent $exponent out of range" }
+        val end = (exponent - SUB_BUCKET_BITS + 1) shl SUB_BUCKET_BITS
+        var c = 0L
+        for (i in 0 until end) c += counts.get(i)
+        return c
+    }
+
+    /** Upper bound (inclusive, ns) of the bucket containing the [percentile]th value, or 0 if empty. */
+    fun valueAtPercentile(percentile: Double): Long {
+        val n = count
+        if (n == 0L) return 0
+        val rank = Math.ceil(n * percentile.coerceIn(0.0, 100.0) / 100.0).toLong().coerceAtLeast(1)
+        var seen = 0L
+        for (i in 0 until BUCKETS) {
+            seen += counts.get(i)
+            if (seen >= rank) return upperBoundOf(i)
+        }
+        return upperBoundOf(BUCKETS - 1)
+    }
+
+    companion object {
+        const val SUB_BUCKET_BITS = 2
+        const val SUB_BUCKETS = 1 shl SUB_BUCKET_BITS
+        const val MAX_EXPONENT = 40
+        const val MAX_VALUE = 1L shl MAX_EXPONENT
+        const val BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) shl SUB_BUCKET_BITS
+
+        /** Bucket whose range (lower, upper] holds [nanos]; bucket 0 also holds 0. */
+        fun bucketOf(nanos: Long): Int {
+            val v = nanos - 1
+            if (v < SUB_BUCKETS) return v.toInt().coerceAtLeast(0)
+            val exponent = 63 - java.lang.Long.numberOfLeadingZeros(v)
+            val shift = exponent - SUB_BUCKET_BITS
+            val sub = (v ushr shift).toInt() and (SUB_BUCKETS - 1)
+            return ((shift + 1) shl SUB_BUCKET_BITS) + sub
+        }
+
+        fun upperBoundOf(bucket: Int): Long {
+            if (bucket < SUB_BUCKETS) return bucket + 1L
+            val shift = (bucket ushr SUB_BUCKET_BITS) - 1
+            val sub = bucket and (SUB_BUCKETS - 1)
+            return (SUB_BUCKETS + sub + 1L) shl shift
+        }
+    }
+}
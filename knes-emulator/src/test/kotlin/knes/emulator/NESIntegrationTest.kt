@@ -9,6 +9,7 @@ import knes.emulator.ui.GUI
 import knes.emulator.utils.Globals
 import knes.emulator.utils.HiResTimer
 import java.io.File
+import java.util.concurrent.atomic.AtomicInteger
 
 class NESIntegrationTest : FunSpec({
 
@@ -67,4 +68,42 @@ class NESIntegrationTest : FunSpec({
         // $0003 = 0x00 means all unofficial opcode tests passed (we may not support these)
         result02 shouldBe 0x00
     }
+
+    test("the emulation thread runs ahead, one displayed frame per real frame, and stops") {
+        Globals.appletMode = true
+        Globals.enableSound = false
+        Globals.palEmulation = false
+
+        val noopInput = object : InputHandler {
+            override fun getKeyState(padKey: Int): Short = 0x40
+        }
+        val shown = AtomicInteger()
+        val gui = object : GUI {
+            override fun sendErrorMsg(message: String) {}
+            override fun sendDebugMessage(message: String) {}
+            override fun destroy() {}
+            override fun getJoy1(): InputHandler = noopInput
+            override fun getJoy2(): InputHandler? = null
+            override fun getTimer(): HiResTimer = HiResTimer()
+            override fun imageReady(skipFrame: Boolean, buffer: IntArray) {
+                shown.incrementAndGet()
+            }
+        }
+
+        val nes = NES(gui)
+        val romUrl = this::class.java.classLoader.getResource("nestest.nes")
+        romUrl shouldNotBe null
+        nes.loadRom(File(romUrl!!.toURI()).absolutePath) shouldBe true
+        nes.runAheadFrames = 2
+
+        nes.beginExecution()
+        val deadline = System.currentTimeMillis() + 10_000
+        while (shown.get() < 10 && System.currentTimeMillis() < deadline) Thread.sleep(1)
+        nes.cpu.endExecution()
+
+        (shown.get() >= 10) shouldBe true
+        nes.cpu.isRunning shouldBe false
+        nes.speculating shouldBe false
+        nes.cpu.muted shouldBe false
+    }
 })
@@ -0,0 +1,144 @@
+package knes.emulator.cpu
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.string.shouldContain
+import knes.emulator.ByteBuffer
+import knes.emulator.Memory
+import knes.emulator.mappers.MemoryMapper
+import knes.emulator.rom.ROMData
+
+// Flat memory that reports [bank] as the PRG bank behind all of $8000-$FFFF.
+private class BankedMemory(private val memory: Memory) : MemoryMapper {
+    var bank = 0
+    override fun prgBank(address: Int): Int = if (address >= 0x8000) bank else -1
+    override fun load(address: Int): Short = memory.load(address and 0xFFFF)
+    override fun write(address: Int, value: Short) = memory.write(address and 0xFFFF, value)
+    override fun loadROM(romData: ROMData?) {}
+    override fun joy1Read(): Short = 0
+    override fun joy2Read(): Short = 0
+    override fun reset() {}
+    override fun clockIrqCounter() {}
+    override fun loadBatteryRam() {}
+    override fun destroy() {}
+    override fun stateLoad(buf: ByteBuffer?) {}
+    override fun stateSave(buf: ByteBuffer?) {}
+    override fun setMouseState(pressed: Boolean, x: Int, y: Int) {}
+    override fun latchAccess(address: Int) {}
+}
+
+// $8000: JSR $8010 / JSR $8010 / JMP $8006; $8010: JSR $8020 / RTS; $8020: INX / RTS.
+private val NESTED_CALLS = IntArray(0x22).also {
+    intArrayOf(0x20, 0x10, 0x80, 0x20, 0x10, 0x80, 0x4C, 0x06, 0x80).copyInto(it, 0x00)
+    intArrayOf(0x20, 0x20, 0x80, 0x60).copyInto(it, 0x10)
+    intArrayOf(0xE8, 0x60).copyInto(it, 0x20)
+}
+
+class CpuProfilerTest : FunSpec({
+
+    test("counts executions and cycles per PC") {
+        val h = CpuTestHarness()
+        val profiler = CpuProfiler()
+        h.cpu.profiler = profiler
+
+        h.executeN(11, *NESTED_CALLS)
+
+        profiler.instructions shouldBe 11
+        profiler.totalCycles shouldBe 55
+        profiler.counts[0x8010] shouldBe 2
+        profiler.cycles[0x8010] shouldBe 12
+        profiler.counts[0x8020] shouldBe 2
+        profiler.hotSpots(1) shouldBe listOf(CpuProfiler.PcStat(0x8010, -1, 2, 12))
+    }
+
+    test("follows JSR/RTS into folded stacks and routine totals") {
+        val h = CpuTestHarness()
+        val profiler = CpuProfiler()
+        h.cpu.profiler = profiler
+
+        h.executeN(11, *NESTED_CALLS)
+
+        profiler.foldedStacks().lines().filter { it.isNotEmpty() }.toSet() shouldBe setOf(
+            "main 15",
+            "main;\$8010 24",
+            "main;\$8010;\$8020 16",
+        )
+        val routines = profiler.hotRoutines().associateBy { it.name }
+        routines.getValue("\$8010") shouldBe CpuProfiler.RoutineStat("\$8010", 0x8010, -1, 2, 24, 40)
+        routines.getValue("\$8020").calls shouldBe 2
+        routines.getValue("main").totalCycles shouldBe 55
+    }
+
+    test("splits the same address by the mapper's PRG bank") {
+        val h = CpuTestHarness()
+        val banked = BankedMemory(h.memory)
+        h.cpu.setMapper(banked)
+        val profiler = CpuProfiler()
+        h.cpu.profiler = profiler
+
+        banked.bank = 3
+        h.executeN(5, *NESTED_CALLS)
+        banked.bank = 5
+        h.executeN(5, *NESTED_CALLS)
+
+        profiler.hotSpots(100).filter { it.pc == 0x8020 }.toSet() shouldBe setOf(
+            CpuProfiler.PcStat(0x8020, 3, 1, 2),
+            CpuProfiler.PcStat(0x8020, 5, 1, 2),
+        )
+        profiler.foldedStacks() shouldContain "main;b03:\$8010;b03:\$8020 8"
+        profiler.foldedStacks() shouldContain "main;b05:\$8010;b05:\$8020 8"
+    }
+
+    test("an NMI opens a frame that RTI closes") {
+        val h = CpuTestHarness()
+        val profiler = CpuProfiler()
+        h.cpu.profiler = profiler
+        h.writeMem(0x2000, 0x80) // NMI on vblank enabled
+        // NMI vector -> $8030: INX / RTI
+        h.writeMem(0xFFFA, 0x30)
+        h.writeMem(0xFFFB, 0x80)
+        h.writeMem(0x8030, 0xE8)
+        h.writeMem(0x8031, 0x40)
+        h.cpu.requestIrq(CPU.IRQ_NMI)
+
+        h.executeN(3, 0xEA) // NMI taken before the NOP; INX, RTI, then the NOP at $8000
+
+        profiler.foldedStacks().lines().filter { it.isNotEmpty() }.toSet() shouldBe setOf(
+            "main 2",
+            "main;NMI \$8030 8",
+        )
+    }
+
+    test("sampling counts one instruction in N, weighted by N") {
+        val h = CpuTestHarness()
+        val profiler = CpuProfiler(sampleEvery = 4)
+        h.cpu.profiler = profiler
+
+        h.executeN(12, *IntArray(12) { 0xEA }) // NOP x12
+
+        profiler.instructions shouldBe 12
+        profiler.totalCycles shouldBe 24
+    }
+
+    test("a removed profiler stops counting") {
+        val h = CpuTestHarness()
+        val profiler = CpuProfiler()
+        h.cpu.profiler = profiler
+        h.executeN(2, 0xEA, 0xEA)
+        h.cpu.profiler = null
+        h.executeN(2, 0xEA, 0xEA)
+
+        profiler.instructions shouldBe 2
+    }
+
+    test("a masked NMI does not open a frame") {
+        val h = CpuTestHarness()
+        val profiler = CpuProfiler()
+        h.cpu.profiler = profiler
+        h.cpu.requestIrq(CPU.IRQ_NMI) // $2000 bit 7 clear
+
+        h.executeN(1, 0xEA)
+
+        profiler.foldedStacks() shouldBe "main 2\n"
+    }
+})
@@ -0,0 +1,111 @@
+package knes.emulator.cpu
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.collections.shouldBeEmpty
+import io.kotest.matchers.shouldBe
+
+// Records every call and stops the CPU on all of them.
+private class StopOnEverything : DebugTraps.Handler {
+    val calls = mutableListOf<String>()
+    override fun onExecute(pc: Int, opcode: Int): Boolean = calls.add("exec %04X %d".format(pc, opcode))
+    override fun onRead(pc: Int, address: Int, value: Int): Boolean = calls.add("read %04X %04X %02X".format(pc, address, value))
+    override fun onWrite(pc: Int, address: Int, old: Int, new: Int): Boolean =
+        calls.add("write %04X %04X %02X %02X".format(pc, address, old, new))
+    override fun onInterrupt(type: Int, target: Int): Boolean = calls.add("irq $type %04X".format(target))
+}
+
+class DebugTrapsTest : FunSpec({
+
+    test("an execution trap stops before the instruction and resuming runs it") {
+        val h = CpuTestHarness()
+        val handler = StopOnEverything()
+        h.cpu.traps = DebugTraps(handler).apply { execute(0x8002) }
+
+        h.executeN(3, 0xEA, 0xEA, 0xE8, 0xEA) // NOP, NOP, INX, NOP
+
+        handler.calls shouldBe listOf("exec 8002 -1")
+        h.pc shouldBe 0x8001
+        h.x shouldBe 0
+        h.cpu.step()
+        h.x shouldBe 1
+        handler.calls.size shouldBe 1
+    }
+
+    test("an opcode trap passes the opcode of the instruction about to run") {
+        val h = CpuTestHarness()
+        val handler = StopOnEverything()
+        h.cpu.traps = DebugTraps(handler).apply { opcode(0xE8) }
+
+        h.executeN(2, 0xEA, 0xE8) // NOP, INX
+
+        handler.calls shouldBe listOf("exec 8001 232")
+        h.x shouldBe 0
+    }
+
+    test("a write trap reports the old and new value, mirrors folded") {
+        val h = CpuTestHarness()
+        val handler = StopOnEverything()
+        h.cpu.traps = DebugTraps(handler).apply { write(0x0810) }
+
+        h.executeN(2, 0xA9, 0x05, 0x85, 0x10) // LDA #$05, STA $10
+
+        handler.calls shouldBe listOf("write 8002 0010 00 05")
+        h.readMem(0x10) shouldBe 5
+    }
+
+    test("a write trap reports no old value for registers, the stored one for PRG-RAM") {
+        val h = CpuTestHarness()
+        val handler = StopOnEverything()
+        h.cpu.traps = DebugTraps(handler).apply { write(0x4015); write(0x6000) }
+        h.writeMem(0x6000, 0x33)
+
+        h.executeN(3, 0xA9, 0x0F, 0x8D, 0x15, 0x40, 0x8D, 0x00, 0x60) // LDA #$0F, STA $4015, STA $6000
+
+        handler.calls shouldBe listOf("write 8002 4015 %02X 0F".format(-1), "write 8005 6000 33 0F")
+    }
+
+    test("a read trap sees operand reads but not stores") {
+        val h = CpuTestHarness()
+        val handler = StopOnEverything()
+        h.cpu.traps = DebugTraps(handler).apply { read(0x20) }
+
+        h.executeN(3, 0xA9, 0x42, 0x85, 0x20, 0xA5, 0x20) // LDA #$42, STA $20, LDA $20
+
+        handler.calls shouldBe listOf("read 8004 0020 42")
+    }
+
+    test("an NMI trap stops on the handler's first instruction") {
+        val h = CpuTestHarness()
+        val handler = StopOnEverything()
+        h.cpu.traps = DebugTraps(handler).apply { interrupt(CPU.IRQ_NMI) }
+        h.writeMem(0x2000, 0x80) // NMI on vblank enabled
+        // NMI vector -> $8030: INX / RTI
+        h.writeMem(0xFFFA, 0x30)
+        h.writeMem(0xFFFB, 0x80)
+        h.writeMem(0x8030, 0xE8)
+        h.writeMem(0x8031, 0x40)
+        h.cpu.requestIrq(CPU.IRQ_NMI)
+
+        h.executeN(1, 0xEA)
+
+        handler.calls shouldBe listOf("irq ${CPU.IRQ_NMI} 8030")
+        h.pc shouldBe 0x802F
+        h.cpu.step()
+        h.x shouldBe 1
+    }
+
+    test("cleared and removed traps no longer fire") {
+        val h = CpuTestHarness()
+        val handler = StopOnEverything()
+        h.cpu.traps = DebugTraps(handler).apply {
+            execute(0x8001)
+            execute(0x8001, on = false)
+            write(0x10)
+            clear()
+        }
+
+        h.executeN(2, 0xEA, 0x85, 0x10) // NOP, STA $10
+
+        handler.calls.shouldBeEmpty()
+    }
+})
@@ -0,0 +1,105 @@
+package knes.emulator.cpu
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.shouldBe
+import knes.emulator.memory.WriteWatchpoints
+
+private data class Hit(val frame: Int, val address: Int, val old: Int, val new: Int)
+
+private fun WriteWatchpoints.Cursor.collect(): List<Hit> {
+    val out = mutableListOf<Hit>()
+    drain { frame, address, old, new -> out += Hit(frame, address, old, new) }
+    return out
+}
+
+class WriteWatchpointTest : FunSpec({
+
+    test("STA to a watched address publishes old and new value") {
+        val h = CpuTestHarness()
+        val wp = WriteWatchpoints()
+        wp.watch(0x48)
+        wp.frame = 7
+        h.cpu.writeWatch = wp
+        val cursor = wp.subscribe()
+
+        h.writeMem(0x48, 0x01)
+        h.a = 0x08
+        h.execute(0x85, 0x48) // STA $48
+
+        h.readMem(0x48) shouldBe 0x08
+        cursor.collect() shouldBe listOf(Hit(7, 0x48, 0x01, 0x08))
+    }
+
+    test("store of an unchanged value publishes nothing") {
+        val h = CpuTestHarness()
+        val wp = WriteWatchpoints()
+        wp.watch(0x48)
+        h.cpu.writeWatch = wp
+        val cursor = wp.subscribe()
+
+        h.writeMem(0x48, 0x08)
+        h.a = 0x08
+        h.execute(0x85, 0x48)
+
+        cursor.collect() shouldBe emptyList()
+    }
+
+    test("unwatched address is written without events") {
+        val h = CpuTestHarness()
+        val wp = WriteWatchpoints()
+        wp.watch(0x48)
+        h.cpu.writeWatch = wp
+        val cursor = wp.subscribe()
+
+        h.a = 0x33
+        h.execute(0x85, 0x49)
+
+        h.readMem(0x49) shouldBe 0x33
+        cursor.collect() shouldBe emptyList()
+    }
+
+    test("RAM mirror writes fold onto the watched base address") {
+        val h = CpuTestHarness()
+        val wp = WriteWatchpoints()
+        wp.watch(0x0048)
+        h.cpu.writeWatch = wp
+        val cursor = wp.subscribe()
+
+        h.a = 0x05
+        h.execute(0x8D, 0x48, 0x08) // STA $0848
+
+        cursor.collect() shouldBe listOf(Hit(0, 0x48, 0x00, 0x05))
+    }
+
+    test("slow cursor skips ahead and counts dropped events") {
+        val wp = WriteWatchpoints(capacity = 4)
+        val cursor = wp.subscribe()
+        for (i in 1..10) wp.publish(0x10, i - 1, i)
+
+        val hits = cursor.collect()
+        hits.map { it.new } shouldBe listOf(8, 9, 10)
+        cursor.dropped shouldBe 7L
+    }
+
+    test("await wakes at the frame boundary that follows an event, and times out without one") {
+        val wp = WriteWatchpoints()
+        val cursor = wp.subscribe()
+        cursor.await(10) shouldBe false
+
+        val producer = Thread {
+            Thread.sleep(50)
+            wp.publish(0x10, 0, 1)
+            wp.frame = 1
+        }.apply { start() }
+        cursor.await(5_000) shouldBe true
+        producer.join()
+        cursor.collect().map { it.new } shouldBe listOf(1)
+    }
+
+    test("non-watchable address is rejected") {
+        val wp = WriteWatchpoints()
+        WriteWatchpoints.isWatchable(0x2000) shouldBe false
+        WriteWatchpoints.isWatchable(0x6100) shouldBe true
+        runCatching { wp.watch(0x8000) }.isFailure shouldBe true
+    }
+})
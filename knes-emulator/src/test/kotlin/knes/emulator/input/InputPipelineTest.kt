@@ -0,0 +1,126 @@
+package knes.emulator.input
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.shouldBe
+import knes.emulator.ByteBuffer
+import knes.emulator.NES
+import knes.emulator.mappers.MapperDefault
+import knes.emulator.ui.GUI
+import knes.emulator.utils.Globals
+import knes.emulator.utils.HiResTimer
+
+class InputPipelineTest : FunSpec({
+
+    fun nesFor(input: InputHandler): NES {
+        Globals.appletMode = false
+        Globals.enableSound = false
+        Globals.palEmulation = false
+        val gui = object : GUI {
+            override fun sendErrorMsg(message: String) {}
+            override fun sendDebugMessage(message: String) {}
+            override fun destroy() {}
+            override fun getJoy1(): InputHandler = input
+            override fun getJoy2(): InputHandler? = null
+            override fun getTimer(): HiResTimer = HiResTimer()
+            override fun imageReady(skipFrame: Boolean, buffer: IntArray) {}
+        }
+        return NES(gui)
+    }
+
+    fun mapperFor(input: InputHandler): MapperDefault = MapperDefault(nesFor(input))
+
+    fun MapperDefault.strobe() {
+        write(0x4016, 1)
+        write(0x4016, 0)
+    }
+
+    fun MapperDefault.readButtons(): List<Int> = (0 until 8).map { joy1Read().toInt() and 1 }
+
+    test("devices merge into one mask") {
+        val pipeline = InputPipeline()
+        val keyboard = pipeline.device("keyboard")
+        val gamepad = pipeline.device("gamepad")
+
+        keyboard.press(InputHandler.KEY_A, true)
+        gamepad.setButtons(1 shl InputHandler.KEY_LEFT)
+
+        pipeline.latch() shouldBe ((1 shl InputHandler.KEY_A) or (1 shl InputHandler.KEY_LEFT))
+        pipeline.getKeyState(InputHandler.KEY_A) shouldBe 0x41.toShort()
+        pipeline.getKeyState(InputHandler.KEY_B) shouldBe 0x40.toShort()
+
+        keyboard.press(InputHandler.KEY_A, false)
+        pipeline.latch() shouldBe (1 shl InputHandler.KEY_LEFT)
+    }
+
+    test("latency runs from the oldest unlatched event to the latch, per device") {
+        val pipeline = InputPipeline()
+        val keyboard = pipeline.device("keyboard")
+        val gamepad = pipeline.device("gamepad")
+        val t0 = System.nanoTime() - 5_000_000
+
+        keyboard.press(InputHandler.KEY_A, true, t0)
+        keyboard.press(InputHandler.KEY_B, true, t0 + 4_000_000)
+        keyboard.press(InputHandler.KEY_B, true, t0 + 4_500_000) // no change, no event
+        pipeline.latch()
+        pipeline.latch()
+
+        keyboard.latency.count shouldBe 1L
+        (keyboard.latency.valueAtPercentile(100.0) >= 5_000_000L) shouldBe true
+        gamepad.latency.count shouldBe 0L
+    }
+
+    test("the mapper shifts out the buttons latched at the strobe") {
+        val pipeline = InputPipeline()
+        val pad = pipeline.device("pad")
+        val mapper = mapperFor(pipeline)
+
+        pad.press(InputHandler.KEY_A, true)
+        pad.press(InputHandler.KEY_START, true)
+        mapper.strobe()
+        // Changes after the strobe wait for the next one.
+        pad.press(InputHandler.KEY_A, false)
+
+        // Shift order is A, B, Select, Start, Up, Down, Left, Right.
+        mapper.readButtons() shouldBe listOf(1, 0, 0, 1, 0, 0, 0, 0)
+        pad.latency.count shouldBe 1L
+
+        mapper.readButtons() // signature bits
+        mapper.strobe()
+        mapper.readButtons() shouldBe listOf(0, 0, 0, 1, 0, 0, 0, 0)
+    }
+
+    test("a savestate taken between strobe and read restores the latched buttons") {
+        val pipeline = InputPipeline()
+        val pad = pipeline.device("pad")
+        val mapper = mapperFor(pipeline)
+        pad.press(InputHandler.KEY_A, true)
+        mapper.strobe()
+        val state = ByteBuffer(64, ByteBuffer.BO_LITTLE_ENDIAN).apply { setExpandable(true) }
+        mapper.stateSave(state)
+
+        pad.press(InputHandler.KEY_A, false)
+        mapper.strobe()
+        state.goTo(0)
+        mapper.stateLoad(state)
+
+        mapper.readButtons() shouldBe listOf(1, 0, 0, 0, 0, 0, 0, 0)
+    }
+
+    test("strobes in run-ahead frames read the buttons without recording latency") {
+        val pipeline = InputPipeline()
+        val pad = pipeline.device("pad")
+        val nes = nesFor(pipeline)
+        val mapper = MapperDefault(nes)
+        pad.press(InputHandler.KEY_B, true)
+
+        nes.speculating = true
+        mapper.strobe()
+        mapper.readButtons() shouldBe listOf(0, 1, 0, 0, 0, 0, 0, 0)
+        pad.latency.count shouldBe 0L
+
+        // The real frame's strobe still sees the press as new.
+        nes.speculating = false
+        mapper.strobe()
+        pad.latency.count shouldBe 1L
+    }
+})
@@ -0,0 +1,44 @@
+package knes.emulator.utils
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.shouldBe
+
+class LatencyHistogramTest : FunSpec({
+
+    test("buckets are contiguous and bounded") {
+        var previousUpper = 0L
+        for (b in 0 until LatencyHistogram.BUCKETS) {
+            val upper = LatencyHistogram.upperBoundOf(b)
+            LatencyHistogram.bucketOf(previousUpper + 1) shouldBe b
+            LatencyHistogram.bucketOf(upper) shouldBe b
+            previousUpper = upper
+        }
+        previousUpper shouldBe LatencyHistogram.MAX_VALUE
+    }
+
+    test("count at or below a power of two is exact, bound included") {
+        val h = LatencyHistogram()
+        h.record(1024)
+        h.record(1025)
+        h.record(5000)
+        h.countAtMostPowerOfTwo(10) shouldBe 1L
+        h.countAtMostPowerOfTwo(11) shouldBe 2L
+        h.countAtMostPowerOfTwo(13) shouldBe 3L
+        h.count shouldBe 3L
+        h.sumNanos shouldBe 1024L + 1025 + 5000
+    }
+
+    test("percentile returns the containing bucket's upper bound") {
+        val h = LatencyHistogram()
+        repeat(99) { h.record(100) }
+        h.record(1_000_000)
+        h.valueAtPercentile(50.0) shouldBe LatencyHistogram.upperBoundOf(LatencyHistogram.bucketOf(100))
+        h.valueAtPercentile(100.0) shouldBe LatencyHistogram.upperBoundOf(LatencyHistogram.bucketOf(1_000_000))
+    }
+
+    test("values beyond range are clamped into the last bucket") {
+        val h = LatencyHistogram()
+        h.record(Long.MAX_VALUE)
+        h.countAtMostPowerOfTwo(LatencyHistogram.MAX_EXPONENT) shouldBe 1L
+    }
+})
@@ -214,6 +214,15 @@ fun createMcpServer(): Server {
         CallToolResult(content = listOf(ImageContent(data = result.base64, mimeType = "image/png")))
     }
 
+    // 4b. read_screen_text
+    server.addTool(
+        name = "read_screen_text",
+        description = "Read on-screen text (menus, shop lists, dialog boxes) and menu cursor positions straight from the PPU nametables, using the applied profile's font table. Far cheaper than a screenshot; each cursor reports the window line it points at."
+    ) { _ ->
+        val result = toolset.readScreenText()
+        CallToolResult(content = listOf(TextContent(json.encodeToString(result))))
+    }
+
     // 5. apply_profile
     server.addTool(
         name = "apply_profile",
@@ -358,9 +367,200 @@ fun createMcpServer(): Server {
         CallToolResult(content = listOf(TextContent(json.encodeToString(result))))
     }
 
+    // 10. get_metrics
+    server.addTool(
+        name = "get_metrics",
+        description = "Get emulator performance metrics (frames, CPU instructions, PPU/PAPU/mapper time, advanceFrames and PNG encode latency histograms) in Prometheus text format"
+    ) { _ ->
+        CallToolResult(content = listOf(TextContent(session.metrics.toPrometheusText())))
+    }
+
+    // 11. profile_cpu
+    server.addTool(
+        name = "profile_cpu",
+        description = "Profile the game's 6502 code. 'start' begins counting cycles per address and per routine (call stacks from JSR/RTS and interrupts, MMC1 banks told apart); step the game, then 'report' for the hottest routines and addresses, or 'stop' to end profiling and get the report. 'folded' returns call stacks in flame-graph folded format.",
+        inputSchema = ToolSchema(
+            properties = buildJsonObject {
+                putJsonObject("action") {
+                    put("type", "string")
+                    put("description", "start, report, stop or folded")
+                }
+                putJsonObject("sample_every") {
+                    put("type", "integer")
+                    put("description", "start only: count one instruction in N, a power of two (default: 1, every instruction)")
+                }
+                putJsonObject("limit") {
+                    put("type", "integer")
+                    put("description", "Rows per table in the report (default: 20)")
+                }
+            },
+            required = listOf("action")
+        )
+    ) { request ->
+        val action = request.arguments?.get("action")?.jsonPrimitive?.content
+            ?: return@addTool CallToolResult(content = listOf(TextContent("Missing: action")), isError = true)
+        val limit = request.arguments?.get("limit")?.jsonPrimitive?.content?.toIntOrNull() ?: knes.emulator.cpu.CpuProfiler.DEFAULT_LIMIT
+        when (action) {
+            "start" -> {
+                val sampleEvery = request.arguments?.get("sample_every")?.jsonPrimitive?.content?.toIntOrNull() ?: 1
+                try {
+                    session.startProfiling(sampleEvery)
+                    CallToolResult(content = listOf(TextContent("Profiling started (1 in $sampleEvery instructions).")))
+                } catch (e: IllegalArgumentException) {
+                    CallToolResult(content = listOf(TextContent(e.message ?: "invalid sample_every")), isError = true)
+                }
+            }
+            "report", "stop", "folded" -> {
+                if (action == "stop") session.stopProfiling()
+                val profiler = session.cpuProfiler
+                    ?: return@addTool CallToolResult(content = listOf(TextContent("No profile: call profile_cpu with action 'start' first")), isError = true)
+                val text = if (action == "folded") profiler.foldedStacks() else profiler.report(limit)
+                CallToolResult(content = listOf(TextContent(text)))
+            }
+            else -> CallToolResult(content = listOf(TextContent("Unknown action: $action")), isError = true)
+        }
+    }
+
+    // 12. set_breakpoint
+    server.addTool(
+        name = "set_breakpoint",
+        description = "Set a breakpoint for run_until_break. Kinds: 'execute' (the CPU reaches an address, optionally in one PRG bank), 'opcode' (any instruction with that opcode byte), 'read' / 'write' (an instruction reads or stores an address, optionally only when the value passes a condition), 'nmi' / 'irq' (the CPU takes that interrupt). E.g. kind 'write', address 'mapId' or '0x48' stops when the game writes the map id.",
+        inputSchema = ToolSchema(
+            properties = buildJsonObject {
+                putJsonObject("kind") {
+                    put("type", "string")
+                    put("description", "execute, opcode, read, write, nmi or irq")
+                }
+                putJsonObject("address") {
+                    put("type", "string")
+                    put("description", "Hex (0x48, \$48), decimal, or a RAM name from the applied profile; the opcode byte for 'opcode'; unused for nmi/irq")
+                }
+                putJsonObject("bank") {
+                    put("type", "integer")
+                    put("description", "execute only: PRG bank that must be mapped at the address (default: any)")
+                }
+                putJsonObject("condition") {
+                    put("type", "string")
+                    put("description", "read/write only: 'changed', or an operator and value: '== 3', '!= 0', '>= 0x10', '& 0x80' (any of these bits set)")
+                }
+            },
+            required = listOf("kind")
+        )
+    ) { request ->
+        val args = request.arguments
+        val bp = try {
+            val kind = knes.debug.Debugger.Kind.valueOf(
+                (args?.get("kind")?.jsonPrimitive?.content ?: throw IllegalArgumentException("Missing: kind")).uppercase()
+            )
+            val address = args?.get("address")?.jsonPrimitive?.content
+                ?.let { session.watchedAddress(it) ?: knes.debug.Debugger.parseNumber(it) } ?: -1
+            val bank = args?.get("bank")?.jsonPrimitive?.content?.toIntOrNull() ?: -1
+            val condition = args?.get("condition")?.jsonPrimitive?.content?.let { knes.debug.Debugger.Condition.parse(it) }
+            session.debugger.add(kind, address, bank, condition)
+        } catch (e: IllegalArgumentException) {
+            return@addTool CallToolResult(content = listOf(TextContent(e.message ?: "invalid breakpoint")), isError = true)
+        }
+        CallToolResult(content = listOf(TextContent("Set ${describeBreakpoint(bp)}")))
+    }
+
+    // 13. remove_breakpoint
+    server.addTool(
+        name = "remove_breakpoint",
+        description = "Remove a breakpoint by id, or all breakpoints when no id is given.",
+        inputSchema = ToolSchema(
+            properties = buildJsonObject {
+                putJsonObject("id") {
+                    put("type", "integer")
+                    put("description", "Breakpoint id from set_breakpoint or list_breakpoints (default: remove all)")
+                }
+            },
+            required = listOf()
+        )
+    ) { request ->
+        val id = request.arguments?.get("id")?.jsonPrimitive?.content?.toIntOrNull()
+        when {
+            id == null -> {
+                session.debugger.clear()
+                CallToolResult(content = listOf(TextContent("All breakpoints removed.")))
+            }
+            session.debugger.remove(id) -> CallToolResult(content = listOf(TextContent("Breakpoint #$id removed.")))
+            else -> CallToolResult(content = listOf(TextContent("No breakpoint #$id")), isError = true)
+        }
+    }
+
+    // 14. list_breakpoints
+    server.addTool(
+        name = "list_breakpoints",
+        description = "List the breakpoints set for run_until_break."
+    ) { _ ->
+        val breakpoints = session.debugger.list()
+        val text = if (breakpoints.isEmpty()) "No breakpoints." else breakpoints.joinToString("\n") { describeBreakpoint(it) }
+        CallToolResult(content = listOf(TextContent(text)))
+    }
+
+    // 15. run_until_break
+    server.addTool(
+        name = "run_until_break",
+        description = "Run the game until a breakpoint from set_breakpoint hits, or max_frames frames pass. Stops mid-frame on the hit, with the PC, the address and the old and new values; call again to continue. Breakpoints only slow the game down during this call.",
+        inputSchema = ToolSchema(
+            properties = buildJsonObject {
+                putJsonObject("max_frames") {
+                    put("type", "integer")
+                    put("description", "Give up after this many frames (default: 600, 10 seconds of game time)")
+                }
+                putJsonObject("screenshot") {
+                    put("type", "boolean")
+                    put("description", "If true, include a screenshot of the last completed frame (default: false)")
+                }
+            },
+            required = listOf()
+        )
+    ) { request ->
+        if (!session.romLoaded) {
+            return@addTool CallToolResult(content = listOf(TextContent("No ROM loaded")), isError = true)
+        }
+        if (session.shared) {
+            return@addTool CallToolResult(content = listOf(TextContent("Breakpoints need a standalone session")), isError = true)
+        }
+        val maxFrames = request.arguments?.get("max_frames")?.jsonPrimitive?.content?.toIntOrNull() ?: 600
+        if (maxFrames <= 0) {
+            return@addTool CallToolResult(content = listOf(TextContent("max_frames must be positive")), isError = true)
+        }
+        val screenshot = request.arguments?.get("screenshot")?.jsonPrimitive?.content?.toBooleanStrictOrNull() ?: false
+        val startFrame = session.frameCount
+        val hit = session.runUntilBreak(maxFrames)
+        val text = buildString {
+            if (hit == null) {
+                append("No breakpoint hit in $maxFrames frames.")
+            } else {
+                append("Hit ${describeBreakpoint(hit.breakpoint)} at PC ")
+                append("$%04X".format(hit.pc))
+                if (hit.value >= 0 && hit.old >= 0) append(": $%04X %02X -> %02X".format(hit.address, hit.old, hit.value))
+                else if (hit.value >= 0) append(": $%04X <- %02X".format(hit.address, hit.value))
+                append(" after ${session.frameCount - startFrame} frames.")
+            }
+            append("\nframe ${session.frameCount}, cpu ${session.readCpuRegs()}, ram ${session.getWatchedState()}")
+        }
+        val content = mutableListOf<ContentBlock>(TextContent(text))
+        if (screenshot) content.add(ImageContent(data = session.getScreenBase64(), mimeType = "image/png"))
+        CallToolResult(content = content)
+    }
+
     return server
 }
 
+private fun EmulatorSession.describeBreakpoint(bp: knes.debug.Debugger.Breakpoint): String = buildString {
+    append("#${bp.id} ${bp.kind.name.lowercase()}")
+    when (bp.kind) {
+        knes.debug.Debugger.Kind.OPCODE -> append(" $%02X".format(bp.address))
+        knes.debug.Debugger.Kind.NMI, knes.debug.Debugger.Kind.IRQ -> {}
+        else -> append(" $%04X".format(bp.address))
+    }
+    watchedName(bp.address)?.takeIf { bp.address >= 0 }?.let { append(" ($it)") }
+    if (bp.bank >= 0) append(" bank ${bp.bank}")
+    bp.condition?.let { append(" if $it") }
+}
+
 fun runMcpServer(server: Server) {
     val transport = StdioServerTransport(
         inputStream = System.`in`.asSource().buffered(),
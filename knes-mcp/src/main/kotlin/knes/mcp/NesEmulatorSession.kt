@@ -1,6 +1,5 @@
 package knes.mcp
 
-import knes.api.FrameInput
 import knes.api.InputQueue
 import knes.api.StepRequest
 import knes.debug.GameProfile
@@ -12,7 +11,6 @@ import knes.emulator.utils.HiResTimer
 import java.awt.image.BufferedImage
 import java.io.ByteArrayOutputStream
 import java.util.Base64
-import java.util.concurrent.CountDownLatch
 import javax.imageio.ImageIO
 
 class NesEmulatorSession {
@@ -33,9 +31,8 @@ class NesEmulatorSession {
 
     private val inputHandler = object : InputHandler {
         override fun getKeyState(padKey: Int): Short {
-            val persistent = keyStates[padKey]
-            val queued = if (inputQueue.isPressed(padKey)) 0x41.toShort() else 0x40.toShort()
-            return if (persistent == 0x41.toShort() || queued == 0x41.toShort()) 0x41 else 0x40
+            if (keyStates[padKey] == 0x41.toShort()) return 0x41
+            return if (inputQueue.isPressed(padKey)) 0x41 else 0x40
         }
     }
 
@@ -114,14 +111,18 @@ class NesEmulatorSession {
 
     fun releaseAll() { keyStates.fill(0x40) }
 
-    fun enqueueSteps(steps: List<StepRequest>): CountDownLatch {
-        val frameInputs = steps.flatMap { step ->
-            val buttons = step.buttons.map { name ->
-                buttonNames[name.uppercase()] ?: throw IllegalArgumentException("Unknown button: $name")
-            }.toSet()
-            List(step.frames) { FrameInput(buttons) }
+    fun enqueueSteps(steps: List<StepRequest>): Long {
+        val masks = ByteArray(steps.sumOf { it.frames })
+        var i = 0
+        for (step in steps) {
+            val mask = step.buttons.fold(0) { acc, name ->
+                val key = buttonNames[name.uppercase()] ?: throw IllegalArgumentException("Unknown button: $name")
+                acc or (1 shl key)
+            }
+            masks.fill(mask.toByte(), i, i + step.frames)
+            i += step.frames
         }
-        return inputQueue.enqueue(frameInputs)
+        return inputQueue.enqueue(masks)
     }
 
     fun getHeldButtons(): List<String> = buttonNames.entries.filter { keyStates[it.value] == 0x41.toShort() }.map { it.key }
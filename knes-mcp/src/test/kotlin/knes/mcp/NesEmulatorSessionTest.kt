@@ -105,7 +105,7 @@ class NesEmulatorSessionTest : FunSpec({
 
     test("enqueueSteps creates frame inputs from step requests") {
         val session = NesEmulatorSession()
-        val latch = session.enqueueSteps(listOf(
+        val ticket = session.enqueueSteps(listOf(
             knes.api.StepRequest(listOf("A"), 2),
             knes.api.StepRequest(emptyList(), 1)
         ))
@@ -120,7 +120,7 @@ class NesEmulatorSessionTest : FunSpec({
         session.inputQueue.isPressed(knes.emulator.input.InputHandler.KEY_A) shouldBe false
 
         session.inputQueue.advanceFrame()
-        latch.await(100, java.util.concurrent.TimeUnit.MILLISECONDS) shouldBe true
+        session.inputQueue.awaitCompletion(ticket, 100, java.util.concurrent.TimeUnit.MILLISECONDS) shouldBe true
         session.inputQueue.isActive shouldBe false
     }
 })
@@ -0,0 +1,59 @@
+/*
+ *
+ *  * Copyright (C) 2025 Artur Skowroński
+ *  * This file is part of kNES, a fork of vNES (GPLv3) rewritten in Kotlin.
+ *  *
+ *  * vNES was originally developed by Brian F. R. (bfirsh) and released under the GPL-3.0 license.
+ *  * This project is a reimplementation and extension of that work.
+ *  *
+ *  * kNES is licensed under the GNU General Public License v3.0.
+ *  * See the LICENSE file for more details.
+ *
+ */
+
+package knes.skiko
+
+import java.nio.IntBuffer
+
+/**
+ * Persistent frame store between the PPU and the Skia bitmap.
+ *
+ * The PPU writes 0x00RRGGBB ints, which in little-endian memory already are Skia's
+ * BGRA_8888 layout (alpha ignored with an opaque alpha type). So a frame needs no
+ * per-pixel conversion, but it is still copied twice: [publish] copies the finished frame
+ * on the emulation thread, because the PPU starts drawing the next one into the same
+ * buffer right away, and [uploadTo] copies it into the bitmap's pixel memory on the UI
+ * thread, because Skia owns that memory. Both are single bulk copies and neither allocates.
+ */
+class FramePixels(val width: Int, val height: Int, fill: Int = 0) {
+    private val lock = Any()
+    private val pixels = IntArray(width * height).apply { fill(fill) }
+
+    /** Number of frames published so far. */
+    @Volatile
+    var version = 0L
+        private set
+
+    fun publish(frame: IntArray) {
+        synchronized(lock) {
+            System.arraycopy(frame, 0, pixels, 0, minOf(frame.size, pixels.size))
+            version++
+        }
+    }
+
+    /** Copies the latest frame into [target] (from its start) and returns its [version]. */
+    fun uploadTo(target: IntBuffer): Long {
+        synchronized(lock) {
+            target.clear()
+            target.put(pixels)
+            return version
+        }
+    }
+
+    /** Copies the latest frame into [target]. */
+    fun copyTo(target: IntArray) {
+        synchronized(lock) {
+            System.arraycopy(pixels, 0, target, 0, minOf(target.size, pixels.size))
+        }
+    }
+}
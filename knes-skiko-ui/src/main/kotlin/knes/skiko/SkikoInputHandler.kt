@@ -34,48 +34,42 @@ import java.awt.event.KeyAdapter
 import java.awt.event.KeyEvent
 import javax.swing.JComponent
 import knes.emulator.input.InputHandler
-import knes.emulator.input.InputHandler.Companion.KEY_A
-import knes.emulator.input.InputHandler.Companion.KEY_B
-import knes.emulator.input.InputHandler.Companion.KEY_DOWN
-import knes.emulator.input.InputHandler.Companion.KEY_LEFT
-import knes.emulator.input.InputHandler.Companion.KEY_RIGHT
-import knes.emulator.input.InputHandler.Companion.KEY_SELECT
-import knes.emulator.input.InputHandler.Companion.KEY_START
-import knes.emulator.input.InputHandler.Companion.KEY_UP
-import knes.emulator.input.InputHandler.Companion.NUM_KEYS
+import knes.emulator.input.InputPipeline
 
 /**
  * Input handler for the Skiko UI.
- * 
- * This implementation uses AWT/Swing for keyboard input.
+ *
+ * The AWT keyboard is an event-driven device of an [InputPipeline]: key events update its
+ * button mask as they arrive and the mapper latches it at the game's $4016 strobe.
  */
-class SkikoInputHandler() : InputHandler {
-    private val keyStates = ShortArray(NUM_KEYS) { 0 }
-    private val keyMapping = IntArray(NUM_KEYS) { 0 }
+class SkikoInputHandler() : InputPipeline() {
+    private val keyboard = device("keyboard")
     private val keyAdapter = KeyInputAdapter()
 
-    /**
-     * Gets the state of a key.
-     *
-     * @param padKey The key to check
-     * @return 0x41 if the key is pressed, 0x40 otherwise
-     */
-    override fun getKeyState(padKey: Int): Short {
-        return keyStates[padKey]
+    /** Map an AWT key code to NES button index, or -1 if not mapped. */
+    private fun mapKey(keyCode: Int): Int {
+        return when (keyCode) {
+            KeyEvent.VK_Z -> InputHandler.KEY_A
+            KeyEvent.VK_X -> InputHandler.KEY_B
+            KeyEvent.VK_ENTER -> InputHandler.KEY_START
+            KeyEvent.VK_SPACE -> InputHandler.KEY_SELECT
+            KeyEvent.VK_UP -> InputHandler.KEY_UP
+            KeyEvent.VK_DOWN -> InputHandler.KEY_DOWN
+            KeyEvent.VK_LEFT -> InputHandler.KEY_LEFT
+            KeyEvent.VK_RIGHT -> InputHandler.KEY_RIGHT
+            else -> -1
+        }
     }
 
     /**
      * Sets the state of a key.
      *
-     * @param keyCode The key code
+     * @param keyCode The AWT key code
      * @param isPressed Whether the key is pressed
      */
     fun setKeyState(keyCode: Int, isPressed: Boolean) {
-        for (i in keyMapping.indices) {
-            if (keyMapping[i] == keyCode) {
-                keyStates[i] = if (isPressed) 0x41 else 0x40
-            }
-        }
+        val nesButton = mapKey(keyCode)
+        if (nesButton != -1) keyboard.press(nesButton, isPressed)
     }
 
     /**
@@ -104,6 +104,7 @@ class SkikoMain {
         // Create a render delegate for rendering
         val renderDelegate = object : SkikoRenderDelegate {
             private var frameCount = 0
+            private val paint = Paint()
 
             override fun onRender(canvas: Canvas, width: Int, height: Int, nanoTime: Long) {
                 frameCount++
@@ -131,19 +132,15 @@ class SkikoMain {
                 val offsetX = (dstWidth - scaledWidth) / 2
                 val offsetY = (dstHeight - scaledHeight) / 2
 
-                // Debug logging (every 60 frames to avoid spamming)
-                if (frameCount % 60 == 0) {
-                    println("[DEBUG] Skiko Renderer: src=${srcWidth}x${srcHeight}, dst=${dstWidth}x${dstHeight}, scale=$scale, scaled=${scaledWidth}x${scaledHeight}, offset=($offsetX,$offsetY)")
-                }
-
                 // Draw the image with scaling
-                val paint = Paint()
                 canvas.drawImageRect(
                     frameImage,
                     Rect(0f, 0f, srcWidth, srcHeight),
                     Rect(offsetX, offsetY, offsetX + scaledWidth, offsetY + scaledHeight),
                     paint
                 )
+                // Free the snapshot's native pixels now rather than at GC time.
+                frameImage.close()
             }
         }
 
@@ -189,6 +186,16 @@ class SkikoMain {
         }
         controlPanel.add(loadRomButton)
 
+        // Create the Run-ahead button; each click adds a frame, wrapping back to off
+        val runAheadButton = JButton("Run-ahead off")
+        runAheadButton.addActionListener {
+            val frames = (nes.runAheadFrames + 1) % (NES.MAX_RUN_AHEAD_FRAMES + 1)
+            nes.runAheadFrames = frames
+            runAheadButton.text = if (frames == 0) "Run-ahead off" else "Run-ahead $frames"
+            skiaLayer.requestFocus()
+        }
+        controlPanel.add(runAheadButton)
+
         // Add the control panel to the frame
         frame.add(controlPanel, BorderLayout.SOUTH)
 
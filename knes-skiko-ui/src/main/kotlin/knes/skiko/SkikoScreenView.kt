@@ -34,27 +34,37 @@ import org.jetbrains.skia.Bitmap
 import org.jetbrains.skia.ColorAlphaType
 import org.jetbrains.skia.ColorType
 import org.jetbrains.skia.ImageInfo
+import org.jetbrains.skia.impl.BufferUtil
 import knes.emulator.ui.ScreenView
 import java.awt.Color
 import java.awt.image.BufferedImage
-import java.nio.ByteBuffer
+import java.awt.image.DataBufferInt
 import java.nio.ByteOrder
+import java.nio.IntBuffer
 
 /**
  * Screen view for the Skiko UI.
  * 
- * This implementation uses Skiko to render the NES screen.
+ * This implementation uses Skiko to render the NES screen. Frames go through one
+ * persistent [FramePixels] store into one persistent bitmap, one bulk copy each, so
+ * steady-state rendering allocates nothing on the JVM heap.
  */
 class SkikoScreenView(private var scale: Int) : ScreenView {
     private val width = 256
     private val height = 240
 
-    private var buffer: IntArray = IntArray(width * height)
     private var scaleMode = 0
     private var showFPS = false
     private var bgColor = 0xFF333333.toInt()
 
-    private var frameCounter: Long = 0
+    private val frame = FramePixels(width, height, bgColor)
+
+    // UI-thread state: the bitmap, a view over its native pixel memory, and the frame it holds.
+    private val imageInfo = ImageInfo(width, height, ColorType.BGRA_8888, ColorAlphaType.OPAQUE)
+    private var bitmap: Bitmap? = null
+    private var bitmapPixels: IntBuffer? = null
+    private var uploadedVersion = -1L
+    private var previewImage: BufferedImage? = null
 
     // Callback for when a new frame is ready
     var onFrameReady: (() -> Unit)? = null
@@ -62,46 +72,28 @@ class SkikoScreenView(private var scale: Int) : ScreenView {
             field = value
         }
 
-    init {
-        buffer.fill(bgColor)
-    }
-
     /**
      * Gets the frame bitmap for rendering.
-     * 
+     *
+     * Always returns the same bitmap; its pixels are refreshed in place when the PPU has
+     * published a newer frame. Call from the render thread only.
+     *
      * @return A Skiko Bitmap containing the current frame
      */
     fun getFrameBitmap(): Bitmap {
-        frameCounter++
-
-        // Log some color information for debugging
-        if (frameCounter % 60L == 0L) { // Log once per second at 60fps
-            println("[DEBUG] First few pixels in buffer: " +
-                    "${Integer.toHexString(buffer[0])}, " +
-                    "${Integer.toHexString(buffer[1])}, " +
-                    "${Integer.toHexString(buffer[2])}")
+        val bmp = bitmap ?: Bitmap().also { b ->
+            b.allocPixels(imageInfo)
+            val pixmap = b.peekPixels() ?: error("bitmap has no addressable pixels")
+            bitmapPixels = BufferUtil.getByteBufferFromPointer(pixmap.addr, pixmap.computeByteSize())
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .asIntBuffer()
+            bitmap = b
         }
-
-        // Create a Skiko Bitmap
-        val bitmap = Bitmap()
-        val imageInfo = ImageInfo(width, height, ColorType.RGBA_8888, ColorAlphaType.UNPREMUL)
-        bitmap.allocPixels(imageInfo)
-
-        // Set the pixel data directly from the buffer
-        // We need to ensure alpha channel is set for each pixel
-        val pixelsWithAlpha = IntArray(buffer.size)
-        for (i in buffer.indices) {
-            pixelsWithAlpha[i] = buffer[i] or 0xFF000000.toInt()
+        if (frame.version != uploadedVersion) {
+            uploadedVersion = frame.uploadTo(bitmapPixels!!)
+            bmp.notifyPixelsChanged()
         }
-
-        // Convert IntArray to ByteArray for installPixels
-        val byteBuffer = ByteBuffer.allocate(pixelsWithAlpha.size * 4).order(ByteOrder.nativeOrder())
-        val intBuffer = byteBuffer.asIntBuffer()
-        intBuffer.put(pixelsWithAlpha)
-
-        bitmap.installPixels(imageInfo, byteBuffer.array(), width * 4)
-
-        return bitmap
+        return bmp
     }
 
     /**
@@ -127,27 +119,15 @@ class SkikoScreenView(private var scale: Int) : ScreenView {
     /**
      * Creates a BufferedImage from the current frame for preview purposes.
      *
+     * The same image is reused across calls and overwritten with each new frame.
+     *
      * @return A BufferedImage containing the current frame
      */
     fun getFrameBufferedImage(buffer: IntArray): BufferedImage {
-        // Create a copy of the buffer with alpha channel set
-        val pixelsWithAlpha = IntArray(buffer.size)
-        for (i in buffer.indices) {
-            pixelsWithAlpha[i] = buffer[i] or 0xFF000000.toInt()
-        }
-
-        // Log some color information for debugging
-        if (frameCounter % 60L == 0L) { // Log once per second at 60fps
-            println("[DEBUG] First few pixels in getFrameBufferedImage: " +
-                    "${Integer.toHexString(pixelsWithAlpha[0])}, " +
-                    "${Integer.toHexString(pixelsWithAlpha[1])}, " +
-                    "${Integer.toHexString(pixelsWithAlpha[2])}")
-        }
-
-        // Create a BufferedImage with TYPE_INT_ARGB to ensure alpha channel support
-        return BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB).apply {
-            setRGB(0, 0, width, height, pixelsWithAlpha, 0, width)
-        }
+        val image = previewImage ?: BufferedImage(width, height, BufferedImage.TYPE_INT_RGB).also { previewImage = it }
+        val data = (image.raster.dataBuffer as DataBufferInt).data
+        System.arraycopy(buffer, 0, data, 0, minOf(buffer.size, data.size))
+        return image
     }
 
     /**
@@ -175,6 +155,7 @@ class SkikoScreenView(private var scale: Int) : ScreenView {
      */
     override fun imageReady(skipFrame: Boolean, buffer: IntArray) {
         if (!skipFrame) {
+            frame.publish(buffer)
             // Notify that a new frame is ready
             // This will trigger a redraw in SkikoMain
             onFrameReady!!.invoke()
@@ -271,6 +252,8 @@ class SkikoScreenView(private var scale: Int) : ScreenView {
      * Clean up resources used by this screen view.
      */
     override fun destroy() {
-        buffer = IntArray(0)
+        bitmapPixels = null
+        bitmap?.close()
+        bitmap = null
     }
 }
@@ -0,0 +1,56 @@
+package knes.skiko
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.lang.management.ManagementFactory
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+
+/**
+ * The frame path from PPU to bitmap pixel memory must not allocate once warm. The
+ * bitmap's native memory is stood in for by a direct buffer, so no Skia natives load.
+ */
+class FramePixelsAllocationTest {
+
+    private fun target() = ByteBuffer.allocateDirect(256 * 240 * 4).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer()
+
+    @Test
+    fun uploadCopiesTheLatestFrameInBgraOrder() {
+        val pixels = FramePixels(256, 240)
+        val ppu = IntArray(256 * 240) { 0x123456 }
+        pixels.publish(ppu)
+        val bytes = ByteBuffer.allocateDirect(256 * 240 * 4).order(ByteOrder.LITTLE_ENDIAN)
+
+        assertEquals(1L, pixels.uploadTo(bytes.asIntBuffer()))
+        // Little-endian 0x00RRGGBB is B, G, R, X in memory.
+        assertEquals(0x56.toByte(), bytes.get(0))
+        assertEquals(0x34.toByte(), bytes.get(1))
+        assertEquals(0x12.toByte(), bytes.get(2))
+    }
+
+    @Test
+    fun steadyStateFramesAllocateNothing() {
+        val threads = ManagementFactory.getThreadMXBean() as? com.sun.management.ThreadMXBean
+        org.junit.Assume.assumeTrue(threads != null && threads.isThreadAllocatedMemorySupported)
+        threads!!.isThreadAllocatedMemoryEnabled = true
+
+        val pixels = FramePixels(256, 240)
+        val ppu = IntArray(256 * 240)
+        val target = target()
+        fun frame(i: Int) {
+            ppu[i % ppu.size] = i
+            pixels.publish(ppu)
+            pixels.uploadTo(target)
+        }
+        repeat(2_000) { frame(it) }
+
+        val id = Thread.currentThread().id
+        val before = threads.getThreadAllocatedBytes(id)
+        for (i in 0 until 600) frame(i) // ten seconds at 60 fps
+        val allocated = threads.getThreadAllocatedBytes(id) - before
+
+        // A few bytes of slack for the measurement call itself.
+        assertTrue("steady-state frames allocated $allocated bytes", allocated < 256)
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ *
+ *  * Copyright (C) 2025 Artur Skowroński
+ *  * This file is part of kNES, a fork of vNES (GPLv3) rewritten in Kotlin.
+ *  *
+ *  * vNES was originally developed by Brian F. R. (bfirsh) and released under the GPL-3.0 license.
+ *  * This project is a reimplementation and extension of that work.
+ *  *
+ *  * kNES is licensed under the GNU General Public License v3.0.
+ *  * See the LICENSE file for more details.
+ *
+ */
+
+package knes.terminal
+
+import java.io.FileDescriptor
+import java.io.FileOutputStream
+import java.io.OutputStream
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+/**
+ * Differential true-colour renderer for NES frames in an ANSI terminal.
+ *
+ * Every terminal cell shows two vertically stacked pixels: an upper-half-block glyph
+ * (`▀`) whose foreground is the top pixel and background the bottom one, so a
+ * 256x240 frame fits in 256x120 cells at full resolution. Only cells whose pixel pair
+ * changed since the last drawn frame are emitted; cursor moves are skipped for runs of
+ * adjacent cells and colour escapes for unchanged colours.
+ *
+ * [submit] only copies the frame and returns, so the emulation thread never waits on
+ * the terminal. A daemon thread encodes the latest submitted frame into one reusable
+ * byte buffer and writes it with a single call, at most [maxFps] times a second;
+ * frames submitted in between are dropped. After each frame the cursor is parked
+ * below the picture so console messages don't land inside it, and every
+ * [keyframeInterval] frames the whole picture is repainted to repair any scrolling.
+ */
+class AnsiFrameRenderer(
+    private val width: Int = 256,
+    private val height: Int = 240,
+    private val maxFps: Int = 30,
+    private val keyframeInterval: Int = 60,
+    private val out: OutputStream = FileOutputStream(FileDescriptor.out),
+) : AutoCloseable {
+
+    private val rows = (height + 1) / 2
+
+    private val lock = ReentrantLock()
+    private val frameReady = lock.newCondition()
+    private var pending = IntArray(width * height)
+    private var drawing = IntArray(width * height)
+    private var hasPending = false
+    @Volatile private var running = true
+    @Volatile private var repaint = true
+
+    // Last drawn colour pair per cell; -1 forces a repaint.
+    private val shownTop = IntArray(width * rows) { -1 }
+    private val shownBottom = IntArray(width * rows) { -1 }
+
+    private val sink = ByteSink(64 * 1024)
+    private var framesDrawn = 0L
+
+    private val thread = Thread(::renderLoop, "knes-terminal-render").apply {
+        isDaemon = true
+        start()
+    }
+
+    /** Hands [buffer] (0xRRGGBB per pixel, row-major) to the render thread. Never blocks on I/O. */
+    fun submit(buffer: IntArray) {
+        lock.withLock {
+            System.arraycopy(buffer, 0, pending, 0, minOf(buffer.size, pending.size))
+            hasPending = true
+            frameReady.signal()
+        }
+    }
+
+    /** Forces the next frame to repaint every cell. */
+    fun invalidate() {
+        repaint = true
+    }
+
+    private fun renderLoop() {
+        val frameNanos = 1_000_000_000L / maxFps.coerceAtLeast(1)
+        sink.ascii(CLEAR_SCREEN).ascii(HIDE_CURSOR)
+        flush()
+        while (running) {
+            lock.withLock {
+                while (!hasPending && running) frameReady.await()
+                if (!running) return
+                val t = pending; pending = drawing; drawing = t
+                hasPending = false
+            }
+            if (repaint || framesDrawn % keyframeInterval == 0L) {
+                repaint = false
+                shownTop.fill(-1)
+                shownBottom.fill(-1)
+            }
+            val start = System.nanoTime()
+            encode(drawing)
+            flush()
+            framesDrawn++
+            val left = frameNanos - (System.nanoTime() - start)
+            if (left > 0) Thread.sleep(left / 1_000_000, (left % 1_000_000).toInt())
+        }
+    }
+
+    private fun encode(frame: IntArray) {
+        var fg = -1
+        var bg = -1
+        var nextCell = -1
+        for (row in 0 until rows) {
+            val top = row * 2 * width
+            val bottom = if (row * 2 + 1 < height) top + width else -1
+            for (col in 0 until width) {
+                val cell = row * width + col
+                val t = frame[top + col] and 0xFFFFFF
+                val b = if (bottom >= 0) frame[bottom + col] and 0xFFFFFF else 0
+                if (t == shownTop[cell] && b == shownBottom[cell]) continue
+                shownTop[cell] = t
+                shownBottom[cell] = b
+                if (cell != nextCell) {
+                    sink.ascii("\u001B[").int(row + 1).byte(';'.code).int(col + 1).byte('H'.code)
+                }
+                if (t != fg) {
+                    sink.ascii("\u001B[38;2;").rgb(t).byte('m'.code)
+                    fg = t
+                }
+                if (b != bg) {
+                    sink.ascii("\u001B[48;2;").rgb(b).byte('m'.code)
+                    bg = b
+                }
+                sink.bytes(UPPER_HALF_BLOCK)
+                // Wrapping at the right edge depends on the terminal width, so each row restarts with a move.
+                nextCell = if (col == width - 1) -1 else cell + 1
+            }
+        }
+        if (sink.size > 0) {
+            sink.ascii(RESET).ascii("\u001B[").int(rows + 1).ascii(";1H")
+        }
+    }
+
+    private fun flush() {
+        if (sink.size == 0) return
+        try {
+            sink.writeTo(out)
+            out.flush()
+        } catch (_: Exception) {
+            // A closed terminal must not take the emulator down with it.
+        }
+        sink.reset()
+    }
+
+    override fun close() {
+        running = false
+        lock.withLock { frameReady.signalAll() }
+        thread.join(1_000)
+        sink.ascii(RESET).ascii(SHOW_CURSOR)
+        flush()
+    }
+
+    /** Growable byte buffer with allocation-free ASCII number formatting. */
+    private class ByteSink(capacity: Int) {
+        private var buf = ByteArray(capacity)
+        var size = 0
+            private set
+
+        fun byte(b: Int): ByteSink {
+            if (size == buf.size) buf = buf.copyOf(buf.size * 2)
+            buf[size++] = b.toByte()
+            return this
+        }
+
+        fun bytes(bs: ByteArray): ByteSink {
+            for (b in bs) byte(b.toInt())
+            return this
+        }
+
+        fun ascii(s: String): ByteSink {
+            for (c in s) byte(c.code)
+            return this
+        }
+
+        fun int(v: Int): ByteSink {
+            if (v >= 100) byte('0'.code + v / 100)
+            if (v >= 10) byte('0'.code + v / 10 % 10)
+            return byte('0'.code + v % 10)
+        }
+
+        fun rgb(c: Int): ByteSink =
+            int((c shr 16) and 0xFF).byte(';'.code).int((c shr 8) and 0xFF).byte(';'.code).int(c and 0xFF)
+
+        fun writeTo(out: OutputStream) = out.write(buf, 0, size)
+
+        fun reset() {
+            size = 0
+        }
+    }
+
+    private companion object {
+        const val CLEAR_SCREEN = "\u001B[2J"
+        const val HIDE_CURSOR = "\u001B[?25l"
+        const val SHOW_CURSOR = "\u001B[?25h"
+        const val RESET = "\u001B[0m"
+        val UPPER_HALF_BLOCK = "▀".toByteArray(Charsets.UTF_8)
+    }
+}
@@ -36,7 +36,8 @@ import java.util.concurrent.atomic.AtomicBoolean
 /**
  * Screen view for the Terminal UI.
  * 
- * This implementation uses ANSI escape codes to render the NES screen in the terminal.
+ * This implementation uses ANSI escape codes to render the NES screen in the terminal,
+ * through an [AnsiFrameRenderer] that draws on its own thread.
  */
 class TerminalScreenView(private var scale: Int) : ScreenView {
     private val width = 256
@@ -48,50 +49,11 @@ class TerminalScreenView(private var scale: Int) : ScreenView {
 
     private var frameCounter: Long = 0
     private val drawBufferToTerminal = AtomicBoolean(true)
-    private val frameRateLimit = 60 // Only render every 10th frame to avoid terminal spam
 
-    /**
-     * Visualizes the buffer in the terminal.
-     * 
-     * This is based on the visualizeBufferInTerminal function from ComposeScreenView.
-     * 
-     * @param buffer The buffer to visualize
-     * @param width The width of the buffer
-     * @param height The height of the buffer
-     */
-    private fun visualizeBufferInTerminal(buffer: IntArray) {
-
-        // ANSI escape code for reset
-        val reset = "\u001B[0m"
-
-        // Draw the buffer line by line
-        for (y in 0 until height) {
-            val line = StringBuilder()
-            // Cut 30 pixels from left and 30 pixels from right
-            for (x in 30 until width - 30) {
-                val pixel = buffer[y * width + x]
-                val r = (pixel shr 16) and 0xFF
-                val g = (pixel shr 8) and 0xFF
-                val b = pixel and 0xFF
-
-                // Convert RGB to ANSI color code
-                // Using 8-bit color mode (256 colors)
-                // Format: \u001B[38;5;{color_code}m
-                // For simplicity, we'll use a basic mapping to the 216 color cube (6x6x6)
-                val ansiR = (r * 5 / 255)
-                val ansiG = (g * 5 / 255)
-                val ansiB = (b * 5 / 255)
-                val colorCode = 16 + (36 * ansiR) + (6 * ansiG) + ansiB
-
-                // Apply the color and add a block character
-                line.append("\u001B[38;5;${colorCode}m█$reset")
-            }
-            // Print every 8th line to reduce output volume
-            if (y % 8 == 0) {
-                println(line.toString())
-            }
-        }
-    }
+    // Created on the first drawn frame, so startup messages aren't cleared before a ROM runs.
+    // Set on the emulation thread and cleared by destroy() on the UI thread.
+    @Volatile
+    private var renderer: AnsiFrameRenderer? = null
 
     /**
      * Gets the width of the buffer.
@@ -119,10 +81,9 @@ class TerminalScreenView(private var scale: Int) : ScreenView {
     override fun imageReady(skipFrame: Boolean, buffer: IntArray) {
         frameCounter++
 
-        if (!skipFrame && drawBufferToTerminal.get() && frameCounter % frameRateLimit == 0L) {
-            // Visualize the buffer in the terminal
-            visualizeBufferInTerminal(buffer)
-            Thread.sleep(150)
+        if (!skipFrame && drawBufferToTerminal.get()) {
+            val r = renderer ?: AnsiFrameRenderer(width, height).also { renderer = it }
+            r.submit(buffer)
         }
     }
 
@@ -234,5 +195,8 @@ class TerminalScreenView(private var scale: Int) : ScreenView {
      * Clean up resources used by this screen view.
      */
     override fun destroy() {
+        val r = renderer
+        renderer = null
+        r?.close()
     }
 }
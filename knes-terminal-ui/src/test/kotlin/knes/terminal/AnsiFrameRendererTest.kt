@@ -0,0 +1,57 @@
+package knes.terminal
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.shouldBe
+import java.io.OutputStream
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+
+// The renderer writes each frame with one call; this hands every call over as a string.
+private class ChunkStream : OutputStream() {
+    val chunks = LinkedBlockingQueue<String>()
+
+    override fun write(b: Int) = write(byteArrayOf(b.toByte()), 0, 1)
+
+    override fun write(b: ByteArray, off: Int, len: Int) {
+        chunks.put(String(b, off, len, Charsets.UTF_8))
+    }
+
+    fun next(): String = checkNotNull(chunks.poll(5, TimeUnit.SECONDS)) { "renderer wrote nothing" }
+}
+
+private const val BLOCK = "▀"
+
+class AnsiFrameRendererTest : FunSpec({
+
+    test("only the changed cell is redrawn after the first frame") {
+        val out = ChunkStream()
+        // 4x2 pixels: one row of four cells.
+        AnsiFrameRenderer(width = 4, height = 2, maxFps = 1000, out = out).use { renderer ->
+            out.next() shouldBe "\u001B[2J\u001B[?25l"
+
+            val frame = IntArray(8)
+            renderer.submit(frame)
+            out.next() shouldBe "\u001B[1;1H\u001B[38;2;0;0;0m\u001B[48;2;0;0;0m$BLOCK$BLOCK$BLOCK$BLOCK\u001B[0m\u001B[2;1H"
+
+            frame[2] = 0xFF0000 // top pixel of the third cell
+            frame[7] = 0x0000FF // bottom pixel of the fourth cell
+            renderer.submit(frame)
+            out.next() shouldBe
+                "\u001B[1;3H\u001B[38;2;255;0;0m\u001B[48;2;0;0;0m$BLOCK" +
+                "\u001B[38;2;0;0;0m\u001B[48;2;0;0;255m$BLOCK\u001B[0m\u001B[2;1H"
+        }
+    }
+
+    test("every keyframe interval the whole picture is repainted") {
+        val out = ChunkStream()
+        AnsiFrameRenderer(width = 4, height = 2, maxFps = 1000, keyframeInterval = 3, out = out).use { renderer ->
+            out.next()
+            val drawn = (0 until 5).map { i ->
+                // Flip one pixel each frame so every frame has something to draw.
+                renderer.submit(IntArray(8).also { it[0] = if (i % 2 == 0) 0 else 0xFFFFFF })
+                out.next().split(BLOCK).size - 1
+            }
+            drawn shouldBe listOf(4, 1, 1, 4, 1)
+        }
+    }
+})